@@ -4,9 +4,15 @@ import jakarta.annotation.security.RolesAllowed;
 import jakarta.inject.Inject;
 import jakarta.nosql.document.DocumentTemplate;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
 import org.eclipse.microprofile.jwt.JsonWebToken;
+import tn.supcom.cot.api.controllers.AlertController;
+import tn.supcom.cot.api.controllers.ExecutionModel;
+import tn.supcom.cot.api.controllers.LiveFeed;
 import tn.supcom.cot.api.entities.Alert;
 
 import java.time.LocalDateTime;
@@ -14,6 +20,8 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.stream.Collectors;
 
 
@@ -33,9 +41,18 @@ public class AlertResource {
     @Inject
     private DocumentTemplate template;
 
+    @Inject
+    private ExecutionModel execution;
+
     @Inject
     private JsonWebToken jwt;
 
+    @Inject
+    private AlertController alertController;
+
+    @Inject
+    private LiveFeed liveFeed;
+
     /**
      * Create a new alert
      *
@@ -83,6 +100,7 @@ public class AlertResource {
 
             // Save to database
             Alert saved = template.insert(alert);
+            liveFeed.alert(saved);
 
             return Response.status(Response.Status.CREATED)
                     .entity(saved)
@@ -103,38 +121,61 @@ public class AlertResource {
      */
     @GET
     @RolesAllowed({"DOCTOR", "FAMILY", "ADMIN"})
-    public Response getActiveAlerts(@QueryParam("patientId") String patientId) {
-        try {
-            List<Alert> alerts;
-
-            if (patientId != null && !patientId.isEmpty()) {
-                // Get active alerts for specific patient
-                List<Alert> result = template.select(Alert.class)
-                        .where("patientId").eq(patientId)
-                        .and("resolved").eq(false)
-                        .result();
-
-                alerts = result.stream()
-                        .sorted(Comparator.comparing(Alert::getTimestamp).reversed())
-                        .collect(Collectors.toList());
-            } else {
-                // Get all active alerts
-                List<Alert> result = template.select(Alert.class)
-                        .where("resolved").eq(false)
-                        .result();
-
-                alerts = result.stream()
-                        .sorted(Comparator.comparing(Alert::getTimestamp).reversed())
-                        .collect(Collectors.toList());
+    public CompletionStage<Response> getActiveAlerts(@QueryParam("patientId") String patientId) {
+        return execution.supplyAsync(() -> {
+            try {
+                List<Alert> alerts;
+
+                if (patientId != null && !patientId.isEmpty()) {
+                    // Get active alerts for specific patient
+                    List<Alert> result = template.select(Alert.class)
+                            .where("patientId").eq(patientId)
+                            .and("resolved").eq(false)
+                            .result();
+
+                    alerts = result.stream()
+                            .sorted(Comparator.comparing(Alert::getTimestamp).reversed())
+                            .collect(Collectors.toList());
+                } else {
+                    // Get all active alerts
+                    List<Alert> result = template.select(Alert.class)
+                            .where("resolved").eq(false)
+                            .result();
+
+                    alerts = result.stream()
+                            .sorted(Comparator.comparing(Alert::getTimestamp).reversed())
+                            .collect(Collectors.toList());
+                }
+
+                return Response.ok(alerts).build();
+
+            } catch (Exception e) {
+                return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                        .entity(new ErrorResponse("Failed to retrieve alerts: " + e.getMessage()))
+                        .build();
             }
+        });
+    }
 
-            return Response.ok(alerts).build();
-
-        } catch (Exception e) {
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
-                    .entity(new ErrorResponse("Failed to retrieve alerts: " + e.getMessage()))
-                    .build();
-        }
+    /**
+     * Stream alerts as they are raised or resolved
+     *
+     * GET /api/alerts/stream?patientId=...
+     * Roles: DOCTOR, FAMILY, ADMIN
+     *
+     * Server-Sent Events: one "alert" event per raised or resolved alert,
+     * the Alert as JSON data, for one patient or all of them. Repeated
+     * triggers counted on an open alert are not streamed.
+     */
+    @GET
+    @Path("/stream")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    @RolesAllowed({"DOCTOR", "FAMILY", "ADMIN"})
+    public void streamAlerts(
+            @QueryParam("patientId") String patientId,
+            @Context SseEventSink sink,
+            @Context Sse sse) {
+        liveFeed.alerts(patientId == null || patientId.isEmpty() ? null : patientId, new SseSink(sink, sse));
     }
 
     /**
@@ -146,55 +187,63 @@ public class AlertResource {
     @GET
     @Path("/{id}")
     @RolesAllowed({"DOCTOR", "FAMILY", "ADMIN"})
-    public Response getAlert(@PathParam("id") String id) {
-        try {
-            Optional<Alert> alert = template.find(Alert.class, id);
-
-            if (alert.isPresent()) {
-                return Response.ok(alert.get()).build();
-            } else {
-                return Response.status(Response.Status.NOT_FOUND)
-                        .entity(new ErrorResponse("Alert not found"))
+    public CompletionStage<Response> getAlert(@PathParam("id") String id) {
+        return execution.supplyAsync(() -> {
+            try {
+                Optional<Alert> alert = template.find(Alert.class, id);
+
+                if (alert.isPresent()) {
+                    return Response.ok(alert.get()).build();
+                } else {
+                    return Response.status(Response.Status.NOT_FOUND)
+                            .entity(new ErrorResponse("Alert not found"))
+                            .build();
+                }
+
+            } catch (Exception e) {
+                return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                        .entity(new ErrorResponse("Failed to retrieve alert: " + e.getMessage()))
                         .build();
             }
-
-        } catch (Exception e) {
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
-                    .entity(new ErrorResponse("Failed to retrieve alert: " + e.getMessage()))
-                    .build();
-        }
+        });
     }
 
     /**
-     * Get all alerts for a patient (including resolved)
+     * Get all alerts for a patient (including resolved), newest first
      *
-     * GET /api/alerts/patient/{patientId}
+     * GET /api/alerts/patient/{patientId}?limit=50&cursor=...
      * Roles: DOCTOR, FAMILY, ADMIN
+     *
+     * The X-Next-Cursor response header holds the cursor of the next page
+     * (absent on the last one).
      */
     @GET
     @Path("/patient/{patientId}")
     @RolesAllowed({"DOCTOR", "FAMILY", "ADMIN"})
-    public Response getPatientAlerts(
+    public CompletionStage<Response> getPatientAlerts(
             @PathParam("patientId") String patientId,
-            @QueryParam("limit") @DefaultValue("50") int limit) {
-
-        try {
-            List<Alert> result = template.select(Alert.class)
-                    .where("patientId").eq(patientId)
-                    .result();
-
-            List<Alert> alerts = result.stream()
-                    .sorted(Comparator.comparing(Alert::getTimestamp).reversed())
-                    .limit(limit)
-                    .collect(Collectors.toList());
+            @QueryParam("limit") @DefaultValue("50") int limit,
+            @QueryParam("cursor") String cursor) {
+        String invalid = KeysetPage.validate(limit, 0, cursor);
+        if (invalid != null) {
+            return CompletableFuture.completedFuture(Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ErrorResponse(invalid))
+                    .build());
+        }
+        return execution.supplyAsync(() -> {
 
-            return Response.ok(alerts).build();
+            try {
+                // Served by the (patientId, timestamp desc, _id desc) index
+                return KeysetPage.fetch(() -> template.select(Alert.class)
+                                .where("patientId").eq(patientId),
+                        cursor, limit, Alert::getTimestamp, Alert::getId).toResponse();
 
-        } catch (Exception e) {
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
-                    .entity(new ErrorResponse("Failed to retrieve patient alerts: " + e.getMessage()))
-                    .build();
-        }
+            } catch (Exception e) {
+                return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                        .entity(new ErrorResponse("Failed to retrieve patient alerts: " + e.getMessage()))
+                        .build();
+            }
+        });
     }
 
     /**
@@ -237,6 +286,9 @@ public class AlertResource {
             }
 
             Alert updated = template.update(alert);
+            // Further triggers open a new alert
+            alertController.closed(updated);
+            liveFeed.alert(updated);
 
             return Response.ok(updated).build();
 
@@ -248,45 +300,48 @@ public class AlertResource {
     }
 
     /**
-     * Get alerts by severity
+     * Get alerts by severity, newest first
      *
-     * GET /api/alerts/severity/{severity}
+     * GET /api/alerts/severity/{severity}?resolved=false&limit=100&cursor=...
      * Roles: DOCTOR, FAMILY, ADMIN
      *
      * Severity: LOW, MEDIUM, HIGH, CRITICAL
+     * Paginated like the patient alerts (X-Next-Cursor header).
      */
     @GET
     @Path("/severity/{severity}")
     @RolesAllowed({"DOCTOR", "FAMILY", "ADMIN"})
-    public Response getAlertsBySeverity(
+    public CompletionStage<Response> getAlertsBySeverity(
             @PathParam("severity") String severity,
-            @QueryParam("resolved") @DefaultValue("false") boolean includeResolved) {
-
-        try {
-            List<Alert> result;
-
-            if (includeResolved) {
-                result = template.select(Alert.class)
-                        .where("severity").eq(severity.toUpperCase())
-                        .result();
-            } else {
-                result = template.select(Alert.class)
-                        .where("severity").eq(severity.toUpperCase())
-                        .and("resolved").eq(false)
-                        .result();
-            }
-
-            List<Alert> alerts = result.stream()
-                    .sorted(Comparator.comparing(Alert::getTimestamp).reversed())
-                    .collect(Collectors.toList());
-
-            return Response.ok(alerts).build();
-
-        } catch (Exception e) {
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
-                    .entity(new ErrorResponse("Failed to retrieve alerts: " + e.getMessage()))
-                    .build();
+            @QueryParam("resolved") @DefaultValue("false") boolean includeResolved,
+            @QueryParam("limit") @DefaultValue("100") int limit,
+            @QueryParam("cursor") String cursor) {
+        String invalid = KeysetPage.validate(limit, 0, cursor);
+        if (invalid != null) {
+            return CompletableFuture.completedFuture(Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ErrorResponse(invalid))
+                    .build());
         }
+        return execution.supplyAsync(() -> {
+
+            try {
+                // Served by the (severity, timestamp desc, _id desc) and
+                // (severity, resolved, timestamp desc, _id desc) indexes
+                String level = severity.toUpperCase();
+                return KeysetPage.fetch(() -> includeResolved
+                                ? template.select(Alert.class)
+                                        .where("severity").eq(level)
+                                : template.select(Alert.class)
+                                        .where("severity").eq(level)
+                                        .and("resolved").eq(false),
+                        cursor, limit, Alert::getTimestamp, Alert::getId).toResponse();
+
+            } catch (Exception e) {
+                return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                        .entity(new ErrorResponse("Failed to retrieve alerts: " + e.getMessage()))
+                        .build();
+            }
+        });
     }
 
     /**
@@ -300,7 +355,10 @@ public class AlertResource {
     @RolesAllowed({"ADMIN"})
     public Response deleteAlert(@PathParam("id") String id) {
         try {
+            Optional<Alert> existing = template.find(Alert.class, id);
+
             template.delete(Alert.class, id);
+            existing.ifPresent(alertController::closed);
 
             return Response.noContent().build();
 
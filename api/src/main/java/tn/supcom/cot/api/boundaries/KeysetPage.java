@@ -0,0 +1,161 @@
+package tn.supcom.cot.api.boundaries;
+
+import jakarta.nosql.QueryMapper;
+import jakarta.ws.rs.core.Response;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * One page of a listing ordered newest first by (timestamp, id).
+ *
+ * The next page starts right after the last entry of this one, given as an
+ * opaque cursor, instead of skipping over everything read before: with an
+ * index ending in (timestamp desc, _id desc) every page costs the same,
+ * however deep the client scrolls. The cursor is returned in the
+ * X-Next-Cursor header, absent on the last page.
+ */
+final class KeysetPage<T> {
+
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private final List<T> items;
+    private final String nextCursor;
+
+    private KeysetPage(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Continuation token: timestamp and id of the last entry returned.
+     */
+    record Cursor(LocalDateTime timestamp, String id) {
+
+        String encode() {
+            byte[] raw = (timestamp + "\n" + id).getBytes(StandardCharsets.UTF_8);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+        }
+
+        /**
+         * @throws IllegalArgumentException if the token was not produced by {@link #encode()}
+         */
+        static Cursor decode(String token) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+                int separator = raw.indexOf('\n');
+                if (separator < 0 || separator == raw.length() - 1) {
+                    throw new IllegalArgumentException("Invalid cursor");
+                }
+                return new Cursor(LocalDateTime.parse(raw.substring(0, separator)), raw.substring(separator + 1));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid cursor", e);
+            }
+        }
+    }
+
+    /**
+     * Checks paging parameters; skip is still accepted on its own for offset paging.
+     *
+     * @return an error message, or null if they are valid
+     */
+    static String validate(int limit, int skip, String cursor) {
+        if (limit < 1 || skip < 0) {
+            return "limit must be positive and skip not negative";
+        }
+        boolean hasCursor = cursor != null && !cursor.isEmpty();
+        if (hasCursor && skip > 0) {
+            return "skip and cursor cannot be combined";
+        }
+        if (hasCursor) {
+            try {
+                Cursor.decode(cursor);
+            } catch (IllegalArgumentException e) {
+                return "Invalid cursor";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the page following the cursor (the first page without one).
+     *
+     * @param query     creates the filtered query; called once per round trip
+     * @param cursor    token from a previous page, or null
+     * @param timestamp and id: accessors for the sort keys of T
+     */
+    static <T> KeysetPage<T> fetch(Supplier<QueryMapper.MapperWhere> query, String cursor, int limit,
+                                   Function<T, LocalDateTime> timestamp, Function<T, String> id) {
+        // One extra entry tells whether there is a next page
+        return of(read(query, cursor, limit + 1), limit, timestamp, id);
+    }
+
+    /**
+     * Reads up to wanted entries past the cursor, newest first.
+     */
+    static <T> List<T> read(Supplier<QueryMapper.MapperWhere> query, String cursor, int wanted) {
+        List<T> entries = new ArrayList<>(wanted);
+        if (cursor == null || cursor.isEmpty()) {
+            entries.addAll(query.get()
+                    .orderBy("timestamp").desc()
+                    .orderBy("id").desc()
+                    .limit(wanted)
+                    .<T>result());
+        } else {
+            Cursor after = Cursor.decode(cursor);
+            // (timestamp, id) < after, split in two range scans as the fluent API has no OR:
+            // the rest of the cursor's timestamp first, then strictly older entries
+            entries.addAll(query.get()
+                    .and("timestamp").eq(after.timestamp())
+                    .and("id").lt(after.id())
+                    .orderBy("id").desc()
+                    .limit(wanted)
+                    .<T>result());
+            if (entries.size() < wanted) {
+                entries.addAll(query.get()
+                        .and("timestamp").lt(after.timestamp())
+                        .orderBy("timestamp").desc()
+                        .orderBy("id").desc()
+                        .limit(wanted - entries.size())
+                        .<T>result());
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Builds a page from entries read past the cursor, newest first; the
+     * cursor to the next page is set if there are more than limit of them.
+     */
+    static <T> KeysetPage<T> of(List<T> entries, int limit,
+                                Function<T, LocalDateTime> timestamp, Function<T, String> id) {
+        if (entries.size() <= limit) {
+            return new KeysetPage<>(entries, null);
+        }
+        List<T> page = new ArrayList<>(entries.subList(0, limit));
+        T last = page.get(limit - 1);
+        return new KeysetPage<>(page, new Cursor(timestamp.apply(last), id.apply(last)).encode());
+    }
+
+    List<T> items() {
+        return items;
+    }
+
+    String nextCursor() {
+        return nextCursor;
+    }
+
+    Response toResponse() {
+        Response.ResponseBuilder response = Response.ok(items);
+        if (nextCursor != null) {
+            response.header(NEXT_CURSOR_HEADER, nextCursor);
+        }
+        return response.build();
+    }
+}
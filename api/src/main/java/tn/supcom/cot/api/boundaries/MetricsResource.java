@@ -0,0 +1,38 @@
+package tn.supcom.cot.api.boundaries;
+
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import tn.supcom.cot.api.metrics.IngestionMetrics;
+
+/**
+ * Metrics Resource
+ *
+ * Exposes ingestion counters and gauges (queue depth, in-flight messages,
+ * paused time, ...) for monitoring.
+ *
+ * Base URL: /api/metrics
+ */
+@Path("/metrics")
+@Produces(MediaType.APPLICATION_JSON)
+public class MetricsResource {
+
+    @Inject
+    private IngestionMetrics metrics;
+
+    /**
+     * Current metric values, keyed by metric name
+     *
+     * GET /api/metrics
+     * Roles: ADMIN
+     */
+    @GET
+    @RolesAllowed({"ADMIN"})
+    public Response getMetrics() {
+        return Response.ok(metrics.snapshot()).build();
+    }
+}
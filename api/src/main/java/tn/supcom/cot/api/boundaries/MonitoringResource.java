@@ -2,18 +2,57 @@ package tn.supcom.cot.api.boundaries;
 
 import jakarta.annotation.security.RolesAllowed;
 import jakarta.inject.Inject;
+import jakarta.json.bind.Jsonb;
+import jakarta.json.bind.JsonbBuilder;
+import jakarta.json.bind.JsonbException;
 import jakarta.nosql.document.DocumentTemplate;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.jwt.JsonWebToken;
+import tn.supcom.cot.api.controllers.ExecutionModel;
+import tn.supcom.cot.api.controllers.LatestReadingCache;
+import tn.supcom.cot.api.controllers.LiveFeed;
+import tn.supcom.cot.api.controllers.ReadingDeduplicator;
+import tn.supcom.cot.api.controllers.SeriesDownsampler;
 import tn.supcom.cot.api.entities.HealthRecord;
-
+import tn.supcom.cot.api.entities.SensorType;
+import tn.supcom.cot.api.repositories.HealthRecordBatchWriter;
+import tn.supcom.cot.api.repositories.HealthRecordBuckets;
+import tn.supcom.cot.api.repositories.HealthRecordDocuments;
+import tn.supcom.cot.api.repositories.HealthRecordExport;
+import tn.supcom.cot.api.repositories.HealthRecordSeries;
+import tn.supcom.cot.api.repositories.HealthStatsStore;
+import tn.supcom.cot.api.repositories.ReadingArchive;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.util.Comparator;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Monitoring Resource
@@ -31,9 +70,56 @@ public class MonitoringResource {
     @Inject
     private DocumentTemplate template;
 
+    @Inject
+    private ExecutionModel execution;
+
     @Inject
     private JsonWebToken jwt;
 
+    @Inject
+    private ReadingDeduplicator deduplicator;
+
+    @Inject
+    private HealthRecordSeries series;
+
+    @Inject
+    private HealthStatsStore stats;
+
+    @Inject
+    private HealthRecordBuckets buckets;
+
+    @Inject
+    private HealthRecordBatchWriter batchWriter;
+
+    @Inject
+    private ReadingArchive archive;
+
+    @Inject
+    private HealthRecordExport export;
+
+    @Inject
+    @ConfigProperty(name = "monitor.batch.max.size", defaultValue = "5000")
+    private int maxBatchSize;
+
+    @Inject
+    private LatestReadingCache latestReadings;
+
+    @Inject
+    private LiveFeed liveFeed;
+
+    private static final String NDJSON = "application/x-ndjson";
+
+    // Parses NDJSON batches line by line; thread-safe
+    private static final Jsonb JSONB = JsonbBuilder.create();
+
+    // Exports without from start at the epoch, before any reading
+    private static final LocalDateTime EXPORT_START = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private static final int EXPORT_BUFFER_BYTES = 64 * 1024;
+
+    // Raw readings loaded for LTTB downsampling: a week at 2 s resolution is about 300k
+    private static final int MAX_DOWNSAMPLED_READINGS = 1_000_000;
+
     /**
      * Submit sensor data
      *
@@ -46,117 +132,440 @@ public class MonitoringResource {
      *   "type": "HEART_RATE",
      *   "value": 75.0,
      *   "unit": "bpm",
-     *   "notes": "Normal reading"
+     *   "notes": "Normal reading",
+     *   "sequence": 42
      * }
+     *
+     * The optional sequence number makes retries idempotent: a reading with
+     * the sequence and timestamp of one already stored for the same sensor
+     * is answered with 200 instead of being stored twice. Readings with a
+     * sequence keep their timestamp (the device clock), so that a sequence
+     * restarted after a device reboot is told apart by it; a retry must
+     * resend the same timestamp.
      */
     @POST
     @RolesAllowed({"SENSOR", "ADMIN"})
-    public Response submitHealthData(HealthRecord record) {
-        try {
-            // Validate required fields
-            if (record.getPatientId() == null || record.getPatientId().isEmpty()) {
-                return Response.status(Response.Status.BAD_REQUEST)
-                        .entity(new ErrorResponse("patientId is required"))
+    public CompletionStage<Response> submitHealthData(HealthRecord record) {
+        // Request-scoped: read before leaving the request thread
+        String sensorId = jwt.getSubject();
+        return execution.supplyAsync(() -> {
+            try {
+                String invalid = invalid(record);
+                if (invalid != null) {
+                    return Response.status(Response.Status.BAD_REQUEST)
+                            .entity(new ErrorResponse(invalid))
+                            .build();
+                }
+
+                if (!prepare(record, sensorId)) {
+                    return Response.ok(record).build();
+                }
+
+                // Statistics, caches and alerts follow the batch writer, whose failures do not fail
+                // the write: a stored reading is never answered with 500. A retry that outlived the
+                // dedup window is a duplicate key, answered with 200.
+                boolean inserted = batchWriter.insertAll(List.of(record)) == 1;
+                stored(record, sensorId);
+                return Response.status(inserted ? Response.Status.CREATED : Response.Status.OK)
+                        .entity(record)
                         .build();
-            }
-            if (record.getType() == null || record.getType().isEmpty()) {
-                return Response.status(Response.Status.BAD_REQUEST)
-                        .entity(new ErrorResponse("type is required"))
+
+            } catch (Exception e) {
+                return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                        .entity(new ErrorResponse("Failed to submit health data: " + e.getMessage()))
                         .build();
             }
-            if (record.getValue() == null) {
-                return Response.status(Response.Status.BAD_REQUEST)
-                        .entity(new ErrorResponse("value is required"))
-                        .build();
+        });
+    }
+
+    /**
+     * Submit a batch of sensor data, e.g. from a gateway relaying bedside sensors
+     *
+     * POST /api/monitor/batch
+     * Roles: SENSOR, ADMIN
+     *
+     * Body: a JSON array of readings as accepted by POST /api/monitor, or one
+     * reading per line with Content-Type: application/x-ndjson. At most
+     * monitor.batch.max.size readings per request.
+     *
+     * Each reading is validated on its own and the valid ones are stored with
+     * a single unordered bulk insert. The response lists the outcome of every
+     * reading by position (CREATED, DUPLICATE or REJECTED with the error), so
+     * the gateway only resends what was rejected. Readings with a sequence
+     * number are idempotent as with POST /api/monitor.
+     *
+     * Response example:
+     * {
+     *   "created": 2, "duplicates": 0, "rejected": 1,
+     *   "items": [
+     *     { "index": 0, "status": "CREATED", "id": "health-record-..." },
+     *     { "index": 1, "status": "REJECTED", "error": "value is required" },
+     *     { "index": 2, "status": "CREATED", "id": "health-record-..." }
+     *   ]
+     * }
+     */
+    @POST
+    @Path("/batch")
+    @RolesAllowed({"SENSOR", "ADMIN"})
+    public CompletionStage<Response> submitHealthDataBatch(List<HealthRecord> records) {
+        if (records == null || records.isEmpty() || records.size() > maxBatchSize) {
+            return CompletableFuture.completedFuture(batchSizeError());
+        }
+        // Request-scoped: read before leaving the request thread
+        String sensorId = jwt.getSubject();
+        return execution.supplyAsync(() -> storeBatch(sensorId, records, new String[records.size()]));
+    }
+
+    @POST
+    @Path("/batch")
+    @Consumes(NDJSON)
+    @RolesAllowed({"SENSOR", "ADMIN"})
+    public CompletionStage<Response> submitHealthDataStream(InputStream body) {
+        String sensorId = jwt.getSubject();
+        // Read on the request thread; lines that do not parse are reported as rejected
+        List<HealthRecord> records = new ArrayList<>();
+        List<String> parseErrors = new ArrayList<>();
+        try (BufferedReader lines = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (records.size() == maxBatchSize) {
+                    return CompletableFuture.completedFuture(batchSizeError());
+                }
+                try {
+                    records.add(JSONB.fromJson(line, HealthRecord.class));
+                    parseErrors.add(null);
+                } catch (JsonbException e) {
+                    records.add(null);
+                    parseErrors.add("Invalid JSON: " + e.getMessage());
+                }
             }
+        } catch (IOException e) {
+            return CompletableFuture.completedFuture(Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ErrorResponse("Failed to read request body: " + e.getMessage()))
+                    .build());
+        }
+        if (records.isEmpty()) {
+            return CompletableFuture.completedFuture(batchSizeError());
+        }
+        return execution.supplyAsync(() -> storeBatch(sensorId, records, parseErrors.toArray(new String[0])));
+    }
 
-            // Generate ID and set metadata
-            if (record.getId() == null || record.getId().isEmpty()) {
-                record.setId("health-record-" + UUID.randomUUID().toString());
+    private Response batchSizeError() {
+        return Response.status(Response.Status.BAD_REQUEST)
+                .entity(new ErrorResponse("A batch holds between 1 and " + maxBatchSize + " readings"))
+                .build();
+    }
+
+    // Validates and stores the readings of a batch; errors[i] is set for readings already rejected
+    private Response storeBatch(String sensorId, List<HealthRecord> records, String[] errors) {
+        try {
+            BatchItem[] items = new BatchItem[records.size()];
+            List<HealthRecord> accepted = new ArrayList<>(records.size());
+            List<Integer> positions = new ArrayList<>(records.size());
+            for (int i = 0; i < records.size(); i++) {
+                HealthRecord record = records.get(i);
+                String error = errors[i] != null ? errors[i] : record == null ? "reading is required" : invalid(record);
+                if (error != null) {
+                    items[i] = new BatchItem(i, BatchItem.REJECTED, null, error);
+                } else if (!prepare(record, sensorId)) {
+                    items[i] = new BatchItem(i, BatchItem.DUPLICATE, record.getId(), null);
+                } else {
+                    accepted.add(record);
+                    positions.add(i);
+                }
             }
-            record.setTimestamp(LocalDateTime.now());
-            record.setSensorId(jwt.getSubject());
 
-            // Save to database
-            HealthRecord saved = template.insert(record);
+            // One unordered bulk insert; statistics and caches follow the batch writer
+            boolean[] inserted = batchWriter.insert(accepted);
+            for (HealthRecord record : accepted) {
+                stored(record, sensorId);
+            }
+            for (int k = 0; k < inserted.length; k++) {
+                int i = positions.get(k);
+                items[i] = new BatchItem(i, inserted[k] ? BatchItem.CREATED : BatchItem.DUPLICATE,
+                        accepted.get(k).getId(), null);
+            }
 
-            return Response.status(Response.Status.CREATED)
-                    .entity(saved)
-                    .build();
+            BatchResult result = new BatchResult();
+            for (BatchItem item : items) {
+                switch (item.status) {
+                    case BatchItem.CREATED -> result.created++;
+                    case BatchItem.DUPLICATE -> result.duplicates++;
+                    default -> result.rejected++;
+                }
+            }
+            result.items = List.of(items);
+            return Response.ok(result).build();
 
         } catch (Exception e) {
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
-                    .entity(new ErrorResponse("Failed to submit health data: " + e.getMessage()))
+                    .entity(new ErrorResponse("Failed to submit health data batch: " + e.getMessage()))
                     .build();
         }
     }
 
+    // Same rules for single and batched readings; returns the error or null
+    private static String invalid(HealthRecord record) {
+        if (record.getPatientId() == null || record.getPatientId().isEmpty()) {
+            return "patientId is required";
+        }
+        if (record.getType() == null || record.getType().isEmpty()) {
+            return "type is required";
+        }
+        if (record.getValue() == null) {
+            return "value is required";
+        }
+        return null;
+    }
+
     /**
-     * Get health history for a patient by type
+     * Sets id, timestamp and sensor of a reading about to be stored.
      *
-     * GET /api/monitor/{patientId}/{type}
+     * @return false if the sensor just stored a reading with the same sequence number and timestamp
+     */
+    private boolean prepare(HealthRecord record, String sensorId) {
+        Long sequence = record.getSequence();
+        if (sequence != null) {
+            if (record.getTimestamp() == null) {
+                record.setTimestamp(LocalDateTime.now());
+            }
+            long millis = ReadingDeduplicator.timestampMillis(record.getTimestamp());
+            record.setId(ReadingDeduplicator.readingId(sensorId, sequence, millis, 0));
+            if (deduplicator.seen(sensorId, sequence, millis)) {
+                deduplicator.dropped(1);
+                return false;
+            }
+        } else {
+            if (record.getId() == null || record.getId().isEmpty()) {
+                record.setId("health-record-" + UUID.randomUUID().toString());
+            }
+            record.setTimestamp(LocalDateTime.now());
+        }
+        record.setSensorId(sensorId);
+        return true;
+    }
+
+    // Remembers a stored reading's sequence, once the write went through; MongoDB catches concurrent retries
+    private void stored(HealthRecord record, String sensorId) {
+        if (record.getSequence() != null && record.getTimestamp() != null) {
+            deduplicator.firstSeen(sensorId, record.getSequence(),
+                    ReadingDeduplicator.timestampMillis(record.getTimestamp()));
+        }
+    }
+
+    /**
+     * Get health history for a patient by type, newest first
+     *
+     * GET /api/monitor/{patientId}/{type}?limit=100&cursor=...
      * Roles: DOCTOR, FAMILY
      *
+     * The X-Next-Cursor response header holds the cursor of the next page
+     * (absent on the last one). skip is still accepted for offset paging
+     * but cannot be combined with a cursor. With archive.enabled, readings
+     * moved to the compressed archive follow the stored ones.
+     *
+     * With from, to, bucket or points, returns chart points in time order
+     * instead (paging parameters are then ignored):
+     * - GET /api/monitor/{patientId}/{type}?from=2025-03-01T00:00:00&to=2025-03-02T00:00:00&bucket=5m
+     *   min/avg/max/count/last of each 5 minute bucket, aggregated in MongoDB
+     * - GET /api/monitor/{patientId}/{type}?from=...&to=...&points=500
+     *   500 raw readings picked by LTTB downsampling, keeping peaks visible
+     *   With a retention policy, buckets past the raw readings' horizon come
+     *   from the rollups, while points start at the horizon: the X-Series-From
+     *   header then holds the start actually used.
+     * from defaults to 24 hours before to, to to now, and without bucket or
+     * points the bucket is sized for about 500 points.
+     *
      * Example: GET /api/monitor/patient-profile-001/HEART_RATE
      */
     @GET
     @Path("/{patientId}/{type}")
     @RolesAllowed({"DOCTOR", "FAMILY", "ADMIN"})
-    public Response getHealthHistory(
+    public CompletionStage<Response> getHealthHistory(
             @PathParam("patientId") String patientId,
             @PathParam("type") String type,
-            @QueryParam("limit") @DefaultValue("100") int limit) {
-
-        try {
-            List<HealthRecord> result = template.select(HealthRecord.class)
-                    .where("patientId").eq(patientId)
-                    .and("type").eq(type)
-                    .result();
-
-            List<HealthRecord> records = result.stream()
-                    .sorted(Comparator.comparing(HealthRecord::getTimestamp).reversed())
-                    .limit(limit)
-                    .collect(Collectors.toList());
+            @QueryParam("limit") @DefaultValue("100") int limit,
+            @QueryParam("skip") @DefaultValue("0") int skip,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("from") String from,
+            @QueryParam("to") String to,
+            @QueryParam("bucket") String bucket,
+            @QueryParam("points") Integer points) {
+        if (SeriesQuery.requested(from, to, bucket, points)) {
+            return getSeries(patientId, type, from, to, bucket, points);
+        }
+        String invalid = KeysetPage.validate(limit, skip, cursor);
+        if (invalid != null) {
+            return CompletableFuture.completedFuture(Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ErrorResponse(invalid))
+                    .build());
+        }
+        return execution.supplyAsync(() -> {
+
+            try {
+                if (buckets.isEnabled() || archive.isEnabled()) {
+                    return newestPage(patientId, type, cursor, skip, limit);
+                }
+                // Served by the (patientId, type, timestamp desc, _id desc) index: reads only the returned page
+                if (skip > 0) {
+                    List<HealthRecord> records = template.select(HealthRecord.class)
+                            .where("patientId").eq(patientId)
+                            .and("type").eq(type)
+                            .orderBy("timestamp").desc()
+                            .orderBy("id").desc()
+                            .skip(skip)
+                            .limit(limit)
+                            .result();
+                    return Response.ok(records).build();
+                }
+                return KeysetPage.fetch(() -> template.select(HealthRecord.class)
+                                .where("patientId").eq(patientId)
+                                .and("type").eq(type),
+                        cursor, limit, HealthRecord::getTimestamp, HealthRecord::getId).toResponse();
+
+            } catch (Exception e) {
+                return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                        .entity(new ErrorResponse("Failed to retrieve health history: " + e.getMessage()))
+                        .build();
+            }
+        });
+    }
 
-            return Response.ok(records).build();
+    // Reads skip + limit + 1 readings past the cursor, of one type or all of them (type null): unpacked from
+    // the newest hourly buckets with the bucketed layout, then continued into the archive once stored
+    // readings run out
+    private Response newestPage(String patientId, String type, String cursor, int skip, int limit) {
+        KeysetPage.Cursor after = cursor == null || cursor.isEmpty() ? null : KeysetPage.Cursor.decode(cursor);
+        int wanted = skip + limit + 1;
+        List<HealthRecord> newest = new ArrayList<>(buckets.isEnabled()
+                ? buckets.newest(patientId, type,
+                        after == null ? null : after.timestamp(), after == null ? null : after.id(), wanted)
+                : KeysetPage.<HealthRecord>read(() -> type == null
+                        ? template.select(HealthRecord.class)
+                                .where("patientId").eq(patientId)
+                        : template.select(HealthRecord.class)
+                                .where("patientId").eq(patientId)
+                                .and("type").eq(type), cursor, wanted));
+        if (newest.size() < wanted && archive.isEnabled()) {
+            HealthRecord oldest = newest.isEmpty() ? null : newest.get(newest.size() - 1);
+            LocalDateTime beforeTs = oldest != null ? oldest.getTimestamp() : after == null ? null : after.timestamp();
+            String beforeId = oldest != null ? oldest.getId() : after == null ? null : after.id();
+            newest.addAll(archive.newest(patientId, type, beforeTs, beforeId, wanted - newest.size()));
+        }
+        return KeysetPage.of(newest.subList(Math.min(skip, newest.size()), newest.size()), limit,
+                HealthRecord::getTimestamp, HealthRecord::getId).toResponse();
+    }
 
-        } catch (Exception e) {
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
-                    .entity(new ErrorResponse("Failed to retrieve health history: " + e.getMessage()))
-                    .build();
+    private CompletionStage<Response> getSeries(String patientId, String type, String from, String to,
+                                                String bucket, Integer points) {
+        SeriesQuery query;
+        try {
+            query = SeriesQuery.parse(from, to, bucket, points);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ErrorResponse(e.getMessage()))
+                    .build());
         }
+        return execution.supplyAsync(() -> {
+
+            try {
+                if (query.bucket() != null) {
+                    List<ChartBucket> buckets = series.buckets(patientId, type, query.from(), query.to(),
+                                    query.bucket()).stream()
+                            .map(ChartBucket::new)
+                            .toList();
+                    return Response.ok(buckets).build();
+                }
+
+                // Raw readings past the retention horizon are purged: clip the range and say so
+                LocalDateTime start = series.rawStart(type, query.from());
+                if (!start.isBefore(query.to())) {
+                    return Response.status(Response.Status.BAD_REQUEST)
+                            .entity(new ErrorResponse("Raw readings before " + start
+                                    + " are no longer kept, use bucket instead of points"))
+                            .build();
+                }
+                HealthRecordSeries.Samples samples = series.samples(patientId, type, start, query.to(),
+                        MAX_DOWNSAMPLED_READINGS);
+                if (samples == null) {
+                    return Response.status(Response.Status.BAD_REQUEST)
+                            .entity(new ErrorResponse("More than " + MAX_DOWNSAMPLED_READINGS
+                                    + " readings in range, use bucket instead of points"))
+                            .build();
+                }
+                int[] selected = SeriesDownsampler.lttb(samples.epochMillis(), samples.values(), query.points());
+                List<ChartPoint> chart = new ArrayList<>(selected.length);
+                for (int i : selected) {
+                    chart.add(new ChartPoint(samples.epochMillis()[i], samples.values()[i]));
+                }
+                Response.ResponseBuilder response = Response.ok(chart);
+                if (start.isAfter(query.from())) {
+                    response.header(SeriesQuery.SERIES_FROM_HEADER, start.toString());
+                }
+                return response.build();
+
+            } catch (Exception e) {
+                return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                        .entity(new ErrorResponse("Failed to retrieve health series: " + e.getMessage()))
+                        .build();
+            }
+        });
     }
 
     /**
-     * Get all health data for a patient
+     * Get all health data for a patient, newest first
      *
-     * GET /api/monitor/{patientId}
+     * GET /api/monitor/{patientId}?limit=100&cursor=...
      * Roles: DOCTOR, FAMILY, ADMIN
+     *
+     * Paginated like the history by type (X-Next-Cursor header). With
+     * archive.enabled, readings moved to the compressed archive follow the
+     * stored ones.
      */
     @GET
     @Path("/{patientId}")
     @RolesAllowed({"DOCTOR", "FAMILY", "ADMIN"})
-    public Response getAllHealthData(
+    public CompletionStage<Response> getAllHealthData(
             @PathParam("patientId") String patientId,
-            @QueryParam("limit") @DefaultValue("100") int limit) {
-
-        try {
-            List<HealthRecord> result = template.select(HealthRecord.class)
-                    .where("patientId").eq(patientId)
-                    .result();
-
-            List<HealthRecord> records = result.stream()
-                    .sorted(Comparator.comparing(HealthRecord::getTimestamp).reversed())
-                    .limit(limit)
-                    .collect(Collectors.toList());
-
-            return Response.ok(records).build();
-
-        } catch (Exception e) {
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
-                    .entity(new ErrorResponse("Failed to retrieve health data: " + e.getMessage()))
-                    .build();
+            @QueryParam("limit") @DefaultValue("100") int limit,
+            @QueryParam("skip") @DefaultValue("0") int skip,
+            @QueryParam("cursor") String cursor) {
+        String invalid = KeysetPage.validate(limit, skip, cursor);
+        if (invalid != null) {
+            return CompletableFuture.completedFuture(Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ErrorResponse(invalid))
+                    .build());
         }
+        return execution.supplyAsync(() -> {
+
+            try {
+                if (buckets.isEnabled() || archive.isEnabled()) {
+                    return newestPage(patientId, null, cursor, skip, limit);
+                }
+                // Served by the (patientId, timestamp desc, _id desc) index
+                if (skip > 0) {
+                    List<HealthRecord> records = template.select(HealthRecord.class)
+                            .where("patientId").eq(patientId)
+                            .orderBy("timestamp").desc()
+                            .orderBy("id").desc()
+                            .skip(skip)
+                            .limit(limit)
+                            .result();
+                    return Response.ok(records).build();
+                }
+                return KeysetPage.fetch(() -> template.select(HealthRecord.class)
+                                .where("patientId").eq(patientId),
+                        cursor, limit, HealthRecord::getTimestamp, HealthRecord::getId).toResponse();
+
+            } catch (Exception e) {
+                return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                        .entity(new ErrorResponse("Failed to retrieve health data: " + e.getMessage()))
+                        .build();
+            }
+        });
     }
 
     /**
@@ -164,97 +573,240 @@ public class MonitoringResource {
      *
      * GET /api/monitor/{patientId}/{type}/latest
      * Roles: DOCTOR, FAMILY, PATIENT, ADMIN
+     *
+     * Served from the in-memory latest-reading cache; MongoDB is read only
+     * on a miss.
      */
     @GET
     @Path("/{patientId}/{type}/latest")
     @RolesAllowed({"DOCTOR", "FAMILY", "PATIENT", "ADMIN"})
-    public Response getLatestReading(
+    public CompletionStage<Response> getLatestReading(
             @PathParam("patientId") String patientId,
             @PathParam("type") String type) {
+        return execution.supplyAsync(() -> {
 
-        try {
-            List<HealthRecord> result = template.select(HealthRecord.class)
-                    .where("patientId").eq(patientId)
-                    .and("type").eq(type)
-                    .result();
-
-            List<HealthRecord> records = result.stream()
-                    .sorted(Comparator.comparing(HealthRecord::getTimestamp).reversed())
-                    .limit(1)
-                    .collect(Collectors.toList());
-
-            if (records.isEmpty()) {
-                return Response.status(Response.Status.NOT_FOUND)
-                        .entity(new ErrorResponse("No readings found"))
+            try {
+                Optional<HealthRecord> latest = latestReadings.latest(patientId, type);
+
+                if (latest.isEmpty()) {
+                    return Response.status(Response.Status.NOT_FOUND)
+                            .entity(new ErrorResponse("No readings found"))
+                            .build();
+                }
+
+                return Response.ok(latest.get()).build();
+
+            } catch (Exception e) {
+                return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                        .entity(new ErrorResponse("Failed to retrieve latest reading: " + e.getMessage()))
                         .build();
             }
+        });
+    }
 
-            return Response.ok(records.get(0)).build();
+    /**
+     * Get the latest reading of every vital of a patient
+     *
+     * GET /api/monitor/{patientId}/latest
+     * Roles: DOCTOR, FAMILY, PATIENT, ADMIN
+     *
+     * One call for the whole dashboard instead of one per vital: an object
+     * keyed by sensor type, types without any reading being left out.
+     */
+    @GET
+    @Path("/{patientId}/latest")
+    @RolesAllowed({"DOCTOR", "FAMILY", "PATIENT", "ADMIN"})
+    public CompletionStage<Response> getLatestReadings(@PathParam("patientId") String patientId) {
+        return execution.supplyAsync(() -> {
+
+            try {
+                Map<String, HealthRecord> latest = new LinkedHashMap<>();
+                for (SensorType type : SensorType.values()) {
+                    latestReadings.latest(patientId, type.name())
+                            .ifPresent(record -> latest.put(type.name(), record));
+                }
+                return Response.ok(latest).build();
+
+            } catch (Exception e) {
+                return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                        .entity(new ErrorResponse("Failed to retrieve latest readings: " + e.getMessage()))
+                        .build();
+            }
+        });
+    }
 
-        } catch (Exception e) {
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
-                    .entity(new ErrorResponse("Failed to retrieve latest reading: " + e.getMessage()))
-                    .build();
-        }
+    /**
+     * Stream the readings of a patient as they are stored
+     *
+     * GET /api/monitor/{patientId}/stream
+     * Roles: DOCTOR, FAMILY, PATIENT, ADMIN
+     *
+     * Server-Sent Events: one "reading" event per stored reading, the
+     * HealthRecord as JSON data, starting with the latest reading of every
+     * vital. One connection instead of polling the latest readings; a client
+     * that falls behind loses the oldest readings, not the connection.
+     */
+    @GET
+    @Path("/{patientId}/stream")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    @RolesAllowed({"DOCTOR", "FAMILY", "PATIENT", "ADMIN"})
+    public void streamHealthData(
+            @PathParam("patientId") String patientId,
+            @Context SseEventSink sink,
+            @Context Sse sse) {
+        liveFeed.readings(patientId, () -> execution.withPermit(() -> {
+            List<HealthRecord> records = new ArrayList<>();
+            for (SensorType type : SensorType.values()) {
+                latestReadings.latest(patientId, type.name()).ifPresent(records::add);
+            }
+            return records;
+        }), new SseSink(sink, sse));
     }
 
     /**
      * Get statistics for a health metric
      *
-     * GET /api/monitor/{patientId}/{type}/stats
+     * GET /api/monitor/{patientId}/{type}/stats?window=24h|7d|30d|all
      * Roles: DOCTOR, FAMILY, ADMIN
+     *
+     * Answered from running aggregates kept up to date on every insert, not
+     * from the readings: the cost does not depend on the history length.
+     * Windows start on an hour (24h) or UTC day (7d, 30d) boundary.
      */
     @GET
     @Path("/{patientId}/{type}/stats")
     @RolesAllowed({"DOCTOR", "FAMILY", "ADMIN"})
-    public Response getStatistics(
+    public CompletionStage<Response> getStatistics(
             @PathParam("patientId") String patientId,
-            @PathParam("type") String type) {
+            @PathParam("type") String type,
+            @QueryParam("window") @DefaultValue("all") String window) {
+        Optional<HealthStatsStore.Window> span = HealthStatsStore.Window.parse(window);
+        if (span.isEmpty()) {
+            return CompletableFuture.completedFuture(Response.status(Response.Status.BAD_REQUEST)
+                    .entity(new ErrorResponse("window must be one of 24h, 7d, 30d, all"))
+                    .build());
+        }
+        return execution.supplyAsync(() -> {
+
+            try {
+                Optional<HealthStatsStore.Summary> summary = stats.summary(patientId, type, span.get(),
+                        HealthRecordDocuments.nowMillis());
+
+                if (summary.isEmpty()) {
+                    return Response.status(Response.Status.NOT_FOUND)
+                            .entity(new ErrorResponse("No data available for statistics"))
+                            .build();
+                }
+
+                HealthStatsStore.Summary values = summary.get();
+                HealthStats result = new HealthStats(
+                        type,
+                        values.count(),
+                        values.average(),
+                        values.min(),
+                        values.max(),
+                        values.unit()
+                );
+                result.setWindow(span.get().label());
+
+                return Response.ok(result).build();
+
+            } catch (Exception e) {
+                return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                        .entity(new ErrorResponse("Failed to calculate statistics: " + e.getMessage()))
+                        .build();
+            }
+        });
+    }
 
+    /**
+     * Export the history of a patient
+     *
+     * GET /api/monitor/{patientId}/export?from=2025-01-01T00:00:00&to=2025-04-01T00:00:00&type=HEART_RATE
+     * Roles: DOCTOR, FAMILY, ADMIN
+     *
+     * Streams the readings in the range as NDJSON, one reading per line,
+     * read from MongoDB while the response is written: months of data are
+     * never held in memory. Without type every type of the patient follows
+     * the other, each oldest first. from defaults to the first reading and
+     * to to now. The response is gzip-compressed when the client sends
+     * Accept-Encoding: gzip. A failure midway aborts the response, so a
+     * client can tell a truncated export from a complete one.
+     */
+    @GET
+    @Path("/{patientId}/export")
+    @Produces({NDJSON, MediaType.APPLICATION_JSON})
+    @RolesAllowed({"DOCTOR", "FAMILY", "ADMIN"})
+    public Response exportHealthData(
+            @PathParam("patientId") String patientId,
+            @QueryParam("type") String type,
+            @QueryParam("from") String from,
+            @QueryParam("to") String to,
+            @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding) {
+        LocalDateTime start;
+        LocalDateTime end;
         try {
-            List<HealthRecord> records = template.select(HealthRecord.class)
-                    .where("patientId").eq(patientId)
-                    .and("type").eq(type)
-                    .result();
-
-            if (records.isEmpty()) {
-                return Response.status(Response.Status.NOT_FOUND)
-                        .entity(new ErrorResponse("No data available for statistics"))
-                        .build();
+            end = to == null ? LocalDateTime.now() : SeriesQuery.time("to", to);
+            start = from == null ? EXPORT_START : SeriesQuery.time("from", from);
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .type(MediaType.APPLICATION_JSON)
+                    .entity(new ErrorResponse(e.getMessage()))
+                    .build();
+        }
+        if (!start.isBefore(end)) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .type(MediaType.APPLICATION_JSON)
+                    .entity(new ErrorResponse("from must be before to"))
+                    .build();
+        }
+        boolean gzip = acceptsGzip(acceptEncoding);
+
+        StreamingOutput body = output -> {
+            OutputStream stream = gzip ? new GZIPOutputStream(output, EXPORT_BUFFER_BYTES) : output;
+            Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8),
+                    EXPORT_BUFFER_BYTES);
+            try {
+                // One MongoDB cursor open for the whole export: counts as one operation
+                execution.withPermit(() -> {
+                    try {
+                        return export.export(patientId, type, start, end, record -> {
+                            writer.write(JSONB.toJson(record));
+                            writer.write('\n');
+                        });
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writer.flush();
+            if (gzip) {
+                ((GZIPOutputStream) stream).finish();
             }
+        };
 
-            // Calculate statistics
-            double avg = records.stream()
-                    .mapToDouble(HealthRecord::getValue)
-                    .average()
-                    .orElse(0.0);
-
-            double min = records.stream()
-                    .mapToDouble(HealthRecord::getValue)
-                    .min()
-                    .orElse(0.0);
-
-            double max = records.stream()
-                    .mapToDouble(HealthRecord::getValue)
-                    .max()
-                    .orElse(0.0);
-
-            HealthStats stats = new HealthStats(
-                    type,
-                    records.size(),
-                    avg,
-                    min,
-                    max,
-                    records.get(0).getUnit()
-            );
-
-            return Response.ok(stats).build();
+        Response.ResponseBuilder response = Response.ok(body, NDJSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.build();
+    }
 
-        } catch (Exception e) {
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
-                    .entity(new ErrorResponse("Failed to calculate statistics: " + e.getMessage()))
-                    .build();
+    // gzip listed without q=0
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
         }
+        return false;
     }
 
     // DTOs
@@ -274,9 +826,112 @@ public class MonitoringResource {
         }
     }
 
+    public static class BatchResult {
+        public int created;
+        public int duplicates;
+        public int rejected;
+        public List<BatchItem> items;
+
+        public BatchResult() {}
+
+        // Getters and setters
+        public int getCreated() { return created; }
+        public void setCreated(int created) { this.created = created; }
+        public int getDuplicates() { return duplicates; }
+        public void setDuplicates(int duplicates) { this.duplicates = duplicates; }
+        public int getRejected() { return rejected; }
+        public void setRejected(int rejected) { this.rejected = rejected; }
+        public List<BatchItem> getItems() { return items; }
+        public void setItems(List<BatchItem> items) { this.items = items; }
+    }
+
+    public static class BatchItem {
+        public static final String CREATED = "CREATED";
+        public static final String DUPLICATE = "DUPLICATE";
+        public static final String REJECTED = "REJECTED";
+
+        public int index;
+        public String status;
+        public String id;
+        public String error;
+
+        public BatchItem() {}
+
+        public BatchItem(int index, String status, String id, String error) {
+            this.index = index;
+            this.status = status;
+            this.id = id;
+            this.error = error;
+        }
+
+        // Getters and setters
+        public int getIndex() { return index; }
+        public void setIndex(int index) { this.index = index; }
+        public String getStatus() { return status; }
+        public void setStatus(String status) { this.status = status; }
+        public String getId() { return id; }
+        public void setId(String id) { this.id = id; }
+        public String getError() { return error; }
+        public void setError(String error) { this.error = error; }
+    }
+
+    public static class ChartBucket {
+        public LocalDateTime timestamp;
+        public double min;
+        public double avg;
+        public double max;
+        public long count;
+        public double last;
+
+        public ChartBucket() {}
+
+        public ChartBucket(HealthRecordSeries.Bucket bucket) {
+            this.timestamp = bucket.start();
+            this.min = bucket.min();
+            this.avg = bucket.avg();
+            this.max = bucket.max();
+            this.count = bucket.count();
+            this.last = bucket.last();
+        }
+
+        // Getters and setters
+        public LocalDateTime getTimestamp() { return timestamp; }
+        public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
+        public double getMin() { return min; }
+        public void setMin(double min) { this.min = min; }
+        public double getAvg() { return avg; }
+        public void setAvg(double avg) { this.avg = avg; }
+        public double getMax() { return max; }
+        public void setMax(double max) { this.max = max; }
+        public long getCount() { return count; }
+        public void setCount(long count) { this.count = count; }
+        public double getLast() { return last; }
+        public void setLast(double last) { this.last = last; }
+    }
+
+    public static class ChartPoint {
+        public LocalDateTime timestamp;
+        public double value;
+
+        public ChartPoint() {}
+
+        public ChartPoint(long epochMillis, double value) {
+            // Stored timestamps are UTC dates, as in HealthRecordSeries
+            this.timestamp = LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC);
+            this.value = value;
+        }
+
+        // Getters and setters
+        public LocalDateTime getTimestamp() { return timestamp; }
+        public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
+        public double getValue() { return value; }
+        public void setValue(double value) { this.value = value; }
+    }
+
     public static class HealthStats {
         public String type;
-        public int count;
+        public String window;
+        public long count;
         public double average;
         public double min;
         public double max;
@@ -284,7 +939,7 @@ public class MonitoringResource {
 
         public HealthStats() {}
 
-        public HealthStats(String type, int count, double average, double min, double max, String unit) {
+        public HealthStats(String type, long count, double average, double min, double max, String unit) {
             this.type = type;
             this.count = count;
             this.average = average;
@@ -296,8 +951,10 @@ public class MonitoringResource {
         // Getters and setters
         public String getType() { return type; }
         public void setType(String type) { this.type = type; }
-        public int getCount() { return count; }
-        public void setCount(int count) { this.count = count; }
+        public String getWindow() { return window; }
+        public void setWindow(String window) { this.window = window; }
+        public long getCount() { return count; }
+        public void setCount(long count) { this.count = count; }
         public double getAverage() { return average; }
         public void setAverage(double average) { this.average = average; }
         public double getMin() { return min; }
@@ -0,0 +1,41 @@
+package tn.supcom.cot.api.boundaries;
+
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.ExceptionMapper;
+import jakarta.ws.rs.ext.Provider;
+import tn.supcom.cot.api.controllers.OverloadedException;
+
+/**
+ * Answers calls shed by the MongoDB operation limit with 503, so clients
+ * back off instead of piling up on the server.
+ */
+@Provider
+public class OverloadedExceptionMapper implements ExceptionMapper<OverloadedException> {
+
+    @Override
+    public Response toResponse(OverloadedException exception) {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header("Retry-After", exception.getRetryAfterSeconds())
+                .type(MediaType.APPLICATION_JSON)
+                .entity(new ErrorResponse(exception.getMessage()))
+                .build();
+    }
+
+    // Error response DTO
+    public static class ErrorResponse {
+        public String error;
+
+        public ErrorResponse(String error) {
+            this.error = error;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public void setError(String error) {
+            this.error = error;
+        }
+    }
+}
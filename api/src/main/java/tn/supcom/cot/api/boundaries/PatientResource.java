@@ -9,12 +9,14 @@ import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.SecurityContext;
 import org.eclipse.microprofile.jwt.JsonWebToken;
+import tn.supcom.cot.api.controllers.ExecutionModel;
 import tn.supcom.cot.api.entities.Patient;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletionStage;
 
 /**
  * Patient Resource
@@ -31,6 +33,9 @@ public class PatientResource {
     @Inject
     private DocumentTemplate template;
 
+    @Inject
+    private ExecutionModel execution;
+
     @Inject
     private JsonWebToken jwt;
 
@@ -76,29 +81,31 @@ public class PatientResource {
     @GET
     @Path("/me")
     @RolesAllowed({"PATIENT", "FAMILY"})
-    public Response getMyProfile(@Context SecurityContext securityContext) {
-        try {
-            String identityId = jwt.getSubject();
-
-            // Find patient by identityId
-            Optional<Patient> patient = template.select(Patient.class)
-                    .where("identityId")
-                    .eq(identityId)
-                    .singleResult();
-
-            if (patient.isPresent()) {
-                return Response.ok(patient.get()).build();
-            } else {
-                return Response.status(Response.Status.NOT_FOUND)
-                        .entity(new ErrorResponse("Patient profile not found"))
+    public CompletionStage<Response> getMyProfile(@Context SecurityContext securityContext) {
+        // Request-scoped: read before leaving the request thread
+        String identityId = jwt.getSubject();
+        return execution.supplyAsync(() -> {
+            try {
+                // Find patient by identityId
+                Optional<Patient> patient = template.select(Patient.class)
+                        .where("identityId")
+                        .eq(identityId)
+                        .singleResult();
+
+                if (patient.isPresent()) {
+                    return Response.ok(patient.get()).build();
+                } else {
+                    return Response.status(Response.Status.NOT_FOUND)
+                            .entity(new ErrorResponse("Patient profile not found"))
+                            .build();
+                }
+
+            } catch (Exception e) {
+                return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                        .entity(new ErrorResponse("Failed to retrieve profile: " + e.getMessage()))
                         .build();
             }
-
-        } catch (Exception e) {
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
-                    .entity(new ErrorResponse("Failed to retrieve profile: " + e.getMessage()))
-                    .build();
-        }
+        });
     }
 
     /**
@@ -110,23 +117,25 @@ public class PatientResource {
     @GET
     @Path("/{id}")
     @RolesAllowed({"DOCTOR", "FAMILY", "ADMIN"})
-    public Response getPatient(@PathParam("id") String id) {
-        try {
-            Optional<Patient> patient = template.find(Patient.class, id);
-
-            if (patient.isPresent()) {
-                return Response.ok(patient.get()).build();
-            } else {
-                return Response.status(Response.Status.NOT_FOUND)
-                        .entity(new ErrorResponse("Patient not found"))
+    public CompletionStage<Response> getPatient(@PathParam("id") String id) {
+        return execution.supplyAsync(() -> {
+            try {
+                Optional<Patient> patient = template.find(Patient.class, id);
+
+                if (patient.isPresent()) {
+                    return Response.ok(patient.get()).build();
+                } else {
+                    return Response.status(Response.Status.NOT_FOUND)
+                            .entity(new ErrorResponse("Patient not found"))
+                            .build();
+                }
+
+            } catch (Exception e) {
+                return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                        .entity(new ErrorResponse("Failed to retrieve patient: " + e.getMessage()))
                         .build();
             }
-
-        } catch (Exception e) {
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
-                    .entity(new ErrorResponse("Failed to retrieve patient: " + e.getMessage()))
-                    .build();
-        }
+        });
     }
 
     /**
@@ -137,17 +146,19 @@ public class PatientResource {
      */
     @GET
     @RolesAllowed({"DOCTOR", "ADMIN"})
-    public Response getAllPatients() {
-        try {
-            List<Patient> patients = template.select(Patient.class).result();
+    public CompletionStage<Response> getAllPatients() {
+        return execution.supplyAsync(() -> {
+            try {
+                List<Patient> patients = template.select(Patient.class).result();
 
-            return Response.ok(patients).build();
+                return Response.ok(patients).build();
 
-        } catch (Exception e) {
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
-                    .entity(new ErrorResponse("Failed to retrieve patients: " + e.getMessage()))
-                    .build();
-        }
+            } catch (Exception e) {
+                return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                        .entity(new ErrorResponse("Failed to retrieve patients: " + e.getMessage()))
+                        .build();
+            }
+        });
     }
 
     /**
@@ -0,0 +1,197 @@
+package tn.supcom.cot.api.boundaries;
+
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.inject.Inject;
+import jakarta.nosql.document.DocumentTemplate;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import tn.supcom.cot.api.controllers.ExecutionModel;
+import tn.supcom.cot.api.controllers.SensorRegistry;
+import tn.supcom.cot.api.entities.Sensor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Sensor Resource
+ *
+ * REST endpoints for registering devices and assigning them to patients.
+ * Every change invalidates the device in the local sensor registry cache.
+ *
+ * Base URL: /api/sensors
+ */
+@Path("/sensors")
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+public class SensorResource {
+
+    @Inject
+    private DocumentTemplate template;
+
+    @Inject
+    private ExecutionModel execution;
+
+    @Inject
+    private SensorRegistry sensorRegistry;
+
+    /**
+     * Register a device
+     *
+     * POST /api/sensors
+     * Roles: ADMIN
+     */
+    @POST
+    @RolesAllowed({"ADMIN"})
+    public Response registerSensor(Sensor sensor) {
+        try {
+            if (sensor.getDeviceId() == null || sensor.getDeviceId().isBlank()) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity(new ErrorResponse("deviceId is required"))
+                        .build();
+            }
+
+            Optional<Sensor> existing = template.select(Sensor.class)
+                    .where("deviceId")
+                    .eq(sensor.getDeviceId())
+                    .singleResult();
+            if (existing.isPresent()) {
+                return Response.status(Response.Status.CONFLICT)
+                        .entity(new ErrorResponse("Device already registered: " + sensor.getDeviceId()))
+                        .build();
+            }
+
+            if (sensor.getId() == null || sensor.getId().isEmpty()) {
+                sensor.setId("sensor-" + UUID.randomUUID().toString());
+            }
+            sensor.setCreatedAt(LocalDateTime.now());
+
+            Sensor saved = template.insert(sensor);
+            // Drops a cached "unknown device" entry
+            sensorRegistry.invalidate(saved.getDeviceId());
+
+            return Response.status(Response.Status.CREATED)
+                    .entity(saved)
+                    .build();
+
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse("Failed to register sensor: " + e.getMessage()))
+                    .build();
+        }
+    }
+
+    /**
+     * Get all registered devices
+     *
+     * GET /api/sensors
+     * Roles: ADMIN, DOCTOR
+     */
+    @GET
+    @RolesAllowed({"ADMIN", "DOCTOR"})
+    public CompletionStage<Response> getAllSensors() {
+        return execution.supplyAsync(() -> {
+            try {
+                List<Sensor> sensors = template.select(Sensor.class).result();
+
+                return Response.ok(sensors).build();
+
+            } catch (Exception e) {
+                return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                        .entity(new ErrorResponse("Failed to retrieve sensors: " + e.getMessage()))
+                        .build();
+            }
+        });
+    }
+
+    /**
+     * Update a device (e.g. reassign it to another patient)
+     *
+     * PUT /api/sensors/{id}
+     * Roles: ADMIN
+     */
+    @PUT
+    @Path("/{id}")
+    @RolesAllowed({"ADMIN"})
+    public Response updateSensor(@PathParam("id") String id, Sensor updatedSensor) {
+        try {
+            Optional<Sensor> existing = template.find(Sensor.class, id);
+
+            if (existing.isEmpty()) {
+                return Response.status(Response.Status.NOT_FOUND)
+                        .entity(new ErrorResponse("Sensor not found"))
+                        .build();
+            }
+
+            Sensor sensor = existing.get();
+            String previousDeviceId = sensor.getDeviceId();
+
+            // Update fields
+            if (updatedSensor.getDeviceId() != null) {
+                sensor.setDeviceId(updatedSensor.getDeviceId());
+            }
+            if (updatedSensor.getPatientId() != null) {
+                sensor.setPatientId(updatedSensor.getPatientId());
+            }
+            if (updatedSensor.getStatus() != null) {
+                sensor.setStatus(updatedSensor.getStatus());
+            }
+
+            Sensor saved = template.update(sensor);
+            sensorRegistry.invalidate(previousDeviceId);
+            sensorRegistry.invalidate(saved.getDeviceId());
+
+            return Response.ok(saved).build();
+
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse("Failed to update sensor: " + e.getMessage()))
+                    .build();
+        }
+    }
+
+    /**
+     * Remove a device
+     *
+     * DELETE /api/sensors/{id}
+     * Roles: ADMIN
+     */
+    @DELETE
+    @Path("/{id}")
+    @RolesAllowed({"ADMIN"})
+    public Response deleteSensor(@PathParam("id") String id) {
+        try {
+            Optional<Sensor> existing = template.find(Sensor.class, id);
+
+            template.delete(Sensor.class, id);
+            existing.ifPresent(sensor -> sensorRegistry.invalidate(sensor.getDeviceId()));
+
+            return Response.noContent().build();
+
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse("Failed to delete sensor: " + e.getMessage()))
+                    .build();
+        }
+    }
+
+    // Error response DTO
+    public static class ErrorResponse {
+        public String error;
+
+        public ErrorResponse(String error) {
+            this.error = error;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public void setError(String error) {
+            this.error = error;
+        }
+    }
+}
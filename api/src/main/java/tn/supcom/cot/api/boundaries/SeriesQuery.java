@@ -0,0 +1,95 @@
+package tn.supcom.cot.api.boundaries;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Chart parameters of a history request: a time range, and either a bucket
+ * width for min/avg/max/count/last aggregates or a number of points for
+ * LTTB downsampling of the raw readings.
+ *
+ * Without either, the bucket is sized to give about {@link #DEFAULT_POINTS}
+ * points over the range.
+ */
+record SeriesQuery(LocalDateTime from, LocalDateTime to, Duration bucket, int points) {
+
+    static final int DEFAULT_POINTS = 500;
+    static final int MAX_POINTS = 10_000;
+    static final Duration DEFAULT_RANGE = Duration.ofHours(24);
+
+    // Start of a downsampled series clipped to the raw retention horizon
+    static final String SERIES_FROM_HEADER = "X-Series-From";
+
+    private static final Pattern BUCKET = Pattern.compile("(\\d{1,6})([smhd])");
+
+    /**
+     * @return true if any chart parameter is present
+     */
+    static boolean requested(String from, String to, String bucket, Integer points) {
+        return from != null || to != null || bucket != null || points != null;
+    }
+
+    /**
+     * @param from   ISO-8601 local date-time, defaults to 24 hours before to
+     * @param to     ISO-8601 local date-time (exclusive), defaults to now
+     * @param bucket width such as 30s, 1m, 5m, 1h or 1d
+     * @param points LTTB target point count
+     * @throws IllegalArgumentException with a message for the client
+     */
+    static SeriesQuery parse(String from, String to, String bucket, Integer points) {
+        LocalDateTime end = to == null ? LocalDateTime.now() : time("to", to);
+        LocalDateTime start = from == null ? end.minus(DEFAULT_RANGE) : time("from", from);
+        if (!start.isBefore(end)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+        if (bucket != null && points != null) {
+            throw new IllegalArgumentException("bucket and points cannot be combined");
+        }
+        Duration range = Duration.between(start, end);
+
+        if (points != null) {
+            if (points < 3 || points > MAX_POINTS) {
+                throw new IllegalArgumentException("points must be between 3 and " + MAX_POINTS);
+            }
+            return new SeriesQuery(start, end, null, points);
+        }
+
+        Duration width;
+        if (bucket == null) {
+            // Whole seconds, rounded up so the bucket count stays within DEFAULT_POINTS
+            long seconds = Math.max(1, (range.toMillis() + DEFAULT_POINTS * 1000L - 1) / (DEFAULT_POINTS * 1000L));
+            width = Duration.ofSeconds(seconds);
+        } else {
+            width = bucket(bucket);
+        }
+        if (range.toMillis() / width.toMillis() > MAX_POINTS) {
+            throw new IllegalArgumentException("More than " + MAX_POINTS + " buckets, use a wider bucket");
+        }
+        return new SeriesQuery(start, end, width, 0);
+    }
+
+    static LocalDateTime time(String name, String value) {
+        try {
+            return LocalDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(name + " must be an ISO-8601 date-time such as 2025-03-01T08:00:00");
+        }
+    }
+
+    private static Duration bucket(String value) {
+        Matcher matcher = BUCKET.matcher(value);
+        if (!matcher.matches() || Long.parseLong(matcher.group(1)) == 0) {
+            throw new IllegalArgumentException("bucket must be a duration such as 30s, 1m, 5m or 1h");
+        }
+        long amount = Long.parseLong(matcher.group(1));
+        return switch (matcher.group(2)) {
+            case "s" -> Duration.ofSeconds(amount);
+            case "m" -> Duration.ofMinutes(amount);
+            case "h" -> Duration.ofHours(amount);
+            default -> Duration.ofDays(amount);
+        };
+    }
+}
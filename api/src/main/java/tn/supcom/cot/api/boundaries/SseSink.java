@@ -0,0 +1,61 @@
+package tn.supcom.cot.api.boundaries;
+
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+import tn.supcom.cot.api.controllers.LiveFeed;
+
+import java.io.IOException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes {@link LiveFeed} events to a Server-Sent Events connection, with
+ * JSON data. A send that does not complete within SEND_TIMEOUT_SECONDS
+ * fails, so that a stalled client releases its stream.
+ */
+final class SseSink implements LiveFeed.Sink {
+
+    private static final long SEND_TIMEOUT_SECONDS = 30;
+
+    private final SseEventSink sink;
+    private final Sse sse;
+
+    SseSink(SseEventSink sink, Sse sse) {
+        this.sink = sink;
+        this.sse = sse;
+    }
+
+    @Override
+    public void send(String name, String id, Object data) throws Exception {
+        await(sink.send(sse.newEventBuilder()
+                .name(name)
+                .id(id)
+                .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                .data(data.getClass(), data)
+                .build()));
+    }
+
+    @Override
+    public void keepAlive() throws Exception {
+        await(sink.send(sse.newEventBuilder().comment("keep-alive").build()));
+    }
+
+    @Override
+    public boolean isClosed() {
+        return sink.isClosed();
+    }
+
+    @Override
+    public void close() {
+        try {
+            sink.close();
+        } catch (IOException e) {
+            // The client is gone either way
+        }
+    }
+
+    private static void await(CompletionStage<?> sent) throws Exception {
+        sent.toCompletableFuture().get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,224 @@
+package tn.supcom.cot.api.boundaries;
+
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.inject.Inject;
+import jakarta.nosql.document.DocumentTemplate;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import tn.supcom.cot.api.controllers.ExecutionModel;
+import tn.supcom.cot.api.controllers.ThresholdRules;
+import tn.supcom.cot.api.entities.SensorType;
+import tn.supcom.cot.api.entities.ThresholdRule;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Threshold Rule Resource
+ *
+ * REST endpoints for the thresholds that raise alerts on incoming readings,
+ * in general or for one patient. Changes apply on this node at once and on
+ * the others within alerts.rules.reload.seconds.
+ *
+ * Built-in defaults (temperature above 39.0, heart rate above 130.0 for 60
+ * seconds, SpO2 below 90.0, blood pressure above 180.0) apply until a
+ * general rule with the same type, kind and condition replaces them.
+ *
+ * Base URL: /api/rules
+ */
+@Path("/rules")
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+public class ThresholdRuleResource {
+
+    @Inject
+    private DocumentTemplate template;
+
+    @Inject
+    private ExecutionModel execution;
+
+    @Inject
+    private ThresholdRules thresholdRules;
+
+    /**
+     * Create or replace a rule
+     *
+     * PUT /api/rules
+     * Roles: DOCTOR, ADMIN
+     *
+     * Request body example:
+     * {
+     *   "patientId": "patient-profile-001",
+     *   "type": "HEART_RATE",
+     *   "condition": "ABOVE",
+     *   "threshold": 110.0,
+     *   "alertType": "TACHYCARDIA",
+     *   "severity": "HIGH",
+     *   "message": "Tachycardia Detected"
+     * }
+     *
+     * Windowed rules add a kind (default READING, one reading at a time):
+     * - { "type": "HEART_RATE", "condition": "ABOVE", "threshold": 130.0,
+     *     "kind": "SUSTAINED", "windowSeconds": 60 }
+     * - { "type": "SPO2", "condition": "BELOW", "threshold": -2.0,
+     *     "kind": "SLOPE", "windowSeconds": 300 }   (percent per minute)
+     * - { "type": "TEMPERATURE", "condition": "ABOVE", "kind": "TREND", "samples": 3 }
+     *
+     * There is one rule per patient (or none, for every patient), type, kind
+     * and condition: putting it again replaces it. "enabled": false switches
+     * the general rule off for the patient, or off entirely without patientId.
+     */
+    @PUT
+    @RolesAllowed({"DOCTOR", "ADMIN"})
+    public Response putRule(ThresholdRule rule) {
+        try {
+            if (rule.getType() == null || Arrays.stream(SensorType.values())
+                    .noneMatch(type -> type.name().equals(rule.getType()))) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity(new ErrorResponse("type must be one of " + Arrays.toString(SensorType.values())))
+                        .build();
+            }
+            if (!ThresholdRule.ABOVE.equals(rule.getCondition()) && !ThresholdRule.BELOW.equals(rule.getCondition())) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity(new ErrorResponse("condition must be ABOVE or BELOW"))
+                        .build();
+            }
+            if (rule.getKind() == null) {
+                rule.setKind(ThresholdRule.READING);
+            }
+            String kind = rule.getKind();
+            if (!List.of(ThresholdRule.READING, ThresholdRule.SUSTAINED, ThresholdRule.SLOPE, ThresholdRule.TREND)
+                    .contains(kind)) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity(new ErrorResponse("kind must be READING, SUSTAINED, SLOPE or TREND"))
+                        .build();
+            }
+            if ((ThresholdRule.SUSTAINED.equals(kind) || ThresholdRule.SLOPE.equals(kind))
+                    && (rule.getWindowSeconds() == null || rule.getWindowSeconds() < 1)) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity(new ErrorResponse("windowSeconds is required for " + kind + " rules"))
+                        .build();
+            }
+            if (ThresholdRule.TREND.equals(kind) && (rule.getSamples() == null || rule.getSamples() < 2)) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity(new ErrorResponse("samples of at least 2 is required for TREND rules"))
+                        .build();
+            }
+            if (rule.getEnabled() == null) {
+                rule.setEnabled(true);
+            }
+            if (ThresholdRule.TREND.equals(kind) && rule.getThreshold() == null) {
+                rule.setThreshold(0.0);
+            }
+            if (rule.getEnabled() && (rule.getThreshold() == null || rule.getThreshold().isNaN())) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity(new ErrorResponse("threshold is required"))
+                        .build();
+            }
+            if (rule.getPatientId() != null && rule.getPatientId().isBlank()) {
+                rule.setPatientId(null);
+            }
+
+            rule.setId(ruleId(rule));
+            rule.setUpdatedAt(LocalDateTime.now());
+
+            ThresholdRule saved = template.find(ThresholdRule.class, rule.getId()).isPresent()
+                    ? template.update(rule)
+                    : template.insert(rule);
+            thresholdRules.reload();
+
+            return Response.ok(saved).build();
+
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse("Failed to save rule: " + e.getMessage()))
+                    .build();
+        }
+    }
+
+    /**
+     * List rules
+     *
+     * GET /api/rules?patientId=...
+     * Roles: DOCTOR, ADMIN
+     *
+     * Without patientId, every stored rule; with it, the patient's own rules.
+     */
+    @GET
+    @RolesAllowed({"DOCTOR", "ADMIN"})
+    public CompletionStage<Response> getRules(@QueryParam("patientId") String patientId) {
+        return execution.supplyAsync(() -> {
+            try {
+                List<ThresholdRule> rules = patientId == null || patientId.isEmpty()
+                        ? template.select(ThresholdRule.class).result()
+                        : template.select(ThresholdRule.class).where("patientId").eq(patientId).result();
+
+                return Response.ok(rules).build();
+
+            } catch (Exception e) {
+                return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                        .entity(new ErrorResponse("Failed to retrieve rules: " + e.getMessage()))
+                        .build();
+            }
+        });
+    }
+
+    /**
+     * Delete a rule; a deleted general rule falls back to its built-in default
+     *
+     * DELETE /api/rules/{id}
+     * Roles: DOCTOR, ADMIN
+     */
+    @DELETE
+    @Path("/{id}")
+    @RolesAllowed({"DOCTOR", "ADMIN"})
+    public Response deleteRule(@PathParam("id") String id) {
+        try {
+            Optional<ThresholdRule> existing = template.find(ThresholdRule.class, id);
+
+            if (existing.isEmpty()) {
+                return Response.status(Response.Status.NOT_FOUND)
+                        .entity(new ErrorResponse("Rule not found"))
+                        .build();
+            }
+
+            template.delete(ThresholdRule.class, id);
+            thresholdRules.reload();
+
+            return Response.noContent().build();
+
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                    .entity(new ErrorResponse("Failed to delete rule: " + e.getMessage()))
+                    .build();
+        }
+    }
+
+    // One rule per patient (* for every patient), type, kind and condition
+    private static String ruleId(ThresholdRule rule) {
+        String id = "rule|" + (rule.getPatientId() == null ? "*" : rule.getPatientId())
+                + "|" + rule.getType() + "|" + rule.getCondition();
+        return ThresholdRule.READING.equals(rule.getKind()) ? id : id + "|" + rule.getKind();
+    }
+
+    // Error response DTO
+    public static class ErrorResponse {
+        public String error;
+
+        public ErrorResponse(String error) {
+            this.error = error;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public void setError(String error) {
+            this.error = error;
+        }
+    }
+}
@@ -1,20 +1,121 @@
 package tn.supcom.cot.api.controllers;
 
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import org.bson.Document;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import tn.supcom.cot.api.entities.Alert;
+import tn.supcom.cot.api.entities.HealthRecord;
+import tn.supcom.cot.api.metrics.IngestionMetrics;
 import tn.supcom.cot.api.repositories.AlertRepository;
+import tn.supcom.cot.api.repositories.MongoConnection;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
 
+/**
+ * Raises automatic alerts, folding repeated triggers into the open alert.
+ *
+ * The first trigger of an alert type for a patient inserts an Alert. Later
+ * ones within alerts.suppression.window.seconds of the previous trigger
+ * only count on it: occurrences, lastSeen and the latest value are merged
+ * in memory and written as one unordered bulk update every
+ * alerts.flush.seconds. A trigger after a quiet window, or once the alert
+ * was resolved, opens a new alert. Opened alerts are announced on the
+ * live alert streams ({@link LiveFeed}).
+ *
+ * Open alerts are tracked per node: with several nodes, an episode opens at
+ * most one alert per node.
+ */
 @ApplicationScoped
 public class AlertController {
 
+    private static final Logger logger = Logger.getLogger(AlertController.class.getName());
+
+    private static final String COLLECTION = "Alert";
+
     @Inject
     AlertRepository repository;
 
+    @Inject
+    MongoConnection mongo;
+
+    @Inject
+    IngestionMetrics metrics;
+
+    @Inject
+    LiveFeed feed;
+
+    @Resource
+    ManagedScheduledExecutorService scheduler;
+
+    @Inject
+    @ConfigProperty(name = "alerts.suppression.window.seconds", defaultValue = "600")
+    long suppressionSeconds;
+
+    @Inject
+    @ConfigProperty(name = "alerts.flush.seconds", defaultValue = "5")
+    long flushSeconds;
+
+    // "patientId|alertType" -> the alert further triggers count on
+    private final Map<String, OpenAlert> open = new ConcurrentHashMap<>();
+
+    private final LongAdder suppressed = new LongAdder();
+
+    private ScheduledFuture<?> flushTask;
+
+    private static final class OpenAlert {
+        final String id;
+        long lastSeenMillis;
+        LocalDateTime lastSeen;
+        Double value;
+        // Triggers not written yet
+        int pending;
+        boolean closed;
+
+        OpenAlert(String id, long lastSeenMillis) {
+            this.id = id;
+            this.lastSeenMillis = lastSeenMillis;
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        if (metrics != null) {
+            metrics.gauge("alerts.open", open::size);
+            metrics.gauge("alerts.suppressed", suppressed::sum);
+        }
+        if (scheduler != null) {
+            flushTask = scheduler.scheduleWithFixedDelay(() -> flush(System.currentTimeMillis()),
+                    flushSeconds, flushSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+        }
+        flush(System.currentTimeMillis());
+    }
+
     public void report(Alert alert) {
         alert.setId(UUID.randomUUID().toString());
         alert.setTimestamp(LocalDateTime.now());
@@ -22,18 +123,137 @@ public class AlertController {
         alert.setSeverity("HIGH");
 
         repository.save(alert);
+        announce(alert);
     }
 
-    public void createAutomaticAlert(String patientId, String message) {
+    /*
+     * Alert of the given type (e.g. FALL_DETECTED); triggers of the same type are folded like threshold alerts.
+     */
+    public void createAutomaticAlert(String patientId, String type, String message) {
         Alert alert = new Alert();
         alert.setId(UUID.randomUUID().toString());
         alert.setPatientId(patientId);
+        alert.setType(type);
         alert.setMessage(message);
         alert.setTimestamp(LocalDateTime.now());
         alert.setSeverity("HIGH");
         alert.setResolved(false);
 
-        repository.save(alert);
+        raise(alert);
+    }
+
+    /*
+     * Alert for a reading breaking a threshold rule.
+     */
+    public void createThresholdAlert(HealthRecord record, ThresholdRules.Rule rule) {
+        Alert alert = new Alert(record.getPatientId(), rule.alertType(), rule.severity(),
+                rule.message() + ": " + record.getValue() + (record.getUnit() != null ? " " + record.getUnit() : ""));
+        alert.setId("alert-" + UUID.randomUUID());
+        alert.setValue(record.getValue());
+        alert.setUnit(record.getUnit());
+        alert.setSensorId(record.getSensorId());
+        alert.setResolved(false);
+
+        raise(alert);
+    }
+
+    /**
+     * Inserts the alert, unless an open alert of the same patient and type
+     * was triggered within the suppression window: it then counts on that one.
+     */
+    void raise(Alert alert) {
+        String key = alert.getPatientId() + "|" + alert.getType();
+        long now = System.currentTimeMillis();
+        long window = TimeUnit.SECONDS.toMillis(suppressionSeconds);
+        while (true) {
+            OpenAlert current = open.get(key);
+            if (current != null) {
+                synchronized (current) {
+                    if (!current.closed && now - current.lastSeenMillis <= window) {
+                        current.lastSeenMillis = now;
+                        current.lastSeen = alert.getTimestamp();
+                        current.value = alert.getValue();
+                        current.pending++;
+                        suppressed.increment();
+                        return;
+                    }
+                }
+            }
+            OpenAlert opened = new OpenAlert(alert.getId(), now);
+            boolean won = current == null ? open.putIfAbsent(key, opened) == null : open.replace(key, current, opened);
+            if (won) {
+                alert.setOccurrences(1);
+                alert.setLastSeen(alert.getTimestamp());
+                try {
+                    repository.save(alert);
+                } catch (RuntimeException e) {
+                    // Otherwise later triggers would count on an alert that does not exist
+                    open.remove(key, opened);
+                    throw e;
+                }
+                announce(alert);
+                return;
+            }
+            // Another trigger opened or refreshed it meanwhile: count on that one
+        }
+    }
+
+    private void announce(Alert alert) {
+        if (feed != null) {
+            feed.alert(alert);
+        }
+    }
+
+    /**
+     * Stops counting triggers on an alert that was resolved or deleted: the next one opens a new alert.
+     */
+    public void closed(Alert alert) {
+        OpenAlert current = open.get(alert.getPatientId() + "|" + alert.getType());
+        if (current != null && current.id.equals(alert.getId())) {
+            synchronized (current) {
+                current.closed = true;
+            }
+        }
+    }
+
+    /**
+     * Writes the merged triggers as one unordered bulk update and forgets
+     * the alerts whose suppression window is over.
+     */
+    void flush(long nowMillis) {
+        long window = TimeUnit.SECONDS.toMillis(suppressionSeconds);
+        List<WriteModel<Document>> updates = new ArrayList<>();
+        for (Map.Entry<String, OpenAlert> entry : open.entrySet()) {
+            OpenAlert alert = entry.getValue();
+            boolean expired;
+            synchronized (alert) {
+                if (alert.pending > 0 && !alert.closed) {
+                    // Resolved meanwhile on another node: its counts are dropped
+                    updates.add(new UpdateOneModel<>(
+                            Filters.and(Filters.eq("_id", alert.id), Filters.eq("resolved", false)),
+                            Updates.combine(
+                                    Updates.inc("occurrences", alert.pending),
+                                    Updates.max("lastSeen", alert.lastSeen),
+                                    Updates.set("value", alert.value))));
+                }
+                alert.pending = 0;
+                expired = alert.closed || nowMillis - alert.lastSeenMillis > window;
+                // A trigger racing with the removal opens a new alert instead of counting on this one
+                alert.closed = expired;
+            }
+            if (expired) {
+                open.remove(entry.getKey(), alert);
+            }
+        }
+        if (updates.isEmpty()) {
+            return;
+        }
+        try {
+            mongo.collection(COLLECTION).bulkWrite(updates, new BulkWriteOptions().ordered(false));
+        } catch (Exception e) {
+            // Counts are best effort: the alerts themselves were inserted when opened
+            logger.warning("Failed to update " + updates.size() + " open alerts: " + e.getMessage());
+        }
     }
 
     public List<Alert> getActive() {
@@ -0,0 +1,216 @@
+package tn.supcom.cot.api.controllers;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import tn.supcom.cot.api.entities.HealthRecord;
+import tn.supcom.cot.api.metrics.IngestionMetrics;
+import tn.supcom.cot.api.metrics.LatencyHistogram;
+import tn.supcom.cot.api.repositories.HealthRecordsStored;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Evaluates the threshold rules on stored readings off the ingestion path.
+ *
+ * Storing a reading only hands it over to a lock-free queue: the rules, the
+ * sliding windows and the alert writes run on alerts.stage.partitions
+ * workers, so a slow alert write no longer delays ingestion. Queues are
+ * partitioned by patient id, one worker each, so the readings of a patient
+ * are evaluated in the order they were stored, as sliding windows require.
+ *
+ * A partition holding alerts.stage.queue.capacity readings makes producers
+ * wait for room rather than drop readings. Queueing delay (stored to
+ * evaluated) is recorded in the alerts.latency.queue histogram.
+ */
+@ApplicationScoped
+public class AlertStage {
+
+    private static final Logger logger = Logger.getLogger(AlertStage.class.getName());
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    @Inject
+    ThresholdRules rules;
+
+    @Inject
+    ExecutionModel execution;
+
+    @Inject
+    IngestionMetrics metrics;
+
+    @Inject
+    @ConfigProperty(name = "alerts.stage.partitions", defaultValue = "2")
+    int partitionCount;
+
+    @Inject
+    @ConfigProperty(name = "alerts.stage.queue.capacity", defaultValue = "10000")
+    int queueCapacity;
+
+    private record Pending(HealthRecord record, long storedNanos) {
+    }
+
+    private static final class Partition {
+        final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+        // ConcurrentLinkedQueue.size() walks the queue
+        final AtomicInteger size = new AtomicInteger();
+        volatile Thread worker;
+        volatile boolean idle;
+    }
+
+    private Partition[] partitions = new Partition[0];
+    private volatile boolean running;
+
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private LatencyHistogram queueLatency = new LatencyHistogram();
+
+    @PostConstruct
+    void init() {
+        if (!rules.isEnabled()) {
+            return;
+        }
+        metrics.gauge("alerts.stage.queue.depth", this::queueDepth);
+        metrics.gauge("alerts.stage.waits", waits::sum);
+        metrics.gauge("alerts.stage.failures", failures::sum);
+        queueLatency = metrics.histogram("alerts.latency.queue");
+        start(execution.workerThreadFactory());
+    }
+
+    synchronized void start(ThreadFactory threadFactory) {
+        if (running) {
+            return;
+        }
+        if (partitionCount < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Invalid alert stage settings");
+        }
+        partitions = new Partition[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new Partition();
+        }
+        running = true;
+        for (int i = 0; i < partitionCount; i++) {
+            Partition partition = partitions[i];
+            Thread worker = threadFactory.newThread(() -> work(partition));
+            worker.setName("alert-worker-" + i);
+            partition.worker = worker;
+            worker.start();
+        }
+        logger.info("Alert evaluation on " + partitionCount + " workers");
+    }
+
+    /**
+     * Stops accepting readings and waits for the queued ones to be evaluated.
+     */
+    @PreDestroy
+    void shutdown() {
+        List<Thread> workers = new ArrayList<>();
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            for (Partition partition : partitions) {
+                workers.add(partition.worker);
+                LockSupport.unpark(partition.worker);
+            }
+        }
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void onStored(@Observes HealthRecordsStored event) {
+        if (!rules.isEnabled()) {
+            return;
+        }
+        for (HealthRecord record : event.records()) {
+            submit(record);
+        }
+    }
+
+    /**
+     * Queues a stored reading for evaluation, waiting while its partition is
+     * full. When the stage is not running the reading is evaluated inline.
+     */
+    public void submit(HealthRecord record) {
+        if (!running) {
+            evaluate(record);
+            return;
+        }
+        Partition partition = partitions[partitionOf(record.getPatientId())];
+        if (partition.size.get() >= queueCapacity) {
+            waits.increment();
+            while (running && partition.size.get() >= queueCapacity) {
+                LockSupport.parkNanos(FULL_PARK_NANOS);
+            }
+        }
+        // Capacity is a soft bound: producers that waited together may overshoot it by one each
+        partition.size.incrementAndGet();
+        partition.queue.offer(new Pending(record, System.nanoTime()));
+        if (partition.idle) {
+            LockSupport.unpark(partition.worker);
+        }
+    }
+
+    int partitionOf(String patientId) {
+        return patientId == null ? 0 : Math.floorMod(patientId.hashCode(), partitions.length);
+    }
+
+    int queueDepth() {
+        int depth = 0;
+        for (Partition partition : partitions) {
+            depth += partition.size.get();
+        }
+        return depth;
+    }
+
+    private void work(Partition partition) {
+        while (true) {
+            Pending next = partition.queue.poll();
+            if (next == null) {
+                if (!running) {
+                    return;
+                }
+                // Producers check idle after offering: either they see it set or we see their reading
+                partition.idle = true;
+                if (partition.queue.isEmpty() && running) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                partition.idle = false;
+                continue;
+            }
+            partition.size.decrementAndGet();
+            evaluate(next.record());
+            queueLatency.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - next.storedNanos()));
+        }
+    }
+
+    private void evaluate(HealthRecord record) {
+        try {
+            rules.check(record);
+        } catch (RuntimeException e) {
+            // Thrown out of the worker, it would stop evaluating the whole partition
+            failures.increment();
+            logger.log(Level.WARNING, "Failed to evaluate alert rules for patient " + record.getPatientId(), e);
+        }
+    }
+}
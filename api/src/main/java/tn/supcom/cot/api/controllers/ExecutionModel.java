@@ -0,0 +1,160 @@
+package tn.supcom.cot.api.controllers;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedExecutorDefinition;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.enterprise.concurrent.ManagedThreadFactoryDefinition;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import tn.supcom.cot.api.metrics.IngestionMetrics;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Selects the threads that run blocking MongoDB work.
+ *
+ * With execution.model=platform (the default) REST calls run on the server's
+ * request threads and MQTT workers on the default managed thread factory.
+ * With execution.model=virtual, REST calls are handed off to a virtual-thread
+ * executor (the request thread is released while the MongoDB driver blocks)
+ * and the MQTT pipeline workers are virtual threads as well.
+ *
+ * Virtual threads are not a limit on anything, so REST calls take a permit
+ * before touching MongoDB: no more than mongo.max.concurrent.operations run
+ * at once, keeping them within the driver's connection pool (100 by default).
+ * A call that cannot get a permit in time is answered with 503.
+ */
+@ManagedExecutorDefinition(name = ExecutionModel.VIRTUAL_EXECUTOR, virtual = true)
+@ManagedThreadFactoryDefinition(name = ExecutionModel.VIRTUAL_THREAD_FACTORY, virtual = true)
+@ApplicationScoped
+public class ExecutionModel {
+
+    private static final Logger logger = Logger.getLogger(ExecutionModel.class.getName());
+
+    public static final String VIRTUAL_EXECUTOR = "java:app/concurrent/VirtualExecutor";
+    public static final String VIRTUAL_THREAD_FACTORY = "java:app/concurrent/VirtualThreadFactory";
+
+    private static final long RETRY_AFTER_SECONDS = 1;
+
+    @Inject
+    IngestionMetrics metrics;
+
+    @Resource(lookup = VIRTUAL_EXECUTOR)
+    ManagedExecutorService virtualExecutor;
+
+    @Resource(lookup = VIRTUAL_THREAD_FACTORY)
+    ManagedThreadFactory virtualThreadFactory;
+
+    @Resource
+    ManagedThreadFactory platformThreadFactory;
+
+    @Inject
+    @ConfigProperty(name = "execution.model", defaultValue = "platform")
+    String model;
+
+    @Inject
+    @ConfigProperty(name = "mongo.max.concurrent.operations", defaultValue = "100")
+    int maxConcurrentOperations;
+
+    @Inject
+    @ConfigProperty(name = "mongo.permit.timeout.ms", defaultValue = "2000")
+    long permitTimeoutMillis;
+
+    private boolean virtual;
+    private Semaphore permits;
+
+    private final LongAdder rejected = new LongAdder();
+
+    @PostConstruct
+    void init() {
+        virtual = "virtual".equalsIgnoreCase(model.trim());
+        if (!virtual && !"platform".equalsIgnoreCase(model.trim())) {
+            logger.warning("Unknown execution.model '" + model + "', using platform threads");
+        }
+        permits = new Semaphore(maxConcurrentOperations, true);
+        metrics.gauge("execution.virtual", () -> virtual ? 1 : 0);
+        metrics.gauge("mongo.operations.active", () -> maxConcurrentOperations - permits.availablePermits());
+        metrics.gauge("mongo.operations.waiting", permits::getQueueLength);
+        metrics.gauge("mongo.operations.rejected", rejected::sum);
+        logger.info("Execution model: " + (virtual ? "virtual" : "platform") + " threads, at most "
+                + maxConcurrentOperations + " concurrent MongoDB operations");
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Runs blocking MongoDB work for a REST call, on a virtual thread in the
+     * virtual model and inline on the request thread otherwise.
+     *
+     * The stage fails with {@link OverloadedException} (503) when no permit
+     * is available within mongo.permit.timeout.ms.
+     */
+    public <T> CompletionStage<T> supplyAsync(Supplier<T> work) {
+        if (virtual) {
+            return CompletableFuture.supplyAsync(() -> withPermit(work), virtualExecutor);
+        }
+        try {
+            return CompletableFuture.completedFuture(withPermit(work));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Thread factory for long-running workers that block on MongoDB or queues.
+     */
+    public ThreadFactory workerThreadFactory() {
+        return virtual ? virtualThreadFactory : platformThreadFactory;
+    }
+
+    /**
+     * @return true if nothing waits for a permit and at least half are free,
+     *         so that background work can take one without delaying REST calls
+     */
+    public boolean hasSpareCapacity() {
+        return !permits.hasQueuedThreads() && permits.availablePermits() * 2 >= maxConcurrentOperations;
+    }
+
+    /**
+     * Runs blocking MongoDB work on the calling thread under a permit, for
+     * work outside {@link #supplyAsync}, such as a streamed response.
+     *
+     * @throws OverloadedException when no permit is available within mongo.permit.timeout.ms
+     */
+    public <T> T withPermit(Supplier<T> work) {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(permitTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+        if (!acquired) {
+            rejected.increment();
+            throw new OverloadedException("Too many concurrent database operations, retry later",
+                    RETRY_AFTER_SECONDS);
+        }
+        try {
+            return work.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+}
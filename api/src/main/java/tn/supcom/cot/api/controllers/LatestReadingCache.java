@@ -0,0 +1,159 @@
+package tn.supcom.cot.api.controllers;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.nosql.document.DocumentTemplate;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import tn.supcom.cot.api.entities.HealthRecord;
+import tn.supcom.cot.api.metrics.IngestionMetrics;
+import tn.supcom.cot.api.repositories.HealthRecordBuckets;
+import tn.supcom.cot.api.repositories.HealthRecordsStored;
+import tn.supcom.cot.api.repositories.ReadingArchive;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latest reading of each (patient, type), kept in memory.
+ *
+ * Written through as readings are stored, so the latest endpoints stop
+ * querying MongoDB on every dashboard poll. A miss loads the newest stored
+ * reading (or remembers there is none) and the map is bounded with LRU
+ * eviction. An entry is only ever replaced by a newer reading, so a slow
+ * load cannot overwrite what ingestion just put.
+ *
+ * Readings stored by another API node are not seen here: nodes announce
+ * what they store (see LatestReadingChannel) and the stale entries are
+ * dropped, to be reloaded on the next read.
+ */
+@ApplicationScoped
+public class LatestReadingCache {
+
+    // Cached absence: no reading stored yet for this (patient, type)
+    private static final HealthRecord NONE = new HealthRecord();
+
+    @Inject
+    DocumentTemplate template;
+
+    @Inject
+    HealthRecordBuckets buckets;
+
+    @Inject
+    ReadingArchive archive;
+
+    @Inject
+    IngestionMetrics metrics;
+
+    @Inject
+    @ConfigProperty(name = "monitor.latest.cache.size", defaultValue = "50000")
+    int maxSize;
+
+    // Access-ordered map used as an LRU cache, guarded by "cache"
+    private final Map<Key, HealthRecord> cache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, HealthRecord> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private record Key(String patientId, String type) {
+    }
+
+    @PostConstruct
+    void init() {
+        metrics.gauge("monitor.latest.cached", this::size);
+        metrics.gauge("monitor.latest.hits", hits::sum);
+        metrics.gauge("monitor.latest.misses", misses::sum);
+        metrics.gauge("monitor.latest.invalidations", invalidations::sum);
+    }
+
+    /**
+     * @return the latest stored reading, loading it from MongoDB on a miss
+     */
+    public Optional<HealthRecord> latest(String patientId, String type) {
+        Key key = new Key(patientId, type);
+        HealthRecord cached;
+        synchronized (cache) {
+            cached = cache.get(key);
+        }
+        if (cached != null) {
+            hits.increment();
+            return cached == NONE ? Optional.empty() : Optional.of(cached);
+        }
+
+        misses.increment();
+        Optional<HealthRecord> loaded = load(patientId, type);
+        HealthRecord current = offer(key, loaded.orElse(NONE));
+        return current == NONE ? Optional.empty() : Optional.of(current);
+    }
+
+    /**
+     * Newest first through the (patientId, type, timestamp desc) index, or
+     * from the newest bucket with the bucketed storage layout. A vital with
+     * no reading since the archive horizon is found in the archive.
+     */
+    Optional<HealthRecord> load(String patientId, String type) {
+        Optional<HealthRecord> stored = buckets.isEnabled()
+                ? buckets.latest(patientId, type)
+                : template.select(HealthRecord.class)
+                        .where("patientId").eq(patientId)
+                        .and("type").eq(type)
+                        .orderBy("timestamp").desc()
+                        .limit(1)
+                        .singleResult();
+        if (stored.isPresent() || !archive.isEnabled()) {
+            return stored;
+        }
+        return archive.latest(patientId, type);
+    }
+
+    void onStored(@Observes HealthRecordsStored event) {
+        for (HealthRecord record : event.records()) {
+            if (record.getPatientId() != null && record.getType() != null && record.getTimestamp() != null) {
+                offer(new Key(record.getPatientId(), record.getType()), record);
+            }
+        }
+    }
+
+    /**
+     * Drops the entry if it is older than a reading another node stored.
+     */
+    public void invalidate(String patientId, String type, LocalDateTime storedAt) {
+        Key key = new Key(patientId, type);
+        synchronized (cache) {
+            HealthRecord cached = cache.get(key);
+            if (cached != null && (cached == NONE || cached.getTimestamp().isBefore(storedAt))) {
+                cache.remove(key);
+                invalidations.increment();
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    // Keeps the newest of the cached and offered readings; returns the one kept
+    private HealthRecord offer(Key key, HealthRecord record) {
+        synchronized (cache) {
+            HealthRecord cached = cache.get(key);
+            if (cached == null || cached == NONE
+                    || (record != NONE && !record.getTimestamp().isBefore(cached.getTimestamp()))) {
+                cache.put(key, record);
+                return record;
+            }
+            return cached;
+        }
+    }
+}
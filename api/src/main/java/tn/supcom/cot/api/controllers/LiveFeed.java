@@ -0,0 +1,269 @@
+package tn.supcom.cot.api.controllers;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import tn.supcom.cot.api.entities.Alert;
+import tn.supcom.cot.api.entities.HealthRecord;
+import tn.supcom.cot.api.metrics.IngestionMetrics;
+import tn.supcom.cot.api.repositories.HealthRecordsStored;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * In-process fan-out of stored readings and raised alerts to live
+ * subscribers, the Server-Sent Events streams of the REST API.
+ *
+ * Publishing never blocks the ingestion or alert threads: each subscriber
+ * has a buffer of stream.subscriber.buffer events, and when its client does
+ * not keep up the oldest event is dropped to make room. Events are written
+ * by one worker per subscriber, so a slow client only delays itself. A
+ * keep-alive is sent after stream.keepalive.seconds without events, which
+ * also notices clients that went away. At most stream.max.subscribers
+ * streams are open at once.
+ *
+ * Each stream holds its worker thread for as long as the client stays
+ * connected. Under execution.model=platform that is a dedicated platform
+ * thread per stream, so keep stream.max.subscribers modest there; large
+ * numbers of streams expect execution.model=virtual.
+ *
+ * Subscribers see the readings stored and the alerts raised on their node.
+ */
+@ApplicationScoped
+public class LiveFeed {
+
+    private static final Logger logger = Logger.getLogger(LiveFeed.class.getName());
+
+    public static final String READING = "reading";
+    public static final String ALERT = "alert";
+
+    private static final String ALL_PATIENTS = "*";
+    private static final long RETRY_AFTER_SECONDS = 5;
+
+    // Wakes a subscriber's worker up to stop
+    private static final Event CLOSE = new Event(null, null, null);
+
+    /**
+     * Where a subscriber's events are written, such as an SSE connection.
+     */
+    public interface Sink {
+        /**
+         * Writes one event, returning once it was sent.
+         */
+        void send(String name, String id, Object data) throws Exception;
+
+        void keepAlive() throws Exception;
+
+        boolean isClosed();
+
+        void close();
+    }
+
+    record Event(String name, String id, Object data) {
+    }
+
+    @Inject
+    ExecutionModel execution;
+
+    @Inject
+    IngestionMetrics metrics;
+
+    @Inject
+    @ConfigProperty(name = "stream.max.subscribers", defaultValue = "200")
+    int maxSubscribers;
+
+    @Inject
+    @ConfigProperty(name = "stream.subscriber.buffer", defaultValue = "256")
+    int bufferSize;
+
+    @Inject
+    @ConfigProperty(name = "stream.keepalive.seconds", defaultValue = "15")
+    long keepAliveSeconds;
+
+    // "reading|patientId", "alert|patientId" or "alert|*" -> subscribers
+    private final Map<String, Set<Subscriber>> topics = new ConcurrentHashMap<>();
+
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    private volatile boolean running = true;
+
+    private final class Subscriber {
+        final String topic;
+        final Sink sink;
+        final BlockingDeque<Event> buffer = new LinkedBlockingDeque<>(bufferSize);
+
+        Subscriber(String topic, Sink sink) {
+            this.topic = topic;
+            this.sink = sink;
+        }
+
+        void offer(Event event) {
+            while (!buffer.offerLast(event)) {
+                if (buffer.pollFirst() != null) {
+                    dropped.increment();
+                }
+            }
+        }
+
+        void close() {
+            buffer.clear();
+            while (!buffer.offerFirst(CLOSE)) {
+                buffer.pollLast();
+            }
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        metrics.gauge("stream.subscribers", open::get);
+        metrics.gauge("stream.events.sent", sent::sum);
+        metrics.gauge("stream.events.dropped", dropped::sum);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        running = false;
+        topics.values().forEach(subscribers -> subscribers.forEach(Subscriber::close));
+    }
+
+    /**
+     * Streams the readings stored for a patient, after the initial ones.
+     * The initial readings are loaded once the stream is listening, so a
+     * reading stored meanwhile is streamed too.
+     *
+     * @throws OverloadedException when stream.max.subscribers streams are open
+     */
+    public void readings(String patientId, Supplier<List<HealthRecord>> initial, Sink sink) {
+        subscribe(READING + "|" + patientId, () -> initial.get().stream()
+                .map(record -> new Event(READING, record.getId(), record))
+                .toList(), sink);
+    }
+
+    /**
+     * Streams the alerts raised or resolved for a patient, or for all of them when patientId is null.
+     *
+     * @throws OverloadedException when stream.max.subscribers streams are open
+     */
+    public void alerts(String patientId, Sink sink) {
+        subscribe(ALERT + "|" + (patientId == null ? ALL_PATIENTS : patientId), List::of, sink);
+    }
+
+    /**
+     * Announces an alert that was raised or resolved.
+     */
+    public void alert(Alert alert) {
+        if (topics.isEmpty() || alert.getPatientId() == null) {
+            return;
+        }
+        Event event = new Event(ALERT, alert.getId(), alert);
+        publish(ALERT + "|" + alert.getPatientId(), event);
+        publish(ALERT + "|" + ALL_PATIENTS, event);
+    }
+
+    void onStored(@Observes HealthRecordsStored event) {
+        if (topics.isEmpty()) {
+            return;
+        }
+        for (HealthRecord record : event.records()) {
+            if (record.getPatientId() != null) {
+                publish(READING + "|" + record.getPatientId(), new Event(READING, record.getId(), record));
+            }
+        }
+    }
+
+    int subscribers() {
+        return open.get();
+    }
+
+    private void publish(String topic, Event event) {
+        Set<Subscriber> subscribers = topics.get(topic);
+        if (subscribers != null) {
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(event);
+            }
+        }
+    }
+
+    private void subscribe(String topic, Supplier<List<Event>> initial, Sink sink) {
+        if (!running) {
+            throw new OverloadedException("Live streams are shutting down, retry later", RETRY_AFTER_SECONDS);
+        }
+        if (open.incrementAndGet() > maxSubscribers) {
+            open.decrementAndGet();
+            throw new OverloadedException("Too many live streams open, retry later", RETRY_AFTER_SECONDS);
+        }
+        Subscriber subscriber = new Subscriber(topic, sink);
+        topics.compute(topic, (key, subscribers) -> {
+            Set<Subscriber> updated = subscribers == null ? new CopyOnWriteArraySet<>() : subscribers;
+            updated.add(subscriber);
+            return updated;
+        });
+        try {
+            // Ahead of anything published while the initial events were loading
+            List<Event> events = initial.get();
+            for (int i = events.size() - 1; i >= 0; i--) {
+                if (!subscriber.buffer.offerFirst(events.get(i))) {
+                    dropped.increment();
+                }
+            }
+            Thread worker = execution.workerThreadFactory().newThread(() -> deliver(subscriber));
+            worker.setName("live-feed-" + sequence.incrementAndGet());
+            worker.start();
+        } catch (RuntimeException e) {
+            unsubscribe(subscriber);
+            throw e;
+        }
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        topics.computeIfPresent(subscriber.topic, (key, subscribers) -> {
+            subscribers.remove(subscriber);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+        open.decrementAndGet();
+    }
+
+    private void deliver(Subscriber subscriber) {
+        try {
+            while (running && !subscriber.sink.isClosed()) {
+                Event next = subscriber.buffer.pollFirst(keepAliveSeconds, TimeUnit.SECONDS);
+                if (next == CLOSE) {
+                    break;
+                }
+                if (next == null) {
+                    subscriber.sink.keepAlive();
+                    continue;
+                }
+                subscriber.sink.send(next.name(), next.id(), next.data());
+                sent.increment();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Usually the client went away
+            logger.log(Level.FINE, "Live stream " + subscriber.topic + " closed", e);
+        } finally {
+            unsubscribe(subscriber);
+            subscriber.sink.close();
+        }
+    }
+}
@@ -19,6 +19,9 @@ public class MonitoringController {
     @Inject
     AlertController alertController;
 
+    @Inject
+    AlertStage alertStage;
+
     /*
      * Add new health record (HR data from sensors)
      */
@@ -26,44 +29,16 @@ public class MonitoringController {
         record.setId(UUID.randomUUID().toString());
         record.setTimestamp(LocalDateTime.now());
 
-        checkThresholds(record);
-
         recordRepository.save(record);
+
+        checkThresholds(record);
     }
 
     /*
-     * Apply threshold rules to detect critical events.
+     * Apply threshold rules to detect critical events, without waiting for them.
      */
     private void checkThresholds(HealthRecord record) {
-        // Option 1: Compare strings directly
-        if ("TEMPERATURE".equals(record.getType()) && record.getValue() > 39.0) {
-            alertController.createAutomaticAlert(
-                    record.getPatientId(),
-                    "High Fever Detected: " + record.getValue() + "°C"
-            );
-        }
-
-        if ("HEART_RATE".equals(record.getType()) && record.getValue() > 130.0) {
-            alertController.createAutomaticAlert(
-                    record.getPatientId(),
-                    "Tachycardia Detected: " + record.getValue() + " bpm"
-            );
-        }
-
-        // Additional thresholds
-        if ("SPO2".equals(record.getType()) && record.getValue() < 90.0) {
-            alertController.createAutomaticAlert(
-                    record.getPatientId(),
-                    "Low Oxygen Saturation: " + record.getValue() + "%"
-            );
-        }
-
-        if ("BLOOD_PRESSURE".equals(record.getType()) && record.getValue() > 180.0) {
-            alertController.createAutomaticAlert(
-                    record.getPatientId(),
-                    "High Blood Pressure: " + record.getValue() + " mmHg"
-            );
-        }
+        alertStage.submit(record);
     }
 
     /*
@@ -0,0 +1,21 @@
+package tn.supcom.cot.api.controllers;
+
+/**
+ * Thrown when a call cannot get a MongoDB operation permit in time.
+ * Mapped to 503 Service Unavailable with a Retry-After header.
+ */
+public class OverloadedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterSeconds;
+
+    public OverloadedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
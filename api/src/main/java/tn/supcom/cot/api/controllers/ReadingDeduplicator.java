@@ -0,0 +1,201 @@
+package tn.supcom.cot.api.controllers;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import tn.supcom.cot.api.metrics.IngestionMetrics;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drops readings that were already ingested, e.g. QoS 1 redeliveries or a
+ * device resending its buffer after a reconnect.
+ *
+ * A message is identified by its device, sequence number and device
+ * timestamp. Each device keeps the keys of its most recent messages in a
+ * small primitive hash set, and the devices themselves are evicted LRU.
+ * What falls out of the window is still caught by MongoDB, since the same
+ * identity yields the same record id (see {@link #readingId}).
+ *
+ * Readings submitted over REST are identified the same way, with the
+ * reading's timestamp standing in for the device timestamp. They are
+ * checked with {@link #seen} and only recorded once stored, so that a
+ * retry of a failed write is not mistaken for a duplicate.
+ */
+@ApplicationScoped
+public class ReadingDeduplicator {
+
+    @Inject
+    IngestionMetrics metrics;
+
+    @Inject
+    @ConfigProperty(name = "ingest.dedup.window", defaultValue = "1024")
+    int window;
+
+    @Inject
+    @ConfigProperty(name = "ingest.dedup.devices", defaultValue = "10000")
+    int maxDevices;
+
+    // Access-ordered map used as an LRU, guarded by "devices"
+    private final Map<String, KeyWindow> devices = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, KeyWindow> eldest) {
+            return size() > maxDevices;
+        }
+    };
+
+    private final LongAdder duplicateMessages = new LongAdder();
+    private final LongAdder droppedReadings = new LongAdder();
+
+    @PostConstruct
+    void init() {
+        metrics.gauge("ingest.dedup.devices", this::trackedDevices);
+        metrics.gauge("ingest.dedup.duplicates", duplicateMessages::sum);
+        metrics.gauge("ingest.dedup.readings.dropped", droppedReadings::sum);
+    }
+
+    /**
+     * Deterministic id of the n-th reading of a message, so a redelivered
+     * message maps onto the documents it already produced.
+     */
+    public static String readingId(String deviceId, long sequence, long timestampMillis, int index) {
+        return "health-record-" + deviceId + "-" + sequence + "-" + timestampMillis + "-" + index;
+    }
+
+    /**
+     * Device timestamp of a reading that carries no other clock than its own timestamp.
+     */
+    public static long timestampMillis(LocalDateTime timestamp) {
+        return timestamp.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    /**
+     * Tells whether a message was recorded recently, without recording it.
+     */
+    public boolean seen(String deviceId, long sequence, long timestampMillis) {
+        long key = key(sequence, timestampMillis);
+        boolean seen;
+        synchronized (devices) {
+            KeyWindow keys = devices.get(deviceId);
+            seen = keys != null && keys.contains(key);
+        }
+        if (seen) {
+            duplicateMessages.increment();
+        }
+        return seen;
+    }
+
+    /**
+     * Records a message and tells whether it is the first time it is seen.
+     *
+     * @return false if the same device already sent this sequence/timestamp recently
+     */
+    public boolean firstSeen(String deviceId, long sequence, long timestampMillis) {
+        long key = key(sequence, timestampMillis);
+        boolean added;
+        synchronized (devices) {
+            added = devices.computeIfAbsent(deviceId, id -> new KeyWindow(window)).add(key);
+        }
+        if (!added) {
+            duplicateMessages.increment();
+        }
+        return added;
+    }
+
+    /**
+     * Accounts for the readings of a message rejected by {@link #firstSeen}.
+     */
+    public void dropped(int readings) {
+        droppedReadings.add(readings);
+    }
+
+    public int trackedDevices() {
+        synchronized (devices) {
+            return devices.size();
+        }
+    }
+
+    public long duplicateMessages() {
+        return duplicateMessages.sum();
+    }
+
+    public long droppedReadings() {
+        return droppedReadings.sum();
+    }
+
+    private static long key(long sequence, long timestampMillis) {
+        // Murmur3 finalizer over both fields; 0 is reserved for empty slots
+        long h = sequence * 0x9E3779B97F4A7C15L ^ timestampMillis;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB93FE1A85A53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * Keys of the last messages of one device, in two generations of open
+     * addressing sets: when the current one is full it becomes the previous
+     * one, so the window holds between capacity and twice capacity keys
+     * without per-key allocation or deletions.
+     */
+    static final class KeyWindow {
+        private final int capacity;
+        private long[] current;
+        private long[] previous;
+        private int size;
+
+        KeyWindow(int capacity) {
+            this.capacity = capacity;
+            this.current = new long[tableSize(capacity)];
+            this.previous = new long[current.length];
+        }
+
+        private static int tableSize(int capacity) {
+            // Load factor <= 0.5
+            return Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1) << 1;
+        }
+
+        boolean contains(long key) {
+            return contains(previous, key) || contains(current, key);
+        }
+
+        boolean add(long key) {
+            if (contains(key)) {
+                return false;
+            }
+            if (size == capacity) {
+                long[] recycled = previous;
+                Arrays.fill(recycled, 0);
+                previous = current;
+                current = recycled;
+                size = 0;
+            }
+            int mask = current.length - 1;
+            int slot = (int) key & mask;
+            while (current[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            current[slot] = key;
+            size++;
+            return true;
+        }
+
+        private static boolean contains(long[] table, long key) {
+            int mask = table.length - 1;
+            for (int slot = (int) key & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+                if (table[slot] == key) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
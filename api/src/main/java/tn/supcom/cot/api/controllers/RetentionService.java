@@ -0,0 +1,222 @@
+package tn.supcom.cot.api.controllers;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import tn.supcom.cot.api.metrics.IngestionMetrics;
+import tn.supcom.cot.api.repositories.HealthRecordBuckets;
+import tn.supcom.cot.api.repositories.HealthRecordDocuments;
+import tn.supcom.cot.api.repositories.HealthStatsStore;
+import tn.supcom.cot.api.repositories.MongoConnection;
+import tn.supcom.cot.api.repositories.ReadingArchive;
+import tn.supcom.cot.api.repositories.RetentionPolicy;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Deletes health data past its {@link RetentionPolicy} horizon.
+ *
+ * Runs every retention.interval.minutes. Expired documents are deleted by
+ * id in batches of retention.batch.size, each batch under one of the
+ * MongoDB permits REST calls use, and only while the permits are not in
+ * demand: when they are, the run pauses. A run stops after
+ * retention.max.batches.per.run batches or pauses and the next one
+ * continues where it left off, so a large backlog is worked off gradually.
+ *
+ * Raw readings are deleted from every storage layout (HealthRecord,
+ * HealthRecordBucket, HealthRecordArchive) once the whole document is past
+ * the horizon.
+ */
+@ApplicationScoped
+public class RetentionService {
+
+    private static final Logger logger = Logger.getLogger(RetentionService.class.getName());
+
+    private static final long BUCKET_MILLIS = Duration.ofHours(1).toMillis();
+    private static final long ARCHIVE_BLOCK_MILLIS = Duration.ofDays(1).toMillis();
+
+    @Inject
+    RetentionPolicy policy;
+
+    @Inject
+    MongoConnection mongo;
+
+    @Inject
+    ExecutionModel execution;
+
+    @Inject
+    IngestionMetrics metrics;
+
+    @Resource
+    ManagedScheduledExecutorService scheduler;
+
+    @Inject
+    @ConfigProperty(name = "retention.interval.minutes", defaultValue = "60")
+    long intervalMinutes;
+
+    @Inject
+    @ConfigProperty(name = "retention.batch.size", defaultValue = "1000")
+    int batchSize;
+
+    @Inject
+    @ConfigProperty(name = "retention.batch.pause.ms", defaultValue = "100")
+    long batchPauseMillis;
+
+    @Inject
+    @ConfigProperty(name = "retention.max.batches.per.run", defaultValue = "1000")
+    int maxBatchesPerRun;
+
+    private final LongAdder deletedReadings = new LongAdder();
+    private final LongAdder deletedRollups = new LongAdder();
+    private final LongAdder deletedAlerts = new LongAdder();
+    private final LongAdder deferredBatches = new LongAdder();
+
+    private ScheduledFuture<?> purgeTask;
+    private volatile boolean running;
+
+    @PostConstruct
+    void init() {
+        if (!policy.isEnabled()) {
+            return;
+        }
+        metrics.gauge("retention.deleted.readings", deletedReadings::sum);
+        metrics.gauge("retention.deleted.rollups", deletedRollups::sum);
+        metrics.gauge("retention.deleted.alerts", deletedAlerts::sum);
+        metrics.gauge("retention.deferred.batches", deferredBatches::sum);
+        running = true;
+        if (scheduler != null) {
+            purgeTask = scheduler.scheduleWithFixedDelay(() -> purge(HealthRecordDocuments.nowMillis()),
+                    intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        running = false;
+        if (purgeTask != null) {
+            purgeTask.cancel(false);
+        }
+    }
+
+    /**
+     * One retention run.
+     *
+     * @return the number of documents deleted
+     */
+    public long purge(long nowMillis) {
+        Budget budget = new Budget(maxBatchesPerRun);
+        long deleted = 0;
+        try {
+            Map<String, Integer> overrides = policy.rawDaysOverrides();
+            for (String type : overrides.keySet()) {
+                deleted += purgeReadings(Filters.eq("type", type), policy.rawHorizon(type, nowMillis), budget);
+            }
+            deleted += purgeReadings(Filters.nin("type", overrides.keySet()), policy.defaultRawHorizon(nowMillis),
+                    budget);
+
+            long rollups = deleteExpired(HealthStatsStore.COLLECTION, Filters.and(
+                    Filters.eq("granularity", "minute"),
+                    Filters.lt("bucket", new Date(policy.minuteRollupHorizon(nowMillis)))), budget);
+            deletedRollups.add(rollups);
+
+            long alerts = deleteExpired("Alert", Filters.and(
+                    Filters.eq("resolved", true),
+                    Filters.lt("timestamp", new Date(policy.resolvedAlertHorizon(nowMillis)))), budget);
+            deletedAlerts.add(alerts);
+            deleted += rollups + alerts;
+        } catch (Exception e) {
+            // Thrown out of a scheduled run, it would cancel the next ones
+            logger.log(Level.WARNING, "Retention run stopped after deleting " + deleted + " documents", e);
+        }
+        if (budget.exhausted()) {
+            logger.info("Retention run deleted " + deleted + " documents and stopped at its batch limit");
+        }
+        return deleted;
+    }
+
+    private long purgeReadings(Bson type, long horizon, Budget budget) {
+        long deleted = deleteExpired(HealthRecordDocuments.COLLECTION,
+                Filters.and(type, Filters.lt("timestamp", new Date(horizon))), budget);
+        deleted += deleteExpired(HealthRecordBuckets.COLLECTION,
+                Filters.and(type, Filters.lte("start", new Date(horizon - BUCKET_MILLIS))), budget);
+        deleted += deleteExpired(ReadingArchive.COLLECTION,
+                Filters.and(type, Filters.lte("start", new Date(horizon - ARCHIVE_BLOCK_MILLIS))), budget);
+        deletedReadings.add(deleted);
+        return deleted;
+    }
+
+    // Deletes the documents matching filter, batch by batch, while the run has budget left
+    private long deleteExpired(String collection, Bson filter, Budget budget) {
+        MongoCollection<Document> documents = mongo.collection(collection);
+        long deleted = 0;
+        while (running && !Thread.currentThread().isInterrupted() && budget.take()) {
+            if (!execution.hasSpareCapacity()) {
+                deferredBatches.increment();
+                pause();
+                continue;
+            }
+            Long batch = execution.withPermit(() -> {
+                List<Object> ids = documents.find(filter)
+                        .projection(Projections.include("_id"))
+                        .limit(batchSize)
+                        .map(document -> document.get("_id"))
+                        .into(new ArrayList<>());
+                return ids.isEmpty() ? -1L : documents.deleteMany(Filters.in("_id", ids)).getDeletedCount();
+            });
+            if (batch < 0) {
+                break;
+            }
+            deleted += batch;
+            pause();
+        }
+        return deleted;
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(batchPauseMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Budget {
+        private int remaining;
+        private boolean exhausted;
+
+        Budget(int batches) {
+            this.remaining = batches;
+        }
+
+        boolean take() {
+            if (remaining == 0) {
+                exhausted = true;
+                return false;
+            }
+            remaining--;
+            return true;
+        }
+
+        boolean exhausted() {
+            return exhausted;
+        }
+    }
+}
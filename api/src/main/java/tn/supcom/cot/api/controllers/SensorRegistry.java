@@ -0,0 +1,180 @@
+package tn.supcom.cot.api.controllers;
+
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.bson.Document;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import tn.supcom.cot.api.entities.Sensor;
+import tn.supcom.cot.api.repositories.MongoConnection;
+import tn.supcom.cot.api.repositories.SensorRepository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * In-memory device registry.
+ *
+ * Caches deviceId -> Sensor lookups (including unknown devices) with TTL and
+ * LRU size eviction, so MQTT ingestion does not query MongoDB per message.
+ * Device heartbeats are merged in memory and written back as one bulk update
+ * per flush interval instead of one save per reading.
+ */
+@ApplicationScoped
+public class SensorRegistry {
+
+    private static final Logger logger = Logger.getLogger(SensorRegistry.class.getName());
+
+    private static final String COLLECTION = "Sensor";
+
+    @Inject
+    SensorRepository repository;
+
+    @Inject
+    MongoConnection mongo;
+
+    @Resource
+    ManagedScheduledExecutorService scheduler;
+
+    @Inject
+    @ConfigProperty(name = "sensor.registry.cache.size", defaultValue = "10000")
+    int maxSize;
+
+    @Inject
+    @ConfigProperty(name = "sensor.registry.cache.ttl.seconds", defaultValue = "300")
+    long ttlSeconds;
+
+    @Inject
+    @ConfigProperty(name = "sensor.heartbeat.flush.seconds", defaultValue = "30")
+    long heartbeatFlushSeconds;
+
+    private record CacheEntry(Sensor sensor, long expiresAt) {
+    }
+
+    // Access-ordered map used as an LRU cache, guarded by "cache"
+    private final Map<String, CacheEntry> cache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    // Sensor id -> most recent connection time not yet written to MongoDB
+    private final Map<String, LocalDateTime> heartbeats = new ConcurrentHashMap<>();
+
+    private ScheduledFuture<?> flushTask;
+
+    @PostConstruct
+    void init() {
+        if (scheduler != null) {
+            flushTask = scheduler.scheduleAtFixedRate(this::flushHeartbeats,
+                    heartbeatFlushSeconds, heartbeatFlushSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+        }
+        flushHeartbeats();
+    }
+
+    /**
+     * Looks up the sensor registered for a device id, hitting MongoDB only on a cache miss.
+     */
+    public Optional<Sensor> find(String deviceId) {
+        long now = System.currentTimeMillis();
+        synchronized (cache) {
+            CacheEntry entry = cache.get(deviceId);
+            if (entry != null && entry.expiresAt() > now) {
+                return Optional.ofNullable(entry.sensor());
+            }
+        }
+
+        Sensor sensor = repository.findByDeviceId(deviceId).orElse(null);
+        synchronized (cache) {
+            cache.put(deviceId, new CacheEntry(sensor, now + TimeUnit.SECONDS.toMillis(ttlSeconds)));
+        }
+        return Optional.ofNullable(sensor);
+    }
+
+    /**
+     * Drops a device from the cache, e.g. after it was registered, reassigned or removed.
+     */
+    public void invalidate(String deviceId) {
+        if (deviceId == null) {
+            return;
+        }
+        synchronized (cache) {
+            cache.remove(deviceId);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    public int cachedDevices() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Records that a device was seen; written back on the next heartbeat flush.
+     */
+    public void heartbeat(Sensor sensor, LocalDateTime seenAt) {
+        sensor.setLastConnection(seenAt);
+        sensor.setStatus("active");
+        heartbeats.merge(sensor.getId(), seenAt, (previous, current) -> current.isAfter(previous) ? current : previous);
+    }
+
+    public int pendingHeartbeats() {
+        return heartbeats.size();
+    }
+
+    /**
+     * Writes all pending heartbeats as a single unordered bulk update.
+     */
+    public void flushHeartbeats() {
+        if (heartbeats.isEmpty()) {
+            return;
+        }
+        List<WriteModel<Document>> updates = new ArrayList<>();
+        for (String sensorId : List.copyOf(heartbeats.keySet())) {
+            LocalDateTime seenAt = heartbeats.remove(sensorId);
+            if (seenAt != null) {
+                updates.add(new UpdateOneModel<>(Filters.eq("_id", sensorId),
+                        Updates.combine(Updates.set("lastConnection", seenAt), Updates.set("status", "active"))));
+            }
+        }
+        if (updates.isEmpty()) {
+            return;
+        }
+        try {
+            mongo.collection(COLLECTION).bulkWrite(updates, new BulkWriteOptions().ordered(false));
+        } catch (Exception e) {
+            // Heartbeats are best effort; the next reading of each device schedules a new one
+            logger.warning("Failed to flush " + updates.size() + " sensor heartbeats: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package tn.supcom.cot.api.controllers;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling of a time series.
+ *
+ * Keeps the first and last points and, in each of threshold - 2 equal
+ * buckets in between, the point forming the largest triangle with the point
+ * kept in the previous bucket and the average of the next bucket. Peaks and
+ * dips survive, which plain averaging or decimation would flatten: a short
+ * tachycardia episode stays visible on a week-long chart.
+ */
+public final class SeriesDownsampler {
+
+    private SeriesDownsampler() {
+    }
+
+    /**
+     * @param x         timestamps, in increasing order
+     * @param y         values, same length as x
+     * @param threshold number of points wanted, at least 3
+     * @return indexes of the selected points, increasing; all of them when
+     *         there are no more than threshold points
+     */
+    public static int[] lttb(long[] x, double[] y, int threshold) {
+        int size = y.length;
+        if (threshold >= size || threshold < 3) {
+            int[] all = new int[size];
+            for (int i = 0; i < size; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        int[] selected = new int[threshold];
+        int count = 0;
+        // Buckets split points 1..size-2, the first and last points being kept as is
+        double every = (double) (size - 2) / (threshold - 2);
+        int a = 0;
+        selected[count++] = a;
+
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            // Average of the next bucket (the last point for the last bucket)
+            int nextStart = (int) Math.floor((bucket + 1) * every) + 1;
+            int nextEnd = Math.min((int) Math.floor((bucket + 2) * every) + 1, size);
+            double avgX = 0;
+            double avgY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                // Relative to x[a] so that epoch millis keep their precision as doubles
+                avgX += x[i] - x[a];
+                avgY += y[i];
+            }
+            int nextLength = nextEnd - nextStart;
+            if (nextLength == 0) {
+                avgX = x[size - 1] - x[a];
+                avgY = y[size - 1];
+            } else {
+                avgX /= nextLength;
+                avgY /= nextLength;
+            }
+
+            int start = (int) Math.floor(bucket * every) + 1;
+            int end = (int) Math.floor((bucket + 1) * every) + 1;
+            double maxArea = -1;
+            int next = start;
+            for (int i = start; i < end; i++) {
+                // Twice the triangle area, with (x[a], y[a]) as origin
+                double area = Math.abs((x[i] - x[a]) * (avgY - y[a]) - avgX * (y[i] - y[a]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = i;
+                }
+            }
+            selected[count++] = next;
+            a = next;
+        }
+
+        selected[count] = size - 1;
+        return selected;
+    }
+}
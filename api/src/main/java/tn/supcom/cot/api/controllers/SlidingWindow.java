@@ -0,0 +1,238 @@
+package tn.supcom.cot.api.controllers;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recent readings of one patient and sensor type, in fixed-size primitive
+ * ring buffers, with the state of the windowed rules evaluated on them.
+ *
+ * Every rule keeps O(1) state updated on each reading:
+ * - SUSTAINED: since when the threshold has been broken without interruption
+ * - SLOPE: least-squares sums over the readings of its window, each reading
+ *   added once and removed once as the window slides
+ * - TREND: the number of consecutive readings moving in its direction
+ * A rule fires once when its condition starts to hold, and again only after
+ * it stopped holding. The buffer keeps the last capacity readings: a SLOPE
+ * window holding more readings than that is cut to them.
+ *
+ * Readings older than the last one (out of order) are ignored.
+ */
+final class SlidingWindow {
+
+    private static final long NONE = Long.MIN_VALUE;
+
+    private static final double MILLIS_PER_MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    // Sums are re-based once the newest reading is this far from their origin, keeping them precise
+    private static final long REBASE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final long[] times;
+    private final double[] values;
+    // Readings ever added; the buffer holds [added - size, added)
+    private long added;
+    private int size;
+
+    private ThresholdRules.Rule[] rules = ThresholdRules.NO_RULES;
+    private long[] since;
+    private long[] tail;
+    private int[] count;
+    private double[] sumT;
+    private double[] sumV;
+    private double[] sumTT;
+    private double[] sumTV;
+    private boolean[] active;
+    private long origin = NONE;
+
+    private volatile long lastSeen;
+
+    SlidingWindow(int capacity) {
+        this.times = new long[capacity];
+        this.values = new double[capacity];
+    }
+
+    long lastSeen() {
+        return lastSeen;
+    }
+
+    /**
+     * Adds a reading and evaluates the rules on the window.
+     *
+     * @param rules the windowed rules in force for the patient and type (one per kind and direction)
+     * @return the rules that fired, as a bit mask of their positions in rules
+     */
+    synchronized int add(long time, double value, ThresholdRules.Rule[] rules) {
+        if (rules != this.rules) {
+            reset(rules);
+        }
+        long previousTime = size == 0 ? NONE : times[index(added - 1)];
+        if (previousTime != NONE && time < previousTime) {
+            return 0;
+        }
+        double previousValue = size == 0 ? Double.NaN : values[index(added - 1)];
+        lastSeen = System.currentTimeMillis();
+
+        int slot = index(added);
+        times[slot] = time;
+        values[slot] = value;
+        added++;
+        if (size < times.length) {
+            size++;
+        }
+        if (origin == NONE) {
+            origin = time;
+        } else if (time - origin > REBASE_MILLIS) {
+            rebase();
+        }
+
+        int fired = 0;
+        for (int r = 0; r < rules.length; r++) {
+            ThresholdRules.Rule rule = rules[r];
+            boolean holds = switch (rule.kind()) {
+                case SUSTAINED -> sustained(r, rule, time, previousTime, value);
+                case SLOPE -> slope(r, rule, time, value);
+                case TREND -> trend(r, rule, value, previousValue);
+                case READING -> false;
+            };
+            if (holds && !active[r]) {
+                fired |= 1 << r;
+            }
+            active[r] = holds;
+        }
+        return fired;
+    }
+
+    private boolean sustained(int r, ThresholdRules.Rule rule, long time, long previousTime, double value) {
+        boolean broken = rule.above() ? value > rule.threshold() : value < rule.threshold();
+        // A gap longer than the window is not "without interruption"
+        if (!broken || (previousTime != NONE && time - previousTime > rule.windowMillis())) {
+            since[r] = broken ? time : NONE;
+            return false;
+        }
+        if (since[r] == NONE) {
+            since[r] = time;
+        }
+        return time - since[r] >= rule.windowMillis();
+    }
+
+    private boolean slope(int r, ThresholdRules.Rule rule, long time, double value) {
+        include(r, time, value);
+        // Slide: drop the readings out of the window
+        long first = added - size;
+        while (tail[r] < added) {
+            if (tail[r] < first) {
+                // Overwritten in the buffer before it left the window: sum the buffer again
+                resum(r, first);
+                continue;
+            }
+            long oldest = times[index(tail[r])];
+            if (oldest > time - rule.windowMillis()) {
+                break;
+            }
+            exclude(r, oldest, values[index(tail[r])]);
+            tail[r]++;
+        }
+        // Half a window of readings at least, or as many as the buffer holds
+        if (count[r] < 3 || (time - times[index(tail[r])] < rule.windowMillis() / 2 && count[r] < times.length)) {
+            return false;
+        }
+        double n = count[r];
+        double denominator = n * sumTT[r] - sumT[r] * sumT[r];
+        if (denominator <= 0) {
+            return false;
+        }
+        double slope = (n * sumTV[r] - sumT[r] * sumV[r]) / denominator;
+        return rule.above() ? slope > rule.threshold() : slope < rule.threshold();
+    }
+
+    private boolean trend(int r, ThresholdRules.Rule rule, double value, double previousValue) {
+        double step = value - previousValue;
+        boolean moved = rule.above() ? step > rule.threshold() : step < -rule.threshold();
+        count[r] = moved ? count[r] + 1 : 0;
+        return count[r] >= rule.samples();
+    }
+
+    private void include(int r, long time, double value) {
+        double t = (time - origin) / MILLIS_PER_MINUTE;
+        count[r]++;
+        sumT[r] += t;
+        sumV[r] += value;
+        sumTT[r] += t * t;
+        sumTV[r] += t * value;
+    }
+
+    private void exclude(int r, long time, double value) {
+        double t = (time - origin) / MILLIS_PER_MINUTE;
+        count[r]--;
+        sumT[r] -= t;
+        sumV[r] -= value;
+        sumTT[r] -= t * t;
+        sumTV[r] -= t * value;
+    }
+
+    // Recomputes the sums of rule r over the buffered readings from position from
+    private void resum(int r, long from) {
+        count[r] = 0;
+        sumT[r] = sumV[r] = sumTT[r] = sumTV[r] = 0;
+        tail[r] = from;
+        for (long i = from; i < added; i++) {
+            include(r, times[index(i)], values[index(i)]);
+        }
+    }
+
+    private void rebase() {
+        origin = times[index(added - size)];
+        for (int r = 0; r < rules.length; r++) {
+            if (rules[r].kind() == ThresholdRules.Kind.SLOPE) {
+                resum(r, Math.max(tail[r], added - size));
+            }
+        }
+    }
+
+    // Rules reloaded: the state of the rules still in force carries over, new ones start from the buffer
+    private void reset(ThresholdRules.Rule[] rules) {
+        ThresholdRules.Rule[] previous = this.rules;
+        long[] previousSince = since;
+        long[] previousTail = tail;
+        int[] previousCount = count;
+        double[] previousSumT = sumT;
+        double[] previousSumV = sumV;
+        double[] previousSumTT = sumTT;
+        double[] previousSumTV = sumTV;
+        boolean[] previousActive = active;
+
+        this.rules = rules;
+        int n = rules.length;
+        since = new long[n];
+        tail = new long[n];
+        count = new int[n];
+        sumT = new double[n];
+        sumV = new double[n];
+        sumTT = new double[n];
+        sumTV = new double[n];
+        active = new boolean[n];
+        for (int r = 0; r < n; r++) {
+            int p = Arrays.asList(previous).indexOf(rules[r]);
+            if (p >= 0) {
+                since[r] = previousSince[p];
+                tail[r] = previousTail[p];
+                count[r] = previousCount[p];
+                sumT[r] = previousSumT[p];
+                sumV[r] = previousSumV[p];
+                sumTT[r] = previousSumTT[p];
+                sumTV[r] = previousSumTV[p];
+                active[r] = previousActive[p];
+            } else {
+                since[r] = NONE;
+                tail[r] = added;
+                if (rules[r].kind() == ThresholdRules.Kind.SLOPE) {
+                    resum(r, added - size);
+                }
+            }
+        }
+    }
+
+    private int index(long position) {
+        return (int) (position % times.length);
+    }
+}
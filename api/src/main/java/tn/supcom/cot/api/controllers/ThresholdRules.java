@@ -0,0 +1,425 @@
+package tn.supcom.cot.api.controllers;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import tn.supcom.cot.api.entities.HealthRecord;
+import tn.supcom.cot.api.entities.SensorType;
+import tn.supcom.cot.api.entities.ThresholdRule;
+import tn.supcom.cot.api.metrics.IngestionMetrics;
+import tn.supcom.cot.api.metrics.LatencyHistogram;
+import tn.supcom.cot.api.repositories.ThresholdRuleRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Threshold alerting on stored readings (alerts.rules.enabled=true).
+ *
+ * Rules (the ThresholdRule collection, over built-in defaults for the
+ * former hard-coded limits) are compiled into a table indexed by
+ * SensorType ordinal. Each entry holds the general thresholds and the
+ * patients with rules of their own, already merged with the general ones.
+ * Evaluating a reading costs an array access, at most one map lookup and
+ * two comparisons, and allocates nothing.
+ *
+ * Windowed rules (SUSTAINED, SLOPE, TREND) are evaluated on a
+ * {@link SlidingWindow} per patient and type: a fixed-size ring buffer of
+ * alerts.window.capacity readings, updated in O(1) amortized per reading.
+ * Windows of patients without readings for alerts.window.idle.minutes are
+ * dropped. The default tachycardia rule is windowed, so that one noisy
+ * sample does not raise an alert: heart rate above 130 for 60 seconds.
+ *
+ * The table is rebuilt every alerts.rules.reload.seconds and after each
+ * change through /api/rules, and swapped at once: a reading is evaluated
+ * against either the old or the new rules, never a mix.
+ *
+ * Stored readings reach {@link #check} through the {@link AlertStage}; the
+ * time from a reading to its alert is recorded in the alerts.latency.reading
+ * histogram.
+ */
+@ApplicationScoped
+public class ThresholdRules {
+
+    private static final Logger logger = Logger.getLogger(ThresholdRules.class.getName());
+
+    // Former hard-coded limits; a general rule with the same type and condition replaces them
+    static final List<ThresholdRule> DEFAULTS = List.of(
+            new ThresholdRule(null, SensorType.TEMPERATURE, ThresholdRule.ABOVE, 39.0,
+                    "HIGH_TEMPERATURE", "HIGH", "High Fever Detected"),
+            sustained(new ThresholdRule(null, SensorType.HEART_RATE, ThresholdRule.ABOVE, 130.0,
+                    "TACHYCARDIA", "HIGH", "Tachycardia Detected"), 60),
+            new ThresholdRule(null, SensorType.SPO2, ThresholdRule.BELOW, 90.0,
+                    "LOW_SPO2", "HIGH", "Low Oxygen Saturation"),
+            new ThresholdRule(null, SensorType.BLOOD_PRESSURE, ThresholdRule.ABOVE, 180.0,
+                    "HIGH_BLOOD_PRESSURE", "HIGH", "High Blood Pressure"));
+
+    static final Rule[] NO_RULES = new Rule[0];
+
+    // Type names of readings, resolved without SensorType.valueOf's exception for unknown ones
+    private static final Map<String, SensorType> TYPES = new HashMap<>();
+
+    static {
+        for (SensorType type : SensorType.values()) {
+            TYPES.put(type.name(), type);
+        }
+    }
+
+    @Inject
+    ThresholdRuleRepository repository;
+
+    @Inject
+    AlertController alerts;
+
+    @Inject
+    IngestionMetrics metrics;
+
+    @Resource
+    ManagedScheduledExecutorService scheduler;
+
+    @Inject
+    @ConfigProperty(name = "alerts.rules.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @Inject
+    @ConfigProperty(name = "alerts.rules.reload.seconds", defaultValue = "30")
+    long reloadSeconds;
+
+    @Inject
+    @ConfigProperty(name = "alerts.window.capacity", defaultValue = "256")
+    int windowCapacity;
+
+    @Inject
+    @ConfigProperty(name = "alerts.window.idle.minutes", defaultValue = "60")
+    long windowIdleMinutes;
+
+    private volatile Table table = Table.compile(DEFAULTS);
+
+    private final LongAdder evaluated = new LongAdder();
+    private final LongAdder raised = new LongAdder();
+    private LatencyHistogram alertLatency = new LatencyHistogram();
+
+    // Patient id -> windows by SensorType ordinal, created for types with windowed rules
+    private final Map<String, SlidingWindow[]> windows = new ConcurrentHashMap<>();
+
+    private ScheduledFuture<?> reloadTask;
+    private ScheduledFuture<?> evictTask;
+
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        metrics.gauge("alerts.rules.evaluated", evaluated::sum);
+        metrics.gauge("alerts.rules.raised", raised::sum);
+        metrics.gauge("alerts.windows.patients", windows::size);
+        alertLatency = metrics.histogram("alerts.latency.reading");
+        reload();
+        if (scheduler != null) {
+            reloadTask = scheduler.scheduleWithFixedDelay(this::reload,
+                    reloadSeconds, reloadSeconds, TimeUnit.SECONDS);
+            evictTask = scheduler.scheduleWithFixedDelay(() -> evictIdle(System.currentTimeMillis()),
+                    windowIdleMinutes, windowIdleMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (reloadTask != null) {
+            reloadTask.cancel(false);
+        }
+        if (evictTask != null) {
+            evictTask.cancel(false);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Recompiles the rules from MongoDB; the previous ones stay in force if that fails.
+     */
+    public void reload() {
+        try {
+            List<ThresholdRule> rules = new ArrayList<>(DEFAULTS);
+            rules.addAll(repository.findAll().toList());
+            compile(rules);
+        } catch (Exception e) {
+            // Thrown out of a scheduled run, it would cancel the next ones
+            logger.log(Level.WARNING, "Failed to reload threshold rules, keeping the previous ones", e);
+        }
+    }
+
+    private static ThresholdRule sustained(ThresholdRule rule, int seconds) {
+        rule.setKind(ThresholdRule.SUSTAINED);
+        rule.setWindowSeconds(seconds);
+        return rule;
+    }
+
+    // Puts the rules in force, later ones replacing earlier ones with the same patient, type and condition
+    void compile(List<ThresholdRule> rules) {
+        table = Table.compile(rules);
+    }
+
+    /**
+     * Single-reading rules only: windowed ones need the readings before.
+     *
+     * @return the rule the reading breaks, or null
+     */
+    public Rule evaluate(HealthRecord record) {
+        Double value = record.getValue();
+        SensorType type = record.getType() == null ? null : TYPES.get(record.getType());
+        if (value == null || type == null) {
+            return null;
+        }
+        return table.rules(record.getPatientId(), type).check(value);
+    }
+
+    /**
+     * Evaluates every rule on a new reading, adding it to the windows of its
+     * patient and type, and raises an alert for each rule that fired.
+     *
+     * Readings of the same patient must be checked one at a time and in
+     * order, as the {@link AlertStage} does.
+     */
+    public void check(HealthRecord record) {
+        evaluated.increment();
+        Double value = record.getValue();
+        SensorType type = record.getType() == null ? null : TYPES.get(record.getType());
+        if (value == null || type == null || record.getPatientId() == null) {
+            return;
+        }
+        Rules rules = table.rules(record.getPatientId(), type);
+        Rule broken = rules.check(value);
+        if (broken != null) {
+            raise(record, broken);
+        }
+        if (rules.windowed().length == 0 || record.getTimestamp() == null) {
+            return;
+        }
+        SlidingWindow[] own = windows.computeIfAbsent(record.getPatientId(),
+                patient -> new SlidingWindow[SensorType.values().length]);
+        SlidingWindow window = own[type.ordinal()];
+        if (window == null) {
+            window = window(own, type);
+        }
+        LocalDateTime timestamp = record.getTimestamp();
+        long millis = timestamp.toEpochSecond(ZoneOffset.UTC) * 1000 + timestamp.getNano() / 1_000_000;
+        int fired = window.add(millis, value, rules.windowed());
+        for (int r = 0; fired != 0; r++, fired >>>= 1) {
+            if ((fired & 1) != 0) {
+                raise(record, rules.windowed()[r]);
+            }
+        }
+    }
+
+    private SlidingWindow window(SlidingWindow[] own, SensorType type) {
+        synchronized (own) {
+            if (own[type.ordinal()] == null) {
+                own[type.ordinal()] = new SlidingWindow(windowCapacity);
+            }
+            return own[type.ordinal()];
+        }
+    }
+
+    private void raise(HealthRecord record, Rule rule) {
+        try {
+            alerts.createThresholdAlert(record, rule);
+            raised.increment();
+            if (record.getTimestamp() != null) {
+                alertLatency.record(Duration.between(record.getTimestamp(), LocalDateTime.now()).toMillis());
+            }
+        } catch (RuntimeException e) {
+            // The reading is stored either way; do not fail its submission
+            logger.log(Level.WARNING, "Failed to raise " + rule.alertType() + " alert for patient "
+                    + record.getPatientId(), e);
+        }
+    }
+
+    // Windows without readings for alerts.window.idle.minutes are dropped, bounding memory to active patients
+    void evictIdle(long nowMillis) {
+        long idleBefore = nowMillis - TimeUnit.MINUTES.toMillis(windowIdleMinutes);
+        windows.values().removeIf(own -> {
+            synchronized (own) {
+                for (SlidingWindow window : own) {
+                    if (window != null && window.lastSeen() >= idleBefore) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        });
+    }
+
+    boolean hasWindows(String patientId) {
+        return windows.containsKey(patientId);
+    }
+
+    /**
+     * How a rule looks at the readings: one at a time, or over a window.
+     */
+    public enum Kind {
+        READING,    // the reading is above (below) the threshold
+        SUSTAINED,  // readings stayed above (below) the threshold for windowMillis
+        SLOPE,      // the least-squares slope over windowMillis, per minute, is above (below) the threshold
+        TREND       // samples consecutive readings each rose (fell) by more than the threshold
+    }
+
+    /**
+     * A compiled rule; a switched-off one has a NaN threshold, which no value crosses.
+     */
+    public record Rule(SensorType type, Kind kind, boolean above, double threshold, long windowMillis, int samples,
+                       String alertType, String severity, String message) {
+    }
+
+    // The rules in force for one type and patient
+    record Rules(Rule above, Rule below, Rule[] windowed) {
+
+        Rule check(double value) {
+            if (above != null && value > above.threshold) {
+                return above;
+            }
+            if (below != null && value < below.threshold) {
+                return below;
+            }
+            return null;
+        }
+    }
+
+    static final class Table {
+
+        // One rule per kind and direction
+        private static final int SLOTS = Kind.values().length * 2;
+
+        private static final Rules NONE = new Rules(null, null, NO_RULES);
+
+        // By SensorType ordinal
+        private final Rules[] general;
+        private final Map<String, Rules>[] patients;
+
+        private Table(Rules[] general, Map<String, Rules>[] patients) {
+            this.general = general;
+            this.patients = patients;
+        }
+
+        Rules rules(String patientId, SensorType type) {
+            int i = type.ordinal();
+            Map<String, Rules> own = patients[i];
+            Rules rules = own.isEmpty() || patientId == null ? null : own.get(patientId);
+            return rules != null ? rules : general[i];
+        }
+
+        /**
+         * Later rules replace earlier ones with the same patient, type, kind and condition.
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        static Table compile(List<ThresholdRule> rules) {
+            int types = SensorType.values().length;
+            Rule[][] general = new Rule[types][SLOTS];
+            List<Map<String, Rule[]>> patients = new ArrayList<>(types);
+            for (int i = 0; i < types; i++) {
+                patients.add(new HashMap<>());
+            }
+
+            for (ThresholdRule rule : rules) {
+                Rule compiled = compile(rule);
+                if (compiled == null) {
+                    continue;
+                }
+                int slot = compiled.kind().ordinal() * 2 + (compiled.above() ? 0 : 1);
+                int i = compiled.type().ordinal();
+                if (rule.getPatientId() == null) {
+                    // A switched-off general rule leaves the type without one
+                    general[i][slot] = Double.isNaN(compiled.threshold()) ? null : compiled;
+                } else {
+                    patients.get(i).computeIfAbsent(rule.getPatientId(), patient -> new Rule[SLOTS])[slot] = compiled;
+                }
+            }
+
+            Rules[] generalTable = new Rules[types];
+            Map<String, Rules>[] patientTable = new Map[types];
+            for (int i = 0; i < types; i++) {
+                generalTable[i] = rules(general[i]);
+                Map<String, Rules> own = new HashMap<>();
+                for (Map.Entry<String, Rule[]> entry : patients.get(i).entrySet()) {
+                    Rule[] slots = entry.getValue();
+                    for (int slot = 0; slot < SLOTS; slot++) {
+                        if (slots[slot] == null) {
+                            slots[slot] = general[i][slot];
+                        }
+                    }
+                    own.put(entry.getKey(), rules(slots));
+                }
+                patientTable[i] = own;
+            }
+            return new Table(generalTable, patientTable);
+        }
+
+        private static Rules rules(Rule[] slots) {
+            List<Rule> windowed = new ArrayList<>();
+            for (int slot = 2; slot < SLOTS; slot++) {
+                if (slots[slot] != null && !Double.isNaN(slots[slot].threshold())) {
+                    windowed.add(slots[slot]);
+                }
+            }
+            if (slots[0] == null && slots[1] == null && windowed.isEmpty()) {
+                return NONE;
+            }
+            return new Rules(slots[0], slots[1], windowed.toArray(NO_RULES));
+        }
+
+        private static Rule compile(ThresholdRule rule) {
+            SensorType type = rule.getType() == null ? null : TYPES.get(rule.getType());
+            Kind kind = kind(rule.getKind());
+            boolean above = ThresholdRule.ABOVE.equals(rule.getCondition());
+            boolean off = Boolean.FALSE.equals(rule.getEnabled());
+            String invalid = type == null || kind == null ? "type or kind"
+                    : !(above || ThresholdRule.BELOW.equals(rule.getCondition())) ? "condition"
+                    : rule.getThreshold() == null && kind != Kind.TREND && !off ? "threshold"
+                    : (kind == Kind.SUSTAINED || kind == Kind.SLOPE)
+                            && (rule.getWindowSeconds() == null || rule.getWindowSeconds() < 1) ? "windowSeconds"
+                    : kind == Kind.TREND && (rule.getSamples() == null || rule.getSamples() < 2) ? "samples"
+                    : null;
+            if (invalid != null) {
+                logger.warning("Ignoring threshold rule " + rule.getId() + ": invalid " + invalid);
+                return null;
+            }
+            double threshold = off ? Double.NaN : rule.getThreshold() != null ? rule.getThreshold() : 0;
+            return new Rule(type, kind, above, threshold,
+                    rule.getWindowSeconds() == null ? 0 : TimeUnit.SECONDS.toMillis(rule.getWindowSeconds()),
+                    rule.getSamples() == null ? 0 : rule.getSamples(),
+                    rule.getAlertType() != null ? rule.getAlertType() : (above ? "HIGH_" : "LOW_") + type.name(),
+                    rule.getSeverity() != null ? rule.getSeverity() : "HIGH",
+                    rule.getMessage() != null ? rule.getMessage()
+                            : type.name() + (above ? " above " : " below ") + threshold);
+        }
+
+        static Kind kind(String name) {
+            if (name == null) {
+                return Kind.READING;
+            }
+            for (Kind kind : Kind.values()) {
+                if (kind.name().equals(name)) {
+                    return kind;
+                }
+            }
+            return null;
+        }
+    }
+}
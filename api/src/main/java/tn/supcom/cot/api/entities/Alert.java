@@ -54,6 +54,12 @@ public class Alert {
     @Column
     private String notes;
 
+    @Column
+    private Integer occurrences; // Triggers folded into this alert, including the first
+
+    @Column
+    private LocalDateTime lastSeen; // Latest trigger
+
     // Constructors
     public Alert() {
         this.timestamp = LocalDateTime.now();
@@ -173,6 +179,22 @@ public class Alert {
         this.notes = notes;
     }
 
+    public Integer getOccurrences() {
+        return occurrences;
+    }
+
+    public void setOccurrences(Integer occurrences) {
+        this.occurrences = occurrences;
+    }
+
+    public LocalDateTime getLastSeen() {
+        return lastSeen;
+    }
+
+    public void setLastSeen(LocalDateTime lastSeen) {
+        this.lastSeen = lastSeen;
+    }
+
     public void resolve(String resolvedBy) {
         this.resolved = true;
         this.resolvedAt = LocalDateTime.now();
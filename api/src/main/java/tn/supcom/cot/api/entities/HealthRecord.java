@@ -46,6 +46,10 @@ public class HealthRecord {
     @Column
     private String secondaryUnit;
 
+    // Device message sequence number, when the device sends one
+    @Column
+    private Long sequence;
+
     // Constructors
     public HealthRecord() {
         this.timestamp = LocalDateTime.now();
@@ -139,4 +143,12 @@ public class HealthRecord {
     public void setSecondaryUnit(String secondaryUnit) {
         this.secondaryUnit = secondaryUnit;
     }
+
+    public Long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(Long sequence) {
+        this.sequence = sequence;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,96 @@
+package tn.supcom.cot.api.entities;
+
+import jakarta.nosql.Column;
+import jakarta.nosql.Entity;
+import jakarta.nosql.Id;
+
+import java.time.LocalDateTime;
+
+/**
+ * Sensor Entity
+ *
+ * Represents a registered IoT device (ESP8266 board, AI camera, etc.).
+ * MQTT readings are attributed to a patient through the device mapping.
+ */
+@Entity
+public class Sensor {
+
+    @Id
+    private String id;
+
+    @Column
+    private String deviceId; // Identifier published by the device firmware
+
+    @Column
+    private String patientId; // Patient the device is attached to
+
+    @Column
+    private String status; // active, inactive
+
+    @Column
+    private LocalDateTime lastConnection;
+
+    @Column
+    private LocalDateTime createdAt;
+
+    // Constructors
+    public Sensor() {
+        this.createdAt = LocalDateTime.now();
+        this.status = "inactive";
+    }
+
+    public Sensor(String deviceId, String patientId) {
+        this();
+        this.deviceId = deviceId;
+        this.patientId = patientId;
+    }
+
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public void setDeviceId(String deviceId) {
+        this.deviceId = deviceId;
+    }
+
+    public String getPatientId() {
+        return patientId;
+    }
+
+    public void setPatientId(String patientId) {
+        this.patientId = patientId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public LocalDateTime getLastConnection() {
+        return lastConnection;
+    }
+
+    public void setLastConnection(LocalDateTime lastConnection) {
+        this.lastConnection = lastConnection;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -1,10 +1,21 @@
 package tn.supcom.cot.api.entities;
 
 public enum SensorType {
-    HEART_RATE,     // MAX30100
-    SPO2,           // MAX30100
-    TEMPERATURE,    // DS18B20
-    BLOOD_PRESSURE, // MPS20N0040D
-    FALL_DETECTION, // AI Camera
-    GPS_LOCATION    // For tracking
-}
\ No newline at end of file
+    HEART_RATE("bpm"),      // MAX30100
+    SPO2("%"),              // MAX30100
+    TEMPERATURE("°C"),      // DS18B20
+    BLOOD_PRESSURE("mmHg"), // MPS20N0040D (systolic, diastolic)
+    FALL_DETECTION("event"), // AI Camera (1 = fall detected)
+    GPS_LOCATION("°");      // For tracking (latitude, longitude)
+
+    private final String unit;
+
+    SensorType(String unit) {
+        this.unit = unit;
+    }
+
+    // Unit stored with readings of this type (for both values of paired readings)
+    public String getUnit() {
+        return unit;
+    }
+}
@@ -0,0 +1,194 @@
+package tn.supcom.cot.api.entities;
+
+import jakarta.nosql.Column;
+import jakarta.nosql.Entity;
+import jakarta.nosql.Id;
+
+import java.time.LocalDateTime;
+
+/**
+ * ThresholdRule Entity
+ *
+ * Raises an alert when a reading of a sensor type goes above or below a
+ * threshold. Rules without patientId apply to every patient; a patient's
+ * own rule replaces the general one with the same type, kind and condition.
+ *
+ * Kinds other than READING look at the recent readings:
+ * - SUSTAINED: above (below) the threshold for windowSeconds
+ * - SLOPE: the trend over windowSeconds, in units per minute, is above
+ *   (below) the threshold, e.g. SpO2 BELOW -2 over 300 seconds
+ * - TREND: samples consecutive readings each rose (ABOVE) or fell (BELOW)
+ *   by more than the threshold (default 0)
+ */
+@Entity
+public class ThresholdRule {
+
+    public static final String ABOVE = "ABOVE";
+    public static final String BELOW = "BELOW";
+
+    public static final String READING = "READING";
+    public static final String SUSTAINED = "SUSTAINED";
+    public static final String SLOPE = "SLOPE";
+    public static final String TREND = "TREND";
+
+    @Id
+    private String id;
+
+    @Column
+    private String patientId; // null for every patient
+
+    @Column
+    private String type; // SensorType name
+
+    @Column
+    private String condition; // ABOVE, BELOW
+
+    @Column
+    private Double threshold;
+
+    @Column
+    private String kind; // READING (default), SUSTAINED, SLOPE, TREND
+
+    @Column
+    private Integer windowSeconds; // SUSTAINED, SLOPE
+
+    @Column
+    private Integer samples; // TREND
+
+    @Column
+    private String alertType; // HIGH_TEMPERATURE, LOW_SPO2, etc.
+
+    @Column
+    private String severity; // LOW, MEDIUM, HIGH, CRITICAL
+
+    @Column
+    private String message; // Alert message, followed by the reading
+
+    @Column
+    private Boolean enabled; // false switches the general rule off for a patient
+
+    @Column
+    private LocalDateTime updatedAt;
+
+    // Constructors
+    public ThresholdRule() {
+        this.enabled = true;
+    }
+
+    public ThresholdRule(String patientId, SensorType type, String condition, double threshold,
+                         String alertType, String severity, String message) {
+        this();
+        this.patientId = patientId;
+        this.type = type.name();
+        this.condition = condition;
+        this.threshold = threshold;
+        this.alertType = alertType;
+        this.severity = severity;
+        this.message = message;
+    }
+
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getPatientId() {
+        return patientId;
+    }
+
+    public void setPatientId(String patientId) {
+        this.patientId = patientId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getCondition() {
+        return condition;
+    }
+
+    public void setCondition(String condition) {
+        this.condition = condition;
+    }
+
+    public Double getThreshold() {
+        return threshold;
+    }
+
+    public void setThreshold(Double threshold) {
+        this.threshold = threshold;
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public void setKind(String kind) {
+        this.kind = kind;
+    }
+
+    public Integer getWindowSeconds() {
+        return windowSeconds;
+    }
+
+    public void setWindowSeconds(Integer windowSeconds) {
+        this.windowSeconds = windowSeconds;
+    }
+
+    public Integer getSamples() {
+        return samples;
+    }
+
+    public void setSamples(Integer samples) {
+        this.samples = samples;
+    }
+
+    public String getAlertType() {
+        return alertType;
+    }
+
+    public void setAlertType(String alertType) {
+        this.alertType = alertType;
+    }
+
+    public String getSeverity() {
+        return severity;
+    }
+
+    public void setSeverity(String severity) {
+        this.severity = severity;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,116 @@
+package tn.supcom.cot.api.metrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram over fixed buckets from 1 ms to 60 s, roughly
+ * logarithmic (1, 2, 5, 10, 20, 50 ... ms), plus one for anything slower.
+ *
+ * Recording is a bucket lookup and a few LongAdder updates, without locks,
+ * from any number of threads. A percentile is the upper bound of the bucket
+ * its rank falls into, capped at the largest value recorded: it may
+ * overstate the latency by one bucket, never understate it.
+ */
+public final class LatencyHistogram {
+
+    static final long[] BOUNDS_MILLIS = {1, 2, 5, 10, 20, 50, 100, 200, 500,
+            1_000, 2_000, 5_000, 10_000, 30_000, 60_000};
+
+    private final LongAdder[] counts = new LongAdder[BOUNDS_MILLIS.length + 1];
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param millis latency in milliseconds; negative values (clock skew) count as 0
+     */
+    public void record(long millis) {
+        long value = Math.max(0, millis);
+        int bucket = 0;
+        while (bucket < BOUNDS_MILLIS.length && value > BOUNDS_MILLIS[bucket]) {
+            bucket++;
+        }
+        counts[bucket].increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long count() {
+        long count = 0;
+        for (LongAdder bucket : counts) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @param quantile between 0 and 1, e.g. 0.99
+     * @return the latency in milliseconds that quantile of the values did not exceed, 0 when empty
+     */
+    public long percentile(double quantile) {
+        long[] snapshot = snapshot();
+        return percentile(snapshot, total(snapshot), quantile);
+    }
+
+    /**
+     * Adds name.count, name.mean.ms, name.max.ms, name.p50.ms, name.p95.ms,
+     * name.p99.ms and the cumulative bucket counts name.le.{bound}ms.
+     */
+    void export(String name, Map<String, Long> values) {
+        long[] snapshot = snapshot();
+        long total = total(snapshot);
+        values.put(name + ".count", total);
+        values.put(name + ".mean.ms", total == 0 ? 0 : sum.sum() / total);
+        values.put(name + ".max.ms", max.get());
+        values.put(name + ".p50.ms", percentile(snapshot, total, 0.50));
+        values.put(name + ".p95.ms", percentile(snapshot, total, 0.95));
+        values.put(name + ".p99.ms", percentile(snapshot, total, 0.99));
+        long cumulative = 0;
+        for (int i = 0; i < BOUNDS_MILLIS.length; i++) {
+            cumulative += snapshot[i];
+            values.put(name + ".le." + BOUNDS_MILLIS[i] + "ms", cumulative);
+        }
+    }
+
+    private long[] snapshot() {
+        long[] snapshot = new long[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            snapshot[i] = counts[i].sum();
+        }
+        return snapshot;
+    }
+
+    private static long total(long[] snapshot) {
+        long total = 0;
+        for (long count : snapshot) {
+            total += count;
+        }
+        return total;
+    }
+
+    private long percentile(long[] snapshot, long total, double quantile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BOUNDS_MILLIS.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(BOUNDS_MILLIS[i], max.get());
+            }
+        }
+        return max.get();
+    }
+}
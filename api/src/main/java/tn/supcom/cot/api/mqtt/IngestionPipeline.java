@@ -0,0 +1,408 @@
+package tn.supcom.cot.api.mqtt;
+
+import tn.supcom.cot.api.entities.HealthRecord;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Staged ingestion pipeline for MQTT sensor payloads.
+ *
+ * The MQTT callback thread only offers the raw payload buffer to a bounded queue.
+ * Parser workers decode and enrich them into HealthRecords, and a single
+ * flusher groups the records into batches that are written when either the
+ * batch size or the linger time is reached. The queue is partitioned by device
+ * id, one partition per parser, so readings of a device keep their order.
+ *
+ * Every payload carries an acknowledgement callback that only runs once its
+ * records are persisted. Failed writes are retried instead of dropped, and
+ * while too many payloads wait to be persisted (or writes keep failing)
+ * acknowledgements are withheld so the broker stops sending and buffers.
+ * The watermarks are fractions of the most payloads that can be in flight at
+ * once: the broker's receive maximum, or the queue capacity if that is lower.
+ */
+public class IngestionPipeline {
+
+    private static final Logger logger = Logger.getLogger(IngestionPipeline.class.getName());
+
+    private static final long POLL_MILLIS = 100;
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 5_000;
+    private static final double HIGH_WATERMARK = 0.8;
+    private static final double LOW_WATERMARK = 0.5;
+
+    /**
+     * Turns a raw payload into zero or more enriched records.
+     */
+    @FunctionalInterface
+    public interface Decoder {
+        /**
+         * @param deviceId device id taken from the topic, or null when the topic carries none
+         */
+        List<HealthRecord> decode(String deviceId, ByteBuffer payload) throws Exception;
+    }
+
+    /**
+     * Persists one batch of records.
+     */
+    @FunctionalInterface
+    public interface BatchWriter {
+        void write(List<HealthRecord> batch) throws Exception;
+    }
+
+    private static final class Envelope {
+        final String deviceId;
+        final ByteBuffer payload;
+        final Runnable acknowledge;
+        List<HealthRecord> records;
+
+        Envelope(String deviceId, ByteBuffer payload, Runnable acknowledge) {
+            this.deviceId = deviceId;
+            this.payload = payload;
+            this.acknowledge = acknowledge;
+        }
+    }
+
+    private final List<BlockingQueue<Envelope>> partitions;
+    private final BlockingQueue<Envelope> decoded;
+    private final Decoder decoder;
+    private final BatchWriter writer;
+    private final int parserThreads;
+    private final int batchSize;
+    private final long lingerMillis;
+    private final int highWatermark;
+    private final int lowWatermark;
+
+    private final List<Thread> parsers = new ArrayList<>();
+    private Thread flusher;
+    private volatile boolean running;
+
+    // Flow control, guarded by "this"
+    private final List<Runnable> parkedAcks = new ArrayList<>();
+    private boolean paused;
+    private boolean writeFailing;
+    private long pausedSince;
+    private long pausedMillis;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder persisted = new LongAdder();
+    private final LongAdder malformed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder writeFailures = new LongAdder();
+
+    /**
+     * @param maxInFlight most unacknowledged payloads the source hands over at once,
+     *                    such as the MQTT receive maximum
+     */
+    public IngestionPipeline(int queueCapacity, int maxInFlight, int parserThreads, int batchSize, long lingerMillis,
+                             Decoder decoder, BatchWriter writer) {
+        if (queueCapacity < 1 || maxInFlight < 1 || parserThreads < 1 || batchSize < 1 || lingerMillis < 0) {
+            throw new IllegalArgumentException("Invalid ingestion pipeline settings");
+        }
+        // Each partition can take the whole capacity: a single busy device must not
+        // overflow its partition while the in-flight total is bounded by the broker window
+        List<BlockingQueue<Envelope>> queues = new ArrayList<>(parserThreads);
+        for (int i = 0; i < parserThreads; i++) {
+            queues.add(new ArrayBlockingQueue<>(queueCapacity));
+        }
+        this.partitions = List.copyOf(queues);
+        this.decoded = new ArrayBlockingQueue<>(queueCapacity);
+        this.parserThreads = parserThreads;
+        this.batchSize = batchSize;
+        this.lingerMillis = lingerMillis;
+        // Payloads beyond the broker window never arrive, so a watermark above it could never be reached
+        int window = Math.min(queueCapacity, maxInFlight);
+        this.highWatermark = Math.max(1, (int) (window * HIGH_WATERMARK));
+        this.lowWatermark = (int) (window * LOW_WATERMARK);
+        this.decoder = decoder;
+        this.writer = writer;
+    }
+
+    public synchronized void start(ThreadFactory threadFactory) {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < parserThreads; i++) {
+            BlockingQueue<Envelope> partition = partitions.get(i);
+            Thread parser = threadFactory.newThread(() -> parseLoop(partition));
+            parser.setName("ingest-parser-" + i);
+            parsers.add(parser);
+            parser.start();
+        }
+        flusher = threadFactory.newThread(this::flushLoop);
+        flusher.setName("ingest-flusher");
+        flusher.start();
+    }
+
+    /**
+     * Hands a payload over to the parser stage without blocking.
+     *
+     * @param deviceId    partition key; payloads of the same device are parsed in order
+     * @param acknowledge run once the payload's records are persisted
+     * @return false when the queue is full and the payload was not accepted
+     */
+    public boolean submit(String deviceId, ByteBuffer payload, Runnable acknowledge) {
+        BlockingQueue<Envelope> partition = partitions.get(partitionOf(deviceId));
+        if (!running || !partition.offer(new Envelope(deviceId, payload, acknowledge))) {
+            rejected.increment();
+            return false;
+        }
+        received.increment();
+        inFlight.incrementAndGet();
+        updateFlowControl();
+        return true;
+    }
+
+    /**
+     * Stops accepting payloads, drains what is already queued and flushes it.
+     * Payloads whose batch cannot be written are left unacknowledged, for the
+     * source to redeliver: with MQTT that takes a persistent session, which
+     * MQTTService resumes on the next start.
+     */
+    public void stop() {
+        Thread flusherThread;
+        List<Thread> parserThreads;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            flusherThread = flusher;
+            parserThreads = List.copyOf(parsers);
+        }
+        try {
+            for (Thread parser : parserThreads) {
+                parser.join();
+            }
+            flusherThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            parsers.clear();
+        }
+    }
+
+    public int queueDepth() {
+        return queuedPayloads() + decoded.size();
+    }
+
+    private int queuedPayloads() {
+        int queued = 0;
+        for (BlockingQueue<Envelope> partition : partitions) {
+            queued += partition.size();
+        }
+        return queued;
+    }
+
+    int partitionOf(String deviceId) {
+        return deviceId == null ? 0 : Math.floorMod(deviceId.hashCode(), partitions.size());
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    public synchronized long pausedMillis() {
+        return paused ? pausedMillis + (System.currentTimeMillis() - pausedSince) : pausedMillis;
+    }
+
+    public long received() {
+        return received.sum();
+    }
+
+    public long persisted() {
+        return persisted.sum();
+    }
+
+    public long malformed() {
+        return malformed.sum();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    public long writeFailures() {
+        return writeFailures.sum();
+    }
+
+    private void parseLoop(BlockingQueue<Envelope> partition) {
+        try {
+            while (running || !partition.isEmpty()) {
+                Envelope envelope = partition.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (envelope == null) {
+                    continue;
+                }
+                try {
+                    envelope.records = decoder.decode(envelope.deviceId, envelope.payload);
+                } catch (Exception e) {
+                    // Redelivering a malformed payload would fail again, so it is acknowledged
+                    malformed.increment();
+                    logger.warning("Discarding malformed sensor payload: " + e.getMessage());
+                    acknowledge(envelope);
+                    continue;
+                }
+                decoded.put(envelope);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flushLoop() {
+        List<Envelope> batch = new ArrayList<>();
+        int batchRecords = 0;
+        long deadline = 0;
+        try {
+            while (running || queuedPayloads() > 0 || !decoded.isEmpty() || parsersAlive()) {
+                long wait = batch.isEmpty() || !running
+                        ? POLL_MILLIS : Math.max(0, deadline - System.currentTimeMillis());
+                Envelope envelope = decoded.poll(wait, TimeUnit.MILLISECONDS);
+                while (envelope != null) {
+                    if (batch.isEmpty()) {
+                        deadline = System.currentTimeMillis() + lingerMillis;
+                    }
+                    batch.add(envelope);
+                    batchRecords += envelope.records.size();
+                    envelope = batchRecords < batchSize ? decoded.poll() : null;
+                }
+                // While stopping, flush eagerly instead of waiting for the linger deadline
+                boolean due = !running || System.currentTimeMillis() >= deadline;
+                if (batchRecords >= batchSize || (!batch.isEmpty() && due)) {
+                    flush(batch);
+                    batchRecords = 0;
+                }
+                updateFlowControl();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        decoded.drainTo(batch);
+        flush(batch);
+        updateFlowControl();
+    }
+
+    private boolean parsersAlive() {
+        for (Thread parser : parsers) {
+            if (parser.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void flush(List<Envelope> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<HealthRecord> records = new ArrayList<>();
+        for (Envelope envelope : batch) {
+            records.addAll(envelope.records);
+        }
+
+        long backoff = POLL_MILLIS;
+        while (true) {
+            try {
+                if (!records.isEmpty()) {
+                    writer.write(records);
+                }
+                break;
+            } catch (Exception e) {
+                writeFailures.increment();
+                setWriteFailing(true);
+                if (!running) {
+                    logger.log(Level.SEVERE, "Giving up on " + records.size()
+                            + " readings during shutdown; they stay unacknowledged", e);
+                    batch.clear();
+                    return;
+                }
+                logger.log(Level.WARNING, "Failed to write batch of " + records.size()
+                        + " readings, retrying in " + backoff + " ms", e);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    batch.clear();
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_RETRY_BACKOFF_MILLIS);
+            }
+        }
+        setWriteFailing(false);
+        persisted.add(records.size());
+        for (Envelope envelope : batch) {
+            acknowledge(envelope);
+        }
+        batch.clear();
+    }
+
+    private void acknowledge(Envelope envelope) {
+        synchronized (this) {
+            if (paused) {
+                parkedAcks.add(envelope.acknowledge);
+                return;
+            }
+        }
+        runAcknowledge(envelope.acknowledge);
+    }
+
+    private void runAcknowledge(Runnable acknowledge) {
+        inFlight.decrementAndGet();
+        try {
+            acknowledge.run();
+        } catch (RuntimeException e) {
+            logger.warning("Failed to acknowledge MQTT message: " + e.getMessage());
+        }
+    }
+
+    private void setWriteFailing(boolean failing) {
+        synchronized (this) {
+            writeFailing = failing;
+        }
+        updateFlowControl();
+    }
+
+    private void updateFlowControl() {
+        List<Runnable> released;
+        synchronized (this) {
+            // Queued, parsed or being written; parked acknowledgements are already persisted
+            int pending = inFlight.get() - parkedAcks.size();
+            if (!paused && (writeFailing || pending >= highWatermark)) {
+                paused = true;
+                pausedSince = System.currentTimeMillis();
+                logger.warning("Ingestion paused: " + pending + " payloads pending, write failing " + writeFailing);
+                return;
+            }
+            if (!paused || writeFailing || pending > lowWatermark) {
+                return;
+            }
+            paused = false;
+            pausedMillis += System.currentTimeMillis() - pausedSince;
+            released = List.copyOf(parkedAcks);
+            parkedAcks.clear();
+            logger.info("Ingestion resumed, releasing " + released.size() + " acknowledgements");
+        }
+        for (Runnable acknowledge : released) {
+            runAcknowledge(acknowledge);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package tn.supcom.cot.api.mqtt;
+
+import com.hivemq.client.mqtt.datatypes.MqttQos;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5AsyncClient;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import tn.supcom.cot.api.controllers.LatestReadingCache;
+import tn.supcom.cot.api.entities.HealthRecord;
+import tn.supcom.cot.api.repositories.HealthRecordsStored;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Keeps the latest-reading caches of several API nodes consistent.
+ *
+ * After each stored batch a node publishes, for every (patient, type) in
+ * it, the timestamp of its newest reading; every node subscribes without a
+ * shared group and drops cache entries older than that. The payload is
+ * plain text, one line per entry after the sender's node id:
+ * <pre>
+ *   {nodeId}
+ *   {epochMillis}\t{patientId}\t{type}
+ * </pre>
+ * Messages are QoS 0: a lost one leaves an entry stale until a newer
+ * reading of the same vital is announced.
+ */
+@ApplicationScoped
+public class LatestReadingChannel {
+
+    private static final Logger logger = Logger.getLogger(LatestReadingChannel.class.getName());
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Inject
+    LatestReadingCache cache;
+
+    @Inject
+    @ConfigProperty(name = "monitor.latest.invalidation.topic", defaultValue = "cot/cache/latest")
+    String topic;
+
+    private volatile Mqtt5AsyncClient client;
+
+    /**
+     * Starts publishing and listening on a connected client.
+     */
+    public void attach(Mqtt5AsyncClient client) {
+        this.client = client;
+        client.subscribeWith()
+                .topicFilter(topic)
+                .qos(MqttQos.AT_MOST_ONCE)
+                .callback(this::onMessage)
+                .send()
+                .whenComplete((subAck, throwable) -> {
+                    if (throwable != null) {
+                        logger.warning("Failed to subscribe to '" + topic + "': " + throwable.getMessage());
+                    }
+                });
+    }
+
+    void onStored(@Observes HealthRecordsStored event) {
+        Mqtt5AsyncClient mqtt = client;
+        if (mqtt == null || !mqtt.getState().isConnected()) {
+            return;
+        }
+        byte[] payload = encode(nodeId, event);
+        if (payload == null) {
+            return;
+        }
+        mqtt.publishWith()
+                .topic(topic)
+                .qos(MqttQos.AT_MOST_ONCE)
+                .payload(payload)
+                .send();
+    }
+
+    private void onMessage(Mqtt5Publish publish) {
+        try {
+            ByteBuffer buffer = publish.getPayload().orElse(null);
+            if (buffer == null) {
+                return;
+            }
+            String[] lines = UTF_8.decode(buffer).toString().split("\n");
+            // Our own announcements: the local cache was written through already
+            if (lines.length < 2 || lines[0].equals(nodeId)) {
+                return;
+            }
+            for (int i = 1; i < lines.length; i++) {
+                String[] fields = lines[i].split("\t", 3);
+                if (fields.length == 3) {
+                    LocalDateTime storedAt = LocalDateTime.ofInstant(
+                            Instant.ofEpochMilli(Long.parseLong(fields[0])), ZoneOffset.UTC);
+                    cache.invalidate(fields[1], fields[2], storedAt);
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.log(Level.FINE, "Ignoring malformed cache invalidation", e);
+        }
+    }
+
+    /**
+     * @return the announcement for a batch, one line per (patient, type), or null if empty
+     */
+    static byte[] encode(String nodeId, HealthRecordsStored event) {
+        Map<String, Long> newest = new LinkedHashMap<>();
+        for (HealthRecord record : event.records()) {
+            if (record.getPatientId() == null || record.getType() == null || record.getTimestamp() == null) {
+                continue;
+            }
+            long millis = record.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli();
+            newest.merge(record.getPatientId() + "\t" + record.getType(), millis, Math::max);
+        }
+        if (newest.isEmpty()) {
+            return null;
+        }
+        StringBuilder payload = new StringBuilder(nodeId);
+        newest.forEach((key, millis) -> payload.append('\n').append(millis).append('\t').append(key));
+        return payload.toString().getBytes(UTF_8);
+    }
+}
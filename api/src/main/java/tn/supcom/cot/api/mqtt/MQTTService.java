@@ -1,6 +1,8 @@
 package tn.supcom.cot.api.mqtt;
 
 import com.hivemq.client.mqtt.MqttClient;
+import com.hivemq.client.mqtt.MqttGlobalPublishFilter;
+import com.hivemq.client.mqtt.datatypes.MqttQos;
 import com.hivemq.client.mqtt.mqtt5.Mqtt5AsyncClient;
 import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
 import jakarta.annotation.PostConstruct;
@@ -8,15 +10,26 @@ import jakarta.annotation.PreDestroy;
 import jakarta.ejb.Singleton;
 import jakarta.ejb.Startup;
 import jakarta.inject.Inject;
-import jakarta.json.Json;
-import jakarta.json.JsonObject;
-import jakarta.json.JsonReader;
-import jdk.jfr.Event;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
-
-import java.io.StringReader;
+import tn.supcom.cot.api.controllers.ExecutionModel;
+import tn.supcom.cot.api.controllers.ReadingDeduplicator;
+import tn.supcom.cot.api.controllers.SensorRegistry;
+import tn.supcom.cot.api.entities.HealthRecord;
+import tn.supcom.cot.api.entities.Sensor;
+import tn.supcom.cot.api.metrics.IngestionMetrics;
+import tn.supcom.cot.api.repositories.HealthRecordBatchWriter;
+import tn.supcom.cot.api.repositories.HealthRecordJournal;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -27,11 +40,32 @@ public class MQTTService {
 
     private static final Logger logger = Logger.getLogger(MQTTService.class.getName());
 
+    private static final ByteBuffer EMPTY_PAYLOAD = ByteBuffer.allocate(0);
+
+    // Decoders keep their scan state in fields: one per parser thread
+    private static final ThreadLocal<SensorPayloadDecoder> decoders =
+            ThreadLocal.withInitial(SensorPayloadDecoder::new);
+
+    @Inject
+    private SensorRegistry sensorRegistry;
+
+    @Inject
+    private ReadingDeduplicator deduplicator;
+
+    @Inject
+    private HealthRecordBatchWriter batchWriter;
+
     @Inject
-    private SensorRepository sensorRepository;
+    private HealthRecordJournal journal;
 
     @Inject
-    private SensorReadingRepository readingRepository;
+    private IngestionMetrics metrics;
+
+    @Inject
+    private ExecutionModel execution;
+
+    @Inject
+    private LatestReadingChannel latestReadingChannel;
 
     @Inject
     @ConfigProperty(name = "mqtt.broker.url")
@@ -53,26 +87,72 @@ public class MQTTService {
     @ConfigProperty(name = "mqtt.client.id")
     private String clientId;
 
+    @Inject
+    @ConfigProperty(name = "mqtt.client.node")
+    private Optional<String> clientNode;
+
+    @Inject
+    @ConfigProperty(name = "mqtt.session.expiry.seconds", defaultValue = "3600")
+    private Long sessionExpirySeconds;
+
     @Inject
     @ConfigProperty(name = "mqtt.use.tls", defaultValue = "true")
     private Boolean useTls;
 
-    private Mqtt5AsyncClient mqttClient;
+    @Inject
+    @ConfigProperty(name = "mqtt.subscription.shared.group")
+    private Optional<String> sharedGroup;
+
+    @Inject
+    @ConfigProperty(name = "mqtt.ingest.queue.capacity", defaultValue = "4096")
+    private Integer queueCapacity;
+
+    @Inject
+    @ConfigProperty(name = "mqtt.ingest.parser.threads", defaultValue = "2")
+    private Integer parserThreads;
+
+    @Inject
+    @ConfigProperty(name = "mqtt.ingest.batch.size", defaultValue = "256")
+    private Integer batchSize;
+
+    @Inject
+    @ConfigProperty(name = "mqtt.ingest.batch.linger.ms", defaultValue = "500")
+    private Long batchLingerMillis;
 
     @Inject
-    private Event<SensorReadingEvent> sensorReadingEvent;
+    @ConfigProperty(name = "mqtt.ingest.receive.maximum", defaultValue = "1024")
+    private Integer receiveMaximum;
+
+    private volatile Mqtt5AsyncClient mqttClient;
+
+    private IngestionPipeline pipeline;
+
+    private final AtomicBoolean subscribed = new AtomicBoolean();
 
     @PostConstruct
     public void init() {
         try {
+            // With the write-ahead log, batches are acknowledged once synced to local disk
+            IngestionPipeline.BatchWriter writer = journal.isEnabled() ? journal::append : batchWriter::insertAll;
+            pipeline = new IngestionPipeline(queueCapacity, receiveWindow(), parserThreads, batchSize,
+                    batchLingerMillis, this::decodeSensorData, writer);
+            // Parser and flusher threads are virtual threads in the virtual execution model
+            pipeline.start(execution.workerThreadFactory());
+            registerMetrics();
+
             logger.info("Initializing MQTT Connection to HiveMQ Cloud Broker...");
 
-            // Build MQTT 5 Client
+            // Build MQTT 5 Client. The identifier is stable per node so that the broker
+            // keeps its session, and the unacknowledged messages in it, across restarts.
             var clientBuilder = MqttClient.builder()
                     .useMqttVersion5()
-                    .identifier(clientId + "-" + UUID.randomUUID())
+                    .identifier(clientId + "-" + clientNode.orElseGet(MQTTService::hostName))
                     .serverHost(brokerUrl)
-                    .serverPort(brokerPort);
+                    .serverPort(brokerPort)
+                    .automaticReconnectWithDefaultConfig()
+                    .addConnectedListener(context -> onConnected())
+                    .addDisconnectedListener(context ->
+                            logger.warning("Disconnected from MQTT broker: " + context.getCause().getMessage()));
 
             if (useTls) {
                 clientBuilder.sslWithDefaultConfig();
@@ -80,18 +160,29 @@ public class MQTTService {
 
             mqttClient = clientBuilder.buildAsync();
 
-            // Connect with credentials
+            // Sensor messages the broker redelivers from the session may arrive before
+            // the subscriptions are renewed, so they are taken by a global flow
+            mqttClient.publishes(MqttGlobalPublishFilter.REMAINING, this::handleSensorData, true);
+
+            // Connect with credentials, resuming the previous session. Unacknowledged QoS 1
+            // messages count against the receive maximum, so it never exceeds what the
+            // ingestion queue can hold.
             mqttClient.connectWith()
+                    .cleanStart(false)
+                    .sessionExpiryInterval(sessionExpirySeconds)
                     .simpleAuth()
                     .username(username)
                     .password(UTF_8.encode(password))
                     .applySimpleAuth()
+                    .restrictions()
+                    .receiveMaximum(receiveWindow())
+                    .applyRestrictions()
                     .send()
                     .whenComplete((connAck, throwable) -> {
                         if (throwable != null) {
-                            logger.severe("Failed to connect to MQTT broker: " + throwable.getMessage());
-                        } else {
-                            logger.info("Connected to MQTT broker!");
+                            logger.severe("Failed to connect to MQTT broker, retrying: " + throwable.getMessage());
+                        } else if (connAck.isSessionPresent()) {
+                            logger.info("Resumed MQTT session");
                         }
                     });
         } catch (Exception e) {
@@ -100,84 +191,102 @@ public class MQTTService {
         }
     }
 
-    // Subscribe to topic
-    public void subscribeToSensorData() {
-        String topic = "sensors/health";
-
-        mqttClient.subscribeWith()
-                .topicFilter(topic)
-                .callback(this.handleSensorData)
-                .send()
-                .whenComplete((subAck, throwable) -> {
-                    if (throwable != null) {
-                        logger.severe("Failed to subscribe to topic: '" + topic + "': " + throwable.getMessage());
-                    } else {
-                        logger.info("Successfully subscribed to topic: '" + topic + "'");
-                    }
-                });
+    // Subscribes once; on reconnects the client keeps or renews the subscriptions itself
+    private void onConnected() {
+        logger.info("Connected to MQTT broker!");
+        if (subscribed.compareAndSet(false, true)) {
+            subscribeToSensorData();
+            latestReadingChannel.attach(mqttClient);
+        }
     }
 
-    // Handle incoming full sensor data payload
-    private void handleSensorData(Mqtt5Publish publish) {
+    private static String hostName() {
         try {
-            String payload = new String(publish.getPayloadAsBytes(), UTF_8);
-            logger.info("Received payload: " + payload);
-
-            JsonReader reader = Json.createReader(new StringReader(payload));
-            JsonObject json = reader.readObject();
-
-            SensorData data = new SensorData();
-
-            // Device
-            String deviceId = "esp8266";
-
-            // Temperature
-            if (json.containsKey("temperature"))
-                data.setTemperature(json.getJsonNumber("temperature").doubleValue());
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            logger.warning("Cannot resolve the host name, set mqtt.client.node: " + e.getMessage());
+            return UUID.randomUUID().toString();
+        }
+    }
 
-            // Heart rate
-            if (json.containsKey("bpm"))
-                data.setHeartRate(json.getJsonNumber("bpm").intValue());
+    // Unacknowledged messages the broker may send at once
+    private int receiveWindow() {
+        return Math.min(receiveMaximum, queueCapacity);
+    }
 
-            saveReading(deviceId, data);
-        } catch (Exception e) {
-            logger.severe("Error processing sensors/health message: " + e.getMessage());
-            e.printStackTrace();
+    // Subscribe to the legacy and per-device topics (JSON and binary), through a shared subscription group if configured.
+    // Their messages go to the global flow registered in init.
+    public void subscribeToSensorData() {
+        List<String> topics = new ArrayList<>(SensorTopics.subscriptionFilters(sharedGroup.orElse(null)));
+        topics.addAll(SensorTopics.binarySubscriptionFilters(sharedGroup.orElse(null)));
+        for (String topic : topics) {
+            mqttClient.subscribeWith()
+                    .topicFilter(topic)
+                    .qos(MqttQos.AT_LEAST_ONCE)
+                    .send()
+                    .whenComplete((subAck, throwable) -> {
+                        if (throwable != null) {
+                            logger.severe("Failed to subscribe to topic: '" + topic + "': " + throwable.getMessage());
+                        } else {
+                            logger.info("Successfully subscribed to topic: '" + topic + "'");
+                        }
+                    });
         }
     }
 
-    // Save reading in DB
-    private void saveReading(String deviceId, SensorData data) {
-        try {
-            Sensor sensor = null;
-            try {
-                sensor = sensorRepository.findByDeviceId(deviceId).orElse(null);
-            } catch (Exception e) {
-                logger.warning("Sensor not found for deviceId: " + deviceId);
+    // Hand the raw payload over to the ingestion pipeline; never block the MQTT callback thread.
+    // The message is acknowledged to the broker only once its readings are persisted.
+    private void handleSensorData(Mqtt5Publish publish) {
+        String deviceId = SensorTopics.deviceId(publish.getTopic().toString());
+        if (!pipeline.submit(deviceId, publish.getPayload().orElse(EMPTY_PAYLOAD), publish::acknowledge)) {
+            if (!pipeline.isRunning()) {
+                // Shutting down: left unacknowledged, the session redelivers it after the restart
+                return;
             }
+            // Cannot happen while receive maximum <= queue capacity; acknowledge so the
+            // broker window does not shrink for good, but make the loss visible.
+            logger.severe("Ingestion queue full, rejected message on " + publish.getTopic());
+            publish.acknowledge();
+        }
+    }
 
-            SensorReading reading = new SensorReading();
-            reading.setId(UUID.randomUUID().toString());
-            reading.setSensorId(sensor != null ? sensor.getId() : deviceId);
-            reading.setTimestamp(LocalDateTime.now());
-            reading.setData(data);
-
-            readingRepository.save(reading);
-            logger.info("✅ Saved reading for device " + deviceId);
+    // Parse and enrich a sensor payload (runs on a pipeline parser thread)
+    private List<HealthRecord> decodeSensorData(String topicDeviceId, ByteBuffer payload) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Sensor payload (" + payload.remaining() + " bytes) from " + topicDeviceId);
+        }
+        RecordCollector collector = new RecordCollector(topicDeviceId, sensorRegistry, deduplicator);
+        if (SensorFrameCodec.isFrame(payload)) {
+            SensorFrameCodec.decode(payload, collector);
+        } else {
+            decoders.get().decode(payload, collector);
+        }
 
-            if (sensor != null) {
-                sensor.setLastConnection(LocalDateTime.now());
-                sensor.setStatus("active");
-                sensorRepository.save(sensor);
+        if (collector.duplicate) {
+            deduplicator.dropped(collector.dropped);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Dropped duplicate message " + collector.sequence + " from " + collector.deviceId);
             }
-            // Fire CDI event asynchronously
-            sensorReadingEvent.fireAsync(new SensorReadingEvent(reading, "MQTT"));
-            logger.info("Fired SensorReadingEvent for reading: " + reading.getId());
-
-        } catch (Exception e) {
-            logger.severe("Failed to save reading: " + e.getMessage());
-            e.printStackTrace();
         }
+        Sensor sensor = collector.sensor();
+        if (sensor != null) {
+            sensorRegistry.heartbeat(sensor, collector.receivedAt);
+        }
+        return collector.records;
+    }
+
+    private void registerMetrics() {
+        metrics.gauge("mqtt.ingest.queue.depth", pipeline::queueDepth);
+        metrics.gauge("mqtt.ingest.in.flight", pipeline::inFlight);
+        metrics.gauge("mqtt.ingest.paused", () -> pipeline.isPaused() ? 1 : 0);
+        metrics.gauge("mqtt.ingest.paused.ms", pipeline::pausedMillis);
+        metrics.gauge("mqtt.ingest.received", pipeline::received);
+        metrics.gauge("mqtt.ingest.persisted", pipeline::persisted);
+        metrics.gauge("mqtt.ingest.malformed", pipeline::malformed);
+        metrics.gauge("mqtt.ingest.rejected", pipeline::rejected);
+        metrics.gauge("mqtt.ingest.write.failures", pipeline::writeFailures);
+        metrics.gauge("sensor.registry.cached", sensorRegistry::cachedDevices);
+        metrics.gauge("sensor.registry.pending.heartbeats", sensorRegistry::pendingHeartbeats);
     }
 
     // Publish message
@@ -201,6 +310,11 @@ public class MQTTService {
 
     @PreDestroy
     public void cleanup() {
+        // Flush while still connected so the acknowledgements reach the broker; what
+        // could not be persisted stays in the session and is redelivered after the restart
+        if (pipeline != null) {
+            pipeline.stop();
+        }
         if (mqttClient != null && mqttClient.getState().isConnected()) {
             mqttClient.disconnect();
             logger.info("MQTT client disconnected");
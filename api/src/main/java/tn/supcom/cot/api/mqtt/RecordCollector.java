@@ -0,0 +1,138 @@
+package tn.supcom.cot.api.mqtt;
+
+import tn.supcom.cot.api.controllers.ReadingDeduplicator;
+import tn.supcom.cot.api.controllers.SensorRegistry;
+import tn.supcom.cot.api.entities.HealthRecord;
+import tn.supcom.cot.api.entities.Sensor;
+import tn.supcom.cot.api.entities.SensorType;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Turns decoded readings into HealthRecords attributed to the device's patient.
+ * The device is resolved on first use: after the payload's deviceId, if any.
+ *
+ * Messages stamped by the device clock have an identity (device, sequence,
+ * timestamp): their readings get deterministic ids and redeliveries are
+ * dropped. A multi-sample message without a timestamp of its own is
+ * identified by the timestamp of its first sample. Without a device clock a
+ * sequence number alone is not enough, as devices restart counting after a
+ * reboot, so those keep random ids.
+ */
+final class RecordCollector implements SensorPayloadDecoder.Sink {
+
+    private static final Logger logger = Logger.getLogger(RecordCollector.class.getName());
+
+    // Device reported by boards publishing on the legacy topic without a deviceId
+    static final String DEFAULT_DEVICE_ID = "esp8266";
+
+    private final SensorRegistry sensorRegistry;
+    private final ReadingDeduplicator deduplicator;
+
+    final LocalDateTime receivedAt = LocalDateTime.now();
+    final List<HealthRecord> records = new ArrayList<>();
+    private LocalDateTime frameTimestamp = receivedAt;
+    private LocalDateTime timestamp = receivedAt;
+    String deviceId;
+    private Sensor sensor;
+    private boolean resolved;
+    long sequence = -1;
+    private long frameMillis;
+    private long firstSampleMillis = -1;
+    private long identityMillis;
+    private boolean checked;
+    boolean duplicate;
+    int dropped;
+
+    RecordCollector(String topicDeviceId, SensorRegistry sensorRegistry, ReadingDeduplicator deduplicator) {
+        this.deviceId = topicDeviceId;
+        this.sensorRegistry = sensorRegistry;
+        this.deduplicator = deduplicator;
+    }
+
+    @Override
+    public void deviceId(ByteBuffer payload, int offset, int length) {
+        // The per-device topic wins over the payload
+        if (deviceId == null) {
+            byte[] id = new byte[length];
+            payload.get(offset, id);
+            deviceId = new String(id, UTF_8);
+        }
+    }
+
+    @Override
+    public void frame(long sequence, long timestampMillis) {
+        this.sequence = sequence;
+        this.frameMillis = timestampMillis;
+        // Readings carry the device clock when it has one
+        if (timestampMillis > 0) {
+            frameTimestamp = toLocalDateTime(timestampMillis);
+            timestamp = frameTimestamp;
+        }
+    }
+
+    @Override
+    public void sampleTime(long timestampMillis) {
+        if (firstSampleMillis < 0) {
+            firstSampleMillis = timestampMillis;
+        }
+        timestamp = timestampMillis > 0 ? toLocalDateTime(timestampMillis) : frameTimestamp;
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+
+    @Override
+    public void reading(SensorType type, double value, double secondaryValue) {
+        Sensor owner = sensor();
+        if (!checked) {
+            checked = true;
+            identityMillis = frameMillis > 0 ? frameMillis : Math.max(firstSampleMillis, 0);
+            duplicate = identityMillis > 0 && !deduplicator.firstSeen(deviceId, sequence, identityMillis);
+        }
+        if (duplicate) {
+            dropped++;
+            return;
+        }
+        HealthRecord record = new HealthRecord(owner != null ? owner.getPatientId() : null,
+                type.name(), value, type.getUnit());
+        record.setId(identityMillis > 0
+                ? ReadingDeduplicator.readingId(deviceId, sequence, identityMillis, records.size())
+                : "health-record-" + UUID.randomUUID());
+        record.setSensorId(owner != null ? owner.getId() : deviceId);
+        record.setTimestamp(timestamp);
+        if (sequence >= 0) {
+            record.setSequence(sequence);
+        }
+        if (!Double.isNaN(secondaryValue)) {
+            record.setSecondaryValue(secondaryValue);
+            record.setSecondaryUnit(type.getUnit());
+        }
+        records.add(record);
+    }
+
+    Sensor sensor() {
+        if (!resolved) {
+            resolved = true;
+            if (deviceId == null) {
+                deviceId = DEFAULT_DEVICE_ID;
+            }
+            try {
+                sensor = sensorRegistry.find(deviceId).orElse(null);
+            } catch (Exception e) {
+                logger.warning("Sensor lookup failed for deviceId: " + deviceId);
+            }
+        }
+        return sensor;
+    }
+}
@@ -0,0 +1,296 @@
+package tn.supcom.cot.api.mqtt;
+
+import tn.supcom.cot.api.entities.SensorType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary sensor frame, published on the ".../health/bin" topics.
+ *
+ * Fixed layout, big-endian:
+ * <pre>
+ *   u8      version          1 = single reading set, 2 = timestamped sample groups
+ *   u8      deviceIdLength   0..64, 0 = device id taken from the topic
+ *   bytes   deviceId         UTF-8
+ *   u32     sequence         per-device counter, wraps around
+ *   i64     timestamp        epoch milliseconds, 0 = server receive time
+ *   v1:
+ *     u8      sampleCount
+ *     sample  x sampleCount
+ *   v2:
+ *     u16     groupCount
+ *     group   x groupCount:
+ *       u32     offsetMillis   added to the frame timestamp
+ *       u8      sampleCount
+ *       sample  x sampleCount
+ *   sample:
+ *     u8    type code        see {@link #typeCode(SensorType)}
+ *     f32   value
+ *     f32   secondaryValue   BLOOD_PRESSURE (diastolic) and GPS_LOCATION (longitude) only
+ * </pre>
+ * Heart rate plus temperature from a topic-identified device take 25 bytes
+ * (30 as JSON text); a frame with every sensor type takes 53 bytes against
+ * roughly 150, and decoding needs no number parsing. A v2 frame lets a device
+ * buffer readings, e.g. while offline, and upload them in one message at 15
+ * bytes per heart rate + temperature group.
+ *
+ * Binary frames start with their version byte (below 0x20) and JSON objects with
+ * '{' or whitespace, so a payload identifies its own format.
+ */
+public final class SensorFrameCodec {
+
+    public static final int VERSION_1 = 1;
+    public static final int VERSION_2 = 2;
+    public static final int MAX_DEVICE_ID_LENGTH = 64;
+    public static final int MAX_SAMPLES = 255;
+    public static final int MAX_GROUPS = 0xFFFF;
+
+    private static final SensorType[] TYPES_BY_CODE = {
+            null,
+            SensorType.HEART_RATE,
+            SensorType.SPO2,
+            SensorType.TEMPERATURE,
+            SensorType.BLOOD_PRESSURE,
+            SensorType.FALL_DETECTION,
+            SensorType.GPS_LOCATION
+    };
+
+    private SensorFrameCodec() {
+    }
+
+    /**
+     * Wire code of a sensor type. Codes are part of the format and never reused,
+     * unlike enum ordinals.
+     */
+    public static int typeCode(SensorType type) {
+        return switch (type) {
+            case HEART_RATE -> 1;
+            case SPO2 -> 2;
+            case TEMPERATURE -> 3;
+            case BLOOD_PRESSURE -> 4;
+            case FALL_DETECTION -> 5;
+            case GPS_LOCATION -> 6;
+        };
+    }
+
+    /**
+     * Whether a reading of this type carries a secondary value on the wire.
+     */
+    public static boolean isPaired(SensorType type) {
+        return type == SensorType.BLOOD_PRESSURE || type == SensorType.GPS_LOCATION;
+    }
+
+    /**
+     * @return true if the payload looks like a binary frame rather than JSON
+     */
+    public static boolean isFrame(ByteBuffer payload) {
+        return payload.hasRemaining() && (payload.get(payload.position()) & 0xFF) < 0x20
+                && !isJsonWhitespace(payload.get(payload.position()));
+    }
+
+    private static boolean isJsonWhitespace(byte c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    /**
+     * Decodes one frame into the sink without allocating: the device id is
+     * reported as a byte range, the header before any reading.
+     *
+     * @return the number of readings passed to the sink
+     * @throws IllegalArgumentException if the frame is truncated, too long or of an unknown version
+     */
+    public static int decode(ByteBuffer frame, SensorPayloadDecoder.Sink sink) {
+        int pos = frame.position();
+        int limit = frame.limit();
+
+        require(frame, pos, 2, limit);
+        int version = frame.get(pos) & 0xFF;
+        if (version != VERSION_1 && version != VERSION_2) {
+            throw new IllegalArgumentException("Unsupported sensor frame version " + version);
+        }
+        int deviceIdLength = frame.get(pos + 1) & 0xFF;
+        if (deviceIdLength > MAX_DEVICE_ID_LENGTH) {
+            throw new IllegalArgumentException("Device id too long in sensor frame: " + deviceIdLength);
+        }
+        pos += 2;
+        int deviceIdOffset = pos;
+        pos += deviceIdLength;
+
+        require(frame, pos, 12, limit);
+        long sequence = frame.getInt(pos) & 0xFFFFFFFFL;
+        long timestamp = frame.getLong(pos + 4);
+        pos += 12;
+
+        int groupCount = 1;
+        if (version == VERSION_2) {
+            require(frame, pos, 2, limit);
+            groupCount = frame.getShort(pos) & 0xFFFF;
+            pos += 2;
+        }
+
+        // Validate the whole frame before reporting anything
+        int end = pos;
+        for (int group = 0; group < groupCount; group++) {
+            if (version == VERSION_2) {
+                require(frame, end, 4, limit);
+                end += 4;
+            }
+            require(frame, end, 1, limit);
+            int sampleCount = frame.get(end) & 0xFF;
+            end++;
+            for (int i = 0; i < sampleCount; i++) {
+                require(frame, end, 5, limit);
+                SensorType type = typeOf(frame.get(end));
+                end += isPaired(type) ? 9 : 5;
+            }
+        }
+        if (end != limit) {
+            throw new IllegalArgumentException("Trailing bytes after sensor frame: " + (limit - end));
+        }
+
+        if (deviceIdLength > 0) {
+            sink.deviceId(frame, deviceIdOffset, deviceIdLength);
+        }
+        sink.frame(sequence, timestamp);
+        int readings = 0;
+        for (int group = 0; group < groupCount; group++) {
+            if (version == VERSION_2) {
+                long offset = frame.getInt(pos) & 0xFFFFFFFFL;
+                sink.sampleTime(timestamp > 0 ? timestamp + offset : 0);
+                pos += 4;
+            }
+            int sampleCount = frame.get(pos) & 0xFF;
+            pos++;
+            for (int i = 0; i < sampleCount; i++) {
+                SensorType type = typeOf(frame.get(pos));
+                double value = frame.getFloat(pos + 1);
+                double secondaryValue = Double.NaN;
+                pos += 5;
+                if (isPaired(type)) {
+                    secondaryValue = frame.getFloat(pos);
+                    pos += 4;
+                }
+                sink.reading(type, value, secondaryValue);
+            }
+            readings += sampleCount;
+        }
+        return readings;
+    }
+
+    private static SensorType typeOf(byte code) {
+        int index = code & 0xFF;
+        if (index == 0 || index >= TYPES_BY_CODE.length) {
+            throw new IllegalArgumentException("Unknown sensor type code " + index);
+        }
+        return TYPES_BY_CODE[index];
+    }
+
+    private static void require(ByteBuffer frame, int pos, int length, int limit) {
+        if (pos + length > limit) {
+            throw new IllegalArgumentException("Truncated sensor frame at offset " + (pos - frame.position()));
+        }
+    }
+
+    /**
+     * Builds frames, for device simulators and tests. Readings added before any
+     * {@link #at(long)} make a v1 frame; {@link #at(long)} starts the sample
+     * groups of a v2 frame.
+     */
+    public static final class Builder {
+        private final byte[] deviceId;
+        private final long sequence;
+        private final long timestamp;
+        private ByteBuffer body = ByteBuffer.allocate(64);
+        private int groups;
+        private int groupCountOffset = -1;
+        private int samples;
+
+        /**
+         * @param deviceId null to rely on the per-device topic
+         */
+        public Builder(String deviceId, long sequence, long timestamp) {
+            this.deviceId = deviceId == null ? new byte[0] : deviceId.getBytes(StandardCharsets.UTF_8);
+            if (this.deviceId.length > MAX_DEVICE_ID_LENGTH) {
+                throw new IllegalArgumentException("Device id longer than " + MAX_DEVICE_ID_LENGTH + " bytes");
+            }
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+        }
+
+        /**
+         * Starts a group of readings taken offsetMillis after the frame timestamp.
+         */
+        public Builder at(long offsetMillis) {
+            if (groups == 0 && samples > 0) {
+                throw new IllegalStateException("Readings were already added without a group");
+            }
+            if (groups == MAX_GROUPS) {
+                throw new IllegalStateException("Sensor frame full");
+            }
+            if (offsetMillis < 0 || offsetMillis > 0xFFFFFFFFL) {
+                throw new IllegalArgumentException("Offset out of range: " + offsetMillis);
+            }
+            ensure(5);
+            body.putInt((int) offsetMillis);
+            groupCountOffset = body.position();
+            body.put((byte) 0);
+            groups++;
+            samples = 0;
+            return this;
+        }
+
+        public Builder add(SensorType type, double value) {
+            if (isPaired(type)) {
+                throw new IllegalArgumentException(type + " needs a secondary value");
+            }
+            return sample(type, value, Double.NaN);
+        }
+
+        public Builder add(SensorType type, double value, double secondaryValue) {
+            if (!isPaired(type)) {
+                throw new IllegalArgumentException(type + " has no secondary value");
+            }
+            return sample(type, value, secondaryValue);
+        }
+
+        private Builder sample(SensorType type, double value, double secondaryValue) {
+            if (samples == MAX_SAMPLES) {
+                throw new IllegalStateException("Sensor frame group full");
+            }
+            ensure(9);
+            body.put((byte) typeCode(type)).putFloat((float) value);
+            if (isPaired(type)) {
+                body.putFloat((float) secondaryValue);
+            }
+            samples++;
+            if (groups > 0) {
+                body.put(groupCountOffset, (byte) samples);
+            }
+            return this;
+        }
+
+        private void ensure(int bytes) {
+            if (body.remaining() < bytes) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(body.capacity() * 2, body.position() + bytes));
+                body = grown.put(body.flip());
+            }
+        }
+
+        public byte[] build() {
+            ByteBuffer frame = ByteBuffer.allocate(2 + deviceId.length + 12 + (groups > 0 ? 2 : 1) + body.position());
+            frame.put((byte) (groups > 0 ? VERSION_2 : VERSION_1))
+                    .put((byte) deviceId.length)
+                    .put(deviceId)
+                    .putInt((int) sequence)
+                    .putLong(timestamp);
+            if (groups > 0) {
+                frame.putShort((short) groups);
+            } else {
+                frame.put((byte) samples);
+            }
+            frame.put(body.array(), 0, body.position());
+            return frame.array();
+        }
+    }
+}
@@ -0,0 +1,523 @@
+package tn.supcom.cot.api.mqtt;
+
+import tn.supcom.cot.api.entities.SensorType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Streaming decoder for JSON sensor payloads.
+ *
+ * Scans the UTF-8 bytes of a JSON object straight from the MQTT payload
+ * buffer and reports the known fields to a {@link Sink}, without building a
+ * String or a JSON tree. Unknown fields are skipped, whatever their type.
+ *
+ * Recognised fields:
+ * <pre>
+ *   temperature          TEMPERATURE     °C
+ *   bpm | heartRate      HEART_RATE      bpm
+ *   spo2                 SPO2            %
+ *   systolic, diastolic  BLOOD_PRESSURE  mmHg  (value, secondaryValue)
+ *   fall                 FALL_DETECTION  true/false or 1/0
+ *   lat, lng             GPS_LOCATION    °     (value, secondaryValue)
+ *   deviceId             reported as a byte range, decoded only if needed
+ *   seq, ts              sequence number and epoch-millis device timestamp
+ *   samples              array of objects with the reading fields and their own ts
+ * </pre>
+ * A multi-sample payload lets a device buffer readings and upload them at once:
+ * <pre>
+ *   {"deviceId":"esp-1","seq":42,"samples":[
+ *      {"ts":1760000000000,"bpm":72,"temperature":36.6},
+ *      {"ts":1760000002000,"bpm":74}]}
+ * </pre>
+ *
+ * The buffer position is never changed. An instance keeps its scan state in
+ * fields so decoding allocates nothing; it is not thread-safe, use one per
+ * parser thread.
+ */
+public final class SensorPayloadDecoder {
+
+    /**
+     * Receives the decoded readings, from JSON payloads or binary frames
+     * ({@link SensorFrameCodec}). Absent secondary values are NaN.
+     *
+     * Call order: deviceId, frame, then readings; sampleTime precedes the
+     * readings of each timestamped sample and applies until the next one.
+     */
+    public interface Sink {
+
+        void reading(SensorType type, double value, double secondaryValue);
+
+        /**
+         * Called before any reading when the payload names its device.
+         * The id is the UTF-8 content of the JSON string, escapes not resolved.
+         */
+        default void deviceId(ByteBuffer payload, int offset, int length) {
+        }
+
+        /**
+         * Called before any reading for payloads that carry a sequence number
+         * (-1 when absent) or a device timestamp (epoch milliseconds, 0 when unknown).
+         */
+        default void frame(long sequence, long timestampMillis) {
+        }
+
+        /**
+         * Timestamp (epoch milliseconds, 0 when unknown) of the following readings.
+         */
+        default void sampleTime(long timestampMillis) {
+        }
+    }
+
+    private static final byte[] TEMPERATURE = ascii("temperature");
+    private static final byte[] BPM = ascii("bpm");
+    private static final byte[] HEART_RATE = ascii("heartRate");
+    private static final byte[] SPO2 = ascii("spo2");
+    private static final byte[] SYSTOLIC = ascii("systolic");
+    private static final byte[] DIASTOLIC = ascii("diastolic");
+    private static final byte[] FALL = ascii("fall");
+    private static final byte[] LAT = ascii("lat");
+    private static final byte[] LNG = ascii("lng");
+    private static final byte[] DEVICE_ID = ascii("deviceId");
+    private static final byte[] SEQ = ascii("seq");
+    private static final byte[] TS = ascii("ts");
+    private static final byte[] SAMPLES = ascii("samples");
+
+    // Slots of the values array
+    private static final int V_TEMPERATURE = 0;
+    private static final int V_HEART_RATE = 1;
+    private static final int V_SPO2 = 2;
+    private static final int V_SYSTOLIC = 3;
+    private static final int V_DIASTOLIC = 4;
+    private static final int V_FALL = 5;
+    private static final int V_LAT = 6;
+    private static final int V_LNG = 7;
+    private static final int V_SEQ = 8;
+    private static final int V_TS = 9;
+
+    // Exactly representable powers of ten, see parseNumber
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private ByteBuffer buf;
+    private int limit;
+    private int pos;
+
+    // Value of the last string or number token
+    private int tokenStart;
+    private int tokenEnd;
+    private double number;
+
+    // Fields of the object being scanned, NaN when absent
+    private final double[] values = new double[10];
+    private int deviceIdStart;
+    private int deviceIdEnd;
+    private int samplesStart;
+
+    /**
+     * Decodes one payload.
+     *
+     * @return the number of readings passed to the sink
+     * @throws IllegalArgumentException if the payload is not a JSON object
+     */
+    public int decode(ByteBuffer payload, Sink sink) {
+        buf = payload;
+        pos = payload.position();
+        limit = payload.limit();
+        try {
+            return readPayload(sink);
+        } finally {
+            buf = null;
+        }
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private int readPayload(Sink sink) {
+        // First pass: the whole payload is validated and the header collected, so
+        // deviceId and frame reach the sink before any reading wherever they appear
+        skipWhitespace();
+        scanObject(true);
+        skipWhitespace();
+        if (pos != limit) {
+            throw malformed("trailing content");
+        }
+
+        if (deviceIdStart >= 0) {
+            sink.deviceId(buf, deviceIdStart, deviceIdEnd - deviceIdStart);
+        }
+        long sequence = Double.isNaN(values[V_SEQ]) ? -1 : (long) values[V_SEQ];
+        long timestamp = Double.isNaN(values[V_TS]) ? 0 : (long) values[V_TS];
+        if (sequence >= 0 || timestamp > 0) {
+            sink.frame(sequence, timestamp);
+        }
+        int readings = emitReadings(sink);
+
+        // Second pass over the samples array, one object at a time
+        if (samplesStart >= 0) {
+            pos = samplesStart + 1;
+            skipWhitespace();
+            if (peek() == ']') {
+                return readings;
+            }
+            while (true) {
+                skipWhitespace();
+                if (peek() != '{') {
+                    throw malformed("expected a sample object");
+                }
+                scanObject(false);
+                sink.sampleTime(Double.isNaN(values[V_TS]) ? timestamp : (long) values[V_TS]);
+                readings += emitReadings(sink);
+                skipWhitespace();
+                if (next() == ']') {
+                    break;
+                }
+            }
+        }
+        return readings;
+    }
+
+    /**
+     * Scans one object into the values array; at the top level it also records
+     * the device id and the position of the samples array.
+     */
+    private void scanObject(boolean topLevel) {
+        Arrays.fill(values, Double.NaN);
+        if (topLevel) {
+            deviceIdStart = -1;
+            deviceIdEnd = -1;
+            samplesStart = -1;
+        }
+
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return;
+        }
+        while (true) {
+            skipWhitespace();
+            expect('"');
+            readString();
+            int keyStart = tokenStart;
+            int keyEnd = tokenEnd;
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+
+            if (keyEquals(keyStart, keyEnd, TEMPERATURE)) {
+                values[V_TEMPERATURE] = readNumber();
+            } else if (keyEquals(keyStart, keyEnd, BPM) || keyEquals(keyStart, keyEnd, HEART_RATE)) {
+                values[V_HEART_RATE] = readNumber();
+            } else if (keyEquals(keyStart, keyEnd, SPO2)) {
+                values[V_SPO2] = readNumber();
+            } else if (keyEquals(keyStart, keyEnd, SYSTOLIC)) {
+                values[V_SYSTOLIC] = readNumber();
+            } else if (keyEquals(keyStart, keyEnd, DIASTOLIC)) {
+                values[V_DIASTOLIC] = readNumber();
+            } else if (keyEquals(keyStart, keyEnd, FALL)) {
+                values[V_FALL] = readFlag();
+            } else if (keyEquals(keyStart, keyEnd, LAT)) {
+                values[V_LAT] = readNumber();
+            } else if (keyEquals(keyStart, keyEnd, LNG)) {
+                values[V_LNG] = readNumber();
+            } else if (keyEquals(keyStart, keyEnd, TS)) {
+                values[V_TS] = readNumber();
+            } else if (topLevel && keyEquals(keyStart, keyEnd, SEQ)) {
+                values[V_SEQ] = readNumber();
+            } else if (topLevel && keyEquals(keyStart, keyEnd, DEVICE_ID) && peek() == '"') {
+                pos++;
+                readString();
+                deviceIdStart = tokenStart;
+                deviceIdEnd = tokenEnd;
+            } else if (topLevel && keyEquals(keyStart, keyEnd, SAMPLES) && peek() == '[') {
+                samplesStart = pos;
+                skipValue(0);
+            } else {
+                skipValue(0);
+            }
+
+            skipWhitespace();
+            byte next = next();
+            if (next == '}') {
+                return;
+            }
+            if (next != ',') {
+                throw malformed("expected ',' or '}'");
+            }
+        }
+    }
+
+    private int emitReadings(Sink sink) {
+        int readings = 0;
+        if (!Double.isNaN(values[V_HEART_RATE])) {
+            sink.reading(SensorType.HEART_RATE, values[V_HEART_RATE], Double.NaN);
+            readings++;
+        }
+        if (!Double.isNaN(values[V_SPO2])) {
+            sink.reading(SensorType.SPO2, values[V_SPO2], Double.NaN);
+            readings++;
+        }
+        if (!Double.isNaN(values[V_TEMPERATURE])) {
+            sink.reading(SensorType.TEMPERATURE, values[V_TEMPERATURE], Double.NaN);
+            readings++;
+        }
+        // Pairs only make sense together; a lone half is ignored
+        if (!Double.isNaN(values[V_SYSTOLIC]) && !Double.isNaN(values[V_DIASTOLIC])) {
+            sink.reading(SensorType.BLOOD_PRESSURE, values[V_SYSTOLIC], values[V_DIASTOLIC]);
+            readings++;
+        }
+        if (!Double.isNaN(values[V_FALL])) {
+            sink.reading(SensorType.FALL_DETECTION, values[V_FALL], Double.NaN);
+            readings++;
+        }
+        if (!Double.isNaN(values[V_LAT]) && !Double.isNaN(values[V_LNG])) {
+            sink.reading(SensorType.GPS_LOCATION, values[V_LAT], values[V_LNG]);
+            readings++;
+        }
+        return readings;
+    }
+
+    private boolean keyEquals(int start, int end, byte[] key) {
+        if (end - start != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buf.get(start + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a number; null reads as NaN, i.e. "no reading".
+     */
+    private double readNumber() {
+        if (peek() == 'n') {
+            expectLiteral("null");
+            return Double.NaN;
+        }
+        parseNumber();
+        return number;
+    }
+
+    private double readFlag() {
+        byte c = peek();
+        if (c == 't') {
+            expectLiteral("true");
+            return 1;
+        }
+        if (c == 'f') {
+            expectLiteral("false");
+            return 0;
+        }
+        return readNumber() != 0 ? 1 : 0;
+    }
+
+    /**
+     * Parses a JSON number into {@link #number}. A mantissa below 2^53 with a
+     * decimal exponent within +-22 converts exactly, with one correctly rounded
+     * multiplication or division; anything else falls back to Double.parseDouble.
+     */
+    private void parseNumber() {
+        int start = pos;
+        boolean negative = false;
+        if (peek() == '-') {
+            negative = true;
+            pos++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean exact = true;
+
+        int intStart = pos;
+        while (pos < limit && isDigit(buf.get(pos))) {
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (buf.get(pos) - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+            } else {
+                exact = false;
+            }
+            pos++;
+        }
+        if (pos == intStart) {
+            throw malformed("expected a number");
+        }
+        if (pos < limit && buf.get(pos) == '.') {
+            pos++;
+            int fractionStart = pos;
+            while (pos < limit && isDigit(buf.get(pos))) {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (buf.get(pos) - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    exponent--;
+                } else {
+                    exact = false;
+                }
+                pos++;
+            }
+            if (pos == fractionStart) {
+                throw malformed("expected a digit");
+            }
+        }
+        if (pos < limit && (buf.get(pos) == 'e' || buf.get(pos) == 'E')) {
+            pos++;
+            boolean negativeExponent = false;
+            if (pos < limit && (buf.get(pos) == '+' || buf.get(pos) == '-')) {
+                negativeExponent = buf.get(pos) == '-';
+                pos++;
+            }
+            int exponentStart = pos;
+            int explicit = 0;
+            while (pos < limit && isDigit(buf.get(pos))) {
+                if (explicit < 10_000) {
+                    explicit = explicit * 10 + (buf.get(pos) - '0');
+                }
+                pos++;
+            }
+            if (pos == exponentStart) {
+                throw malformed("expected an exponent");
+            }
+            exponent += negativeExponent ? -explicit : explicit;
+        }
+
+        if (exact && mantissa < MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+            double value = mantissa;
+            value = exponent < 0 ? value / POWERS_OF_TEN[-exponent] : value * POWERS_OF_TEN[exponent];
+            number = negative ? -value : value;
+        } else {
+            // Rare for sensor readings; allocates
+            byte[] text = new byte[pos - start];
+            buf.get(start, text);
+            number = Double.parseDouble(new String(text, StandardCharsets.US_ASCII));
+        }
+    }
+
+    /**
+     * Reads the rest of a string whose opening quote was consumed; its content
+     * range ends up in tokenStart/tokenEnd.
+     */
+    private void readString() {
+        tokenStart = pos;
+        while (pos < limit) {
+            byte c = buf.get(pos);
+            if (c == '"') {
+                tokenEnd = pos;
+                pos++;
+                return;
+            }
+            if (c == '\\') {
+                pos++;
+            } else if ((c & 0xFF) < 0x20) {
+                throw malformed("control character in string");
+            }
+            pos++;
+        }
+        throw malformed("unterminated string");
+    }
+
+    private void skipValue(int depth) {
+        if (depth > 32) {
+            throw malformed("nesting too deep");
+        }
+        byte c = peek();
+        switch (c) {
+            case '"' -> {
+                pos++;
+                readString();
+            }
+            case '{' -> skipContainer('}', true, depth);
+            case '[' -> skipContainer(']', false, depth);
+            case 't' -> expectLiteral("true");
+            case 'f' -> expectLiteral("false");
+            case 'n' -> expectLiteral("null");
+            default -> parseNumber();
+        }
+    }
+
+    private void skipContainer(char close, boolean object, int depth) {
+        pos++;
+        skipWhitespace();
+        if (peek() == close) {
+            pos++;
+            return;
+        }
+        while (true) {
+            skipWhitespace();
+            if (object) {
+                expect('"');
+                readString();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+            }
+            skipValue(depth + 1);
+            skipWhitespace();
+            byte next = next();
+            if (next == close) {
+                return;
+            }
+            if (next != ',') {
+                throw malformed("expected ',' or '" + close + "'");
+            }
+        }
+    }
+
+    private void expectLiteral(String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            if (next() != literal.charAt(i)) {
+                throw malformed("expected " + literal);
+            }
+        }
+    }
+
+    private void expect(char c) {
+        if (next() != c) {
+            throw malformed("expected '" + c + "'");
+        }
+    }
+
+    private byte peek() {
+        if (pos >= limit) {
+            throw malformed("unexpected end of payload");
+        }
+        return buf.get(pos);
+    }
+
+    private byte next() {
+        byte c = peek();
+        pos++;
+        return c;
+    }
+
+    private void skipWhitespace() {
+        while (pos < limit) {
+            byte c = buf.get(pos);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private static boolean isDigit(byte c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private IllegalArgumentException malformed(String reason) {
+        return new IllegalArgumentException("Malformed sensor payload at offset "
+                + (pos - buf.position()) + ": " + reason);
+    }
+}
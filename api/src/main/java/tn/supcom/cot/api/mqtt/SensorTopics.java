@@ -0,0 +1,82 @@
+package tn.supcom.cot.api.mqtt;
+
+import java.util.List;
+
+/**
+ * MQTT topic layout for sensor data.
+ *
+ * Devices publish either on the legacy shared topic "sensors/health" or on
+ * their own "sensors/{deviceId}/health" topic. When a shared subscription
+ * group is configured, every API node subscribes through
+ * "$share/{group}/..." so the broker hands each message to exactly one node.
+ *
+ * Binary frames ({@link SensorFrameCodec}) go to the same topics with a
+ * "/bin" suffix, so JSON-only consumers never see them.
+ */
+public final class SensorTopics {
+
+    public static final String LEGACY_TOPIC = "sensors/health";
+    public static final String DEVICE_TOPIC_FILTER = "sensors/+/health";
+    public static final String LEGACY_BINARY_TOPIC = "sensors/health/bin";
+    public static final String DEVICE_BINARY_TOPIC_FILTER = "sensors/+/health/bin";
+
+    private static final String PREFIX = "sensors/";
+    private static final String SUFFIX = "/health";
+    private static final String BINARY_SUFFIX = "/bin";
+
+    private SensorTopics() {
+    }
+
+    /**
+     * Topic filters to subscribe to, optionally inside a shared subscription group.
+     */
+    public static List<String> subscriptionFilters(String sharedGroup) {
+        String share = sharePrefix(sharedGroup);
+        return List.of(share + LEGACY_TOPIC, share + DEVICE_TOPIC_FILTER);
+    }
+
+    /**
+     * Topic filters of the binary frame topics, optionally inside a shared subscription group.
+     */
+    public static List<String> binarySubscriptionFilters(String sharedGroup) {
+        String share = sharePrefix(sharedGroup);
+        return List.of(share + LEGACY_BINARY_TOPIC, share + DEVICE_BINARY_TOPIC_FILTER);
+    }
+
+    private static String sharePrefix(String sharedGroup) {
+        if (sharedGroup == null || sharedGroup.isBlank()) {
+            return "";
+        }
+        if (sharedGroup.contains("/") || sharedGroup.contains("+") || sharedGroup.contains("#")) {
+            throw new IllegalArgumentException("Invalid shared subscription group: " + sharedGroup);
+        }
+        return "$share/" + sharedGroup + "/";
+    }
+
+    public static String deviceTopic(String deviceId) {
+        return PREFIX + deviceId + SUFFIX;
+    }
+
+    public static String deviceBinaryTopic(String deviceId) {
+        return deviceTopic(deviceId) + BINARY_SUFFIX;
+    }
+
+    /**
+     * @return the device id of a "sensors/{deviceId}/health[/bin]" topic, or null for any other topic
+     */
+    public static String deviceId(String topic) {
+        if (topic != null && topic.endsWith(SUFFIX + BINARY_SUFFIX)) {
+            topic = topic.substring(0, topic.length() - BINARY_SUFFIX.length());
+        }
+        if (topic == null || !topic.startsWith(PREFIX) || !topic.endsWith(SUFFIX)) {
+            return null;
+        }
+        int start = PREFIX.length();
+        int end = topic.length() - SUFFIX.length();
+        if (end <= start) {
+            return null;
+        }
+        String deviceId = topic.substring(start, end);
+        return deviceId.indexOf('/') < 0 ? deviceId : null;
+    }
+}
@@ -0,0 +1,230 @@
+package tn.supcom.cot.api.repositories;
+
+import java.util.Arrays;
+
+/**
+ * Compressed block encoding for a (timestamp, value) series, after the
+ * Gorilla paper (Pelkonen et al., VLDB 2015).
+ *
+ * The first point is stored in full. After it, each timestamp is stored as
+ * the difference between consecutive deltas, which is 0 for a steady
+ * sampling rate and costs one bit, and each value as the XOR with the
+ * previous one, which is 0 for a repeated value and otherwise stored as its
+ * meaningful bits only. Slowly varying vitals sampled every 2 seconds take
+ * a couple of bytes per point instead of 16.
+ *
+ * Timestamps are epoch milliseconds. Blocks do not store their point
+ * count: readers are given it along with the bytes.
+ */
+public final class GorillaCodec {
+
+    private GorillaCodec() {
+    }
+
+    /**
+     * Appends points in time order; {@link #toByteArray()} returns the block.
+     */
+    public static final class Encoder {
+        private final BitWriter out = new BitWriter();
+        private int count;
+        private long previousTimestamp;
+        private long previousDelta;
+        private long previousBits;
+        private int previousLeading = -1;
+        private int previousTrailing;
+
+        public void add(long timestamp, double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            if (count == 0) {
+                out.write(timestamp, 64);
+                out.write(bits, 64);
+            } else {
+                long delta = timestamp - previousTimestamp;
+                writeDeltaOfDelta(delta - previousDelta);
+                previousDelta = delta;
+                writeXor(bits ^ previousBits);
+            }
+            previousTimestamp = timestamp;
+            previousBits = bits;
+            count++;
+        }
+
+        private void writeDeltaOfDelta(long dod) {
+            if (dod == 0) {
+                out.write(0b0, 1);
+            } else if (dod >= -64 && dod <= 63) {
+                out.write(0b10, 2);
+                out.write(dod, 7);
+            } else if (dod >= -256 && dod <= 255) {
+                out.write(0b110, 3);
+                out.write(dod, 9);
+            } else if (dod >= -2048 && dod <= 2047) {
+                out.write(0b1110, 4);
+                out.write(dod, 12);
+            } else {
+                out.write(0b1111, 4);
+                out.write(dod, 64);
+            }
+        }
+
+        private void writeXor(long xor) {
+            if (xor == 0) {
+                out.write(0b0, 1);
+                return;
+            }
+            out.write(0b1, 1);
+            int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                // Meaningful bits fit in the previous window
+                out.write(0b0, 1);
+                out.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+            } else {
+                int meaningful = 64 - leading - trailing;
+                out.write(0b1, 1);
+                out.write(leading, 5);
+                // 64 meaningful bits do not fit in 6 bits: stored as 0
+                out.write(meaningful & 0x3F, 6);
+                out.write(xor >>> trailing, meaningful);
+                previousLeading = leading;
+                previousTrailing = trailing;
+            }
+        }
+
+        public int count() {
+            return count;
+        }
+
+        public byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Reads a block point by point, without allocating per point.
+     * <pre>
+     *   Decoder points = new Decoder(block, count);
+     *   while (points.next()) {
+     *       use(points.timestamp(), points.value());
+     *   }
+     * </pre>
+     */
+    public static final class Decoder {
+        private final BitReader in;
+        private final int count;
+        private int read;
+        private long timestamp;
+        private long delta;
+        private long bits;
+        private int leading;
+        private int trailing;
+
+        public Decoder(byte[] block, int count) {
+            this.in = new BitReader(block);
+            this.count = count;
+        }
+
+        public boolean next() {
+            if (read == count) {
+                return false;
+            }
+            if (read == 0) {
+                timestamp = in.read(64);
+                bits = in.read(64);
+            } else {
+                delta += readDeltaOfDelta();
+                timestamp += delta;
+                readXor();
+            }
+            read++;
+            return true;
+        }
+
+        private long readDeltaOfDelta() {
+            if (in.read(1) == 0) {
+                return 0;
+            }
+            if (in.read(1) == 0) {
+                return in.readSigned(7);
+            }
+            if (in.read(1) == 0) {
+                return in.readSigned(9);
+            }
+            if (in.read(1) == 0) {
+                return in.readSigned(12);
+            }
+            return in.read(64);
+        }
+
+        private void readXor() {
+            if (in.read(1) == 0) {
+                return;
+            }
+            if (in.read(1) == 1) {
+                leading = (int) in.read(5);
+                int meaningful = (int) in.read(6);
+                if (meaningful == 0) {
+                    meaningful = 64;
+                }
+                trailing = 64 - leading - meaningful;
+            }
+            bits ^= in.read(64 - leading - trailing) << trailing;
+        }
+
+        public long timestamp() {
+            return timestamp;
+        }
+
+        public double value() {
+            return Double.longBitsToDouble(bits);
+        }
+    }
+
+    private static final class BitWriter {
+        private byte[] bytes = new byte[256];
+        private long position;
+
+        // Writes the low "length" bits of value, most significant first
+        void write(long value, int length) {
+            for (int i = length - 1; i >= 0; i--) {
+                int index = (int) (position >>> 3);
+                if (index == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                }
+                if (((value >>> i) & 1) != 0) {
+                    bytes[index] |= (byte) (0x80 >>> (position & 7));
+                }
+                position++;
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, (int) ((position + 7) >>> 3));
+        }
+    }
+
+    private static final class BitReader {
+        private final byte[] bytes;
+        private long position;
+
+        BitReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        long read(int length) {
+            long value = 0;
+            for (int i = 0; i < length; i++) {
+                int bit = (bytes[(int) (position >>> 3)] >>> (7 - (position & 7))) & 1;
+                value = (value << 1) | bit;
+                position++;
+            }
+            return value;
+        }
+
+        long readSigned(int length) {
+            long value = read(length);
+            // Sign-extend from "length" bits
+            return (value << (64 - length)) >> (64 - length);
+        }
+    }
+}
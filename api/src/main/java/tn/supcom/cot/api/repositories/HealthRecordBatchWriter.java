@@ -0,0 +1,157 @@
+package tn.supcom.cot.api.repositories;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertManyOptions;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import tn.supcom.cot.api.entities.HealthRecord;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes HealthRecords to MongoDB as a single unordered insertMany, or into
+ * hourly buckets with the bucketed storage layout ({@link HealthRecordBuckets}).
+ *
+ * Records must already carry their id. Duplicate-key errors are ignored so a
+ * batch that failed halfway can be written again without creating copies.
+ * The records actually inserted are then added to the running statistics
+ * and announced with a {@link HealthRecordsStored} event.
+ */
+@ApplicationScoped
+public class HealthRecordBatchWriter {
+
+    private static final Logger logger = Logger.getLogger(HealthRecordBatchWriter.class.getName());
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    @Inject
+    MongoConnection mongo;
+
+    @Inject
+    HealthRecordBuckets buckets;
+
+    @Inject
+    HealthStatsStore stats;
+
+    @Inject
+    Event<HealthRecordsStored> storedEvent;
+
+    /**
+     * @return number of documents actually inserted
+     */
+    public int insertAll(List<HealthRecord> records) {
+        int count = 0;
+        for (boolean inserted : insert(records)) {
+            if (inserted) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return which records were inserted, by position; false for duplicates
+     */
+    public boolean[] insert(List<HealthRecord> records) {
+        if (records.isEmpty()) {
+            return new boolean[0];
+        }
+
+        boolean[] inserted;
+        if (buckets.isEnabled()) {
+            inserted = buckets.insert(records);
+        } else {
+            List<Document> documents = new ArrayList<>(records.size());
+            for (HealthRecord record : records) {
+                documents.add(HealthRecordDocuments.toDocument(record));
+            }
+            inserted = insertIgnoringDuplicates(mongo.collection(HealthRecordDocuments.COLLECTION), documents);
+        }
+
+        List<HealthRecord> stored = new ArrayList<>(records.size());
+        List<HealthStatsStore.Reading> readings = new ArrayList<>(records.size());
+        for (int i = 0; i < inserted.length; i++) {
+            if (inserted[i]) {
+                stored.add(records.get(i));
+                readings.add(HealthStatsStore.Reading.of(records.get(i)));
+            }
+        }
+        stats.add(readings);
+        fireStored(stored);
+        return inserted;
+    }
+
+    /**
+     * Inserts documents that were already encoded, e.g. replayed from the write-ahead log.
+     *
+     * @return number of documents actually inserted
+     */
+    public int insertRaw(List<RawBsonDocument> documents) {
+        if (documents.isEmpty()) {
+            return 0;
+        }
+        if (buckets.isEnabled()) {
+            List<HealthRecord> records = new ArrayList<>(documents.size());
+            for (RawBsonDocument document : documents) {
+                records.add(HealthRecordDocuments.toRecord(document));
+            }
+            return insertAll(records);
+        }
+        boolean[] inserted = insertIgnoringDuplicates(mongo.collection(HealthRecordDocuments.COLLECTION)
+                .withDocumentClass(RawBsonDocument.class), documents);
+
+        List<HealthRecord> stored = new ArrayList<>(documents.size());
+        List<HealthStatsStore.Reading> readings = new ArrayList<>(documents.size());
+        for (int i = 0; i < inserted.length; i++) {
+            if (inserted[i]) {
+                stored.add(HealthRecordDocuments.toRecord(documents.get(i)));
+                readings.add(HealthRecordDocuments.toReading(documents.get(i)));
+            }
+        }
+        stats.add(readings);
+        fireStored(stored);
+        return readings.size();
+    }
+
+    private void fireStored(List<HealthRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        // Observers only update in-memory views: their failures must not fail the write
+        try {
+            storedEvent.fire(new HealthRecordsStored(records));
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "HealthRecordsStored observer failed", e);
+        }
+    }
+
+    /**
+     * @return which documents were inserted, by position
+     */
+    private <T> boolean[] insertIgnoringDuplicates(MongoCollection<T> collection, List<T> documents) {
+        boolean[] inserted = new boolean[documents.size()];
+        Arrays.fill(inserted, true);
+        try {
+            collection.insertMany(documents, new InsertManyOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            boolean onlyDuplicates = e.getWriteErrors().stream()
+                    .allMatch(error -> error.getCode() == DUPLICATE_KEY);
+            if (!onlyDuplicates) {
+                throw e;
+            }
+            for (BulkWriteError error : e.getWriteErrors()) {
+                inserted[error.getIndex()] = false;
+            }
+        }
+        return inserted;
+    }
+}
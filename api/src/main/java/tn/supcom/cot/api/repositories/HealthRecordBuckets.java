@@ -0,0 +1,357 @@
+package tn.supcom.cot.api.repositories;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import tn.supcom.cot.api.entities.HealthRecord;
+import tn.supcom.cot.api.entities.SensorType;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+/**
+ * Bucketed storage layout for readings (storage.layout=bucket).
+ *
+ * Instead of one document per reading, the readings of a patient and type
+ * within one UTC hour share a document of parallel arrays:
+ * <pre>
+ *   { _id: "patient-1|HEART_RATE|1740823200000", patientId, type, start, unit, sensorId,
+ *     count: 1800, t: [offset ms from start, ...], v: [value, ...], s: [secondary value, ...] }
+ * </pre>
+ * s is only kept for paired types such as blood pressure. A reading costs
+ * the bytes of its offset and value instead of a whole document with its
+ * field names, id and index entries. Reading ids, notes and sequence numbers
+ * are not stored: ids are derived from the bucket id and offset, and the
+ * sensor id is kept per bucket (the last one written).
+ *
+ * Readings with the same patient, type and millisecond are duplicates,
+ * which keeps write-ahead log replays and MQTT redeliveries idempotent.
+ *
+ * The default layout (document) stores HealthRecord documents as before;
+ * the two layouts do not read each other's data.
+ */
+@ApplicationScoped
+public class HealthRecordBuckets {
+
+    private static final Logger logger = Logger.getLogger(HealthRecordBuckets.class.getName());
+
+    public static final String COLLECTION = "HealthRecordBucket";
+
+    public static final List<IndexModel> INDEXES = List.of(
+            new IndexModel(Indexes.compoundIndex(Indexes.ascending("patientId", "type"), Indexes.descending("start")),
+                    new IndexOptions().name("patientId_type_start")),
+            new IndexModel(Indexes.compoundIndex(Indexes.ascending("patientId"), Indexes.descending("start")),
+                    new IndexOptions().name("patientId_start")));
+
+    static final long BUCKET_MILLIS = Duration.ofHours(1).toMillis();
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    // Newest first, ties broken by id as in the document layout's index order
+    private static final Comparator<HealthRecord> NEWEST_FIRST = Comparator
+            .comparing(HealthRecord::getTimestamp)
+            .thenComparing(HealthRecord::getId)
+            .reversed();
+
+    @Inject
+    MongoConnection mongo;
+
+    @Inject
+    @ConfigProperty(name = "storage.layout", defaultValue = "document")
+    String layout;
+
+    private boolean enabled;
+
+    @PostConstruct
+    void init() {
+        enabled = "bucket".equalsIgnoreCase(layout.trim());
+        if (!enabled && !"document".equalsIgnoreCase(layout.trim())) {
+            logger.warning("Unknown storage.layout '" + layout + "', storing one document per reading");
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Appends readings to their buckets in one unordered bulk write.
+     *
+     * @return which records were stored, by position; false for duplicates
+     */
+    public boolean[] insert(List<HealthRecord> records) {
+        boolean[] inserted = new boolean[records.size()];
+        List<WriteModel<Document>> updates = new ArrayList<>(records.size());
+        List<Integer> positions = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            HealthRecord record = records.get(i);
+            if (record.getPatientId() == null || record.getType() == null
+                    || record.getValue() == null || record.getTimestamp() == null) {
+                continue;
+            }
+            updates.add(new UpdateOneModel<>(filter(record), update(record), new UpdateOptions().upsert(true)));
+            positions.add(i);
+            inserted[i] = true;
+        }
+        if (updates.isEmpty()) {
+            return inserted;
+        }
+
+        MongoCollection<Document> collection = mongo.collection(COLLECTION);
+        try {
+            collection.bulkWrite(updates, new BulkWriteOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            boolean onlyDuplicates = e.getWriteErrors().stream()
+                    .allMatch(error -> error.getCode() == DUPLICATE_KEY);
+            if (!onlyDuplicates) {
+                throw e;
+            }
+            // The offset is already in the bucket (the upsert then collides with the bucket id),
+            // or another writer created the bucket first: append again without upserting to tell
+            for (BulkWriteError error : e.getWriteErrors()) {
+                int position = positions.get(error.getIndex());
+                HealthRecord record = records.get(position);
+                inserted[position] = collection.updateOne(filter(record), update(record)).getModifiedCount() == 1;
+            }
+        }
+        return inserted;
+    }
+
+    private static Bson filter(HealthRecord record) {
+        long millis = epochMillis(record.getTimestamp());
+        long start = bucketStart(millis);
+        return Filters.and(
+                Filters.eq("_id", bucketId(record.getPatientId(), record.getType(), start)),
+                Filters.ne("t", (int) (millis - start)));
+    }
+
+    private static Bson update(HealthRecord record) {
+        long millis = epochMillis(record.getTimestamp());
+        long start = bucketStart(millis);
+        List<Bson> update = new ArrayList<>(List.of(
+                Updates.setOnInsert("patientId", record.getPatientId()),
+                Updates.setOnInsert("type", record.getType()),
+                Updates.setOnInsert("start", new Date(start)),
+                Updates.inc("count", 1),
+                Updates.push("t", (int) (millis - start)),
+                Updates.push("v", record.getValue())));
+        if (paired(record.getType())) {
+            // Pushed for every reading of the type, so that s stays aligned with t and v
+            update.add(Updates.push("s", record.getSecondaryValue()));
+        }
+        if (record.getUnit() != null) {
+            update.add(Updates.set("unit", record.getUnit()));
+        }
+        if (record.getSensorId() != null) {
+            update.add(Updates.set("sensorId", record.getSensorId()));
+        }
+        return Updates.combine(update);
+    }
+
+    /**
+     * @return the newest reading of a patient and type
+     */
+    public Optional<HealthRecord> latest(String patientId, String type) {
+        Document bucket = mongo.collection(COLLECTION)
+                .find(Filters.and(Filters.eq("patientId", patientId), Filters.eq("type", type)))
+                .sort(Sorts.descending("start"))
+                .limit(1)
+                .first();
+        if (bucket == null) {
+            return Optional.empty();
+        }
+        List<HealthRecord> readings = new ArrayList<>();
+        unpack(bucket, readings);
+        return readings.stream().min(NEWEST_FIRST);
+    }
+
+    /**
+     * Readings newest first, by (timestamp, id), strictly after a cursor.
+     *
+     * Buckets are read newest first and stop as soon as no older bucket can
+     * hold one of the count newest readings, since a bucket only holds
+     * readings of its own hour.
+     *
+     * @param type      null for every type
+     * @param beforeTs  and beforeId: the cursor, or null for the newest readings
+     */
+    public List<HealthRecord> newest(String patientId, String type, LocalDateTime beforeTs, String beforeId,
+                                     int count) {
+        List<Bson> filters = new ArrayList<>(List.of(Filters.eq("patientId", patientId)));
+        if (type != null) {
+            filters.add(Filters.eq("type", type));
+        }
+        if (beforeTs != null) {
+            filters.add(Filters.lte("start", new Date(epochMillis(beforeTs))));
+        }
+
+        List<HealthRecord> readings = new ArrayList<>();
+        List<HealthRecord> unpacked = new ArrayList<>();
+        try (MongoCursor<Document> buckets = mongo.collection(COLLECTION)
+                .find(Filters.and(filters))
+                .sort(Sorts.descending("start"))
+                .iterator()) {
+            while (buckets.hasNext()) {
+                Document bucket = buckets.next();
+                long start = bucket.getDate("start").getTime();
+                if (readings.size() >= count
+                        && epochMillis(readings.get(count - 1).getTimestamp()) >= start + BUCKET_MILLIS) {
+                    break;
+                }
+                unpacked.clear();
+                unpack(bucket, unpacked);
+                for (HealthRecord reading : unpacked) {
+                    if (beforeTs == null || before(reading, beforeTs, beforeId)) {
+                        readings.add(reading);
+                    }
+                }
+                readings.sort(NEWEST_FIRST);
+                if (readings.size() > count) {
+                    readings.subList(count, readings.size()).clear();
+                }
+            }
+        }
+        return readings;
+    }
+
+    private static boolean before(HealthRecord reading, LocalDateTime timestamp, String id) {
+        int compared = reading.getTimestamp().compareTo(timestamp);
+        return compared < 0 || (compared == 0 && reading.getId().compareTo(id) < 0);
+    }
+
+    /**
+     * Readings in [from, to) in time order, from the buckets overlapping the range.
+     *
+     * @return null if there are more than maxSamples readings in the range
+     */
+    public HealthRecordSeries.Samples samples(String patientId, String type, LocalDateTime from, LocalDateTime to,
+                                              int maxSamples) {
+        long fromMillis = epochMillis(from);
+        long toMillis = epochMillis(to);
+        long[] times = new long[1024];
+        double[] values = new double[1024];
+        int size = 0;
+        try (MongoCursor<Document> buckets = mongo.collection(COLLECTION)
+                .find(Filters.and(
+                        Filters.eq("patientId", patientId),
+                        Filters.eq("type", type),
+                        Filters.gte("start", new Date(bucketStart(fromMillis))),
+                        Filters.lt("start", new Date(toMillis))))
+                .sort(Sorts.ascending("start"))
+                .iterator()) {
+            while (buckets.hasNext()) {
+                Document bucket = buckets.next();
+                long start = bucket.getDate("start").getTime();
+                List<Number> offsets = bucket.getList("t", Number.class);
+                List<Number> bucketValues = bucket.getList("v", Number.class);
+                for (int i = 0; i < offsets.size(); i++) {
+                    long millis = start + offsets.get(i).longValue();
+                    if (millis < fromMillis || millis >= toMillis || bucketValues.get(i) == null) {
+                        continue;
+                    }
+                    if (size == maxSamples) {
+                        return null;
+                    }
+                    if (size == values.length) {
+                        times = Arrays.copyOf(times, size * 2);
+                        values = Arrays.copyOf(values, size * 2);
+                    }
+                    times[size] = millis;
+                    values[size] = bucketValues.get(i).doubleValue();
+                    size++;
+                }
+            }
+        }
+        sortByTime(times, values, size);
+        return new HealthRecordSeries.Samples(Arrays.copyOf(times, size), Arrays.copyOf(values, size));
+    }
+
+    // Offsets are in arrival order: late readings may sit after newer ones
+    private static void sortByTime(long[] times, double[] values, int size) {
+        boolean sorted = true;
+        for (int i = 1; i < size && sorted; i++) {
+            sorted = times[i - 1] <= times[i];
+        }
+        if (sorted) {
+            return;
+        }
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> times[i]));
+        long[] sortedTimes = new long[size];
+        double[] sortedValues = new double[size];
+        for (int i = 0; i < size; i++) {
+            sortedTimes[i] = times[order[i]];
+            sortedValues[i] = values[order[i]];
+        }
+        System.arraycopy(sortedTimes, 0, times, 0, size);
+        System.arraycopy(sortedValues, 0, values, 0, size);
+    }
+
+    static void unpack(Document bucket, List<HealthRecord> readings) {
+        String id = bucket.getString("_id");
+        long start = bucket.getDate("start").getTime();
+        String unit = bucket.getString("unit");
+        List<Number> offsets = bucket.getList("t", Number.class);
+        List<Number> values = bucket.getList("v", Number.class);
+        List<Number> secondary = bucket.getList("s", Number.class);
+        for (int i = 0; i < offsets.size(); i++) {
+            long offset = offsets.get(i).longValue();
+            HealthRecord record = new HealthRecord(bucket.getString("patientId"), bucket.getString("type"),
+                    values.get(i) == null ? null : values.get(i).doubleValue(), unit);
+            record.setId(id + "|" + offset);
+            record.setTimestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(start + offset), ZoneOffset.UTC));
+            record.setSensorId(bucket.getString("sensorId"));
+            if (secondary != null && i < secondary.size() && secondary.get(i) != null) {
+                record.setSecondaryValue(secondary.get(i).doubleValue());
+                record.setSecondaryUnit(unit);
+            }
+            readings.add(record);
+        }
+    }
+
+    static String bucketId(String patientId, String type, long start) {
+        return patientId + "|" + type + "|" + start;
+    }
+
+    private static boolean paired(String type) {
+        return SensorType.BLOOD_PRESSURE.name().equals(type) || SensorType.GPS_LOCATION.name().equals(type);
+    }
+
+    private static long bucketStart(long epochMillis) {
+        return epochMillis - Math.floorMod(epochMillis, BUCKET_MILLIS);
+    }
+
+    // LocalDateTime is stored as UTC, as the driver codecs do for the document layout
+    private static long epochMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+}
@@ -0,0 +1,143 @@
+package tn.supcom.cot.api.repositories;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.codecs.Codec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import tn.supcom.cot.api.entities.HealthRecord;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Maps HealthRecord entities to raw BSON documents with the same layout
+ * Jakarta NoSQL uses (entity name as collection, id stored as _id).
+ */
+public final class HealthRecordDocuments {
+
+    public static final String COLLECTION = "HealthRecord";
+
+    // Same codecs as the driver's collections, so LocalDateTime maps to a BSON date either way
+    private static final Codec<Document> CODEC = MongoClientSettings.getDefaultCodecRegistry().get(Document.class);
+
+    /**
+     * Indexes behind the history queries, so that sort, skip/cursor and limit
+     * run on the index and a page costs the same whatever the history length.
+     * _id breaks timestamp ties for keyset pagination.
+     */
+    public static final List<IndexModel> INDEXES = List.of(
+            new IndexModel(Indexes.compoundIndex(Indexes.ascending("patientId", "type"),
+                    Indexes.descending("timestamp", "_id")), new IndexOptions().name("patientId_type_timestamp_id")),
+            new IndexModel(Indexes.compoundIndex(Indexes.ascending("patientId"),
+                    Indexes.descending("timestamp", "_id")), new IndexOptions().name("patientId_timestamp_id")));
+
+    private HealthRecordDocuments() {
+    }
+
+    /**
+     * The current time as stored dates read it. Timestamps are the server's
+     * local date-time (LocalDateTime.now(), device clocks in the system zone)
+     * and are stored as if they were UTC, so windows, horizons and cutoffs
+     * compared with stored dates start from this rather than the true instant.
+     */
+    public static long nowMillis() {
+        return LocalDateTime.now().toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    public static Document toDocument(HealthRecord record) {
+        Document document = new Document("_id", record.getId());
+        putIfPresent(document, "patientId", record.getPatientId());
+        putIfPresent(document, "type", record.getType());
+        putIfPresent(document, "value", record.getValue());
+        putIfPresent(document, "unit", record.getUnit());
+        putIfPresent(document, "timestamp", record.getTimestamp());
+        putIfPresent(document, "sensorId", record.getSensorId());
+        putIfPresent(document, "notes", record.getNotes());
+        putIfPresent(document, "secondaryValue", record.getSecondaryValue());
+        putIfPresent(document, "secondaryUnit", record.getSecondaryUnit());
+        putIfPresent(document, "sequence", record.getSequence());
+        return document;
+    }
+
+    private static void putIfPresent(Document document, String key, Object value) {
+        if (value != null) {
+            document.append(key, value);
+        }
+    }
+
+    /**
+     * Decodes a record encoded by {@link #toBson(HealthRecord)}.
+     */
+    public static HealthRecord toRecord(BsonDocument document) {
+        HealthRecord record = new HealthRecord();
+        record.setId(string(document, "_id"));
+        record.setPatientId(string(document, "patientId"));
+        record.setType(string(document, "type"));
+        record.setValue(number(document, "value"));
+        record.setUnit(string(document, "unit"));
+        BsonValue timestamp = document.get("timestamp");
+        if (timestamp != null && timestamp.isDateTime()) {
+            record.setTimestamp(LocalDateTime.ofInstant(
+                    Instant.ofEpochMilli(timestamp.asDateTime().getValue()), ZoneOffset.UTC));
+        }
+        record.setSensorId(string(document, "sensorId"));
+        record.setNotes(string(document, "notes"));
+        record.setSecondaryValue(number(document, "secondaryValue"));
+        record.setSecondaryUnit(string(document, "secondaryUnit"));
+        BsonValue sequence = document.get("sequence");
+        if (sequence != null && sequence.isNumber()) {
+            record.setSequence(sequence.asNumber().longValue());
+        }
+        return record;
+    }
+
+    private static String string(BsonDocument document, String key) {
+        BsonValue value = document.get(key);
+        return value != null && value.isString() ? value.asString().getValue() : null;
+    }
+
+    private static Double number(BsonDocument document, String key) {
+        BsonValue value = document.get(key);
+        return value != null && value.isNumber() ? value.asNumber().doubleValue() : null;
+    }
+
+    /**
+     * Reads the fields statistics need from an encoded record.
+     *
+     * @return null if one of them is missing
+     */
+    public static HealthStatsStore.Reading toReading(BsonDocument document) {
+        BsonValue patientId = document.get("patientId");
+        BsonValue type = document.get("type");
+        BsonValue value = document.get("value");
+        BsonValue timestamp = document.get("timestamp");
+        BsonValue unit = document.get("unit");
+        if (patientId == null || !patientId.isString() || type == null || !type.isString()
+                || value == null || !value.isNumber() || timestamp == null || !timestamp.isDateTime()) {
+            return null;
+        }
+        return new HealthStatsStore.Reading(patientId.asString().getValue(), type.asString().getValue(),
+                unit != null && unit.isString() ? unit.asString().getValue() : null,
+                value.asNumber().doubleValue(), timestamp.asDateTime().getValue());
+    }
+
+    /**
+     * Encodes a record as a standalone BSON document.
+     */
+    public static byte[] toBson(HealthRecord record) {
+        BasicOutputBuffer buffer = new BasicOutputBuffer(256);
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            CODEC.encode(writer, toDocument(record), EncoderContext.builder().build());
+        }
+        return buffer.toByteArray();
+    }
+}
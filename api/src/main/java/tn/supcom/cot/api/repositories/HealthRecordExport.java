@@ -0,0 +1,175 @@
+package tn.supcom.cot.api.repositories;
+
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import tn.supcom.cot.api.entities.HealthRecord;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Reads the whole history of a patient for export, one reading at a time.
+ *
+ * Readings are handed to a {@link Sink} straight off the MongoDB cursors,
+ * so memory stays constant whatever the history length: at most one
+ * hourly bucket or one archived day is decoded at once. Types come one
+ * after the other in name order, each oldest first: archived readings
+ * (archive.enabled), then the stored ones of the configured layout.
+ */
+@ApplicationScoped
+public class HealthRecordExport {
+
+    // Documents per cursor round trip
+    private static final int BATCH_SIZE = 1000;
+
+    private static final Comparator<HealthRecord> OLDEST_FIRST = Comparator
+            .comparing(HealthRecord::getTimestamp)
+            .thenComparing(HealthRecord::getId);
+
+    @Inject
+    MongoConnection mongo;
+
+    @Inject
+    HealthRecordBuckets storage;
+
+    @Inject
+    ReadingArchive archive;
+
+    /**
+     * Receives the exported readings; may fail writing them out.
+     */
+    @FunctionalInterface
+    public interface Sink {
+        void accept(HealthRecord record) throws IOException;
+    }
+
+    /**
+     * @param type null for every type of the patient
+     * @param from inclusive
+     * @param to   exclusive
+     * @return the number of readings exported
+     */
+    public long export(String patientId, String type, LocalDateTime from, LocalDateTime to, Sink sink)
+            throws IOException {
+        long fromMillis = epochMillis(from);
+        long toMillis = epochMillis(to);
+        long exported = 0;
+        for (String each : type != null ? List.of(type) : types(patientId)) {
+            if (archive.isEnabled()) {
+                exported += archived(patientId, each, fromMillis, toMillis, sink);
+            }
+            exported += storage.isEnabled()
+                    ? bucketed(patientId, each, fromMillis, toMillis, sink)
+                    : stored(patientId, each, fromMillis, toMillis, sink);
+        }
+        return exported;
+    }
+
+    // Distinct types over the patient's index prefixes
+    private SortedSet<String> types(String patientId) {
+        SortedSet<String> types = new TreeSet<>();
+        List<String> collections = new ArrayList<>(List.of(storage.isEnabled()
+                ? HealthRecordBuckets.COLLECTION : HealthRecordDocuments.COLLECTION));
+        if (archive.isEnabled()) {
+            collections.add(ReadingArchive.COLLECTION);
+        }
+        for (String collection : collections) {
+            mongo.collection(collection)
+                    .distinct("type", Filters.eq("patientId", patientId), String.class)
+                    .into(types);
+        }
+        return types;
+    }
+
+    private long archived(String patientId, String type, long from, long to, Sink sink) throws IOException {
+        long exported = 0;
+        try (MongoCursor<Document> blocks = mongo.collection(ReadingArchive.COLLECTION)
+                .find(Filters.and(
+                        Filters.eq("patientId", patientId),
+                        Filters.eq("type", type),
+                        Filters.gt("start", new Date(from - ReadingArchive.BLOCK_MILLIS)),
+                        Filters.lt("start", new Date(to))))
+                .sort(Sorts.ascending("start"))
+                .batchSize(1)
+                .iterator()) {
+            while (blocks.hasNext()) {
+                Document block = blocks.next();
+                ReadingArchive.Points points = ReadingArchive.decode(block);
+                for (int i = 0; i < points.size; i++) {
+                    if (points.times[i] >= from && points.times[i] < to) {
+                        sink.accept(ReadingArchive.reading(block, points, i));
+                        exported++;
+                    }
+                }
+            }
+        }
+        return exported;
+    }
+
+    private long bucketed(String patientId, String type, long from, long to, Sink sink) throws IOException {
+        long exported = 0;
+        List<HealthRecord> readings = new ArrayList<>();
+        try (MongoCursor<Document> buckets = mongo.collection(HealthRecordBuckets.COLLECTION)
+                .find(Filters.and(
+                        Filters.eq("patientId", patientId),
+                        Filters.eq("type", type),
+                        Filters.gt("start", new Date(from - HealthRecordBuckets.BUCKET_MILLIS)),
+                        Filters.lt("start", new Date(to))))
+                .sort(Sorts.ascending("start"))
+                .batchSize(16)
+                .iterator()) {
+            while (buckets.hasNext()) {
+                readings.clear();
+                HealthRecordBuckets.unpack(buckets.next(), readings);
+                // Offsets are in arrival order
+                readings.sort(OLDEST_FIRST);
+                for (HealthRecord reading : readings) {
+                    long millis = epochMillis(reading.getTimestamp());
+                    if (millis >= from && millis < to) {
+                        sink.accept(reading);
+                        exported++;
+                    }
+                }
+            }
+        }
+        return exported;
+    }
+
+    // Served by the (patientId, type, timestamp desc, _id desc) index, walked backwards
+    private long stored(String patientId, String type, long from, long to, Sink sink) throws IOException {
+        long exported = 0;
+        try (MongoCursor<BsonDocument> documents = mongo.collection(HealthRecordDocuments.COLLECTION)
+                .withDocumentClass(BsonDocument.class)
+                .find(Filters.and(
+                        Filters.eq("patientId", patientId),
+                        Filters.eq("type", type),
+                        Filters.gte("timestamp", new Date(from)),
+                        Filters.lt("timestamp", new Date(to))))
+                .sort(Sorts.ascending("timestamp", "_id"))
+                .batchSize(BATCH_SIZE)
+                .iterator()) {
+            while (documents.hasNext()) {
+                sink.accept(HealthRecordDocuments.toRecord(documents.next()));
+                exported++;
+            }
+        }
+        return exported;
+    }
+
+    // LocalDateTime is stored as UTC, as the driver codecs do for the document layout
+    private static long epochMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+}
@@ -0,0 +1,196 @@
+package tn.supcom.cot.api.repositories;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.bson.RawBsonDocument;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import tn.supcom.cot.api.entities.HealthRecord;
+import tn.supcom.cot.api.metrics.IngestionMetrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Local write-ahead log in front of MongoDB for ingested readings.
+ *
+ * When enabled, accepted batches are appended to a {@link SegmentLog} and
+ * synced to disk, after which the MQTT messages can be acknowledged. A replay
+ * thread copies the log into MongoDB in order and advances the checkpoint
+ * after each successful insert, so readings survive both MongoDB outages and
+ * restarts (at least once; replays are idempotent because record ids are
+ * stored in the log).
+ *
+ * Batches the log cannot accept, for instance at shutdown, stay
+ * unacknowledged. They are not lost only because MQTTService resumes its
+ * persistent broker session (see mqtt.session.expiry.seconds), in which the
+ * broker keeps them for redelivery.
+ *
+ * Appends are refused while the unreplayed backlog exceeds its limit, which
+ * makes the ingestion pipeline retry and hold back acknowledgements as it
+ * does when writing to MongoDB directly.
+ */
+@ApplicationScoped
+public class HealthRecordJournal {
+
+    private static final Logger logger = Logger.getLogger(HealthRecordJournal.class.getName());
+
+    private static final long IDLE_WAIT_MILLIS = 500;
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 5_000;
+
+    @Inject
+    HealthRecordBatchWriter batchWriter;
+
+    @Inject
+    IngestionMetrics metrics;
+
+    @Resource
+    ManagedThreadFactory threadFactory;
+
+    @Inject
+    @ConfigProperty(name = "mqtt.ingest.wal.enabled", defaultValue = "false")
+    boolean enabled;
+
+    @Inject
+    @ConfigProperty(name = "mqtt.ingest.wal.dir", defaultValue = "data/ingest-wal")
+    String directory;
+
+    @Inject
+    @ConfigProperty(name = "mqtt.ingest.wal.segment.mb", defaultValue = "64")
+    int segmentMegabytes;
+
+    @Inject
+    @ConfigProperty(name = "mqtt.ingest.wal.backlog.max.mb", defaultValue = "1024")
+    long maxBacklogMegabytes;
+
+    @Inject
+    @ConfigProperty(name = "mqtt.ingest.wal.replay.batch.size", defaultValue = "512")
+    int replayBatchSize;
+
+    private SegmentLog log;
+    private Thread replayer;
+    private volatile boolean running;
+
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder replayFailures = new LongAdder();
+    private final LongAdder refused = new LongAdder();
+
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        // A segment is one memory-mapped buffer, so it must fit in an int
+        long segmentBytes = segmentMegabytes * 1024L * 1024L;
+        if (segmentMegabytes < 1 || segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("mqtt.ingest.wal.segment.mb must be between 1 and 2047: "
+                    + segmentMegabytes);
+        }
+        try {
+            log = SegmentLog.open(Path.of(directory), (int) segmentBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open ingestion write-ahead log in " + directory, e);
+        }
+        metrics.gauge("mqtt.ingest.wal.backlog.bytes", log::backlogBytes);
+        metrics.gauge("mqtt.ingest.wal.segments", log::segmentCount);
+        metrics.gauge("mqtt.ingest.wal.corrupt.segments", log::corruptSegments);
+        metrics.gauge("mqtt.ingest.wal.appended", appended::sum);
+        metrics.gauge("mqtt.ingest.wal.replayed", replayed::sum);
+        metrics.gauge("mqtt.ingest.wal.replay.failures", replayFailures::sum);
+        metrics.gauge("mqtt.ingest.wal.refused", refused::sum);
+
+        running = true;
+        replayer = threadFactory.newThread(this::replayLoop);
+        replayer.setName("ingest-wal-replayer");
+        replayer.start();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Durably appends a batch; returns once it is synced to disk.
+     *
+     * @throws IllegalStateException while the replay backlog is above its limit
+     */
+    public void append(List<HealthRecord> records) throws IOException {
+        if (log.backlogBytes() > maxBacklogMegabytes * 1024 * 1024) {
+            refused.increment();
+            throw new IllegalStateException("Write-ahead log backlog above "
+                    + maxBacklogMegabytes + " MB, waiting for MongoDB to catch up");
+        }
+        for (HealthRecord record : records) {
+            log.append(HealthRecordDocuments.toBson(record));
+        }
+        log.force();
+        appended.add(records.size());
+    }
+
+    private void replayLoop() {
+        long position = log.checkpoint();
+        long backoff = 100;
+        while (running) {
+            try {
+                SegmentLog.Batch batch = log.read(position, replayBatchSize);
+                if (batch.records().isEmpty()) {
+                    position = batch.next();
+                    log.awaitAppend(position, IDLE_WAIT_MILLIS);
+                    continue;
+                }
+                List<RawBsonDocument> documents = new ArrayList<>(batch.records().size());
+                for (byte[] record : batch.records()) {
+                    documents.add(new RawBsonDocument(record));
+                }
+                batchWriter.insertRaw(documents);
+                log.checkpoint(batch.next());
+                replayed.add(documents.size());
+                position = batch.next();
+                backoff = 100;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                replayFailures.increment();
+                logger.log(Level.WARNING, "Write-ahead log replay failed, retrying in " + backoff + " ms", e);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_RETRY_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (log == null) {
+            return;
+        }
+        running = false;
+        try {
+            replayer.interrupt();
+            replayer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            log.close();
+        } catch (IOException e) {
+            logger.warning("Failed to close write-ahead log: " + e.getMessage());
+        }
+        // Whatever was not replayed yet is picked up on the next start
+    }
+}
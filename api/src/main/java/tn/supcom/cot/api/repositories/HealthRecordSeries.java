@@ -0,0 +1,319 @@
+package tn.supcom.cot.api.repositories;
+
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Time-range reads of one patient metric for charts, aggregated in MongoDB
+ * so that only the points to draw leave the database.
+ *
+ * With the bucketed storage layout the hourly documents overlapping the
+ * range are read and aggregated here instead. Readings moved to the
+ * compressed archive are decoded and aggregated here as well, then merged
+ * with the stored ones. With a retention policy, the part of a bucketed
+ * range past the raw readings' horizon is read from the minute or hour
+ * rollups; raw samples are only read from {@link #rawStart} on.
+ *
+ * LocalDateTime values are stored as UTC BSON dates by the driver codecs;
+ * the conversions below use the same offset.
+ */
+@ApplicationScoped
+public class HealthRecordSeries {
+
+    // Bucketed layout: readings unpacked in memory to aggregate one chart
+    private static final int MAX_AGGREGATED_SAMPLES = 10_000_000;
+
+    private static final long MINUTE_MILLIS = Duration.ofMinutes(1).toMillis();
+    private static final long HOUR_MILLIS = Duration.ofHours(1).toMillis();
+
+    @Inject
+    MongoConnection mongo;
+
+    @Inject
+    HealthRecordBuckets storage;
+
+    @Inject
+    ReadingArchive archive;
+
+    @Inject
+    RetentionPolicy retention;
+
+    @Inject
+    HealthStatsStore stats;
+
+    /**
+     * Aggregate of the readings in [start, start + bucket).
+     */
+    public record Bucket(LocalDateTime start, double min, double avg, double max, long count, double last) {
+    }
+
+    /**
+     * Raw (timestamp, value) pairs in time order, in primitive arrays.
+     */
+    public record Samples(long[] epochMillis, double[] values) {
+
+        public int size() {
+            return values.length;
+        }
+    }
+
+    /**
+     * Groups readings in [from, to) into fixed buckets aligned on the epoch;
+     * empty buckets are left out. Runs on the (patientId, type, timestamp)
+     * index, sorted so that last is the latest value of each bucket.
+     */
+    public List<Bucket> buckets(String patientId, String type, LocalDateTime from, LocalDateTime to,
+                                Duration bucket) {
+        long millis = bucket.toMillis();
+        if (retention.isEnabled()) {
+            long now = HealthRecordDocuments.nowMillis();
+            long fromMillis = from.toInstant(ZoneOffset.UTC).toEpochMilli();
+            long toMillis = to.toInstant(ZoneOffset.UTC).toEpochMilli();
+            long horizon = retention.rawHorizon(type, now);
+            if (fromMillis < horizon) {
+                // Hourly rollups for hour-sized buckets and past the minute rollups' horizon
+                boolean hourly = millis % HOUR_MILLIS == 0 || fromMillis < retention.minuteRollupHorizon(now);
+                long unit = hourly ? HOUR_MILLIS : MINUTE_MILLIS;
+                // Raw readings from the first whole rollup after the horizon, so nothing is counted twice
+                long split = Math.min(toMillis, horizon + Math.floorMod(-horizon, unit));
+                List<Bucket> rolledUp = stats.rollups(patientId, type, hourly, fromMillis, split, millis);
+                if (split == toMillis) {
+                    return rolledUp;
+                }
+                return merge(rolledUp, rawBuckets(patientId, type, toLocal(new Date(split)), to, millis));
+            }
+        }
+        return rawBuckets(patientId, type, from, to, millis);
+    }
+
+    private List<Bucket> rawBuckets(String patientId, String type, LocalDateTime from, LocalDateTime to,
+                                    long millis) {
+        List<Bucket> stored = storedBuckets(patientId, type, from, to, millis);
+        if (!archive.isEnabled()) {
+            return stored;
+        }
+        Samples archived = archive.samples(patientId, type, from, to, MAX_AGGREGATED_SAMPLES);
+        if (archived == null) {
+            throw new IllegalStateException("More than " + MAX_AGGREGATED_SAMPLES + " archived readings in range");
+        }
+        return merge(aggregate(archived, millis), stored);
+    }
+
+    private List<Bucket> storedBuckets(String patientId, String type, LocalDateTime from, LocalDateTime to,
+                                       long millis) {
+        if (storage.isEnabled()) {
+            // Readings are packed in hourly documents: aggregate them here
+            Samples samples = storage.samples(patientId, type, from, to, MAX_AGGREGATED_SAMPLES);
+            if (samples == null) {
+                throw new IllegalStateException("More than " + MAX_AGGREGATED_SAMPLES + " readings in range");
+            }
+            return aggregate(samples, millis);
+        }
+        // timestamp - (timestamp mod bucket): date arithmetic available since MongoDB 4.0
+        Document bucketStart = new Document("$subtract", List.of("$timestamp",
+                new Document("$mod", List.of(new Document("$toLong", "$timestamp"), millis))));
+        List<Bson> pipeline = List.of(
+                Aggregates.match(range(patientId, type, from, to)),
+                Aggregates.sort(Sorts.ascending("timestamp")),
+                Aggregates.group(bucketStart,
+                        Accumulators.min("min", "$value"),
+                        Accumulators.avg("avg", "$value"),
+                        Accumulators.max("max", "$value"),
+                        Accumulators.sum("count", 1),
+                        Accumulators.last("last", "$value")),
+                Aggregates.sort(Sorts.ascending("_id")));
+
+        List<Bucket> buckets = new ArrayList<>();
+        for (Document document : mongo.collection(HealthRecordDocuments.COLLECTION).aggregate(pipeline)) {
+            buckets.add(new Bucket(
+                    toLocal(document.getDate("_id")),
+                    number(document, "min"),
+                    number(document, "avg"),
+                    number(document, "max"),
+                    ((Number) document.get("count")).longValue(),
+                    number(document, "last")));
+        }
+        return buckets;
+    }
+
+    /**
+     * Start of the raw readings still kept for a range starting at from:
+     * from itself, or the retention horizon when older readings were purged.
+     */
+    public LocalDateTime rawStart(String type, LocalDateTime from) {
+        return retention.rawStart(type, from, HealthRecordDocuments.nowMillis());
+    }
+
+    /**
+     * Reads the readings in [from, to) in time order, projected to timestamp
+     * and value.
+     *
+     * @return null if there are more than maxSamples readings in the range
+     */
+    public Samples samples(String patientId, String type, LocalDateTime from, LocalDateTime to, int maxSamples) {
+        Samples stored = storedSamples(patientId, type, from, to, maxSamples);
+        if (stored == null || !archive.isEnabled()) {
+            return stored;
+        }
+        Samples archived = archive.samples(patientId, type, from, to, maxSamples - stored.size());
+        return archived == null ? null : merge(archived, stored);
+    }
+
+    private Samples storedSamples(String patientId, String type, LocalDateTime from, LocalDateTime to,
+                                  int maxSamples) {
+        if (storage.isEnabled()) {
+            return storage.samples(patientId, type, from, to, maxSamples);
+        }
+        long[] times = new long[1024];
+        double[] values = new double[1024];
+        int size = 0;
+        try (MongoCursor<Document> cursor = mongo.collection(HealthRecordDocuments.COLLECTION)
+                .find(range(patientId, type, from, to))
+                .projection(Projections.fields(Projections.include("timestamp", "value"), Projections.excludeId()))
+                .sort(Sorts.ascending("timestamp"))
+                .limit(maxSamples + 1)
+                .batchSize(4096)
+                .iterator()) {
+            while (cursor.hasNext()) {
+                Document document = cursor.next();
+                Object value = document.get("value");
+                Date timestamp = document.getDate("timestamp");
+                if (!(value instanceof Number) || timestamp == null) {
+                    continue;
+                }
+                if (size == maxSamples) {
+                    return null;
+                }
+                if (size == values.length) {
+                    times = Arrays.copyOf(times, size * 2);
+                    values = Arrays.copyOf(values, size * 2);
+                }
+                times[size] = timestamp.getTime();
+                values[size] = ((Number) value).doubleValue();
+                size++;
+            }
+        }
+        return new Samples(Arrays.copyOf(times, size), Arrays.copyOf(values, size));
+    }
+
+    /**
+     * Same buckets as the aggregation pipeline, from samples in time order.
+     */
+    static List<Bucket> aggregate(Samples samples, long bucketMillis) {
+        List<Bucket> buckets = new ArrayList<>();
+        long[] times = samples.epochMillis();
+        double[] values = samples.values();
+        int i = 0;
+        while (i < values.length) {
+            long start = times[i] - Math.floorMod(times[i], bucketMillis);
+            double min = values[i];
+            double max = values[i];
+            double sum = 0;
+            int first = i;
+            for (; i < values.length && times[i] < start + bucketMillis; i++) {
+                min = Math.min(min, values[i]);
+                max = Math.max(max, values[i]);
+                sum += values[i];
+            }
+            int count = i - first;
+            buckets.add(new Bucket(toLocal(new Date(start)), min, sum / count, max, count, values[i - 1]));
+        }
+        return buckets;
+    }
+
+    /**
+     * Merges two series in time order. Archived readings are older than the
+     * stored ones except for late arrivals, so this is mostly a concatenation.
+     */
+    static Samples merge(Samples a, Samples b) {
+        int size = a.size() + b.size();
+        long[] times = new long[size];
+        double[] values = new double[size];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < size; k++) {
+            if (j == b.size() || (i < a.size() && a.epochMillis()[i] <= b.epochMillis()[j])) {
+                times[k] = a.epochMillis()[i];
+                values[k] = a.values()[i++];
+            } else {
+                times[k] = b.epochMillis()[j];
+                values[k] = b.values()[j++];
+            }
+        }
+        return new Samples(times, values);
+    }
+
+    /**
+     * Merges older (archived or rolled up) and stored buckets, combining those
+     * with the same start; last is taken from the stored readings, the newer ones.
+     */
+    static List<Bucket> merge(List<Bucket> older, List<Bucket> stored) {
+        List<Bucket> merged = new ArrayList<>(older.size() + stored.size());
+        int i = 0;
+        int j = 0;
+        while (i < older.size() || j < stored.size()) {
+            if (j == stored.size()) {
+                merged.add(older.get(i++));
+            } else if (i == older.size()) {
+                merged.add(stored.get(j++));
+            } else {
+                Bucket a = older.get(i);
+                Bucket b = stored.get(j);
+                int compared = a.start().compareTo(b.start());
+                if (compared < 0) {
+                    merged.add(a);
+                    i++;
+                } else if (compared > 0) {
+                    merged.add(b);
+                    j++;
+                } else {
+                    long count = a.count() + b.count();
+                    merged.add(new Bucket(a.start(), Math.min(a.min(), b.min()),
+                            (a.avg() * a.count() + b.avg() * b.count()) / count,
+                            Math.max(a.max(), b.max()), count, b.last()));
+                    i++;
+                    j++;
+                }
+            }
+        }
+        return merged;
+    }
+
+    private static Bson range(String patientId, String type, LocalDateTime from, LocalDateTime to) {
+        return Filters.and(
+                Filters.eq("patientId", patientId),
+                Filters.eq("type", type),
+                Filters.gte("timestamp", toDate(from)),
+                Filters.lt("timestamp", toDate(to)),
+                Filters.ne("value", null));
+    }
+
+    private static double number(Document document, String key) {
+        Object value = document.get(key);
+        return value instanceof Number number ? number.doubleValue() : Double.NaN;
+    }
+
+    private static Date toDate(LocalDateTime time) {
+        return Date.from(time.toInstant(ZoneOffset.UTC));
+    }
+
+    private static LocalDateTime toLocal(Date date) {
+        return LocalDateTime.ofInstant(date.toInstant(), ZoneOffset.UTC);
+    }
+}
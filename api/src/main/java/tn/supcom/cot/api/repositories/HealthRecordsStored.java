@@ -0,0 +1,13 @@
+package tn.supcom.cot.api.repositories;
+
+import tn.supcom.cot.api.entities.HealthRecord;
+
+import java.util.List;
+
+/**
+ * CDI event fired once readings are stored in MongoDB, whatever the path
+ * (REST, MQTT batch or write-ahead log replay). Duplicates that were not
+ * inserted are left out.
+ */
+public record HealthRecordsStored(List<HealthRecord> records) {
+}
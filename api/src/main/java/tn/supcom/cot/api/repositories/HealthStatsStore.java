@@ -0,0 +1,308 @@
+package tn.supcom.cot.api.repositories;
+
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import tn.supcom.cot.api.entities.HealthRecord;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Running count/sum/min/max per patient and metric, maintained as each
+ * reading is stored so that statistics never rescan the history.
+ *
+ * Every reading updates four documents of the HealthStats collection: its
+ * minute, its hour, its day (UTC) and the all-time total. A window is
+ * answered from at most 31 documents: the last 24 hours from hourly buckets,
+ * 7 and 30 days from daily ones. Windows start on a bucket boundary, so the
+ * last 24 hours cover between 24 and 25 hours.
+ *
+ * Minute and hour documents double as rollups for charts once the raw
+ * readings have expired (see RetentionPolicy); they also keep the latest
+ * reading as last: { at, value }, which $max compares on at first.
+ *
+ * Updates are $inc/$min/$max upserts, so several API nodes can feed the same
+ * documents. setup-mongodb.js rebuilds them from the stored readings.
+ */
+@ApplicationScoped
+public class HealthStatsStore {
+
+    private static final Logger logger = Logger.getLogger(HealthStatsStore.class.getName());
+
+    public static final String COLLECTION = "HealthStats";
+
+    public static final List<IndexModel> INDEXES = List.of(
+            new IndexModel(Indexes.ascending("patientId", "type", "granularity", "bucket"),
+                    new IndexOptions().name("patientId_type_granularity_bucket")));
+
+    private static final String MINUTE = "minute";
+    private static final String HOUR = "hour";
+    private static final String DAY = "day";
+    private static final String ALL = "all";
+
+    private static final long MINUTE_MILLIS = Duration.ofMinutes(1).toMillis();
+    private static final long HOUR_MILLIS = Duration.ofHours(1).toMillis();
+    private static final long DAY_MILLIS = Duration.ofDays(1).toMillis();
+
+    @Inject
+    MongoConnection mongo;
+
+    /**
+     * Time span a statistic covers.
+     */
+    public enum Window {
+        LAST_24_HOURS("24h", HOUR, Duration.ofHours(24)),
+        LAST_7_DAYS("7d", DAY, Duration.ofDays(7)),
+        LAST_30_DAYS("30d", DAY, Duration.ofDays(30)),
+        ALL_TIME("all", ALL, null);
+
+        private final String label;
+        private final String granularity;
+        private final Duration length;
+
+        Window(String label, String granularity, Duration length) {
+            this.label = label;
+            this.granularity = granularity;
+            this.length = length;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        public static Optional<Window> parse(String label) {
+            for (Window window : values()) {
+                if (window.label.equals(label)) {
+                    return Optional.of(window);
+                }
+            }
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * A stored reading, as much as statistics need of it.
+     */
+    public record Reading(String patientId, String type, String unit, double value, long epochMillis) {
+
+        /**
+         * @return null if the record lacks a field statistics are keyed on
+         */
+        public static Reading of(HealthRecord record) {
+            if (record.getPatientId() == null || record.getType() == null
+                    || record.getValue() == null || record.getTimestamp() == null) {
+                return null;
+            }
+            return new Reading(record.getPatientId(), record.getType(), record.getUnit(), record.getValue(),
+                    record.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli());
+        }
+    }
+
+    public record Summary(long count, double sum, double min, double max, String unit) {
+
+        public double average() {
+            return count == 0 ? 0.0 : sum / count;
+        }
+    }
+
+    /**
+     * Adds stored readings to their minute, hour, day and all-time documents, in one
+     * bulk write. Readings of a batch falling in the same document are merged
+     * first. Failures are logged only: the readings are already stored, and
+     * writing them again would be skipped as duplicates anyway.
+     */
+    public void add(List<Reading> readings) {
+        try {
+            update(readings);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Could not update statistics for " + readings.size() + " readings", e);
+        }
+    }
+
+    private void update(List<Reading> readings) {
+        Map<Document, Accumulator> merged = new LinkedHashMap<>();
+        for (Reading reading : readings) {
+            if (reading == null) {
+                continue;
+            }
+            long minute = reading.epochMillis() - Math.floorMod(reading.epochMillis(), MINUTE_MILLIS);
+            long hour = reading.epochMillis() - Math.floorMod(reading.epochMillis(), HOUR_MILLIS);
+            long day = reading.epochMillis() - Math.floorMod(reading.epochMillis(), DAY_MILLIS);
+            merged.computeIfAbsent(key(reading, MINUTE, new Date(minute)), k -> new Accumulator()).add(reading);
+            merged.computeIfAbsent(key(reading, HOUR, new Date(hour)), k -> new Accumulator()).add(reading);
+            merged.computeIfAbsent(key(reading, DAY, new Date(day)), k -> new Accumulator()).add(reading);
+            merged.computeIfAbsent(key(reading, ALL, null), k -> new Accumulator()).add(reading);
+        }
+        if (merged.isEmpty()) {
+            return;
+        }
+
+        List<WriteModel<Document>> updates = new ArrayList<>(merged.size());
+        merged.forEach((id, accumulator) -> {
+            List<Bson> update = new ArrayList<>(List.of(
+                    Updates.setOnInsert("patientId", id.getString("patientId")),
+                    Updates.setOnInsert("type", id.getString("type")),
+                    Updates.setOnInsert("granularity", id.getString("granularity")),
+                    Updates.setOnInsert("bucket", id.getDate("bucket")),
+                    Updates.inc("count", accumulator.count),
+                    Updates.inc("sum", accumulator.sum),
+                    Updates.min("min", accumulator.min),
+                    Updates.max("max", accumulator.max),
+                    Updates.max("last", new Document("at", new Date(accumulator.lastAt))
+                            .append("value", accumulator.last))));
+            if (accumulator.unit != null) {
+                update.add(Updates.set("unit", accumulator.unit));
+            }
+            updates.add(new UpdateOneModel<>(Filters.eq("_id", id), Updates.combine(update),
+                    new UpdateOptions().upsert(true)));
+        });
+        mongo.collection(COLLECTION).bulkWrite(updates, new BulkWriteOptions().ordered(false));
+    }
+
+    /**
+     * @param nowMillis the current time as stored dates read it ({@link HealthRecordDocuments#nowMillis})
+     * @return empty if no reading was stored in the window
+     */
+    public Optional<Summary> summary(String patientId, String type, Window window, long nowMillis) {
+        Iterable<Document> documents;
+        if (window.length == null) {
+            documents = mongo.collection(COLLECTION).find(Filters.eq("_id", key(patientId, type, ALL, null)));
+        } else {
+            long bucket = window.granularity.equals(HOUR) ? HOUR_MILLIS : DAY_MILLIS;
+            long start = nowMillis - window.length.toMillis();
+            documents = mongo.collection(COLLECTION).find(Filters.and(
+                    Filters.eq("patientId", patientId),
+                    Filters.eq("type", type),
+                    Filters.eq("granularity", window.granularity),
+                    Filters.gte("bucket", new Date(start - Math.floorMod(start, bucket)))));
+        }
+
+        long count = 0;
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        String unit = null;
+        for (Document document : documents) {
+            count += ((Number) document.get("count")).longValue();
+            sum += ((Number) document.get("sum")).doubleValue();
+            min = Math.min(min, ((Number) document.get("min")).doubleValue());
+            max = Math.max(max, ((Number) document.get("max")).doubleValue());
+            unit = document.getString("unit");
+        }
+        return count == 0 ? Optional.empty() : Optional.of(new Summary(count, sum, min, max, unit));
+    }
+
+    /**
+     * Minute or hour rollups in [from, to), combined into buckets of
+     * bucketMillis aligned on the epoch; empty buckets are left out. Rollups
+     * straddling a bucket boundary count in the bucket of their start.
+     */
+    public List<HealthRecordSeries.Bucket> rollups(String patientId, String type, boolean hourly,
+                                                   long from, long to, long bucketMillis) {
+        List<HealthRecordSeries.Bucket> buckets = new ArrayList<>();
+        Accumulator current = null;
+        long currentStart = 0;
+        for (Document document : mongo.collection(COLLECTION)
+                .find(Filters.and(
+                        Filters.eq("patientId", patientId),
+                        Filters.eq("type", type),
+                        Filters.eq("granularity", hourly ? HOUR : MINUTE),
+                        Filters.gte("bucket", new Date(from)),
+                        Filters.lt("bucket", new Date(to))))
+                .sort(Sorts.ascending("bucket"))) {
+            long rollupStart = document.getDate("bucket").getTime();
+            long start = rollupStart - Math.floorMod(rollupStart, bucketMillis);
+            if (current == null || start != currentStart) {
+                if (current != null) {
+                    buckets.add(current.toBucket(currentStart));
+                }
+                current = new Accumulator();
+                currentStart = start;
+            }
+            current.merge(document);
+        }
+        if (current != null) {
+            buckets.add(current.toBucket(currentStart));
+        }
+        return buckets;
+    }
+
+    private static Document key(Reading reading, String granularity, Date bucket) {
+        return key(reading.patientId(), reading.type(), granularity, bucket);
+    }
+
+    // Field order matters: _id documents compare as a whole
+    private static Document key(String patientId, String type, String granularity, Date bucket) {
+        return new Document("patientId", patientId)
+                .append("type", type)
+                .append("granularity", granularity)
+                .append("bucket", bucket);
+    }
+
+    private static final class Accumulator {
+        long count;
+        double sum;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        long lastAt = Long.MIN_VALUE;
+        double last;
+        String unit;
+
+        void add(Reading reading) {
+            count++;
+            sum += reading.value();
+            min = Math.min(min, reading.value());
+            max = Math.max(max, reading.value());
+            if (reading.epochMillis() >= lastAt) {
+                lastAt = reading.epochMillis();
+                last = reading.value();
+            }
+            if (reading.unit() != null) {
+                unit = reading.unit();
+            }
+        }
+
+        void merge(Document rollup) {
+            long rollupCount = ((Number) rollup.get("count")).longValue();
+            double rollupSum = ((Number) rollup.get("sum")).doubleValue();
+            count += rollupCount;
+            sum += rollupSum;
+            min = Math.min(min, ((Number) rollup.get("min")).doubleValue());
+            max = Math.max(max, ((Number) rollup.get("max")).doubleValue());
+            Document rollupLast = rollup.get("last", Document.class);
+            // Rollups written before last was kept: their average stands in
+            long at = rollupLast != null ? rollupLast.getDate("at").getTime() : rollup.getDate("bucket").getTime();
+            if (at >= lastAt) {
+                lastAt = at;
+                last = rollupLast != null ? ((Number) rollupLast.get("value")).doubleValue() : rollupSum / rollupCount;
+            }
+        }
+
+        HealthRecordSeries.Bucket toBucket(long start) {
+            return new HealthRecordSeries.Bucket(LocalDateTime.ofInstant(Instant.ofEpochMilli(start), ZoneOffset.UTC),
+                    min, sum / count, max, count, last);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package tn.supcom.cot.api.repositories;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.bson.Document;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * Direct MongoDB driver access.
+ *
+ * Jakarta NoSQL templates insert documents one by one; this connection is
+ * used for the operations they do not expose, such as unordered bulk writes.
+ * It reads the same host/database settings as the Jakarta NoSQL provider.
+ */
+@ApplicationScoped
+public class MongoConnection {
+
+    @Inject
+    @ConfigProperty(name = "jnosql.mongodb.host", defaultValue = "localhost:27017")
+    String host;
+
+    @Inject
+    @ConfigProperty(name = "jnosql.document.database")
+    String database;
+
+    private MongoClient client;
+
+    @PostConstruct
+    void init() {
+        client = MongoClients.create("mongodb://" + host);
+    }
+
+    public MongoCollection<Document> collection(String name) {
+        return client.getDatabase(database).getCollection(name);
+    }
+
+    @PreDestroy
+    void close() {
+        if (client != null) {
+            client.close();
+        }
+    }
+}
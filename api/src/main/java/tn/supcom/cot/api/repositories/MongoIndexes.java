@@ -0,0 +1,54 @@
+package tn.supcom.cot.api.repositories;
+
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Creates the indexes the listing queries rely on when the application
+ * starts (a no-op for indexes that already exist). setup-mongodb.js
+ * declares the same ones for a fresh database.
+ */
+@ApplicationScoped
+public class MongoIndexes {
+
+    private static final Logger logger = Logger.getLogger(MongoIndexes.class.getName());
+
+    /**
+     * Alert listings are paged newest first with _id breaking timestamp ties.
+     */
+    public static final List<IndexModel> ALERT_INDEXES = List.of(
+            new IndexModel(Indexes.compoundIndex(Indexes.ascending("patientId"),
+                    Indexes.descending("timestamp", "_id")), new IndexOptions().name("patientId_timestamp_id")),
+            new IndexModel(Indexes.compoundIndex(Indexes.ascending("severity"),
+                    Indexes.descending("timestamp", "_id")), new IndexOptions().name("severity_timestamp_id")),
+            new IndexModel(Indexes.compoundIndex(Indexes.ascending("severity", "resolved"),
+                    Indexes.descending("timestamp", "_id")), new IndexOptions().name("severity_resolved_timestamp_id")));
+
+    @Inject
+    MongoConnection mongo;
+
+    void ensureIndexes(@Observes @Initialized(ApplicationScoped.class) Object event) {
+        Map<String, List<IndexModel>> indexes = Map.of(
+                HealthRecordDocuments.COLLECTION, HealthRecordDocuments.INDEXES,
+                "Alert", ALERT_INDEXES,
+                HealthRecordBuckets.COLLECTION, HealthRecordBuckets.INDEXES,
+                HealthStatsStore.COLLECTION, HealthStatsStore.INDEXES,
+                ReadingArchive.COLLECTION, ReadingArchive.INDEXES);
+        indexes.forEach((collection, models) -> {
+            try {
+                mongo.collection(collection).createIndexes(models);
+            } catch (Exception e) {
+                logger.warning("Could not create " + collection + " indexes: " + e.getMessage());
+            }
+        });
+    }
+}
@@ -0,0 +1,539 @@
+package tn.supcom.cot.api.repositories;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.Sorts;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedScheduledExecutorService;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.Binary;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import tn.supcom.cot.api.entities.HealthRecord;
+import tn.supcom.cot.api.metrics.IngestionMetrics;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compressed archive of old readings (archive.enabled=true).
+ *
+ * A periodic job moves the readings older than archive.after.days out of
+ * the reading collection (HealthRecord, or HealthRecordBucket with the
+ * bucketed layout) into one block per patient, type and UTC day:
+ * <pre>
+ *   { _id: "patient-1|HEART_RATE|1740787200000", patientId, type, start, end, unit,
+ *     count, min, max, sum, data: BinData, secondary: BinData }
+ * </pre>
+ * data holds the (timestamp, value) series encoded by {@link GorillaCodec},
+ * and secondary the secondary values of paired types on the same
+ * timestamps. Reading ids, notes and sensor ids are not kept; archived
+ * readings get ids from the block id and their position in it.
+ *
+ * History and chart queries continue into the blocks, decoding them point
+ * by point. Statistics are unaffected: they come from HealthStats, which
+ * the job does not touch.
+ *
+ * A block is written before the readings it replaces are deleted, and
+ * readings sharing a millisecond with one already in the block are dropped,
+ * so a run interrupted in between is completed by the next one. Readings
+ * for an archived day stored while the job reads and deletes it are lost;
+ * they would have to be older than archive.after.days.
+ */
+@ApplicationScoped
+public class ReadingArchive {
+
+    private static final Logger logger = Logger.getLogger(ReadingArchive.class.getName());
+
+    public static final String COLLECTION = "HealthRecordArchive";
+
+    public static final List<IndexModel> INDEXES = List.of(
+            new IndexModel(Indexes.compoundIndex(Indexes.ascending("patientId", "type"), Indexes.descending("start")),
+                    new IndexOptions().name("patientId_type_start")));
+
+    static final long BLOCK_MILLIS = Duration.ofDays(1).toMillis();
+
+    // Days with more readings than this (a misbehaving sensor) are left where they are
+    private static final int MAX_BLOCK_READINGS = 5_000_000;
+
+    @Inject
+    MongoConnection mongo;
+
+    @Inject
+    HealthRecordBuckets storage;
+
+    @Inject
+    IngestionMetrics metrics;
+
+    @Resource
+    ManagedScheduledExecutorService scheduler;
+
+    @Inject
+    @ConfigProperty(name = "archive.enabled", defaultValue = "false")
+    boolean enabled;
+
+    @Inject
+    @ConfigProperty(name = "archive.after.days", defaultValue = "30")
+    int afterDays;
+
+    @Inject
+    @ConfigProperty(name = "archive.interval.minutes", defaultValue = "60")
+    long intervalMinutes;
+
+    @Inject
+    @ConfigProperty(name = "archive.max.blocks.per.run", defaultValue = "500")
+    int maxBlocksPerRun;
+
+    private final LongAdder blocksWritten = new LongAdder();
+    private final LongAdder readingsArchived = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    private ScheduledFuture<?> compactTask;
+
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        metrics.gauge("archive.blocks.written", blocksWritten::sum);
+        metrics.gauge("archive.readings.archived", readingsArchived::sum);
+        metrics.gauge("archive.failures", failures::sum);
+        if (scheduler != null) {
+            compactTask = scheduler.scheduleWithFixedDelay(() -> compact(HealthRecordDocuments.nowMillis()),
+                    intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (compactTask != null) {
+            compactTask.cancel(false);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Archives the oldest pending days, at most archive.max.blocks.per.run
+     * (patient, type, day) blocks per call.
+     *
+     * @return the number of blocks written
+     */
+    public int compact(long nowMillis) {
+        long cutoff = dayStart(nowMillis - Duration.ofDays(afterDays).toMillis());
+        List<Document> days;
+        try {
+            days = pending(cutoff);
+        } catch (Exception e) {
+            // Thrown out of a scheduled run, it would cancel the next ones
+            failures.increment();
+            logger.log(Level.WARNING, "Could not list readings to archive", e);
+            return 0;
+        }
+        int written = 0;
+        for (Document pending : days) {
+            Document key = pending.get("_id", Document.class);
+            String patientId = key.getString("patientId");
+            String type = key.getString("type");
+            long day = key.getDate("day").getTime();
+            try {
+                Points points = readStored(patientId, type, day);
+                if (points == null) {
+                    logger.warning("More than " + MAX_BLOCK_READINGS + " " + type + " readings for " + patientId
+                            + " on " + Instant.ofEpochMilli(day) + ", not archived");
+                    continue;
+                }
+                if (points.size == 0) {
+                    continue;
+                }
+                store(patientId, type, pending.getString("unit"), day, points);
+                deleteStored(patientId, type, day);
+                written++;
+            } catch (Exception e) {
+                failures.increment();
+                logger.log(Level.WARNING, "Could not archive " + type + " readings for " + patientId
+                        + " on " + Instant.ofEpochMilli(day), e);
+            }
+        }
+        return written;
+    }
+
+    // Oldest (patientId, type, day) groups with stored readings before the cutoff
+    private List<Document> pending(long cutoff) {
+        String collection;
+        String time;
+        Bson match;
+        if (storage.isEnabled()) {
+            // Hourly buckets never straddle the day-aligned cutoff
+            collection = HealthRecordBuckets.COLLECTION;
+            time = "$start";
+            match = Filters.lt("start", new Date(cutoff));
+        } else {
+            collection = HealthRecordDocuments.COLLECTION;
+            time = "$timestamp";
+            match = Filters.and(Filters.lt("timestamp", new Date(cutoff)), Filters.ne("value", null));
+        }
+        // time - (time mod day): date arithmetic as in HealthRecordSeries
+        Document day = new Document("$subtract", List.of(time,
+                new Document("$mod", List.of(new Document("$toLong", time), BLOCK_MILLIS))));
+        return mongo.collection(collection).aggregate(List.of(
+                        Aggregates.match(match),
+                        Aggregates.group(new Document("patientId", "$patientId")
+                                        .append("type", "$type")
+                                        .append("day", day),
+                                Accumulators.last("unit", "$unit")),
+                        Aggregates.sort(Sorts.ascending("_id.day")),
+                        Aggregates.limit(maxBlocksPerRun)))
+                .into(new ArrayList<>());
+    }
+
+    // Readings of one day from the reading collection, or null if there are too many
+    private Points readStored(String patientId, String type, long day) {
+        Points points = new Points();
+        if (storage.isEnabled()) {
+            List<HealthRecord> unpacked = new ArrayList<>();
+            try (MongoCursor<Document> buckets = mongo.collection(HealthRecordBuckets.COLLECTION)
+                    .find(storedRange(patientId, type, day, "start"))
+                    .iterator()) {
+                while (buckets.hasNext()) {
+                    unpacked.clear();
+                    HealthRecordBuckets.unpack(buckets.next(), unpacked);
+                    for (HealthRecord reading : unpacked) {
+                        if (reading.getValue() == null) {
+                            continue;
+                        }
+                        if (points.size == MAX_BLOCK_READINGS) {
+                            return null;
+                        }
+                        points.add(epochMillis(reading.getTimestamp()), reading.getValue(),
+                                reading.getSecondaryValue() == null ? Double.NaN : reading.getSecondaryValue());
+                    }
+                }
+            }
+        } else {
+            try (MongoCursor<Document> cursor = mongo.collection(HealthRecordDocuments.COLLECTION)
+                    .find(Filters.and(storedRange(patientId, type, day, "timestamp"), Filters.ne("value", null)))
+                    .projection(Projections.fields(
+                            Projections.include("timestamp", "value", "secondaryValue"), Projections.excludeId()))
+                    .batchSize(4096)
+                    .iterator()) {
+                while (cursor.hasNext()) {
+                    Document document = cursor.next();
+                    Object value = document.get("value");
+                    Object secondary = document.get("secondaryValue");
+                    Date timestamp = document.getDate("timestamp");
+                    if (!(value instanceof Number) || timestamp == null) {
+                        continue;
+                    }
+                    if (points.size == MAX_BLOCK_READINGS) {
+                        return null;
+                    }
+                    points.add(timestamp.getTime(), ((Number) value).doubleValue(),
+                            secondary instanceof Number number ? number.doubleValue() : Double.NaN);
+                }
+            }
+        }
+        return points;
+    }
+
+    private void deleteStored(String patientId, String type, long day) {
+        if (storage.isEnabled()) {
+            mongo.collection(HealthRecordBuckets.COLLECTION).deleteMany(storedRange(patientId, type, day, "start"));
+        } else {
+            mongo.collection(HealthRecordDocuments.COLLECTION).deleteMany(
+                    Filters.and(storedRange(patientId, type, day, "timestamp"), Filters.ne("value", null)));
+        }
+    }
+
+    private static Bson storedRange(String patientId, String type, long day, String time) {
+        return Filters.and(
+                Filters.eq("patientId", patientId),
+                Filters.eq("type", type),
+                Filters.gte(time, new Date(day)),
+                Filters.lt(time, new Date(day + BLOCK_MILLIS)));
+    }
+
+    /**
+     * Adds readings to the block of their day, merged with what it already holds.
+     */
+    void store(String patientId, String type, String unit, long day, Points points) {
+        String id = blockId(patientId, type, day);
+        MongoCollection<Document> collection = mongo.collection(COLLECTION);
+        Document existing = collection.find(Filters.eq("_id", id)).first();
+        Points block = existing == null ? new Points() : decode(existing);
+        int before = block.size;
+        block.addAll(points);
+        block.sortDistinct();
+
+        GorillaCodec.Encoder data = new GorillaCodec.Encoder();
+        GorillaCodec.Encoder secondary = new GorillaCodec.Encoder();
+        boolean paired = false;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        double sum = 0;
+        for (int i = 0; i < block.size; i++) {
+            data.add(block.times[i], block.values[i]);
+            secondary.add(block.times[i], block.secondary[i]);
+            paired |= !Double.isNaN(block.secondary[i]);
+            min = Math.min(min, block.values[i]);
+            max = Math.max(max, block.values[i]);
+            sum += block.values[i];
+        }
+        Document document = new Document("_id", id)
+                .append("patientId", patientId)
+                .append("type", type)
+                .append("start", new Date(day))
+                .append("end", new Date(day + BLOCK_MILLIS))
+                .append("unit", unit != null ? unit : existing == null ? null : existing.getString("unit"))
+                .append("count", block.size)
+                .append("min", min)
+                .append("max", max)
+                .append("sum", sum)
+                .append("data", new Binary(data.toByteArray()));
+        if (paired) {
+            document.append("secondary", new Binary(secondary.toByteArray()));
+        }
+        collection.replaceOne(Filters.eq("_id", id), document, new ReplaceOptions().upsert(true));
+        blocksWritten.increment();
+        readingsArchived.add(block.size - before);
+    }
+
+    /**
+     * Archived readings in [from, to) in time order, decoded from the blocks
+     * overlapping the range.
+     *
+     * @return null if there are more than maxSamples readings in the range
+     */
+    public HealthRecordSeries.Samples samples(String patientId, String type, LocalDateTime from, LocalDateTime to,
+                                              int maxSamples) {
+        long fromMillis = epochMillis(from);
+        long toMillis = epochMillis(to);
+        long[] times = new long[1024];
+        double[] values = new double[1024];
+        int size = 0;
+        try (MongoCursor<Document> blocks = mongo.collection(COLLECTION)
+                .find(Filters.and(
+                        Filters.eq("patientId", patientId),
+                        Filters.eq("type", type),
+                        Filters.gt("start", new Date(fromMillis - BLOCK_MILLIS)),
+                        Filters.lt("start", new Date(toMillis))))
+                .sort(Sorts.ascending("start"))
+                .iterator()) {
+            while (blocks.hasNext()) {
+                Document block = blocks.next();
+                GorillaCodec.Decoder points = new GorillaCodec.Decoder(
+                        block.get("data", Binary.class).getData(), block.getInteger("count"));
+                while (points.next()) {
+                    long millis = points.timestamp();
+                    if (millis < fromMillis) {
+                        continue;
+                    }
+                    if (millis >= toMillis) {
+                        break;
+                    }
+                    if (size == maxSamples) {
+                        return null;
+                    }
+                    if (size == values.length) {
+                        times = Arrays.copyOf(times, size * 2);
+                        values = Arrays.copyOf(values, size * 2);
+                    }
+                    times[size] = millis;
+                    values[size] = points.value();
+                    size++;
+                }
+            }
+        }
+        return new HealthRecordSeries.Samples(Arrays.copyOf(times, size), Arrays.copyOf(values, size));
+    }
+
+    /**
+     * Archived readings newest first, by (timestamp, id), strictly after a
+     * cursor. Only the returned readings become HealthRecord objects.
+     *
+     * Blocks of different types overlap in time: for every type (type null),
+     * each archived type is read on its own and the results are merged.
+     *
+     * @param beforeTs and beforeId: the cursor, or null for the newest readings
+     */
+    public List<HealthRecord> newest(String patientId, String type, LocalDateTime beforeTs, String beforeId,
+                                     int count) {
+        if (type != null) {
+            return newestOfType(patientId, type, beforeTs, beforeId, count);
+        }
+        List<HealthRecord> merged = new ArrayList<>();
+        for (String archived : mongo.collection(COLLECTION)
+                .distinct("type", Filters.eq("patientId", patientId), String.class)) {
+            merged.addAll(newestOfType(patientId, archived, beforeTs, beforeId, count));
+        }
+        merged.sort(Comparator.comparing(HealthRecord::getTimestamp)
+                .thenComparing(HealthRecord::getId)
+                .reversed());
+        return merged.size() > count ? new ArrayList<>(merged.subList(0, count)) : merged;
+    }
+
+    private List<HealthRecord> newestOfType(String patientId, String type, LocalDateTime beforeTs, String beforeId,
+                                            int count) {
+        List<Bson> filters = new ArrayList<>(List.of(Filters.eq("patientId", patientId), Filters.eq("type", type)));
+        if (beforeTs != null) {
+            filters.add(Filters.lte("start", new Date(epochMillis(beforeTs))));
+        }
+        List<HealthRecord> readings = new ArrayList<>(Math.min(count, 1024));
+        try (MongoCursor<Document> blocks = mongo.collection(COLLECTION)
+                .find(Filters.and(filters))
+                .sort(Sorts.descending("start"))
+                .iterator()) {
+            while (blocks.hasNext() && readings.size() < count) {
+                Document block = blocks.next();
+                Points points = decode(block);
+                // Blocks hold distinct, sorted timestamps and do not overlap: walk back from the end
+                for (int i = points.size - 1; i >= 0 && readings.size() < count; i--) {
+                    HealthRecord reading = reading(block, points, i);
+                    if (beforeTs == null || before(reading, beforeTs, beforeId)) {
+                        readings.add(reading);
+                    }
+                }
+            }
+        }
+        return readings;
+    }
+
+    /**
+     * @return the newest archived reading of a patient and type
+     */
+    public Optional<HealthRecord> latest(String patientId, String type) {
+        return newest(patientId, type, null, null, 1).stream().findFirst();
+    }
+
+    static HealthRecord reading(Document block, Points points, int i) {
+        String unit = block.getString("unit");
+        HealthRecord record = new HealthRecord(block.getString("patientId"), block.getString("type"),
+                points.values[i], unit);
+        // Zero-padded so that ids order like positions
+        record.setId(block.getString("_id") + "|" + String.format("%08d", i));
+        record.setTimestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(points.times[i]), ZoneOffset.UTC));
+        if (!Double.isNaN(points.secondary[i])) {
+            record.setSecondaryValue(points.secondary[i]);
+            record.setSecondaryUnit(unit);
+        }
+        return record;
+    }
+
+    private static boolean before(HealthRecord reading, LocalDateTime timestamp, String id) {
+        int compared = reading.getTimestamp().compareTo(timestamp);
+        return compared < 0 || (compared == 0 && reading.getId().compareTo(id) < 0);
+    }
+
+    static Points decode(Document block) {
+        int count = block.getInteger("count");
+        Points points = new Points();
+        GorillaCodec.Decoder data = new GorillaCodec.Decoder(block.get("data", Binary.class).getData(), count);
+        Binary secondaryData = block.get("secondary", Binary.class);
+        GorillaCodec.Decoder secondary = secondaryData == null
+                ? null : new GorillaCodec.Decoder(secondaryData.getData(), count);
+        while (data.next()) {
+            double second = Double.NaN;
+            if (secondary != null && secondary.next()) {
+                second = secondary.value();
+            }
+            points.add(data.timestamp(), data.value(), second);
+        }
+        return points;
+    }
+
+    static String blockId(String patientId, String type, long day) {
+        return patientId + "|" + type + "|" + day;
+    }
+
+    private static long dayStart(long epochMillis) {
+        return epochMillis - Math.floorMod(epochMillis, BLOCK_MILLIS);
+    }
+
+    // LocalDateTime is stored as UTC, as the driver codecs do for the document layout
+    private static long epochMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    /**
+     * Readings of one block in primitive arrays; NaN for a missing secondary value.
+     */
+    static final class Points {
+        long[] times = new long[1024];
+        double[] values = new double[1024];
+        double[] secondary = new double[1024];
+        int size;
+
+        void add(long time, double value, double second) {
+            if (size == times.length) {
+                int capacity = Math.max(1024, size * 2);
+                times = Arrays.copyOf(times, capacity);
+                values = Arrays.copyOf(values, capacity);
+                secondary = Arrays.copyOf(secondary, capacity);
+            }
+            times[size] = time;
+            values[size] = value;
+            secondary[size] = second;
+            size++;
+        }
+
+        void addAll(Points points) {
+            for (int i = 0; i < points.size; i++) {
+                add(points.times[i], points.values[i], points.secondary[i]);
+            }
+        }
+
+        // Sorts by time (stable) and keeps the first of readings sharing a millisecond
+        void sortDistinct() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingLong(i -> times[i]));
+            long[] sortedTimes = new long[size];
+            double[] sortedValues = new double[size];
+            double[] sortedSecondary = new double[size];
+            int distinct = 0;
+            for (int i = 0; i < size; i++) {
+                long time = times[order[i]];
+                if (distinct > 0 && sortedTimes[distinct - 1] == time) {
+                    continue;
+                }
+                sortedTimes[distinct] = time;
+                sortedValues[distinct] = values[order[i]];
+                sortedSecondary[distinct] = secondary[order[i]];
+                distinct++;
+            }
+            times = sortedTimes;
+            values = sortedValues;
+            secondary = sortedSecondary;
+            size = distinct;
+        }
+    }
+}
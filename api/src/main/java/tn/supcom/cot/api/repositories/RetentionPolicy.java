@@ -0,0 +1,125 @@
+package tn.supcom.cot.api.repositories;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import tn.supcom.cot.api.entities.SensorType;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * How long each tier of health data is kept (retention.enabled=true).
+ *
+ * - raw readings: retention.raw.days, or the per-type value of
+ *   retention.raw.days.by.type (e.g. GPS_LOCATION=30,FALL_DETECTION=90)
+ * - 1-minute rollups (HealthStats, granularity minute): retention.rollup.minute.months
+ * - hourly, daily and all-time rollups: forever
+ * - resolved alerts: retention.alert.resolved.days after they were raised
+ *
+ * Horizons are epoch milliseconds: data strictly older is expired. Bucketed
+ * chart queries reaching past the raw horizon are answered from the rollups;
+ * downsampled ones, which need the raw readings, start at the horizon
+ * instead (see {@link #rawStart}).
+ */
+@ApplicationScoped
+public class RetentionPolicy {
+
+    private static final Logger logger = Logger.getLogger(RetentionPolicy.class.getName());
+
+    @Inject
+    @ConfigProperty(name = "retention.enabled", defaultValue = "false")
+    boolean enabled;
+
+    @Inject
+    @ConfigProperty(name = "retention.raw.days", defaultValue = "365")
+    int rawDays;
+
+    @Inject
+    @ConfigProperty(name = "retention.raw.days.by.type")
+    Optional<String> rawDaysByType;
+
+    @Inject
+    @ConfigProperty(name = "retention.rollup.minute.months", defaultValue = "6")
+    int minuteRollupMonths;
+
+    @Inject
+    @ConfigProperty(name = "retention.alert.resolved.days", defaultValue = "180")
+    int resolvedAlertDays;
+
+    private Map<String, Integer> rawDaysOverrides = Map.of();
+
+    @PostConstruct
+    void init() {
+        Map<String, Integer> overrides = new LinkedHashMap<>();
+        for (String entry : rawDaysByType.orElse("").split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] parts = entry.split("=");
+            try {
+                String type = SensorType.valueOf(parts[0].trim()).name();
+                int days = Integer.parseInt(parts[1].trim());
+                if (days < 1) {
+                    throw new IllegalArgumentException("days must be positive");
+                }
+                overrides.put(type, days);
+            } catch (RuntimeException e) {
+                logger.warning("Ignoring retention.raw.days.by.type entry '" + entry + "': expected TYPE=days");
+            }
+        }
+        rawDaysOverrides = Collections.unmodifiableMap(overrides);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the types kept for another number of days than retention.raw.days
+     */
+    public Map<String, Integer> rawDaysOverrides() {
+        return rawDaysOverrides;
+    }
+
+    public long defaultRawHorizon(long nowMillis) {
+        return nowMillis - TimeUnit.DAYS.toMillis(rawDays);
+    }
+
+    public long rawHorizon(String type, long nowMillis) {
+        return nowMillis - TimeUnit.DAYS.toMillis(rawDaysOverrides.getOrDefault(type, rawDays));
+    }
+
+    /**
+     * Start of a range clipped to the raw readings still kept: from itself,
+     * or the raw horizon of the type when from is older.
+     */
+    public LocalDateTime rawStart(String type, LocalDateTime from, long nowMillis) {
+        if (!enabled) {
+            return from;
+        }
+        long horizon = rawHorizon(type, nowMillis);
+        return from.toInstant(ZoneOffset.UTC).toEpochMilli() < horizon
+                ? LocalDateTime.ofInstant(Instant.ofEpochMilli(horizon), ZoneOffset.UTC)
+                : from;
+    }
+
+    public long minuteRollupHorizon(long nowMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(nowMillis), ZoneOffset.UTC)
+                .minusMonths(minuteRollupMonths)
+                .toInstant(ZoneOffset.UTC)
+                .toEpochMilli();
+    }
+
+    public long resolvedAlertHorizon(long nowMillis) {
+        return nowMillis - TimeUnit.DAYS.toMillis(resolvedAlertDays);
+    }
+}
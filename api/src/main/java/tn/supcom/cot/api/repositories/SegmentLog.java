@@ -0,0 +1,360 @@
+package tn.supcom.cot.api.repositories;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of opaque records in memory-mapped segment files.
+ *
+ * Each segment is a preallocated file of fixed size named after its base
+ * position. A record is stored as
+ * <pre>
+ *   i32   length   > 0; 0 marks the end of the segment's data
+ *   i32   crc32c   of the payload
+ *   bytes payload
+ * </pre>
+ * A position is the segment base plus the offset in the segment, and the
+ * next segment starts at base + segment size. The checkpoint file holds the
+ * position up to which records were consumed; segments entirely below it
+ * are deleted.
+ *
+ * Recovery keeps every record up to the first torn or corrupt one in the last
+ * segment and wipes the rest, so a crash mid-append loses only unsynced
+ * records. Appends become durable with {@link #force()}.
+ */
+public class SegmentLog implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(SegmentLog.class.getName());
+
+    static final int HEADER = 8;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT = "checkpoint";
+
+    /**
+     * Records read from the log and the position following the last of them.
+     */
+    public record Batch(List<byte[]> records, long next) {
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+
+    // Base position -> file, guarded by "this"
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+    private FileChannel activeChannel;
+    private MappedByteBuffer active;
+    private long activeBase;
+    private int writeOffset;
+    private long checkpoint;
+    private MappedByteBuffer readMapping;
+    private long readBase;
+    private long corruptSegments;
+    private boolean closed;
+
+    private SegmentLog(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Opens the log in the directory, recovering its segments and checkpoint.
+     */
+    public static SegmentLog open(Path directory, int segmentSize) throws IOException {
+        if (segmentSize < 4 * HEADER) {
+            throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+        }
+        SegmentLog log = new SegmentLog(directory, segmentSize);
+        log.recover();
+        return log;
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    long base = Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length()));
+                    segments.put(base, file);
+                }
+            }
+        }
+
+        checkpoint = readCheckpoint();
+        if (segments.isEmpty()) {
+            openSegment(checkpoint);
+            return;
+        }
+        if (checkpoint < segments.firstKey()) {
+            checkpoint = segments.firstKey();
+        }
+        deleteConsumedSegments();
+
+        long lastBase = segments.lastKey();
+        activeChannel = FileChannel.open(segments.get(lastBase), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        active = activeChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        activeBase = lastBase;
+        writeOffset = scanValid(active);
+
+        // Wipe a torn tail so it can never be mistaken for records later
+        boolean torn = false;
+        for (int i = writeOffset; i < segmentSize && !torn; i++) {
+            torn = active.get(i) != 0;
+        }
+        if (torn) {
+            logger.warning("Discarding torn write-ahead log tail at position " + (activeBase + writeOffset));
+            for (int i = writeOffset; i < segmentSize; i++) {
+                active.put(i, (byte) 0);
+            }
+            active.force();
+        }
+
+        if (checkpoint >= end() && checkpoint > activeBase) {
+            // Everything was consumed: start over at the checkpoint so positions keep growing
+            activeChannel.close();
+            for (Path file : segments.values()) {
+                Files.deleteIfExists(file);
+            }
+            segments.clear();
+            openSegment(checkpoint);
+        }
+        logger.info("Write-ahead log recovered: " + segments.size() + " segment(s), "
+                + backlogBytes() + " bytes to replay");
+    }
+
+    /**
+     * @return offset after the last valid record of a segment
+     */
+    private int scanValid(ByteBuffer segment) {
+        int offset = 0;
+        while (offset + HEADER <= segmentSize) {
+            int length = segment.getInt(offset);
+            if (length <= 0 || length > segmentSize - offset - HEADER
+                    || segment.getInt(offset + 4) != crc(segment, offset + HEADER, length)) {
+                break;
+            }
+            offset += HEADER + length;
+        }
+        return offset;
+    }
+
+    private void openSegment(long base) throws IOException {
+        Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, base, SEGMENT_SUFFIX));
+        activeChannel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        active = activeChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        activeBase = base;
+        writeOffset = 0;
+        segments.put(base, file);
+    }
+
+    /**
+     * Appends a record; it is durable once {@link #force()} returns.
+     *
+     * @return the position following the record
+     */
+    public synchronized long append(byte[] payload) throws IOException {
+        if (closed) {
+            throw new IOException("Write-ahead log closed");
+        }
+        if (payload.length == 0 || payload.length > segmentSize - HEADER) {
+            throw new IllegalArgumentException("Invalid record size: " + payload.length);
+        }
+        if (writeOffset + HEADER + payload.length > segmentSize) {
+            roll();
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        active.put(writeOffset + HEADER, payload);
+        active.putInt(writeOffset + 4, (int) crc.getValue());
+        active.putInt(writeOffset, payload.length);
+        writeOffset += HEADER + payload.length;
+        notifyAll();
+        return activeBase + writeOffset;
+    }
+
+    private void roll() throws IOException {
+        active.force();
+        activeChannel.close();
+        openSegment(activeBase + segmentSize);
+    }
+
+    /**
+     * Flushes appended records of the active segment to disk.
+     */
+    public synchronized void force() {
+        if (!closed) {
+            active.force();
+        }
+    }
+
+    /**
+     * Reads up to maxRecords records starting at a position returned by
+     * {@link #append}, {@link #checkpoint()} or a previous batch.
+     */
+    public synchronized Batch read(long from, int maxRecords) throws IOException {
+        List<byte[]> records = new ArrayList<>();
+        long position = Math.max(from, segments.firstKey());
+        while (records.size() < maxRecords && position < end()) {
+            long base = segments.floorKey(position);
+            boolean sealed = base != activeBase;
+            ByteBuffer segment = sealed ? sealedSegment(base) : active;
+            int limit = sealed ? segmentSize : writeOffset;
+            int offset = (int) (position - base);
+            boolean exhausted = false;
+
+            while (records.size() < maxRecords) {
+                if (offset + HEADER > limit || segment.getInt(offset) == 0) {
+                    exhausted = true;
+                    break;
+                }
+                int length = segment.getInt(offset);
+                if (length < 0 || length > limit - offset - HEADER
+                        || segment.getInt(offset + 4) != crc(segment, offset + HEADER, length)) {
+                    // Only possible in a sealed segment damaged on disk: its remainder is lost
+                    corruptSegments++;
+                    logger.severe("Corrupt write-ahead log record at position " + (base + offset)
+                            + ", skipping the rest of the segment");
+                    exhausted = true;
+                    break;
+                }
+                byte[] record = new byte[length];
+                segment.get(offset + HEADER, record);
+                records.add(record);
+                offset += HEADER + length;
+            }
+            position = exhausted && sealed ? base + segmentSize : base + offset;
+        }
+        return new Batch(records, position);
+    }
+
+    private ByteBuffer sealedSegment(long base) throws IOException {
+        if (readMapping == null || readBase != base) {
+            try (FileChannel channel = FileChannel.open(segments.get(base), StandardOpenOption.READ)) {
+                readMapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, segmentSize);
+                readBase = base;
+            }
+        }
+        return readMapping;
+    }
+
+    /**
+     * Waits until a record is appended after the given position, or the timeout elapses.
+     */
+    public synchronized void awaitAppend(long position, long timeoutMillis) throws InterruptedException {
+        if (end() <= position && !closed) {
+            wait(timeoutMillis);
+        }
+    }
+
+    /**
+     * Position up to which records have been consumed.
+     */
+    public synchronized long checkpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * Durably records that everything before the position was consumed and
+     * deletes segments that are no longer needed.
+     */
+    public synchronized void checkpoint(long position) throws IOException {
+        if (position <= checkpoint) {
+            return;
+        }
+        ByteBuffer content = ByteBuffer.allocate(16);
+        content.putLong(position).putLong(position ^ 0x5A5A5A5A5A5A5A5AL).flip();
+        Path temp = directory.resolve(CHECKPOINT + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(content);
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, directory.resolve(CHECKPOINT), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, directory.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING);
+        }
+        checkpoint = position;
+        deleteConsumedSegments();
+    }
+
+    private long readCheckpoint() throws IOException {
+        Path file = directory.resolve(CHECKPOINT);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (content.remaining() == 16) {
+            long position = content.getLong();
+            if ((position ^ 0x5A5A5A5A5A5A5A5AL) == content.getLong()) {
+                return position;
+            }
+        }
+        // Replaying from the first segment is safe: writes of replayed records are idempotent
+        logger.warning("Unreadable write-ahead log checkpoint, replaying all segments");
+        return 0;
+    }
+
+    private void deleteConsumedSegments() throws IOException {
+        while (segments.size() > 1 && segments.firstKey() + segmentSize <= checkpoint) {
+            Path file = segments.pollFirstEntry().getValue();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Position following the last appended record.
+     */
+    public synchronized long end() {
+        return activeBase + writeOffset;
+    }
+
+    /**
+     * Bytes between the checkpoint and the end of the log, segment padding included.
+     */
+    public synchronized long backlogBytes() {
+        return Math.max(0, end() - checkpoint);
+    }
+
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    public synchronized long corruptSegments() {
+        return corruptSegments;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        active.force();
+        activeChannel.close();
+        notifyAll();
+    }
+
+    private static int crc(ByteBuffer buffer, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,14 @@
+package tn.supcom.cot.api.repositories;
+
+import jakarta.data.repository.By;
+import jakarta.data.repository.CrudRepository;
+import jakarta.data.repository.Find;
+import jakarta.data.repository.Repository;
+import tn.supcom.cot.api.entities.Sensor;
+import java.util.Optional;
+
+@Repository
+public interface SensorRepository extends CrudRepository<Sensor, String> {
+    @Find
+    Optional<Sensor> findByDeviceId(@By("deviceId") String deviceId);
+}
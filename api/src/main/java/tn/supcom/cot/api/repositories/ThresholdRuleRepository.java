@@ -0,0 +1,14 @@
+package tn.supcom.cot.api.repositories;
+
+import jakarta.data.repository.By;
+import jakarta.data.repository.CrudRepository;
+import jakarta.data.repository.Find;
+import jakarta.data.repository.Repository;
+import tn.supcom.cot.api.entities.ThresholdRule;
+import java.util.List;
+
+@Repository
+public interface ThresholdRuleRepository extends CrudRepository<ThresholdRule, String> {
+    @Find
+    List<ThresholdRule> findByPatientId(@By("patientId") String patientId);
+}
@@ -65,7 +65,7 @@ public class CorsFilter implements Filter {
 
         // Expose headers that client can read
         response.setHeader("Access-Control-Expose-Headers",
-                "location, content-type, content-length, authorization");
+                "location, content-type, content-length, authorization, x-next-cursor, retry-after");
 
         // Preflight cache duration (1 hour)
         response.setHeader("Access-Control-Max-Age", "3600");
@@ -0,0 +1,144 @@
+package tn.supcom.cot.api.boundaries;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop load driver simulating dashboard clients polling a read endpoint.
+ *
+ * Each client sends a request, waits for the answer, then polls again after
+ * its think time. Compare the execution models by deploying the API once
+ * with execution.model=platform and once with execution.model=virtual, and
+ * running from the api module after test-compile:
+ * <pre>
+ *   mvn -q test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=tn.supcom.cot.api.boundaries.DashboardLoadDriver \
+ *       -Dload.token=$JWT -Dload.clients=1000,5000,10000
+ * </pre>
+ * Other properties: load.url (API base URL), load.path (polled endpoint),
+ * load.seconds (measurement time per step) and load.think.ms (poll interval).
+ * 10k clients need as many sockets: raise the open file limit of both sides.
+ */
+public class DashboardLoadDriver {
+
+    private static final int MAX_LATENCY_MILLIS = 60_000;
+
+    private final HttpClient client;
+    private final HttpRequest request;
+    private final long thinkMillis;
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4);
+
+    // Latency histogram with 1 ms buckets, the last one holding everything slower
+    private final AtomicLongArray latencies = new AtomicLongArray(MAX_LATENCY_MILLIS + 1);
+    private final LongAdder ok = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private volatile boolean running;
+    private volatile boolean measuring;
+
+    DashboardLoadDriver(URI uri, String token, long thinkMillis) {
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        this.request = HttpRequest.newBuilder(uri)
+                .header("Authorization", "Bearer " + token)
+                .header("Accept", "application/json")
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+        this.thinkMillis = thinkMillis;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = System.getProperty("load.url", "http://localhost:8080/cot-api/api");
+        String path = System.getProperty("load.path", "/monitor/patient-profile-001/HEART_RATE?limit=50");
+        String token = System.getProperty("load.token");
+        if (token == null) {
+            throw new IllegalArgumentException("-Dload.token=<JWT with the DOCTOR role> is required");
+        }
+        int[] steps = Arrays.stream(System.getProperty("load.clients", "1000,5000,10000").split(","))
+                .map(String::trim).mapToInt(Integer::parseInt).toArray();
+        long seconds = Long.getLong("load.seconds", 60);
+        long thinkMillis = Long.getLong("load.think.ms", 1000);
+
+        System.out.printf("%8s %10s %8s %8s %8s %8s %8s %8s%n",
+                "clients", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms", "503", "errors");
+        for (int clients : steps) {
+            DashboardLoadDriver driver = new DashboardLoadDriver(URI.create(url + path), token, thinkMillis);
+            driver.run(clients, seconds);
+        }
+        System.exit(0);
+    }
+
+    void run(int clients, long seconds) throws InterruptedException {
+        running = true;
+        for (int i = 0; i < clients; i++) {
+            // Spread the first polls over one think time, as real dashboards would be
+            scheduler.schedule(this::poll, ThreadLocalRandom.current().nextLong(thinkMillis + 1), TimeUnit.MILLISECONDS);
+        }
+        // Warm-up: let connections open and the server reach steady state
+        Thread.sleep(Math.max(thinkMillis * 3, 10_000));
+        measuring = true;
+        long start = System.nanoTime();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        measuring = false;
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        running = false;
+
+        System.out.printf("%8d %10.0f %8d %8d %8d %8d %8d %8d%n", clients, ok.sum() / elapsed,
+                percentile(0.50), percentile(0.95), percentile(0.99), percentile(1.0), shed.sum(), errors.sum());
+        scheduler.shutdownNow();
+    }
+
+    private void poll() {
+        if (!running) {
+            return;
+        }
+        long sent = System.nanoTime();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, failure) -> {
+            if (measuring) {
+                record(response, failure, sent);
+            }
+            if (running) {
+                scheduler.schedule(this::poll, thinkMillis, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    private void record(HttpResponse<Void> response, Throwable failure, long sent) {
+        if (failure != null) {
+            errors.increment();
+        } else if (response.statusCode() == 503) {
+            shed.increment();
+        } else if (response.statusCode() >= 400) {
+            errors.increment();
+        } else {
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sent);
+            latencies.incrementAndGet((int) Math.min(millis, MAX_LATENCY_MILLIS));
+            ok.increment();
+        }
+    }
+
+    private long percentile(double quantile) {
+        long total = ok.sum();
+        long rank = Math.max(1, (long) Math.ceil(total * quantile));
+        long seen = 0;
+        for (int millis = 0; millis <= MAX_LATENCY_MILLIS; millis++) {
+            seen += latencies.get(millis);
+            if (seen >= rank) {
+                return millis;
+            }
+        }
+        return 0;
+    }
+}
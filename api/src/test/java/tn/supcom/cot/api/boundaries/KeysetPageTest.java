@@ -0,0 +1,135 @@
+package tn.supcom.cot.api.boundaries;
+
+import jakarta.nosql.QueryMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import tn.supcom.cot.api.entities.HealthRecord;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@DisplayName("KeysetPage Tests")
+class KeysetPageTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 3, 1, 12, 0, 30);
+
+    private QueryMapper.MapperWhere query;
+
+    @BeforeEach
+    void setUp() {
+        // Every step of the fluent chain answers the same mock
+        query = mock(QueryMapper.MapperWhere.class, withSettings()
+                .extraInterfaces(QueryMapper.MapperNameCondition.class, QueryMapper.MapperOrder.class,
+                        QueryMapper.MapperNameOrder.class, QueryMapper.MapperLimit.class)
+                .defaultAnswer(invocation -> {
+                    Class<?> type = invocation.getMethod().getReturnType();
+                    return type.isInstance(invocation.getMock())
+                            ? invocation.getMock() : RETURNS_DEFAULTS.answer(invocation);
+                }));
+    }
+
+    private static HealthRecord record(String id, LocalDateTime timestamp) {
+        HealthRecord record = new HealthRecord("patient-1", "HEART_RATE", 72.0, "bpm");
+        record.setId(id);
+        record.setTimestamp(timestamp);
+        return record;
+    }
+
+    private KeysetPage<HealthRecord> fetch(String cursor, int limit) {
+        return KeysetPage.fetch(() -> query, cursor, limit, HealthRecord::getTimestamp, HealthRecord::getId);
+    }
+
+    @Test
+    @DisplayName("Should round-trip a cursor through its token")
+    void testCursorRoundTrip() {
+        KeysetPage.Cursor cursor = new KeysetPage.Cursor(T0, "health-record-7");
+
+        String token = cursor.encode();
+
+        assertFalse(token.contains("\n"));
+        assertEquals(cursor, KeysetPage.Cursor.decode(token));
+    }
+
+    @Test
+    @DisplayName("Should reject tokens that are not cursors")
+    void testInvalidCursor() {
+        assertThrows(IllegalArgumentException.class, () -> KeysetPage.Cursor.decode("not base64!"));
+        assertThrows(IllegalArgumentException.class, () -> KeysetPage.Cursor.decode(
+                new KeysetPage.Cursor(T0, "x").encode().substring(2)));
+        assertThrows(IllegalArgumentException.class, () -> KeysetPage.Cursor.decode(""));
+    }
+
+    @Test
+    @DisplayName("Should validate paging parameters")
+    void testValidate() {
+        String cursor = new KeysetPage.Cursor(T0, "x").encode();
+
+        assertNull(KeysetPage.validate(100, 0, null));
+        assertNull(KeysetPage.validate(100, 0, ""));
+        assertNull(KeysetPage.validate(100, 500, null));
+        assertNull(KeysetPage.validate(100, 0, cursor));
+        assertNotNull(KeysetPage.validate(0, 0, null));
+        assertNotNull(KeysetPage.validate(100, -1, null));
+        assertNotNull(KeysetPage.validate(100, 10, cursor));
+        assertNotNull(KeysetPage.validate(100, 0, "garbage"));
+    }
+
+    @Test
+    @DisplayName("Should return a cursor on the last entry when more entries follow")
+    void testFirstPage() {
+        when(query.result()).thenReturn(List.of(
+                record("c", T0), record("b", T0), record("a", T0.minusSeconds(1))));
+
+        KeysetPage<HealthRecord> page = fetch(null, 2);
+
+        assertEquals(2, page.items().size());
+        assertEquals(new KeysetPage.Cursor(T0, "b"), KeysetPage.Cursor.decode(page.nextCursor()));
+        verify(query).limit(3);
+        verify(query, never()).and(anyString());
+    }
+
+    @Test
+    @DisplayName("Should not return a cursor on the last page")
+    void testLastPage() {
+        when(query.result()).thenReturn(List.of(record("a", T0)));
+
+        KeysetPage<HealthRecord> page = fetch(null, 2);
+
+        assertEquals(1, page.items().size());
+        assertNull(page.nextCursor());
+    }
+
+    @Test
+    @DisplayName("Should finish the cursor's timestamp before reading older entries")
+    void testAfterCursor() {
+        when(query.result())
+                .thenReturn(List.of(record("a", T0)))
+                .thenReturn(List.of(record("z", T0.minusSeconds(1)), record("y", T0.minusSeconds(2))));
+
+        KeysetPage<HealthRecord> page = fetch(new KeysetPage.Cursor(T0, "b").encode(), 2);
+
+        assertEquals(List.of("a", "z"), page.items().stream().map(HealthRecord::getId).toList());
+        assertEquals(new KeysetPage.Cursor(T0.minusSeconds(1), "z"), KeysetPage.Cursor.decode(page.nextCursor()));
+        verify((QueryMapper.MapperNameCondition) query).eq(T0);
+        verify((QueryMapper.MapperNameCondition) query).lt("b");
+        verify((QueryMapper.MapperNameCondition) query).lt(T0);
+        verify(query).limit(3);
+        verify(query).limit(2);
+    }
+
+    @Test
+    @DisplayName("Should skip the older range when the cursor's timestamp fills the page")
+    void testCursorTimestampFillsPage() {
+        when(query.result()).thenReturn(List.of(record("c", T0), record("b", T0), record("a", T0)));
+
+        KeysetPage<HealthRecord> page = fetch(new KeysetPage.Cursor(T0, "d").encode(), 2);
+
+        assertEquals(2, page.items().size());
+        assertNotNull(page.nextCursor());
+        verify(query, times(1)).result();
+    }
+}
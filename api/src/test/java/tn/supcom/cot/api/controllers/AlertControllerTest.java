@@ -0,0 +1,121 @@
+package tn.supcom.cot.api.controllers;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import tn.supcom.cot.api.entities.Alert;
+import tn.supcom.cot.api.entities.HealthRecord;
+import tn.supcom.cot.api.entities.SensorType;
+import tn.supcom.cot.api.repositories.AlertRepository;
+import tn.supcom.cot.api.repositories.MongoConnection;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@DisplayName("AlertController Tests")
+class AlertControllerTest {
+
+    private static final ThresholdRules.Rule FEVER = new ThresholdRules.Rule(SensorType.TEMPERATURE,
+            ThresholdRules.Kind.READING, true, 39.0, 0, 0, "HIGH_TEMPERATURE", "HIGH", "High Fever Detected");
+
+    private AlertController controller;
+    private MongoCollection<Document> collection;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        controller = new AlertController();
+        controller.repository = mock(AlertRepository.class);
+        controller.mongo = mock(MongoConnection.class);
+        controller.suppressionSeconds = 600;
+        collection = mock(MongoCollection.class);
+        when(controller.mongo.collection("Alert")).thenReturn(collection);
+    }
+
+    private static HealthRecord fever(double value) {
+        return new HealthRecord("p1", "TEMPERATURE", value, "°C");
+    }
+
+    private List<Alert> inserted() {
+        ArgumentCaptor<Alert> saved = ArgumentCaptor.forClass(Alert.class);
+        verify(controller.repository, atLeast(0)).save(saved.capture());
+        return saved.getAllValues();
+    }
+
+    @Test
+    @DisplayName("Should count repeated triggers on the open alert and write them as one update")
+    @SuppressWarnings("unchecked")
+    void testSuppression() {
+        controller.createThresholdAlert(fever(39.5), FEVER);
+        controller.createThresholdAlert(fever(39.8), FEVER);
+        controller.createThresholdAlert(fever(40.1), FEVER);
+
+        List<Alert> alerts = inserted();
+        assertEquals(1, alerts.size());
+        assertEquals(1, alerts.get(0).getOccurrences());
+
+        controller.flush(System.currentTimeMillis());
+        ArgumentCaptor<List<WriteModel<Document>>> updates = ArgumentCaptor.forClass(List.class);
+        verify(collection).bulkWrite(updates.capture(), any(BulkWriteOptions.class));
+        assertEquals(1, updates.getValue().size());
+        BsonDocument update = ((UpdateOneModel<Document>) updates.getValue().get(0)).getUpdate().toBsonDocument();
+        assertEquals(2, update.getDocument("$inc").getInt32("occurrences").getValue());
+        assertEquals(40.1, update.getDocument("$set").getDouble("value").getValue());
+
+        // Nothing new to write
+        controller.flush(System.currentTimeMillis());
+        verify(collection, times(1)).bulkWrite(any(List.class), any(BulkWriteOptions.class));
+    }
+
+    @Test
+    @DisplayName("Should keep alert types and patients apart")
+    void testKeys() {
+        controller.createThresholdAlert(fever(39.5), FEVER);
+        controller.createThresholdAlert(new HealthRecord("p2", "TEMPERATURE", 39.5, "°C"), FEVER);
+        controller.createAutomaticAlert("p1", "FALL_DETECTED", "Fall detected");
+
+        assertEquals(3, inserted().size());
+    }
+
+    @Test
+    @DisplayName("Should not count triggers on an alert whose insert failed")
+    void testSaveFailure() {
+        when(controller.repository.save(any(Alert.class)))
+                .thenThrow(new IllegalStateException("write failed"))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        assertThrows(IllegalStateException.class, () -> controller.createThresholdAlert(fever(39.5), FEVER));
+        controller.createThresholdAlert(fever(39.8), FEVER);
+
+        List<Alert> attempts = inserted();
+        assertEquals(2, attempts.size());
+        assertEquals(39.8, attempts.get(1).getValue());
+        assertEquals(1, attempts.get(1).getOccurrences());
+    }
+
+    @Test
+    @DisplayName("Should open a new alert after the window or once the alert is resolved")
+    void testReopen() {
+        controller.createThresholdAlert(fever(39.5), FEVER);
+        Alert first = inserted().get(0);
+
+        controller.closed(first);
+        controller.createThresholdAlert(fever(39.6), FEVER);
+        assertEquals(2, inserted().size());
+
+        controller.flush(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(601));
+        controller.createThresholdAlert(fever(39.7), FEVER);
+        assertEquals(3, inserted().size());
+    }
+}
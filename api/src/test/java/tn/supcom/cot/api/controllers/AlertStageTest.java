@@ -0,0 +1,110 @@
+package tn.supcom.cot.api.controllers;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import tn.supcom.cot.api.entities.HealthRecord;
+import tn.supcom.cot.api.metrics.IngestionMetrics;
+import tn.supcom.cot.api.repositories.HealthRecordsStored;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@DisplayName("AlertStage Tests")
+class AlertStageTest {
+
+    private AlertStage stage;
+
+    @BeforeEach
+    void setUp() {
+        stage = new AlertStage();
+        stage.rules = mock(ThresholdRules.class);
+        stage.metrics = new IngestionMetrics();
+        stage.partitionCount = 2;
+        stage.queueCapacity = 100;
+        when(stage.rules.isEnabled()).thenReturn(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stage.shutdown();
+    }
+
+    private static HealthRecord reading(String patientId, double value) {
+        return new HealthRecord(patientId, "HEART_RATE", value, "bpm");
+    }
+
+    @Test
+    @DisplayName("Should evaluate each patient's readings in the order they were stored")
+    void testOrderPerPatient() {
+        List<HealthRecord> evaluated = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> evaluated.add(invocation.getArgument(0))).when(stage.rules).check(any());
+        stage.start(Thread::new);
+
+        List<HealthRecord> stored = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            stored.add(reading("patient-" + (i % 7), i));
+        }
+        stage.onStored(new HealthRecordsStored(stored));
+        stage.shutdown();
+
+        assertEquals(stored.size(), evaluated.size());
+        for (int p = 0; p < 7; p++) {
+            String patientId = "patient-" + p;
+            assertEquals(stored.stream().filter(r -> r.getPatientId().equals(patientId)).toList(),
+                    evaluated.stream().filter(r -> r.getPatientId().equals(patientId)).toList());
+        }
+        assertEquals(0, stage.queueDepth());
+    }
+
+    @Test
+    @DisplayName("Should not hold up the producer while an evaluation is slow")
+    void testDecoupled() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> release.await(5, TimeUnit.SECONDS)).when(stage.rules).check(any());
+        stage.start(Thread::new);
+
+        long started = System.nanoTime();
+        stage.submit(reading("p1", 140));
+        stage.submit(reading("p1", 150));
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(1));
+
+        release.countDown();
+        stage.shutdown();
+        verify(stage.rules, times(2)).check(any());
+    }
+
+    @Test
+    @DisplayName("Should keep evaluating a partition after a failed evaluation")
+    void testFailure() {
+        HealthRecord broken = reading("p1", 140);
+        doThrow(new IllegalStateException("boom")).when(stage.rules).check(broken);
+        stage.start(Thread::new);
+
+        stage.submit(broken);
+        stage.submit(reading("p1", 80));
+        stage.shutdown();
+
+        InOrder order = inOrder(stage.rules);
+        order.verify(stage.rules).check(broken);
+        order.verify(stage.rules).check(any());
+    }
+
+    @Test
+    @DisplayName("Should evaluate inline when the stage is not running")
+    void testNotRunning() {
+        HealthRecord record = reading("p1", 140);
+        stage.submit(record);
+
+        verify(stage.rules).check(record);
+    }
+}
@@ -0,0 +1,91 @@
+package tn.supcom.cot.api.controllers;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import tn.supcom.cot.api.metrics.IngestionMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("ExecutionModel Tests")
+class ExecutionModelTest {
+
+    private ExecutionModel execution;
+
+    @BeforeEach
+    void setUp() {
+        execution = new ExecutionModel();
+        execution.metrics = new IngestionMetrics();
+        execution.model = "platform";
+        execution.maxConcurrentOperations = 2;
+        execution.permitTimeoutMillis = 50;
+        execution.init();
+    }
+
+    @Test
+    @DisplayName("Should run inline on the calling thread in the platform model")
+    void testPlatformInline() throws Exception {
+        Thread caller = Thread.currentThread();
+
+        CompletableFuture<Thread> stage = execution.supplyAsync(Thread::currentThread).toCompletableFuture();
+
+        assertFalse(execution.isVirtual());
+        assertTrue(stage.isDone());
+        assertSame(caller, stage.get());
+    }
+
+    @Test
+    @DisplayName("Should report spare capacity only while half the permits are free")
+    void testSpareCapacity() {
+        assertTrue(execution.hasSpareCapacity());
+
+        assertFalse(execution.withPermit(() -> execution.withPermit(execution::hasSpareCapacity)));
+        assertTrue(execution.withPermit(execution::hasSpareCapacity));
+    }
+
+    @Test
+    @DisplayName("Should bound concurrent MongoDB work and reject with 503 after the timeout")
+    void testPermits() throws Exception {
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+
+        List<Thread> holders = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            Thread holder = new Thread(() -> execution.supplyAsync(() -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return running.decrementAndGet();
+            }));
+            holder.start();
+            holders.add(holder);
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<Integer> rejected = execution.supplyAsync(() -> 1).toCompletableFuture();
+        ExecutionException failure = assertThrows(ExecutionException.class, rejected::get);
+        assertEquals(1, assertInstanceOf(OverloadedException.class, failure.getCause()).getRetryAfterSeconds());
+        assertEquals(1, execution.rejected());
+
+        release.countDown();
+        for (Thread holder : holders) {
+            holder.join();
+        }
+        assertEquals(2, peak.get());
+        assertEquals(1, execution.supplyAsync(() -> 1).toCompletableFuture().get());
+    }
+}
@@ -0,0 +1,107 @@
+package tn.supcom.cot.api.controllers;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import tn.supcom.cot.api.entities.HealthRecord;
+import tn.supcom.cot.api.metrics.IngestionMetrics;
+import tn.supcom.cot.api.repositories.HealthRecordsStored;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("LatestReadingCache Tests")
+class LatestReadingCacheTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 3, 1, 10, 0);
+
+    // Stands in for MongoDB: (patientId + type) -> newest stored reading
+    private final Map<String, HealthRecord> stored = new HashMap<>();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private LatestReadingCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new LatestReadingCache() {
+            @Override
+            Optional<HealthRecord> load(String patientId, String type) {
+                loads.incrementAndGet();
+                return Optional.ofNullable(stored.get(patientId + type));
+            }
+        };
+        cache.metrics = new IngestionMetrics();
+        cache.maxSize = 3;
+        cache.init();
+    }
+
+    private static HealthRecord reading(String patientId, String type, double value, LocalDateTime timestamp) {
+        HealthRecord record = new HealthRecord(patientId, type, value, "bpm");
+        record.setTimestamp(timestamp);
+        return record;
+    }
+
+    @Test
+    @DisplayName("Should load on a miss only")
+    void testLoadsOnce() {
+        stored.put("p1HEART_RATE", reading("p1", "HEART_RATE", 72, T0));
+
+        assertEquals(72.0, cache.latest("p1", "HEART_RATE").orElseThrow().getValue());
+        assertEquals(72.0, cache.latest("p1", "HEART_RATE").orElseThrow().getValue());
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    @DisplayName("Should remember that a vital has no reading")
+    void testCachesAbsence() {
+        assertTrue(cache.latest("p1", "SPO2").isEmpty());
+        assertTrue(cache.latest("p1", "SPO2").isEmpty());
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    @DisplayName("Should write stored readings through, keeping the newest")
+    void testWriteThrough() {
+        assertTrue(cache.latest("p1", "HEART_RATE").isEmpty());
+
+        cache.onStored(new HealthRecordsStored(List.of(
+                reading("p1", "HEART_RATE", 80, T0.plusSeconds(2)),
+                reading("p1", "HEART_RATE", 75, T0))));
+
+        assertEquals(80.0, cache.latest("p1", "HEART_RATE").orElseThrow().getValue());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    @DisplayName("Should drop entries older than a reading stored by another node")
+    void testInvalidate() {
+        cache.onStored(new HealthRecordsStored(List.of(reading("p1", "HEART_RATE", 72, T0))));
+        stored.put("p1HEART_RATE", reading("p1", "HEART_RATE", 90, T0.plusSeconds(2)));
+
+        // Same or older announcement: kept
+        cache.invalidate("p1", "HEART_RATE", T0);
+        assertEquals(72.0, cache.latest("p1", "HEART_RATE").orElseThrow().getValue());
+
+        cache.invalidate("p1", "HEART_RATE", T0.plusSeconds(2));
+        assertEquals(90.0, cache.latest("p1", "HEART_RATE").orElseThrow().getValue());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    @DisplayName("Should evict the least recently used entries beyond the size limit")
+    void testBounded() {
+        for (int i = 0; i < 5; i++) {
+            cache.onStored(new HealthRecordsStored(List.of(reading("p" + i, "HEART_RATE", 70 + i, T0))));
+        }
+
+        assertEquals(3, cache.size());
+    }
+}
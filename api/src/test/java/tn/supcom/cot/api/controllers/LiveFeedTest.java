@@ -0,0 +1,179 @@
+package tn.supcom.cot.api.controllers;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import tn.supcom.cot.api.entities.Alert;
+import tn.supcom.cot.api.entities.HealthRecord;
+import tn.supcom.cot.api.metrics.IngestionMetrics;
+import tn.supcom.cot.api.repositories.HealthRecordsStored;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@DisplayName("LiveFeed Tests")
+class LiveFeedTest {
+
+    private LiveFeed feed;
+
+    // Records what it is sent; blocks while gate is closed
+    private static final class TestSink implements LiveFeed.Sink {
+        final BlockingQueue<String> sent = new LinkedBlockingQueue<>();
+        final CountDownLatch gate;
+        final CountDownLatch sending = new CountDownLatch(1);
+        volatile boolean closed;
+
+        TestSink(CountDownLatch gate) {
+            this.gate = gate;
+        }
+
+        @Override
+        public void send(String name, String id, Object data) throws Exception {
+            sending.countDown();
+            gate.await();
+            sent.add(name + ":" + id);
+        }
+
+        @Override
+        public void keepAlive() {
+            sent.add("keep-alive");
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        String next() throws InterruptedException {
+            return sent.poll(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        feed = new LiveFeed();
+        feed.execution = mock(ExecutionModel.class);
+        feed.metrics = new IngestionMetrics();
+        feed.maxSubscribers = 2;
+        feed.bufferSize = 3;
+        feed.keepAliveSeconds = 60;
+        when(feed.execution.workerThreadFactory()).thenReturn(Thread::new);
+        feed.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        feed.shutdown();
+    }
+
+    private static HealthRecord reading(String patientId, String id) {
+        HealthRecord record = new HealthRecord(patientId, "HEART_RATE", 80.0, "bpm");
+        record.setId(id);
+        return record;
+    }
+
+    private void stored(HealthRecord... records) {
+        feed.onStored(new HealthRecordsStored(List.of(records)));
+    }
+
+    @Test
+    @DisplayName("Should stream the initial readings, then the patient's stored readings only")
+    void testReadings() throws Exception {
+        TestSink sink = new TestSink(new CountDownLatch(0));
+        feed.readings("p1", () -> List.of(reading("p1", "r0")), sink);
+
+        stored(reading("p2", "x"), reading("p1", "r1"));
+
+        assertEquals("reading:r0", sink.next());
+        assertEquals("reading:r1", sink.next());
+        assertNull(sink.sent.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    @DisplayName("Should stream a reading stored while the initial readings were loading")
+    void testStoredWhileLoading() throws Exception {
+        TestSink sink = new TestSink(new CountDownLatch(0));
+        feed.readings("p1", () -> {
+            stored(reading("p1", "r1"));
+            return List.of(reading("p1", "r0"));
+        }, sink);
+
+        assertEquals("reading:r0", sink.next());
+        assertEquals("reading:r1", sink.next());
+    }
+
+    @Test
+    @DisplayName("Should drop the oldest events of a slow client without delaying the others")
+    void testSlowClient() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        TestSink slow = new TestSink(gate);
+        TestSink fast = new TestSink(new CountDownLatch(0));
+        feed.readings("p1", List::of, slow);
+        feed.readings("p1", List::of, fast);
+
+        stored(reading("p1", "r1"));
+        assertEquals("reading:r1", fast.next());
+        assertTrue(slow.sending.await(5, TimeUnit.SECONDS));
+        for (int i = 2; i <= 8; i++) {
+            stored(reading("p1", "r" + i));
+            assertEquals("reading:r" + i, fast.next());
+        }
+
+        gate.countDown();
+        assertEquals(List.of("reading:r1", "reading:r6", "reading:r7", "reading:r8"),
+                List.of(slow.next(), slow.next(), slow.next(), slow.next()));
+        assertEquals(4L, feed.metrics.snapshot().get("stream.events.dropped"));
+    }
+
+    @Test
+    @DisplayName("Should stream alerts to the patient's and the all-patients subscribers")
+    void testAlerts() throws Exception {
+        TestSink patient = new TestSink(new CountDownLatch(0));
+        TestSink all = new TestSink(new CountDownLatch(0));
+        feed.alerts("p1", patient);
+        feed.alerts(null, all);
+
+        Alert other = new Alert("p2", "LOW_SPO2", "HIGH", "Low Oxygen Saturation");
+        other.setId("a2");
+        Alert own = new Alert("p1", "TACHYCARDIA", "HIGH", "Tachycardia Detected");
+        own.setId("a1");
+        feed.alert(other);
+        feed.alert(own);
+
+        assertEquals("alert:a1", patient.next());
+        assertEquals("alert:a2", all.next());
+        assertEquals("alert:a1", all.next());
+    }
+
+    @Test
+    @DisplayName("Should refuse streams over the limit and free a slot when a client leaves")
+    void testLimit() throws Exception {
+        TestSink first = new TestSink(new CountDownLatch(0));
+        feed.readings("p1", List::of, first);
+        feed.alerts(null, new TestSink(new CountDownLatch(0)));
+
+        assertThrows(OverloadedException.class,
+                () -> feed.readings("p2", List::of, new TestSink(new CountDownLatch(0))));
+
+        first.closed = true;
+        stored(reading("p1", "r1"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (feed.subscribers() > 1 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, feed.subscribers());
+        feed.readings("p2", List::of, new TestSink(new CountDownLatch(0)));
+    }
+}
@@ -0,0 +1,101 @@
+package tn.supcom.cot.api.controllers;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("ReadingDeduplicator Tests")
+class ReadingDeduplicatorTest {
+
+    private static final long TS = 1_760_000_000_000L;
+
+    private ReadingDeduplicator deduplicator;
+
+    @BeforeEach
+    void setUp() {
+        deduplicator = new ReadingDeduplicator();
+        deduplicator.window = 4;
+        deduplicator.maxDevices = 2;
+    }
+
+    @Test
+    @DisplayName("Should drop a redelivered message of the same device only")
+    void testDuplicates() {
+        assertTrue(deduplicator.firstSeen("esp-1", 7, TS));
+        assertFalse(deduplicator.firstSeen("esp-1", 7, TS));
+        assertTrue(deduplicator.firstSeen("esp-2", 7, TS));
+        // Same sequence after a reboot, with a different device timestamp
+        assertTrue(deduplicator.firstSeen("esp-1", 7, TS + 60_000));
+        deduplicator.dropped(3);
+
+        assertEquals(1, deduplicator.duplicateMessages());
+        assertEquals(3, deduplicator.droppedReadings());
+    }
+
+    @Test
+    @DisplayName("Should only treat a REST reading as a duplicate once it was recorded as stored")
+    void testSeenBeforeStored() {
+        long millis = ReadingDeduplicator.timestampMillis(LocalDateTime.of(2025, 3, 1, 8, 0));
+        // A first attempt whose write failed is not recorded: its retry goes through
+        assertFalse(deduplicator.seen("sensor-1", 42, millis));
+        assertFalse(deduplicator.seen("sensor-1", 42, millis));
+
+        deduplicator.firstSeen("sensor-1", 42, millis);
+        assertTrue(deduplicator.seen("sensor-1", 42, millis));
+        assertEquals(1, deduplicator.duplicateMessages());
+    }
+
+    @Test
+    @DisplayName("Should store a reused sequence with a new timestamp under a new id")
+    void testSequenceReused() {
+        LocalDateTime before = LocalDateTime.of(2025, 3, 1, 8, 0);
+        LocalDateTime afterReboot = before.plusHours(2);
+        long first = ReadingDeduplicator.timestampMillis(before);
+        long second = ReadingDeduplicator.timestampMillis(afterReboot);
+        deduplicator.firstSeen("sensor-1", 42, first);
+
+        assertFalse(deduplicator.seen("sensor-1", 42, second));
+        assertNotEquals(ReadingDeduplicator.readingId("sensor-1", 42, first, 0),
+                ReadingDeduplicator.readingId("sensor-1", 42, second, 0));
+        assertEquals(ReadingDeduplicator.readingId("sensor-1", 42, first, 0),
+                ReadingDeduplicator.readingId("sensor-1", 42, ReadingDeduplicator.timestampMillis(before), 0));
+    }
+
+    @Test
+    @DisplayName("Should remember at least the window of recent messages per device")
+    void testWindow() {
+        for (int seq = 0; seq < 100; seq++) {
+            assertTrue(deduplicator.firstSeen("esp-1", seq, TS + seq));
+            for (int back = 0; back < 4 && back <= seq; back++) {
+                assertFalse(deduplicator.firstSeen("esp-1", seq - back, TS + seq - back), "seq " + seq);
+            }
+        }
+        // Long gone from the window
+        assertTrue(deduplicator.firstSeen("esp-1", 0, TS));
+    }
+
+    @Test
+    @DisplayName("Should evict the least recently seen devices")
+    void testDeviceEviction() {
+        deduplicator.firstSeen("esp-1", 1, TS);
+        deduplicator.firstSeen("esp-2", 1, TS);
+        deduplicator.firstSeen("esp-1", 2, TS);
+        deduplicator.firstSeen("esp-3", 1, TS);
+
+        assertEquals(2, deduplicator.trackedDevices());
+        assertFalse(deduplicator.firstSeen("esp-1", 1, TS));
+        assertTrue(deduplicator.firstSeen("esp-2", 1, TS));
+    }
+
+    @Test
+    @DisplayName("Should derive the same record id from the same message")
+    void testReadingId() {
+        assertEquals("health-record-esp-1-7-1760000000000-2", ReadingDeduplicator.readingId("esp-1", 7, TS, 2));
+        assertNotEquals(ReadingDeduplicator.readingId("esp-1", 7, TS, 0),
+                ReadingDeduplicator.readingId("esp-1", 7, TS, 1));
+    }
+}
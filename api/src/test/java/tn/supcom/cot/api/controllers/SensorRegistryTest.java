@@ -0,0 +1,148 @@
+package tn.supcom.cot.api.controllers;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import tn.supcom.cot.api.entities.Sensor;
+import tn.supcom.cot.api.repositories.MongoConnection;
+import tn.supcom.cot.api.repositories.SensorRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@DisplayName("SensorRegistry Tests")
+class SensorRegistryTest {
+
+    private SensorRepository repository;
+    private MongoCollection<Document> collection;
+    private SensorRegistry registry;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        repository = mock(SensorRepository.class);
+        collection = mock(MongoCollection.class);
+        MongoConnection mongo = mock(MongoConnection.class);
+        when(mongo.collection("Sensor")).thenReturn(collection);
+
+        registry = new SensorRegistry();
+        registry.repository = repository;
+        registry.mongo = mongo;
+        registry.maxSize = 2;
+        registry.ttlSeconds = 300;
+    }
+
+    private static Sensor sensor(String id, String deviceId) {
+        Sensor sensor = new Sensor();
+        sensor.setId(id);
+        sensor.setDeviceId(deviceId);
+        sensor.setPatientId("patient-1");
+        return sensor;
+    }
+
+    @Test
+    @DisplayName("Should query MongoDB only on the first lookup of a device")
+    void testCacheHit() {
+        when(repository.findByDeviceId("esp-1")).thenReturn(Optional.of(sensor("sensor-1", "esp-1")));
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals("patient-1", registry.find("esp-1").orElseThrow().getPatientId());
+        }
+
+        verify(repository, times(1)).findByDeviceId("esp-1");
+    }
+
+    @Test
+    @DisplayName("Should cache unknown devices as well")
+    void testNegativeCache() {
+        when(repository.findByDeviceId("unknown")).thenReturn(Optional.empty());
+
+        assertTrue(registry.find("unknown").isEmpty());
+        assertTrue(registry.find("unknown").isEmpty());
+
+        verify(repository, times(1)).findByDeviceId("unknown");
+    }
+
+    @Test
+    @DisplayName("Should reload expired and invalidated entries")
+    void testExpiryAndInvalidation() {
+        when(repository.findByDeviceId("esp-1")).thenReturn(Optional.empty())
+                .thenReturn(Optional.of(sensor("sensor-1", "esp-1")));
+
+        assertTrue(registry.find("esp-1").isEmpty());
+        registry.invalidate("esp-1");
+        assertTrue(registry.find("esp-1").isPresent());
+
+        registry.ttlSeconds = 0;
+        registry.invalidateAll();
+        registry.find("esp-1");
+        registry.find("esp-1");
+        verify(repository, times(4)).findByDeviceId("esp-1");
+    }
+
+    @Test
+    @DisplayName("Should evict the least recently used device beyond the size limit")
+    void testLruEviction() {
+        when(repository.findByDeviceId(any())).thenReturn(Optional.empty());
+
+        registry.find("esp-1");
+        registry.find("esp-2");
+        registry.find("esp-1");
+        registry.find("esp-3");
+
+        assertEquals(2, registry.cachedDevices());
+        registry.find("esp-1");
+        registry.find("esp-2");
+        verify(repository, times(1)).findByDeviceId("esp-1");
+        verify(repository, times(2)).findByDeviceId("esp-2");
+    }
+
+    @Test
+    @DisplayName("Should write merged heartbeats as one bulk update")
+    @SuppressWarnings("unchecked")
+    void testHeartbeatFlush() {
+        Sensor first = sensor("sensor-1", "esp-1");
+        Sensor second = sensor("sensor-2", "esp-2");
+        LocalDateTime now = LocalDateTime.now();
+
+        for (int i = 0; i < 10; i++) {
+            registry.heartbeat(first, now.plusSeconds(i));
+        }
+        registry.heartbeat(second, now);
+
+        assertEquals("active", first.getStatus());
+        assertEquals(now.plusSeconds(9), first.getLastConnection());
+        assertEquals(2, registry.pendingHeartbeats());
+
+        registry.flushHeartbeats();
+        registry.flushHeartbeats();
+
+        ArgumentCaptor<List<WriteModel<Document>>> updates = ArgumentCaptor.forClass(List.class);
+        verify(collection, times(1)).bulkWrite(updates.capture(), any(BulkWriteOptions.class));
+        assertEquals(2, updates.getValue().size());
+        assertEquals(0, registry.pendingHeartbeats());
+    }
+
+    @Test
+    @DisplayName("Should not fail ingestion when the heartbeat flush fails")
+    void testHeartbeatFlushFailure() {
+        when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class)))
+                .thenThrow(new IllegalStateException("MongoDB unavailable"));
+
+        registry.heartbeat(sensor("sensor-1", "esp-1"), LocalDateTime.now());
+
+        assertDoesNotThrow(registry::flushHeartbeats);
+        assertEquals(0, registry.pendingHeartbeats());
+    }
+}
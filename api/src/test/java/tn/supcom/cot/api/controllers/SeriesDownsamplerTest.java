@@ -0,0 +1,68 @@
+package tn.supcom.cot.api.controllers;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SeriesDownsampler Tests")
+class SeriesDownsamplerTest {
+
+    private static final long START = 1_740_787_200_000L;
+
+    // Heart rate every 2 s, flat with a small oscillation
+    private static long[] times(int size) {
+        long[] x = new long[size];
+        for (int i = 0; i < size; i++) {
+            x[i] = START + i * 2000L;
+        }
+        return x;
+    }
+
+    private static double[] values(int size) {
+        double[] y = new double[size];
+        for (int i = 0; i < size; i++) {
+            y[i] = 72 + (i % 2);
+        }
+        return y;
+    }
+
+    @Test
+    @DisplayName("Should return every point when there are fewer than the threshold")
+    void testBelowThreshold() {
+        int[] selected = SeriesDownsampler.lttb(times(10), values(10), 500);
+
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9}, selected);
+    }
+
+    @Test
+    @DisplayName("Should keep the threshold count, the first and last points, in order")
+    void testThreshold() {
+        int size = 43_200;
+
+        int[] selected = SeriesDownsampler.lttb(times(size), values(size), 500);
+
+        assertEquals(500, selected.length);
+        assertEquals(0, selected[0]);
+        assertEquals(size - 1, selected[499]);
+        for (int i = 1; i < selected.length; i++) {
+            assertTrue(selected[i] > selected[i - 1]);
+        }
+    }
+
+    @Test
+    @DisplayName("Should keep isolated peaks and dips")
+    void testKeepsPeaks() {
+        int size = 10_000;
+        double[] y = values(size);
+        y[3_333] = 180;
+        y[7_777] = 40;
+
+        int[] selected = SeriesDownsampler.lttb(times(size), y, 100);
+
+        assertTrue(Arrays.stream(selected).anyMatch(i -> i == 3_333));
+        assertTrue(Arrays.stream(selected).anyMatch(i -> i == 7_777));
+    }
+}
@@ -0,0 +1,121 @@
+package tn.supcom.cot.api.controllers;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import tn.supcom.cot.api.entities.SensorType;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SlidingWindow Tests")
+class SlidingWindowTest {
+
+    private static final long SECOND = 1000;
+
+    private static ThresholdRules.Rule rule(ThresholdRules.Kind kind, boolean above, double threshold,
+                                            long windowMillis, int samples) {
+        return new ThresholdRules.Rule(SensorType.HEART_RATE, kind, above, threshold, windowMillis, samples,
+                "TEST", "HIGH", "Test");
+    }
+
+    @Test
+    @DisplayName("Should fire a sustained rule once the threshold is broken for the whole window")
+    void testSustained() {
+        ThresholdRules.Rule[] rules = {rule(ThresholdRules.Kind.SUSTAINED, true, 130, 60 * SECOND, 0)};
+        SlidingWindow window = new SlidingWindow(16);
+
+        assertEquals(0, window.add(0, 140, rules));
+        assertEquals(0, window.add(30 * SECOND, 140, rules));
+        // One sample back to normal restarts the window
+        assertEquals(0, window.add(40 * SECOND, 120, rules));
+        assertEquals(0, window.add(50 * SECOND, 140, rules));
+        assertEquals(0, window.add(100 * SECOND, 140, rules));
+        assertEquals(1, window.add(110 * SECOND, 140, rules));
+        // Fires once per episode
+        assertEquals(0, window.add(120 * SECOND, 140, rules));
+        assertEquals(0, window.add(130 * SECOND, 120, rules));
+    }
+
+    @Test
+    @DisplayName("Should fire a slope rule on a falling trend over the window")
+    void testSlope() {
+        // SpO2 dropping faster than 2 % per minute over 5 minutes
+        ThresholdRules.Rule[] rules = {rule(ThresholdRules.Kind.SLOPE, false, -2, 300 * SECOND, 0)};
+        SlidingWindow window = new SlidingWindow(64);
+
+        // Stable, with noise: no alert whatever the window
+        int fired = 0;
+        for (int i = 0; i < 30; i++) {
+            fired |= window.add(i * 20 * SECOND, 97 + (i % 2 == 0 ? 1 : -1), rules);
+        }
+        assertEquals(0, fired);
+
+        // Then 3 % per minute down: fires once enough of the window shows it
+        long start = 30 * 20 * SECOND;
+        int firedAt = -1;
+        for (int i = 0; i < 30 && firedAt < 0; i++) {
+            if (window.add(start + i * 20 * SECOND, 97 - i, rules) != 0) {
+                firedAt = i;
+            }
+        }
+        assertTrue(firedAt > 0, "slope rule should fire");
+        assertTrue(firedAt * 20 <= 300, "slope rule should fire within the window");
+    }
+
+    @Test
+    @DisplayName("Should keep the slope window within the ring buffer")
+    void testSlopeBuffer() {
+        ThresholdRules.Rule[] rules = {rule(ThresholdRules.Kind.SLOPE, true, 1, 3600 * SECOND, 0)};
+        SlidingWindow window = new SlidingWindow(8);
+
+        // Falling for a long time, then rising: only the last 8 readings count
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, window.add(i * SECOND * 10, 200 - i, rules));
+        }
+        int fired = 0;
+        for (int i = 0; i < 8; i++) {
+            fired |= window.add((100 + i) * SECOND * 10, 100 + 10 * i, rules);
+        }
+        assertEquals(1, fired);
+    }
+
+    @Test
+    @DisplayName("Should fire a trend rule after consecutive rising samples")
+    void testTrend() {
+        ThresholdRules.Rule[] rules = {rule(ThresholdRules.Kind.TREND, true, 0, 0, 3)};
+        SlidingWindow window = new SlidingWindow(16);
+
+        assertEquals(0, window.add(0, 37.0, rules));
+        assertEquals(0, window.add(SECOND, 37.2, rules));
+        assertEquals(0, window.add(2 * SECOND, 37.4, rules));
+        assertEquals(0, window.add(3 * SECOND, 37.3, rules));
+        assertEquals(0, window.add(4 * SECOND, 37.5, rules));
+        assertEquals(0, window.add(5 * SECOND, 37.7, rules));
+        assertEquals(1, window.add(6 * SECOND, 37.9, rules));
+    }
+
+    @Test
+    @DisplayName("Should report each rule that fired as a bit and ignore out-of-order readings")
+    void testMask() {
+        ThresholdRules.Rule[] rules = {
+                rule(ThresholdRules.Kind.TREND, true, 0, 0, 2),
+                rule(ThresholdRules.Kind.SUSTAINED, true, 100, 0, 0)};
+        SlidingWindow window = new SlidingWindow(16);
+
+        assertEquals(0b10, window.add(10 * SECOND, 101, rules));
+        assertEquals(0, window.add(5 * SECOND, 200, rules));
+        assertEquals(0, window.add(11 * SECOND, 102, rules));
+        assertEquals(0b01, window.add(12 * SECOND, 103, rules));
+    }
+
+    @Test
+    @DisplayName("Should keep the state of unchanged rules when the rules are reloaded")
+    void testReload() {
+        ThresholdRules.Rule sustained = rule(ThresholdRules.Kind.SUSTAINED, true, 130, 60 * SECOND, 0);
+        SlidingWindow window = new SlidingWindow(16);
+
+        assertEquals(0, window.add(0, 140, new ThresholdRules.Rule[]{sustained}));
+        assertEquals(1, window.add(60 * SECOND, 140, new ThresholdRules.Rule[]{sustained}));
+        assertEquals(0, window.add(70 * SECOND, 140, new ThresholdRules.Rule[]{
+                rule(ThresholdRules.Kind.TREND, true, 0, 0, 5), sustained}));
+    }
+}
@@ -0,0 +1,141 @@
+package tn.supcom.cot.api.controllers;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import tn.supcom.cot.api.entities.HealthRecord;
+import tn.supcom.cot.api.entities.SensorType;
+import tn.supcom.cot.api.entities.ThresholdRule;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates readings of 10k patients against the compiled threshold rules:
+ * single-reading rules only (evaluate), and every rule with the sliding
+ * windows of each patient and type (check).
+ *
+ * Run from the api module after test-compile:
+ * <pre>
+ *   mvn -q test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=tn.supcom.cot.api.controllers.ThresholdRulesBenchmark
+ * </pre>
+ * Throughput is reported in readings/s (the target is 1M/s on one core);
+ * gc.alloc.rate.norm should be 0 bytes per reading for evaluate; check also
+ * pays for moving the replayed readings' timestamps.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThresholdRulesBenchmark {
+
+    private static final int READINGS = 1 << 16;
+
+    private static final LocalDateTime START = LocalDateTime.of(2025, 3, 1, 0, 0);
+
+    @Param({"10000"})
+    public int patients;
+
+    // Share of patients with rules of their own
+    @Param({"0.1"})
+    public double overridden;
+
+    private ThresholdRules rules;
+    private HealthRecord[] readings;
+    private long alerts;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        SensorType[] types = {SensorType.HEART_RATE, SensorType.SPO2, SensorType.TEMPERATURE,
+                SensorType.BLOOD_PRESSURE};
+
+        List<ThresholdRule> stored = new ArrayList<>(ThresholdRules.DEFAULTS);
+        for (int p = 0; p < patients * overridden; p++) {
+            stored.add(new ThresholdRule("patient-" + p, SensorType.HEART_RATE, ThresholdRule.ABOVE,
+                    110 + random.nextInt(20), "TACHYCARDIA", "HIGH", "Tachycardia Detected"));
+        }
+        for (int p = 0; p < patients * overridden; p++) {
+            ThresholdRule falling = new ThresholdRule("patient-" + p, SensorType.SPO2, ThresholdRule.BELOW, -2,
+                    "FALLING_SPO2", "HIGH", "SpO2 Falling");
+            falling.setKind(ThresholdRule.SLOPE);
+            falling.setWindowSeconds(300);
+            stored.add(falling);
+        }
+        rules = new ThresholdRules();
+        rules.enabled = true;
+        rules.windowCapacity = 256;
+        // Alerts are counted, not stored
+        rules.alerts = new AlertController() {
+            @Override
+            public void createThresholdAlert(HealthRecord record, ThresholdRules.Rule rule) {
+                alerts++;
+            }
+        };
+        rules.compile(stored);
+
+        readings = new HealthRecord[READINGS];
+        for (int i = 0; i < READINGS; i++) {
+            SensorType type = types[random.nextInt(types.length)];
+            double value = switch (type) {
+                case HEART_RATE -> 60 + random.nextInt(90);
+                case SPO2 -> 85 + random.nextInt(15);
+                case TEMPERATURE -> 36 + random.nextDouble() * 4;
+                default -> 100 + random.nextInt(100);
+            };
+            readings[i] = new HealthRecord("patient-" + random.nextInt(patients), type.name(), value,
+                    type.getUnit());
+            // Spread over 6.5 seconds, in time order
+            readings[i].setTimestamp(START.plusNanos(i * 100_000L));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(READINGS)
+    public int evaluate() {
+        int breaches = 0;
+        for (HealthRecord reading : readings) {
+            if (rules.evaluate(reading) != null) {
+                breaches++;
+            }
+        }
+        return breaches;
+    }
+
+    // Windows only accept readings in time order: the readings are replayed 7 seconds later each time
+    @Benchmark
+    @OperationsPerInvocation(READINGS)
+    public long check() {
+        for (HealthRecord reading : readings) {
+            reading.setTimestamp(reading.getTimestamp().plusSeconds(7));
+            rules.check(reading);
+        }
+        return alerts;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ThresholdRulesBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
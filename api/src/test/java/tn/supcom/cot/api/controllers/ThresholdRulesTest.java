@@ -0,0 +1,145 @@
+package tn.supcom.cot.api.controllers;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import tn.supcom.cot.api.entities.HealthRecord;
+import tn.supcom.cot.api.entities.SensorType;
+import tn.supcom.cot.api.entities.ThresholdRule;
+import tn.supcom.cot.api.metrics.IngestionMetrics;
+import tn.supcom.cot.api.repositories.ThresholdRuleRepository;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@DisplayName("ThresholdRules Tests")
+class ThresholdRulesTest {
+
+    private ThresholdRules rules;
+
+    @BeforeEach
+    void setUp() {
+        rules = new ThresholdRules();
+        rules.repository = mock(ThresholdRuleRepository.class);
+        rules.alerts = mock(AlertController.class);
+        rules.metrics = new IngestionMetrics();
+        rules.enabled = true;
+        rules.windowIdleMinutes = 60;
+        when(rules.repository.findAll()).thenReturn(Stream.empty());
+        rules.init();
+    }
+
+    private void stored(ThresholdRule... stored) {
+        when(rules.repository.findAll()).thenReturn(Stream.of(stored));
+        rules.reload();
+    }
+
+    private static HealthRecord reading(String patientId, String type, double value) {
+        return new HealthRecord(patientId, type, value, null);
+    }
+
+    private static ThresholdRule rule(String patientId, SensorType type, String condition, Double threshold) {
+        ThresholdRule rule = new ThresholdRule();
+        rule.setPatientId(patientId);
+        rule.setType(type.name());
+        rule.setCondition(condition);
+        rule.setThreshold(threshold);
+        return rule;
+    }
+
+    @Test
+    @DisplayName("Should apply the former limits by default")
+    void testDefaults() {
+        assertEquals("HIGH_TEMPERATURE", rules.evaluate(reading("p1", "TEMPERATURE", 39.5)).alertType());
+        assertNull(rules.evaluate(reading("p1", "TEMPERATURE", 39.0)));
+        assertEquals("LOW_SPO2", rules.evaluate(reading("p1", "SPO2", 88)).alertType());
+        assertNull(rules.evaluate(reading("p1", "SPO2", 95)));
+        assertNull(rules.evaluate(reading("p1", "STEPS", 1e9)));
+    }
+
+    @Test
+    @DisplayName("Should let a patient's rule replace the general one for its condition only")
+    void testPatientOverride() {
+        stored(rule("p1", SensorType.HEART_RATE, ThresholdRule.ABOVE, 110.0),
+                rule("p1", SensorType.HEART_RATE, ThresholdRule.BELOW, 45.0));
+
+        assertNotNull(rules.evaluate(reading("p1", "HEART_RATE", 115)));
+        assertNull(rules.evaluate(reading("p2", "HEART_RATE", 115)));
+        assertNotNull(rules.evaluate(reading("p1", "HEART_RATE", 40)));
+        assertNull(rules.evaluate(reading("p2", "HEART_RATE", 40)));
+        // General temperature rule still applies to p1
+        assertNotNull(rules.evaluate(reading("p1", "TEMPERATURE", 40)));
+    }
+
+    @Test
+    @DisplayName("Should switch rules off per patient or for everyone")
+    void testDisabled() {
+        ThresholdRule patientOff = rule("p1", SensorType.TEMPERATURE, ThresholdRule.ABOVE, null);
+        patientOff.setEnabled(false);
+        ThresholdRule generalOff = rule(null, SensorType.SPO2, ThresholdRule.BELOW, null);
+        generalOff.setEnabled(false);
+        stored(patientOff, generalOff);
+
+        assertNull(rules.evaluate(reading("p1", "TEMPERATURE", 41)));
+        assertNotNull(rules.evaluate(reading("p2", "TEMPERATURE", 41)));
+        assertNull(rules.evaluate(reading("p2", "SPO2", 80)));
+    }
+
+    @Test
+    @DisplayName("Should keep the previous rules when reloading fails")
+    void testReloadFailure() {
+        stored(rule(null, SensorType.HEART_RATE, ThresholdRule.ABOVE, 100.0));
+        when(rules.repository.findAll()).thenThrow(new IllegalStateException("down"));
+        rules.reload();
+
+        assertNotNull(rules.evaluate(reading("p1", "HEART_RATE", 105)));
+    }
+
+    @Test
+    @DisplayName("Should raise tachycardia only once heart rate stays high for a minute")
+    void testSustainedDefault() {
+        rules.windowCapacity = 16;
+        LocalDateTime start = LocalDateTime.of(2025, 3, 1, 10, 0);
+        for (int second = 0; second <= 60; second += 10) {
+            HealthRecord reading = reading("p1", "HEART_RATE", 140);
+            reading.setTimestamp(start.plusSeconds(second));
+            assertNull(rules.evaluate(reading));
+            rules.check(reading);
+        }
+
+        verify(rules.alerts, times(1)).createThresholdAlert(any(), any());
+    }
+
+    @Test
+    @DisplayName("Should drop the windows of idle patients")
+    void testEvictIdle() {
+        rules.windowCapacity = 16;
+        HealthRecord reading = reading("p1", "HEART_RATE", 80);
+        reading.setTimestamp(LocalDateTime.now());
+        rules.check(reading);
+
+        rules.evictIdle(System.currentTimeMillis());
+        assertTrue(rules.hasWindows("p1"));
+        rules.evictIdle(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(rules.windowIdleMinutes + 1));
+        assertFalse(rules.hasWindows("p1"));
+    }
+
+    @Test
+    @DisplayName("Should record the time from a reading to its alert")
+    void testAlertLatency() {
+        HealthRecord fever = reading("p1", "TEMPERATURE", 40);
+        fever.setTimestamp(LocalDateTime.now().minusSeconds(2));
+        rules.check(fever);
+        rules.check(reading("p1", "TEMPERATURE", 37));
+
+        verify(rules.alerts, times(1)).createThresholdAlert(eq(fever), any());
+        assertEquals(1L, rules.metrics.snapshot().get("alerts.latency.reading.count"));
+        assertTrue(rules.metrics.snapshot().get("alerts.latency.reading.max.ms") >= 2000);
+    }
+}
@@ -0,0 +1,59 @@
+package tn.supcom.cot.api.metrics;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("LatencyHistogram Tests")
+class LatencyHistogramTest {
+
+    @Test
+    @DisplayName("Should report percentiles as bucket upper bounds capped at the maximum")
+    void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 98; i++) {
+            histogram.record(3);
+        }
+        histogram.record(150);
+        histogram.record(70_000);
+
+        assertEquals(100, histogram.count());
+        assertEquals(5, histogram.percentile(0.50));
+        assertEquals(5, histogram.percentile(0.98));
+        assertEquals(200, histogram.percentile(0.99));
+        assertEquals(70_000, histogram.percentile(1.0));
+        assertEquals(70_000, histogram.max());
+    }
+
+    @Test
+    @DisplayName("Should count negative latencies as zero and report nothing when empty")
+    void testEdges() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(0.99));
+
+        histogram.record(-40);
+        assertEquals(0, histogram.percentile(0.99));
+        assertEquals(1, histogram.count());
+    }
+
+    @Test
+    @DisplayName("Should expose summary and cumulative bucket counts through the metrics snapshot")
+    void testSnapshot() {
+        IngestionMetrics metrics = new IngestionMetrics();
+        LatencyHistogram histogram = metrics.histogram("alerts.latency.reading");
+        assertSame(histogram, metrics.histogram("alerts.latency.reading"));
+        histogram.record(1);
+        histogram.record(4_000);
+
+        Map<String, Long> snapshot = metrics.snapshot();
+        assertEquals(2L, snapshot.get("alerts.latency.reading.count"));
+        assertEquals(2000L, snapshot.get("alerts.latency.reading.mean.ms"));
+        assertEquals(4000L, snapshot.get("alerts.latency.reading.p99.ms"));
+        assertEquals(1L, snapshot.get("alerts.latency.reading.le.2000ms"));
+        assertEquals(2L, snapshot.get("alerts.latency.reading.le.5000ms"));
+        assertEquals(2L, snapshot.get("alerts.latency.reading.le.60000ms"));
+    }
+}
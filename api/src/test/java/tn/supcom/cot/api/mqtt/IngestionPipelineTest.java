@@ -0,0 +1,222 @@
+package tn.supcom.cot.api.mqtt;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import tn.supcom.cot.api.entities.HealthRecord;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("IngestionPipeline Tests")
+class IngestionPipelineTest {
+
+    private final List<List<HealthRecord>> batches = new CopyOnWriteArrayList<>();
+    private final AtomicInteger acks = new AtomicInteger();
+    private IngestionPipeline pipeline;
+
+    @AfterEach
+    void tearDown() {
+        if (pipeline != null) {
+            pipeline.stop();
+        }
+    }
+
+    private static List<HealthRecord> decode(String deviceId, ByteBuffer payload) {
+        String text = StandardCharsets.UTF_8.decode(payload).toString();
+        if (text.startsWith("bad")) {
+            throw new IllegalArgumentException("bad payload");
+        }
+        return List.of(new HealthRecord("patient-1", "HEART_RATE", Double.parseDouble(text), "bpm"));
+    }
+
+    private static ByteBuffer payload(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private int recordCount() {
+        return batches.stream().mapToInt(List::size).sum();
+    }
+
+    @Test
+    @DisplayName("Should flush a full batch without waiting for the linger time")
+    void testFlushOnBatchSize() throws InterruptedException {
+        CountDownLatch flushed = new CountDownLatch(1);
+        pipeline = new IngestionPipeline(64, 64, 1, 5, 60_000, IngestionPipelineTest::decode, batch -> {
+            batches.add(batch);
+            flushed.countDown();
+        });
+        pipeline.start(Thread::new);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(pipeline.submit("esp-1", payload("7" + i), acks::incrementAndGet));
+        }
+
+        assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        assertEquals(5, batches.get(0).size());
+    }
+
+    @Test
+    @DisplayName("Should flush a partial batch once the linger time expires")
+    void testFlushOnLinger() throws InterruptedException {
+        CountDownLatch flushed = new CountDownLatch(1);
+        pipeline = new IngestionPipeline(64, 64, 2, 100, 50, IngestionPipelineTest::decode, batch -> {
+            batches.add(batch);
+            flushed.countDown();
+        });
+        pipeline.start(Thread::new);
+
+        pipeline.submit("esp-1", payload("80"), acks::incrementAndGet);
+        pipeline.submit("esp-1", payload("81"), acks::incrementAndGet);
+
+        assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        assertTrue(batches.get(0).size() <= 2);
+    }
+
+    @Test
+    @DisplayName("Should write all readings of a multi-sample message in one batch")
+    void testMultiSampleMessage() throws InterruptedException {
+        CountDownLatch flushed = new CountDownLatch(1);
+        pipeline = new IngestionPipeline(64, 64, 1, 10, 60_000, (deviceId, payload) -> {
+            List<HealthRecord> records = new ArrayList<>();
+            for (int i = 0; i < 150; i++) {
+                records.addAll(decode(deviceId, payload.duplicate()));
+            }
+            return records;
+        }, batch -> {
+            batches.add(batch);
+            flushed.countDown();
+        });
+        pipeline.start(Thread::new);
+
+        pipeline.submit("esp-1", payload("70"), acks::incrementAndGet);
+
+        assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        pipeline.stop();
+        assertEquals(1, batches.size());
+        assertEquals(150, batches.get(0).size());
+        assertEquals(1, acks.get());
+    }
+
+    @Test
+    @DisplayName("Should reject payloads when the queue is full")
+    void testBoundedQueue() {
+        pipeline = new IngestionPipeline(2, 2, 1, 10, 10, IngestionPipelineTest::decode, batches::add);
+
+        // Not started: nothing is accepted
+        assertFalse(pipeline.isRunning());
+        assertFalse(pipeline.submit("esp-1", payload("70"), acks::incrementAndGet));
+    }
+
+    @Test
+    @DisplayName("Should skip malformed payloads and drain everything on stop")
+    void testDrainOnStop() {
+        pipeline = new IngestionPipeline(64, 64, 2, 1000, 60_000, IngestionPipelineTest::decode, batches::add);
+        pipeline.start(Thread::new);
+
+        pipeline.submit("esp-1", payload("60"), acks::incrementAndGet);
+        pipeline.submit("esp-1", payload("bad"), acks::incrementAndGet);
+        pipeline.submit("esp-1", payload("61"), acks::incrementAndGet);
+        pipeline.stop();
+
+        assertEquals(2, recordCount());
+        assertEquals(0, pipeline.queueDepth());
+        assertEquals(1, pipeline.malformed());
+        // Malformed payloads are acknowledged too, they would never succeed on redelivery
+        assertEquals(3, acks.get());
+        assertEquals(0, pipeline.inFlight());
+    }
+
+    @Test
+    @DisplayName("Should acknowledge a message only after its batch is written")
+    void testAcknowledgeAfterWrite() throws InterruptedException {
+        CountDownLatch writeStarted = new CountDownLatch(1);
+        CountDownLatch releaseWrite = new CountDownLatch(1);
+        pipeline = new IngestionPipeline(64, 64, 1, 1, 0, IngestionPipelineTest::decode, batch -> {
+            writeStarted.countDown();
+            releaseWrite.await();
+            batches.add(batch);
+        });
+        pipeline.start(Thread::new);
+
+        pipeline.submit("esp-1", payload("90"), acks::incrementAndGet);
+        assertTrue(writeStarted.await(5, TimeUnit.SECONDS));
+        assertEquals(0, acks.get());
+        assertEquals(1, pipeline.inFlight());
+
+        releaseWrite.countDown();
+        pipeline.stop();
+        assertEquals(1, acks.get());
+        assertEquals(0, pipeline.inFlight());
+    }
+
+    @Test
+    @DisplayName("Should pause once the broker window fills up behind a slow write and resume after it")
+    void testPauseOnPending() throws InterruptedException {
+        CountDownLatch releaseWrite = new CountDownLatch(1);
+        // Production defaults: a queue of 4096 behind a receive maximum of 1024
+        pipeline = new IngestionPipeline(4096, 1024, 2, 256, 500, IngestionPipelineTest::decode, batch -> {
+            releaseWrite.await();
+            batches.add(batch);
+        });
+        pipeline.start(Thread::new);
+
+        for (int i = 0; i < 1024; i++) {
+            assertTrue(pipeline.submit("esp-" + (i % 8), payload("70"), acks::incrementAndGet));
+        }
+        assertTrue(pipeline.isPaused());
+        assertEquals(0, acks.get());
+
+        releaseWrite.countDown();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (acks.get() < 1024 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(1024, acks.get());
+        assertEquals(1024, recordCount());
+        assertFalse(pipeline.isPaused());
+        assertEquals(0, pipeline.inFlight());
+    }
+
+    @Test
+    @DisplayName("Should retry failed writes and pause acknowledgements meanwhile")
+    void testRetryWhileWriteFails() throws InterruptedException {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        CountDownLatch written = new CountDownLatch(1);
+        pipeline = new IngestionPipeline(64, 64, 1, 1, 0, IngestionPipelineTest::decode, batch -> {
+            if (failing.get()) {
+                throw new IllegalStateException("MongoDB unavailable");
+            }
+            batches.add(batch);
+            written.countDown();
+        });
+        pipeline.start(Thread::new);
+
+        pipeline.submit("esp-1", payload("95"), acks::incrementAndGet);
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (pipeline.writeFailures() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(pipeline.writeFailures() >= 2);
+        assertTrue(pipeline.isPaused());
+        assertEquals(0, acks.get());
+
+        failing.set(false);
+        assertTrue(written.await(10, TimeUnit.SECONDS));
+        pipeline.stop();
+
+        assertEquals(1, recordCount());
+        assertEquals(1, acks.get());
+        assertFalse(pipeline.isPaused());
+        assertTrue(pipeline.pausedMillis() > 0);
+    }
+}
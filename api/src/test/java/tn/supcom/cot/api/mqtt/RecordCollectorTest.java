@@ -0,0 +1,78 @@
+package tn.supcom.cot.api.mqtt;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import tn.supcom.cot.api.controllers.ReadingDeduplicator;
+import tn.supcom.cot.api.controllers.SensorRegistry;
+import tn.supcom.cot.api.entities.HealthRecord;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@DisplayName("RecordCollector Tests")
+class RecordCollectorTest {
+
+    // The multi-sample payload documented on SensorPayloadDecoder
+    private static final String SAMPLES = """
+            {"deviceId":"esp-1","seq":42,"samples":[
+               {"ts":1760000000000,"bpm":72,"temperature":36.6},
+               {"ts":1760000002000,"bpm":74}]}""";
+
+    private SensorRegistry sensorRegistry;
+    private ReadingDeduplicator deduplicator;
+    private final Set<List<Object>> seen = new HashSet<>();
+
+    @BeforeEach
+    void setUp() {
+        sensorRegistry = mock(SensorRegistry.class);
+        deduplicator = mock(ReadingDeduplicator.class);
+        when(sensorRegistry.find(any())).thenReturn(Optional.empty());
+        when(deduplicator.firstSeen(any(), anyLong(), anyLong()))
+                .thenAnswer(invocation -> seen.add(List.of(invocation.getArguments())));
+    }
+
+    private RecordCollector decode(String topicDeviceId, String json) {
+        RecordCollector collector = new RecordCollector(topicDeviceId, sensorRegistry, deduplicator);
+        new SensorPayloadDecoder().decode(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)), collector);
+        return collector;
+    }
+
+    @Test
+    @DisplayName("Should identify a multi-sample message by its first sample and drop its redelivery")
+    void testSamplesRedelivered() {
+        RecordCollector first = decode(null, SAMPLES);
+        assertFalse(first.duplicate);
+        assertEquals(List.of(
+                        "health-record-esp-1-42-1760000000000-0",
+                        "health-record-esp-1-42-1760000000000-1",
+                        "health-record-esp-1-42-1760000000000-2"),
+                first.records.stream().map(HealthRecord::getId).toList());
+
+        RecordCollector again = decode(null, SAMPLES);
+        assertTrue(again.duplicate);
+        assertTrue(again.records.isEmpty());
+        assertEquals(3, again.dropped);
+    }
+
+    @Test
+    @DisplayName("Should keep random ids for messages without a device clock")
+    void testNoClock() {
+        RecordCollector first = decode("esp-2", "{\"seq\":7,\"bpm\":72}");
+        RecordCollector again = decode("esp-2", "{\"seq\":7,\"bpm\":72}");
+
+        assertFalse(again.duplicate);
+        assertTrue(first.records.get(0).getId().startsWith("health-record-"));
+        assertNotEquals(first.records.get(0).getId(), again.records.get(0).getId());
+        verify(deduplicator, never()).firstSeen(any(), anyLong(), anyLong());
+    }
+}
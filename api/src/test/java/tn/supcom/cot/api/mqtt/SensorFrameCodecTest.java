@@ -0,0 +1,157 @@
+package tn.supcom.cot.api.mqtt;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import tn.supcom.cot.api.entities.SensorType;
+import tn.supcom.cot.api.mqtt.SensorPayloadDecoderTest.CollectingSink;
+import tn.supcom.cot.api.mqtt.SensorPayloadDecoderTest.Reading;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SensorFrameCodec Tests")
+class SensorFrameCodecTest {
+
+    static class FrameSink extends CollectingSink {
+        long timestamp = -1;
+
+        @Override
+        public void frame(long sequence, long timestampMillis) {
+            super.frame(sequence, timestampMillis);
+            this.timestamp = timestampMillis;
+        }
+    }
+
+    private static FrameSink decode(byte[] frame) {
+        FrameSink sink = new FrameSink();
+        ByteBuffer buffer = ByteBuffer.wrap(frame).asReadOnlyBuffer();
+        assertTrue(SensorFrameCodec.isFrame(buffer));
+        int count = SensorFrameCodec.decode(buffer, sink);
+        assertEquals(sink.readings.size(), count);
+        assertEquals(0, buffer.position());
+        return sink;
+    }
+
+    @Test
+    @DisplayName("Should round-trip every sensor type with the frame header")
+    void testRoundTrip() {
+        long timestamp = 1_760_000_000_123L;
+        byte[] frame = new SensorFrameCodec.Builder("esp-42", 0xFFFF_FFFEL, timestamp)
+                .add(SensorType.HEART_RATE, 72)
+                .add(SensorType.SPO2, 97)
+                .add(SensorType.TEMPERATURE, 36.5)
+                .add(SensorType.BLOOD_PRESSURE, 120, 80)
+                .add(SensorType.FALL_DETECTION, 1)
+                .add(SensorType.GPS_LOCATION, 36.8065, 10.1815)
+                .build();
+
+        FrameSink sink = decode(frame);
+
+        assertEquals(53 + "esp-42".length(), frame.length);
+        assertEquals("esp-42", sink.deviceId);
+        assertEquals(0xFFFF_FFFEL, sink.sequence);
+        assertEquals(timestamp, sink.timestamp);
+        assertEquals(List.of(
+                new Reading(SensorType.HEART_RATE, 72, Double.NaN),
+                new Reading(SensorType.SPO2, 97, Double.NaN),
+                new Reading(SensorType.TEMPERATURE, 36.5, Double.NaN),
+                new Reading(SensorType.BLOOD_PRESSURE, 120, 80),
+                new Reading(SensorType.FALL_DETECTION, 1, Double.NaN),
+                new Reading(SensorType.GPS_LOCATION, (float) 36.8065, (float) 10.1815)), sink.readings);
+    }
+
+    @Test
+    @DisplayName("Should round-trip a v2 frame of timestamped sample groups")
+    void testSampleGroups() {
+        long base = 1_760_000_000_000L;
+        SensorFrameCodec.Builder builder = new SensorFrameCodec.Builder(null, 9, base);
+        for (int i = 0; i < 300; i++) {
+            builder.at(i * 2_000L).add(SensorType.HEART_RATE, 60 + i % 40).add(SensorType.TEMPERATURE, 36.5);
+        }
+        builder.at(600_000).add(SensorType.GPS_LOCATION, 36.75, 10.25);
+        byte[] frame = builder.build();
+
+        FrameSink sink = decode(frame);
+
+        assertEquals(SensorFrameCodec.VERSION_2, frame[0]);
+        assertEquals(2 + 12 + 2 + 300 * 15 + 4 + 1 + 9, frame.length);
+        assertEquals(601, sink.readings.size());
+        assertEquals(new Reading(SensorType.HEART_RATE, 61, Double.NaN), sink.readings.get(2));
+        assertEquals(base + 2_000, sink.readingTimes.get(2));
+        assertEquals(new Reading(SensorType.GPS_LOCATION, 36.75, 10.25), sink.readings.get(600));
+        assertEquals(base + 600_000, sink.readingTimes.get(600));
+
+        // Without a device clock the offsets cannot be placed in time
+        FrameSink unclocked = decode(new SensorFrameCodec.Builder(null, 1, 0).at(5).add(SensorType.SPO2, 97).build());
+        assertEquals(0, unclocked.readingTimes.get(0));
+
+        assertThrows(IllegalStateException.class, () -> new SensorFrameCodec.Builder(null, 1, 0)
+                .add(SensorType.SPO2, 97).at(0));
+    }
+
+    @Test
+    @DisplayName("Should be smaller than the JSON payload of the firmware")
+    void testCompactness() {
+        byte[] frame = new SensorFrameCodec.Builder(null, 1, 0)
+                .add(SensorType.HEART_RATE, 72)
+                .add(SensorType.TEMPERATURE, 36.62)
+                .build();
+        byte[] json = "{\"bpm\":72,\"temperature\":36.62}".getBytes(StandardCharsets.UTF_8);
+
+        FrameSink sink = decode(frame);
+
+        assertEquals(25, frame.length);
+        assertTrue(frame.length < json.length);
+        assertNull(sink.deviceId);
+        assertEquals(0, sink.timestamp);
+        assertFalse(SensorFrameCodec.isFrame(ByteBuffer.wrap(json)));
+        assertFalse(SensorFrameCodec.isFrame(ByteBuffer.wrap(" \n{}".getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    @DisplayName("Should reject truncated, oversized and unknown frames")
+    void testMalformed() {
+        byte[] frame = new SensorFrameCodec.Builder("esp-1", 7, 0)
+                .add(SensorType.BLOOD_PRESSURE, 120, 80)
+                .build();
+
+        for (int length = 1; length < frame.length; length++) {
+            byte[] truncated = Arrays.copyOf(frame, length);
+            assertThrows(IllegalArgumentException.class, () -> SensorFrameCodec.decode(ByteBuffer.wrap(truncated),
+                    new FrameSink()), "length " + length);
+        }
+        byte[] trailing = Arrays.copyOf(frame, frame.length + 1);
+        assertThrows(IllegalArgumentException.class, () -> SensorFrameCodec.decode(ByteBuffer.wrap(trailing),
+                new FrameSink()));
+
+        byte[] unknownVersion = frame.clone();
+        unknownVersion[0] = 9;
+        assertThrows(IllegalArgumentException.class, () -> SensorFrameCodec.decode(ByteBuffer.wrap(unknownVersion),
+                new FrameSink()));
+
+        byte[] unknownType = frame.clone();
+        unknownType[2 + 5 + 13] = 42;
+        FrameSink sink = new FrameSink();
+        assertThrows(IllegalArgumentException.class, () -> SensorFrameCodec.decode(ByteBuffer.wrap(unknownType), sink));
+        assertNull(sink.deviceId, "nothing is reported from an invalid frame");
+
+        assertThrows(IllegalArgumentException.class, () -> new SensorFrameCodec.Builder("x", 0, 0)
+                .add(SensorType.GPS_LOCATION, 1));
+    }
+
+    @Test
+    @DisplayName("Should route binary frames through parallel topics")
+    void testBinaryTopics() {
+        assertEquals(List.of("sensors/health/bin", "sensors/+/health/bin"),
+                SensorTopics.binarySubscriptionFilters(null));
+        assertEquals(List.of("$share/g1/sensors/health/bin", "$share/g1/sensors/+/health/bin"),
+                SensorTopics.binarySubscriptionFilters("g1"));
+        assertEquals("sensors/esp-7/health/bin", SensorTopics.deviceBinaryTopic("esp-7"));
+        assertEquals("esp-7", SensorTopics.deviceId("sensors/esp-7/health/bin"));
+        assertNull(SensorTopics.deviceId("sensors/health/bin"));
+    }
+}
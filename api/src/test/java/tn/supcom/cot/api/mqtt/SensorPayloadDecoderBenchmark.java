@@ -0,0 +1,110 @@
+package tn.supcom.cot.api.mqtt;
+
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import tn.supcom.cot.api.entities.SensorType;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming payload decoder with the former String + jakarta.json path.
+ *
+ * Run from the api module after test-compile:
+ * <pre>
+ *   mvn -q test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=tn.supcom.cot.api.mqtt.SensorPayloadDecoderBenchmark
+ * </pre>
+ * Throughput is reported in messages/s; gc.alloc.rate.norm is the allocation per message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SensorPayloadDecoderBenchmark {
+
+    @Param({"firmware", "full"})
+    public String payloadKind;
+
+    private byte[] bytes;
+    private ByteBuffer buffer;
+    private final SensorPayloadDecoder decoder = new SensorPayloadDecoder();
+    private BlackholeSink sink;
+
+    /**
+     * Sink that only consumes the values, like a parser thread before record creation.
+     */
+    static final class BlackholeSink implements SensorPayloadDecoder.Sink {
+        private final Blackhole blackhole;
+
+        BlackholeSink(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void reading(SensorType type, double value, double secondaryValue) {
+            blackhole.consume(type);
+            blackhole.consume(value);
+            blackhole.consume(secondaryValue);
+        }
+    }
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        String json = payloadKind.equals("firmware")
+                ? "{\"bpm\":72,\"temperature\":36.62}"
+                : "{\"deviceId\":\"esp-0042\",\"bpm\":72,\"spo2\":97,\"temperature\":36.62,"
+                + "\"systolic\":121,\"diastolic\":79,\"fall\":false,\"lat\":36.8065,\"lng\":10.1815}";
+        bytes = json.getBytes(StandardCharsets.UTF_8);
+        buffer = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+        sink = new BlackholeSink(blackhole);
+    }
+
+    @Benchmark
+    public int streaming() {
+        return decoder.decode(buffer, sink);
+    }
+
+    @Benchmark
+    public void stringAndJsonTree(Blackhole blackhole) {
+        String message = new String(bytes, StandardCharsets.UTF_8);
+        JsonObject json;
+        try (JsonReader reader = Json.createReader(new StringReader(message))) {
+            json = reader.readObject();
+        }
+        if (json.containsKey("temperature")) {
+            blackhole.consume(json.getJsonNumber("temperature").doubleValue());
+        }
+        if (json.containsKey("bpm")) {
+            blackhole.consume(json.getJsonNumber("bpm").intValue());
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SensorPayloadDecoderBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
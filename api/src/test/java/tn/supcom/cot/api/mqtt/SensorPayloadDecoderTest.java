@@ -0,0 +1,175 @@
+package tn.supcom.cot.api.mqtt;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import tn.supcom.cot.api.entities.SensorType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SensorPayloadDecoder Tests")
+class SensorPayloadDecoderTest {
+
+    private final SensorPayloadDecoder decoder = new SensorPayloadDecoder();
+
+    record Reading(SensorType type, double value, double secondaryValue) {
+    }
+
+    static class CollectingSink implements SensorPayloadDecoder.Sink {
+        final List<Reading> readings = new ArrayList<>();
+        final List<Long> readingTimes = new ArrayList<>();
+        String deviceId;
+        long sequence = -2;
+        long sampleTime;
+
+        @Override
+        public void reading(SensorType type, double value, double secondaryValue) {
+            assertNotNull(type);
+            readings.add(new Reading(type, value, secondaryValue));
+            readingTimes.add(sampleTime);
+        }
+
+        @Override
+        public void frame(long sequence, long timestampMillis) {
+            assertTrue(readings.isEmpty(), "frame header must be reported before readings");
+            this.sequence = sequence;
+            this.sampleTime = timestampMillis;
+        }
+
+        @Override
+        public void sampleTime(long timestampMillis) {
+            this.sampleTime = timestampMillis;
+        }
+
+        @Override
+        public void deviceId(ByteBuffer payload, int offset, int length) {
+            assertTrue(readings.isEmpty(), "deviceId must be reported before readings");
+            byte[] id = new byte[length];
+            payload.get(offset, id);
+            deviceId = new String(id, StandardCharsets.UTF_8);
+        }
+    }
+
+    private CollectingSink decode(String json) {
+        CollectingSink sink = new CollectingSink();
+        ByteBuffer payload = ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+        int count = decoder.decode(payload, sink);
+        assertEquals(sink.readings.size(), count);
+        assertEquals(0, payload.position(), "buffer position must not move");
+        return sink;
+    }
+
+    @Test
+    @DisplayName("Should decode the ESP8266 firmware payload")
+    void testFirmwarePayload() {
+        CollectingSink sink = decode("{\"bpm\":72,\"temperature\":36.6}");
+
+        assertEquals(List.of(new Reading(SensorType.HEART_RATE, 72, Double.NaN),
+                new Reading(SensorType.TEMPERATURE, 36.6, Double.NaN)), sink.readings);
+        assertNull(sink.deviceId);
+    }
+
+    @Test
+    @DisplayName("Should decode every sensor type")
+    void testAllSensorTypes() {
+        CollectingSink sink = decode("""
+                {
+                  "deviceId": "esp-42",
+                  "heartRate": 80.5,
+                  "spo2": 97,
+                  "temperature": -1.25e1,
+                  "systolic": 120, "diastolic": 80,
+                  "fall": true,
+                  "lat": 36.8065, "lng": 10.1815
+                }
+                """);
+
+        assertEquals("esp-42", sink.deviceId);
+        assertEquals(List.of(
+                new Reading(SensorType.HEART_RATE, 80.5, Double.NaN),
+                new Reading(SensorType.SPO2, 97, Double.NaN),
+                new Reading(SensorType.TEMPERATURE, -12.5, Double.NaN),
+                new Reading(SensorType.BLOOD_PRESSURE, 120, 80),
+                new Reading(SensorType.FALL_DETECTION, 1, Double.NaN),
+                new Reading(SensorType.GPS_LOCATION, 36.8065, 10.1815)), sink.readings);
+    }
+
+    @Test
+    @DisplayName("Should expand a multi-sample payload in order")
+    void testMultiSamplePayload() {
+        CollectingSink sink = decode("""
+                {"samples":[
+                   {"ts":1760000000000,"bpm":72,"temperature":36.6},
+                   {"bpm":74},
+                   {"ts":1760000004000,"systolic":120,"diastolic":80,"note":{"ts":1}},
+                   {}
+                 ],
+                 "spo2":98, "ts":1759999990000, "seq":42, "deviceId":"esp-9"}
+                """);
+
+        assertEquals("esp-9", sink.deviceId);
+        assertEquals(42, sink.sequence);
+        assertEquals(List.of(
+                new Reading(SensorType.SPO2, 98, Double.NaN),
+                new Reading(SensorType.HEART_RATE, 72, Double.NaN),
+                new Reading(SensorType.TEMPERATURE, 36.6, Double.NaN),
+                new Reading(SensorType.HEART_RATE, 74, Double.NaN),
+                new Reading(SensorType.BLOOD_PRESSURE, 120, 80)), sink.readings);
+        // Samples without their own ts inherit the payload's
+        assertEquals(List.of(1759999990000L, 1760000000000L, 1760000000000L, 1759999990000L, 1760000004000L),
+                sink.readingTimes);
+
+        assertEquals(-2, decode("{\"bpm\":1}").sequence, "no frame header without seq or ts");
+        assertEquals(0, decode("{\"samples\":[]}").readings.size());
+        assertThrows(IllegalArgumentException.class, () -> decode("{\"samples\":[1]}"));
+        assertThrows(IllegalArgumentException.class, () -> decode("{\"samples\":[{\"bpm\":1},]}"));
+    }
+
+    @Test
+    @DisplayName("Should skip unknown fields, nulls and incomplete pairs")
+    void testSkipsUnknownFields() {
+        CollectingSink sink = decode("{\"fw\":\"1.2 \\\"beta\\\"\",\"meta\":{\"rssi\":[-70,{\"a\":null}]},"
+                + "\"bpm\":null,\"systolic\":118,\"fall\":0,\"ok\":false,\"temperature\":37}");
+
+        assertEquals(List.of(new Reading(SensorType.TEMPERATURE, 37, Double.NaN),
+                new Reading(SensorType.FALL_DETECTION, 0, Double.NaN)), sink.readings);
+    }
+
+    @Test
+    @DisplayName("Should parse numbers exactly like Double.parseDouble")
+    void testNumberParsing() {
+        String[] numbers = {"0", "-0.5", "36.6", "0.1", "98.60000000000001", "1E-3", "12345678901234567890",
+                "4.9e-324", "1.7976931348623157e308", "0.000000000000000000000000123"};
+        for (String number : numbers) {
+            CollectingSink sink = decode("{\"temperature\":" + number + "}");
+            assertEquals(Double.parseDouble(number), sink.readings.get(0).value(), number);
+        }
+    }
+
+    @Test
+    @DisplayName("Should decode only the readable part of the buffer")
+    void testBufferSlice() {
+        byte[] framed = "xx{\"bpm\":61}yy".getBytes(StandardCharsets.UTF_8);
+        CollectingSink sink = new CollectingSink();
+
+        decoder.decode(ByteBuffer.wrap(framed, 2, framed.length - 4), sink);
+
+        assertEquals(61, sink.readings.get(0).value());
+    }
+
+    @Test
+    @DisplayName("Should reject malformed payloads")
+    void testMalformed() {
+        String[] payloads = {"", "[]", "{", "{\"bpm\":}", "{\"bpm\":72,}", "{\"bpm\":7a}", "{\"bpm\":72} x",
+                "{\"temperature\":\"36\"}", "{\"fw\":\"unterminated}", "{\"bpm\" 72}", "{\"fall\":tru}"};
+        for (String payload : payloads) {
+            assertThrows(IllegalArgumentException.class, () -> decode(payload), payload);
+        }
+        // A failed payload leaves no state behind
+        assertEquals(1, decode("{\"spo2\":99}").readings.size());
+    }
+}
@@ -0,0 +1,203 @@
+package tn.supcom.cot.api.mqtt;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import tn.supcom.cot.api.entities.HealthRecord;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs several API "nodes" (topic layout + ingestion pipeline) behind an
+ * in-memory broker stand-in that implements MQTT 5 topic matching and
+ * shared subscription dispatch.
+ */
+@DisplayName("Shared Subscription Integration Tests")
+class SharedSubscriptionIntegrationTest {
+
+    private static final int DEVICES = 20;
+    private static final int READINGS_PER_DEVICE = 50;
+
+    private final List<ApiNode> nodes = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        nodes.forEach(node -> node.pipeline.stop());
+    }
+
+    /**
+     * Minimal broker: plain subscriptions receive every matching message, members of a
+     * "$share/{group}/..." subscription receive them round-robin, one member per message.
+     */
+    static class BrokerStandIn {
+        private final Map<String, List<BiConsumer<String, byte[]>>> plain = new LinkedHashMap<>();
+        private final Map<String, List<BiConsumer<String, byte[]>>> shared = new LinkedHashMap<>();
+        private final Map<String, Integer> nextMember = new HashMap<>();
+
+        synchronized void subscribe(String filter, BiConsumer<String, byte[]> subscriber) {
+            if (filter.startsWith("$share/")) {
+                shared.computeIfAbsent(filter, key -> new ArrayList<>()).add(subscriber);
+            } else {
+                plain.computeIfAbsent(filter, key -> new ArrayList<>()).add(subscriber);
+            }
+        }
+
+        synchronized void publish(String topic, byte[] payload) {
+            plain.forEach((filter, subscribers) -> {
+                if (matches(filter, topic)) {
+                    subscribers.forEach(subscriber -> subscriber.accept(topic, payload));
+                }
+            });
+            shared.forEach((key, members) -> {
+                String filter = key.substring(key.indexOf('/', "$share/".length()) + 1);
+                if (matches(filter, topic)) {
+                    int member = nextMember.merge(key, 1, Integer::sum) % members.size();
+                    members.get(member).accept(topic, payload);
+                }
+            });
+        }
+
+        static boolean matches(String filter, String topic) {
+            String[] filterLevels = filter.split("/", -1);
+            String[] topicLevels = topic.split("/", -1);
+            for (int i = 0; i < filterLevels.length; i++) {
+                if (filterLevels[i].equals("#")) {
+                    return true;
+                }
+                if (i >= topicLevels.length) {
+                    return false;
+                }
+                if (!filterLevels[i].equals("+") && !filterLevels[i].equals(topicLevels[i])) {
+                    return false;
+                }
+            }
+            return filterLevels.length == topicLevels.length;
+        }
+    }
+
+    /**
+     * One API instance: subscribes like MQTTService and stores into memory.
+     */
+    static class ApiNode {
+        final List<HealthRecord> stored = new CopyOnWriteArrayList<>();
+        final IngestionPipeline pipeline;
+
+        ApiNode(BrokerStandIn broker, String sharedGroup) {
+            pipeline = new IngestionPipeline(1024, 1024, 4, 16, 5, ApiNode::decode, stored::addAll);
+            pipeline.start(Thread::new);
+            for (String filter : SensorTopics.subscriptionFilters(sharedGroup)) {
+                broker.subscribe(filter, (topic, payload) ->
+                        assertTrue(pipeline.submit(SensorTopics.deviceId(topic), ByteBuffer.wrap(payload), () -> { })));
+            }
+        }
+
+        private static List<HealthRecord> decode(String deviceId, ByteBuffer payload) {
+            HealthRecord record = new HealthRecord(null, "HEART_RATE",
+                    Double.parseDouble(StandardCharsets.UTF_8.decode(payload).toString()), "bpm");
+            record.setSensorId(deviceId);
+            return List.of(record);
+        }
+    }
+
+    private void startNodes(int count, String sharedGroup, BrokerStandIn broker) {
+        for (int i = 0; i < count; i++) {
+            nodes.add(new ApiNode(broker, sharedGroup));
+        }
+    }
+
+    private static void publishReadings(BrokerStandIn broker) {
+        for (int seq = 0; seq < READINGS_PER_DEVICE; seq++) {
+            for (int device = 0; device < DEVICES; device++) {
+                broker.publish(SensorTopics.deviceTopic("esp-" + device),
+                        String.valueOf(seq).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private void stopNodes() {
+        nodes.forEach(node -> node.pipeline.stop());
+    }
+
+    @Test
+    @DisplayName("Should store every reading exactly once across nodes of a shared group")
+    void testSharedGroupSplitsReadings() {
+        BrokerStandIn broker = new BrokerStandIn();
+        startNodes(3, "cot-api", broker);
+
+        publishReadings(broker);
+        stopNodes();
+
+        Set<String> unique = new HashSet<>();
+        int total = 0;
+        for (ApiNode node : nodes) {
+            assertFalse(node.stored.isEmpty(), "every node should take a share of the load");
+            for (HealthRecord record : node.stored) {
+                assertTrue(unique.add(record.getSensorId() + ":" + record.getValue()), "duplicate reading");
+                total++;
+            }
+        }
+        assertEquals(DEVICES * READINGS_PER_DEVICE, total);
+    }
+
+    @Test
+    @DisplayName("Should keep per-device order within each node")
+    void testPerDeviceOrdering() {
+        BrokerStandIn broker = new BrokerStandIn();
+        startNodes(2, "cot-api", broker);
+
+        publishReadings(broker);
+        stopNodes();
+
+        for (ApiNode node : nodes) {
+            Map<String, Double> last = new HashMap<>();
+            for (HealthRecord record : node.stored) {
+                Double previous = last.put(record.getSensorId(), record.getValue());
+                if (previous != null) {
+                    assertTrue(record.getValue() > previous,
+                            "out of order reading for " + record.getSensorId());
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Should duplicate readings on every node without a shared group")
+    void testWithoutSharedGroup() {
+        BrokerStandIn broker = new BrokerStandIn();
+        startNodes(2, null, broker);
+
+        publishReadings(broker);
+        stopNodes();
+
+        for (ApiNode node : nodes) {
+            assertEquals(DEVICES * READINGS_PER_DEVICE, node.stored.size());
+        }
+    }
+
+    @Test
+    @DisplayName("Should build shared filters and extract device ids from topics")
+    void testTopicLayout() {
+        assertEquals(List.of("$share/g1/sensors/health", "$share/g1/sensors/+/health"),
+                SensorTopics.subscriptionFilters("g1"));
+        assertEquals(List.of("sensors/health", "sensors/+/health"), SensorTopics.subscriptionFilters(" "));
+        assertThrows(IllegalArgumentException.class, () -> SensorTopics.subscriptionFilters("a/b"));
+
+        assertEquals("esp-7", SensorTopics.deviceId("sensors/esp-7/health"));
+        assertNull(SensorTopics.deviceId("sensors/health"));
+        assertNull(SensorTopics.deviceId("sensors/a/b/health"));
+        assertTrue(BrokerStandIn.matches("sensors/+/health", "sensors/esp-7/health"));
+        assertFalse(BrokerStandIn.matches("sensors/+/health", "sensors/health"));
+    }
+}
@@ -0,0 +1,81 @@
+package tn.supcom.cot.api.repositories;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("GorillaCodec Tests")
+class GorillaCodecTest {
+
+    private static final long T0 = 1_740_823_200_000L;
+
+    private static void assertRoundTrip(long[] times, double[] values) {
+        GorillaCodec.Encoder encoder = new GorillaCodec.Encoder();
+        for (int i = 0; i < times.length; i++) {
+            encoder.add(times[i], values[i]);
+        }
+        GorillaCodec.Decoder decoder = new GorillaCodec.Decoder(encoder.toByteArray(), encoder.count());
+        for (int i = 0; i < times.length; i++) {
+            assertTrue(decoder.next());
+            assertEquals(times[i], decoder.timestamp(), "timestamp " + i);
+            assertEquals(Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(decoder.value()),
+                    "value " + i);
+        }
+        assertFalse(decoder.next());
+    }
+
+    @Test
+    @DisplayName("Should store a steady heart rate series in about two bytes per reading")
+    void testSteadySeries() {
+        int count = 43_200;
+        long[] times = new long[count];
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = T0 + i * 2_000L;
+            values[i] = 70 + (i / 30) % 5;
+        }
+
+        GorillaCodec.Encoder encoder = new GorillaCodec.Encoder();
+        for (int i = 0; i < count; i++) {
+            encoder.add(times[i], values[i]);
+        }
+
+        assertTrue(encoder.toByteArray().length < count * 2, "compressed to " + encoder.toByteArray().length);
+        assertRoundTrip(times, values);
+    }
+
+    @Test
+    @DisplayName("Should restore jittered timestamps and noisy values exactly")
+    void testIrregularSeries() {
+        Random random = new Random(42);
+        int count = 5_000;
+        long[] times = new long[count];
+        double[] values = new double[count];
+        long time = T0;
+        for (int i = 0; i < count; i++) {
+            // Jitter, gaps of hours and readings in the same millisecond
+            time += switch (i % 500) {
+                case 0 -> 3_600_000L * (1 + random.nextInt(48));
+                case 1 -> 0;
+                default -> 2_000 + random.nextInt(200) - 100;
+            };
+            times[i] = time;
+            values[i] = 36.5 + random.nextGaussian();
+        }
+
+        assertRoundTrip(times, values);
+    }
+
+    @Test
+    @DisplayName("Should restore edge values and timestamps")
+    void testEdgeValues() {
+        assertRoundTrip(
+                new long[]{0, 1, Long.MAX_VALUE / 2, Long.MAX_VALUE / 2, -5_000},
+                new double[]{Double.NaN, -0.0, Double.MAX_VALUE, Double.MIN_VALUE, Double.NEGATIVE_INFINITY});
+        assertRoundTrip(new long[]{T0}, new double[]{98.6});
+        assertRoundTrip(new long[0], new double[0]);
+    }
+}
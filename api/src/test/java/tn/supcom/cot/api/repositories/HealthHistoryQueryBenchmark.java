@@ -0,0 +1,145 @@
+package tn.supcom.cot.api.repositories;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Sorts;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import tn.supcom.cot.api.entities.HealthRecord;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the history queries against the size of a patient's history.
+ *
+ * Needs a MongoDB (-Dbenchmark.mongo, default mongodb://localhost:27017).
+ * Records are seeded once per size into the history_benchmark database and
+ * reused by later runs; 10M records take a few GB and several minutes to load.
+ * <pre>
+ *   mvn -q test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=tn.supcom.cot.api.repositories.HealthHistoryQueryBenchmark
+ * </pre>
+ * The queries are those MonitoringResource sends through Jakarta NoSQL. With
+ * the indexes of {@link HealthRecordDocuments#INDEXES} the average time per
+ * page stays flat across sizes; setup fails if a plan still sorts in memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HealthHistoryQueryBenchmark {
+
+    private static final int SEED_BATCH = 10_000;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int recordsPerPatient;
+
+    private MongoClient client;
+    private MongoCollection<Document> collection;
+    private String patientId;
+
+    @Setup
+    public void setUp() {
+        client = MongoClients.create(System.getProperty("benchmark.mongo", "mongodb://localhost:27017"));
+        collection = client.getDatabase("history_benchmark").getCollection(HealthRecordDocuments.COLLECTION);
+        collection.createIndexes(HealthRecordDocuments.INDEXES);
+        patientId = "patient-" + recordsPerPatient;
+
+        long existing = collection.countDocuments(Filters.eq("patientId", patientId));
+        if (existing < recordsPerPatient) {
+            seed(existing);
+        }
+        assertIndexed(Filters.and(Filters.eq("patientId", patientId), Filters.eq("type", "HEART_RATE")));
+        assertIndexed(Filters.eq("patientId", patientId));
+    }
+
+    private void seed(long from) {
+        // One reading per second, cycling through three types
+        LocalDateTime start = LocalDateTime.of(2020, 1, 1, 0, 0);
+        String[] types = {"HEART_RATE", "SPO2", "TEMPERATURE"};
+        List<Document> batch = new ArrayList<>(SEED_BATCH);
+        for (long i = from; i < recordsPerPatient; i++) {
+            HealthRecord record = new HealthRecord(patientId, types[(int) (i % types.length)], 60.0 + i % 40, "bpm");
+            record.setId(patientId + "-" + i);
+            record.setTimestamp(start.plusSeconds(i));
+            batch.add(HealthRecordDocuments.toDocument(record));
+            if (batch.size() == SEED_BATCH) {
+                collection.insertMany(batch, new InsertManyOptions().ordered(false));
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            collection.insertMany(batch, new InsertManyOptions().ordered(false));
+        }
+    }
+
+    private void assertIndexed(Bson filter) {
+        Document plan = collection.find(filter).sort(Sorts.descending("timestamp", "_id")).limit(100).explain();
+        String winningPlan = plan.get("queryPlanner", Document.class).get("winningPlan", Document.class).toJson();
+        if (winningPlan.contains("\"SORT\"") || winningPlan.contains("COLLSCAN")) {
+            throw new IllegalStateException("History query is not served by an index: " + winningPlan);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+    }
+
+    // GET /api/monitor/{patientId}/{type}?limit=100
+    @Benchmark
+    public List<Document> historyFirstPage() {
+        return collection.find(Filters.and(Filters.eq("patientId", patientId), Filters.eq("type", "HEART_RATE")))
+                .sort(Sorts.descending("timestamp"))
+                .limit(100)
+                .into(new ArrayList<>(100));
+    }
+
+    // GET /api/monitor/{patientId}?limit=100&skip=500
+    @Benchmark
+    public List<Document> allTypesSixthPage() {
+        return collection.find(Filters.eq("patientId", patientId))
+                .sort(Sorts.descending("timestamp"))
+                .skip(500)
+                .limit(100)
+                .into(new ArrayList<>(100));
+    }
+
+    // GET /api/monitor/{patientId}/{type}/latest
+    @Benchmark
+    public Document latest() {
+        return collection.find(Filters.and(Filters.eq("patientId", patientId), Filters.eq("type", "HEART_RATE")))
+                .sort(Sorts.descending("timestamp"))
+                .limit(1)
+                .first();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(HealthHistoryQueryBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
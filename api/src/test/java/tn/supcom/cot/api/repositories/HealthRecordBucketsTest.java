@@ -0,0 +1,175 @@
+package tn.supcom.cot.api.repositories;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import tn.supcom.cot.api.entities.HealthRecord;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@DisplayName("HealthRecordBuckets Tests")
+class HealthRecordBucketsTest {
+
+    private static final LocalDateTime HOUR = LocalDateTime.of(2025, 3, 1, 10, 0);
+
+    private HealthRecordBuckets buckets;
+    private MongoCollection<Document> collection;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        collection = mock(MongoCollection.class);
+        buckets = new HealthRecordBuckets();
+        buckets.mongo = mock(MongoConnection.class);
+        buckets.layout = "bucket";
+        buckets.init();
+        when(buckets.mongo.collection(HealthRecordBuckets.COLLECTION)).thenReturn(collection);
+    }
+
+    // Heart rate bucket with readings at the given second offsets, value 60 + offset
+    private static Document bucket(LocalDateTime start, int... seconds) {
+        long startMillis = start.toInstant(ZoneOffset.UTC).toEpochMilli();
+        List<Integer> offsets = new ArrayList<>();
+        List<Double> values = new ArrayList<>();
+        for (int second : seconds) {
+            offsets.add(second * 1000);
+            values.add(60.0 + second);
+        }
+        return new Document("_id", HealthRecordBuckets.bucketId("p1", "HEART_RATE", startMillis))
+                .append("patientId", "p1")
+                .append("type", "HEART_RATE")
+                .append("start", new Date(startMillis))
+                .append("unit", "bpm")
+                .append("t", offsets)
+                .append("v", values);
+    }
+
+    @SuppressWarnings("unchecked")
+    private FindIterable<Document> found(Document... documents) {
+        FindIterable<Document> found = mock(FindIterable.class);
+        MongoCursor<Document> cursor = mock(MongoCursor.class);
+        Iterator<Document> iterator = List.of(documents).iterator();
+        when(cursor.hasNext()).thenAnswer(invocation -> iterator.hasNext());
+        when(cursor.next()).thenAnswer(invocation -> iterator.next());
+        when(found.sort(any())).thenReturn(found);
+        when(found.limit(anyInt())).thenReturn(found);
+        when(found.iterator()).thenReturn(cursor);
+        when(found.first()).thenReturn(documents.length == 0 ? null : documents[0]);
+        when(collection.find(any(Bson.class))).thenReturn(found);
+        return found;
+    }
+
+    private static HealthRecord reading(LocalDateTime timestamp, double value) {
+        HealthRecord record = new HealthRecord("p1", "HEART_RATE", value, "bpm");
+        record.setTimestamp(timestamp);
+        return record;
+    }
+
+    @Test
+    @DisplayName("Should unpack parallel arrays into readings")
+    void testUnpack() {
+        List<HealthRecord> readings = new ArrayList<>();
+
+        HealthRecordBuckets.unpack(bucket(HOUR, 0, 2), readings);
+
+        assertEquals(2, readings.size());
+        assertEquals(HOUR.plusSeconds(2), readings.get(1).getTimestamp());
+        assertEquals(62.0, readings.get(1).getValue());
+        assertEquals("bpm", readings.get(1).getUnit());
+        assertNotEquals(readings.get(0).getId(), readings.get(1).getId());
+    }
+
+    @Test
+    @DisplayName("Should return the newest reading of the newest bucket, whatever the arrival order")
+    void testLatest() {
+        found(bucket(HOUR, 4, 10, 6));
+
+        assertEquals(HOUR.plusSeconds(10), buckets.latest("p1", "HEART_RATE").orElseThrow().getTimestamp());
+    }
+
+    @Test
+    @DisplayName("Should page newest first and stop once older buckets cannot contribute")
+    void testNewest() {
+        Document newest = bucket(HOUR.plusHours(1), 0, 2, 4);
+        Document older = bucket(HOUR, 3596, 3598);
+        Document oldest = spy(bucket(HOUR.minusHours(1), 0));
+        found(newest, older, oldest);
+
+        List<HealthRecord> page = buckets.newest("p1", "HEART_RATE", null, null, 4);
+
+        assertEquals(List.of(HOUR.plusHours(1).plusSeconds(4), HOUR.plusHours(1).plusSeconds(2),
+                        HOUR.plusHours(1), HOUR.plusSeconds(3598)),
+                page.stream().map(HealthRecord::getTimestamp).toList());
+        // Stopped before unpacking the oldest bucket
+        verify(oldest, never()).getList(any(), any());
+    }
+
+    @Test
+    @DisplayName("Should resume strictly after a cursor")
+    void testNewestAfterCursor() {
+        found(bucket(HOUR, 0, 2, 4));
+        List<HealthRecord> all = buckets.newest("p1", "HEART_RATE", null, null, 10);
+        HealthRecord last = all.get(0);
+
+        found(bucket(HOUR, 0, 2, 4));
+        List<HealthRecord> next = buckets.newest("p1", "HEART_RATE", last.getTimestamp(), last.getId(), 10);
+
+        assertEquals(List.of(HOUR.plusSeconds(2), HOUR), next.stream().map(HealthRecord::getTimestamp).toList());
+    }
+
+    @Test
+    @DisplayName("Should report readings already in their bucket as duplicates")
+    void testInsertDuplicates() {
+        MongoBulkWriteException duplicate = new MongoBulkWriteException(BulkWriteResult.unacknowledged(),
+                List.of(new BulkWriteError(11000, "duplicate key", new BsonDocument(), 1)),
+                null, new ServerAddress(), Set.of());
+        when(collection.bulkWrite(any(), any(BulkWriteOptions.class))).thenThrow(duplicate);
+        when(collection.updateOne(any(Bson.class), any(Bson.class))).thenReturn(UpdateResult.acknowledged(0, 0L, null));
+
+        boolean[] inserted = buckets.insert(List.of(
+                reading(HOUR.plusSeconds(1), 70),
+                reading(HOUR.plusSeconds(1), 70),
+                reading(HOUR.plusSeconds(3), 72)));
+
+        assertArrayEquals(new boolean[]{true, false, true}, inserted);
+    }
+
+    @Test
+    @DisplayName("Should aggregate unpacked samples as the pipeline does")
+    void testAggregate() {
+        long start = HOUR.toInstant(ZoneOffset.UTC).toEpochMilli();
+        HealthRecordSeries.Samples samples = new HealthRecordSeries.Samples(
+                new long[]{start, start + 20_000, start + 70_000},
+                new double[]{70, 80, 90});
+
+        List<HealthRecordSeries.Bucket> aggregated =
+                HealthRecordSeries.aggregate(samples, Duration.ofMinutes(1).toMillis());
+
+        assertEquals(2, aggregated.size());
+        assertEquals(new HealthRecordSeries.Bucket(HOUR, 70, 75, 80, 2, 80), aggregated.get(0));
+        assertEquals(new HealthRecordSeries.Bucket(HOUR.plusMinutes(1), 90, 90, 90, 1, 90), aggregated.get(1));
+    }
+}
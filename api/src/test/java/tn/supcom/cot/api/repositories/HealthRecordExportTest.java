@@ -0,0 +1,110 @@
+package tn.supcom.cot.api.repositories;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.Binary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import tn.supcom.cot.api.entities.HealthRecord;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+@DisplayName("HealthRecordExport Tests")
+class HealthRecordExportTest {
+
+    private static final LocalDateTime DAY = LocalDateTime.of(2025, 3, 1, 0, 0);
+
+    private HealthRecordExport export;
+
+    @BeforeEach
+    void setUp() {
+        export = new HealthRecordExport();
+        export.mongo = mock(MongoConnection.class);
+        export.storage = mock(HealthRecordBuckets.class);
+        export.archive = mock(ReadingArchive.class);
+        when(export.storage.isEnabled()).thenReturn(true);
+        when(export.archive.isEnabled()).thenReturn(true);
+    }
+
+    private static long millis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void found(String collection, Document... documents) {
+        MongoCollection<Document> documentsCollection = mock(MongoCollection.class);
+        FindIterable<Document> found = mock(FindIterable.class);
+        MongoCursor<Document> cursor = mock(MongoCursor.class);
+        Iterator<Document> iterator = List.of(documents).iterator();
+        when(cursor.hasNext()).thenAnswer(invocation -> iterator.hasNext());
+        when(cursor.next()).thenAnswer(invocation -> iterator.next());
+        when(found.sort(any())).thenReturn(found);
+        when(found.batchSize(anyInt())).thenReturn(found);
+        when(found.iterator()).thenReturn(cursor);
+        when(documentsCollection.find(any(Bson.class))).thenReturn(found);
+        when(export.mongo.collection(collection)).thenReturn(documentsCollection);
+    }
+
+    // Archived heart rate day with readings at the given seconds, value 60 + second
+    private static Document block(int... seconds) {
+        GorillaCodec.Encoder data = new GorillaCodec.Encoder();
+        for (int second : seconds) {
+            data.add(millis(DAY) + second * 1000L, 60 + second);
+        }
+        return new Document("_id", ReadingArchive.blockId("p1", "HEART_RATE", millis(DAY)))
+                .append("patientId", "p1")
+                .append("type", "HEART_RATE")
+                .append("start", new Date(millis(DAY)))
+                .append("unit", "bpm")
+                .append("count", data.count())
+                .append("data", new Binary(data.toByteArray()));
+    }
+
+    // Hourly heart rate bucket with readings at the given second offsets, in arrival order
+    private static Document bucket(LocalDateTime start, int... seconds) {
+        List<Integer> offsets = new ArrayList<>();
+        List<Double> values = new ArrayList<>();
+        for (int second : seconds) {
+            offsets.add(second * 1000);
+            values.add(60.0 + second);
+        }
+        return new Document("_id", HealthRecordBuckets.bucketId("p1", "HEART_RATE", millis(start)))
+                .append("patientId", "p1")
+                .append("type", "HEART_RATE")
+                .append("start", new Date(millis(start)))
+                .append("unit", "bpm")
+                .append("t", offsets)
+                .append("v", values);
+    }
+
+    @Test
+    @DisplayName("Should export archived then stored readings oldest first, within the range")
+    void testExport() throws Exception {
+        found(ReadingArchive.COLLECTION, block(0, 10, 20));
+        LocalDateTime hour = DAY.plusDays(1);
+        found(HealthRecordBuckets.COLLECTION, bucket(hour, 30, 5, 3600 - 1));
+
+        List<HealthRecord> exported = new ArrayList<>();
+        long count = export.export("p1", "HEART_RATE", DAY.plusSeconds(10), hour.plusMinutes(30), exported::add);
+
+        assertEquals(4, count);
+        assertEquals(List.of(DAY.plusSeconds(10), DAY.plusSeconds(20), hour.plusSeconds(5), hour.plusSeconds(30)),
+                exported.stream().map(HealthRecord::getTimestamp).toList());
+        assertEquals(65.0, exported.get(2).getValue());
+        assertEquals("bpm", exported.get(0).getUnit());
+    }
+}
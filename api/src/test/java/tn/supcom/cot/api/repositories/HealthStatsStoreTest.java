@@ -0,0 +1,183 @@
+package tn.supcom.cot.api.repositories;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import tn.supcom.cot.api.entities.HealthRecord;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@DisplayName("HealthStatsStore Tests")
+class HealthStatsStoreTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 3, 1, 10, 15);
+
+    private HealthStatsStore store;
+    private MongoCollection<Document> collection;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        collection = mock(MongoCollection.class);
+        store = new HealthStatsStore();
+        store.mongo = mock(MongoConnection.class);
+        when(store.mongo.collection(HealthStatsStore.COLLECTION)).thenReturn(collection);
+    }
+
+    private static HealthStatsStore.Reading reading(double value, LocalDateTime timestamp) {
+        HealthRecord record = new HealthRecord("patient-1", "HEART_RATE", value, "bpm");
+        record.setTimestamp(timestamp);
+        return HealthStatsStore.Reading.of(record);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<WriteModel<Document>> written() {
+        ArgumentCaptor<List<WriteModel<Document>>> updates = ArgumentCaptor.forClass(List.class);
+        verify(collection).bulkWrite(updates.capture(), any(BulkWriteOptions.class));
+        return updates.getValue();
+    }
+
+    private static String granularity(WriteModel<Document> update) {
+        Bson filter = ((UpdateOneModel<Document>) update).getFilter();
+        return filter.toBsonDocument().getDocument("_id").getString("granularity").getValue();
+    }
+
+    @Test
+    @DisplayName("Should merge a batch into its minute, hour, day and all-time documents")
+    void testMergesBatch() {
+        store.add(List.of(
+                reading(70, T0),
+                reading(80, T0.plusMinutes(10)),
+                reading(90, T0.plusHours(1))));
+
+        List<WriteModel<Document>> updates = written();
+
+        // Three minutes, two hours, one day, one total
+        assertEquals(7, updates.size());
+        assertEquals(3, updates.stream().filter(update -> granularity(update).equals("minute")).count());
+        assertEquals(2, updates.stream().filter(update -> granularity(update).equals("hour")).count());
+        assertEquals(1, updates.stream().filter(update -> granularity(update).equals("day")).count());
+    }
+
+    @Test
+    @DisplayName("Should skip readings without a value and write nothing for an empty batch")
+    void testSkipsIncomplete() {
+        HealthRecord record = new HealthRecord("patient-1", "HEART_RATE", null, "bpm");
+
+        store.add(Arrays.asList(HealthStatsStore.Reading.of(record), null));
+
+        verify(collection, never()).bulkWrite(any(), any(BulkWriteOptions.class));
+    }
+
+    @Test
+    @DisplayName("Should not fail the caller when statistics cannot be written")
+    void testFailureIsLogged() {
+        when(collection.bulkWrite(any(), any(BulkWriteOptions.class))).thenThrow(new IllegalStateException("down"));
+
+        assertDoesNotThrow(() -> store.add(List.of(reading(70, T0))));
+    }
+
+    @Test
+    @DisplayName("Should combine bucket documents into one summary")
+    @SuppressWarnings("unchecked")
+    void testSummary() {
+        FindIterable<Document> found = mock(FindIterable.class);
+        MongoCursor<Document> cursor = mock(MongoCursor.class);
+        Iterator<Document> documents = List.of(
+                new Document("count", 2).append("sum", 150.0).append("min", 70.0).append("max", 80.0).append("unit", "bpm"),
+                new Document("count", 1L).append("sum", 90.0).append("min", 90.0).append("max", 90.0).append("unit", "bpm"))
+                .iterator();
+        when(cursor.hasNext()).thenAnswer(invocation -> documents.hasNext());
+        when(cursor.next()).thenAnswer(invocation -> documents.next());
+        when(found.iterator()).thenReturn(cursor);
+        when(collection.find(any(Bson.class))).thenReturn(found);
+
+        Optional<HealthStatsStore.Summary> summary = store.summary("patient-1", "HEART_RATE",
+                HealthStatsStore.Window.LAST_24_HOURS, T0.toInstant(ZoneOffset.UTC).toEpochMilli());
+
+        assertTrue(summary.isPresent());
+        assertEquals(3, summary.get().count());
+        assertEquals(80.0, summary.get().average(), 1e-9);
+        assertEquals(70.0, summary.get().min());
+        assertEquals(90.0, summary.get().max());
+        assertEquals("bpm", summary.get().unit());
+    }
+
+    @Test
+    @DisplayName("Should combine minute rollups into chart buckets, keeping the latest value")
+    @SuppressWarnings("unchecked")
+    void testRollups() {
+        long t0 = T0.toInstant(ZoneOffset.UTC).toEpochMilli();
+        FindIterable<Document> found = mock(FindIterable.class);
+        MongoCursor<Document> cursor = mock(MongoCursor.class);
+        Iterator<Document> documents = List.of(
+                rollup(t0, 2, 150.0, 70.0, 80.0, t0 + 50_000, 80.0),
+                rollup(t0 + 60_000, 1, 60.0, 60.0, 60.0, t0 + 61_000, 60.0),
+                rollup(t0 + 300_000, 1, 90.0, 90.0, 90.0, t0 + 300_000, 90.0))
+                .iterator();
+        when(cursor.hasNext()).thenAnswer(invocation -> documents.hasNext());
+        when(cursor.next()).thenAnswer(invocation -> documents.next());
+        when(found.sort(any())).thenReturn(found);
+        when(found.iterator()).thenReturn(cursor);
+        when(collection.find(any(Bson.class))).thenReturn(found);
+
+        List<HealthRecordSeries.Bucket> buckets = store.rollups("patient-1", "HEART_RATE", false,
+                t0, t0 + 600_000, 300_000);
+
+        assertEquals(List.of(
+                new HealthRecordSeries.Bucket(T0, 60, 70, 80, 3, 60),
+                new HealthRecordSeries.Bucket(T0.plusMinutes(5), 90, 90, 90, 1, 90)), buckets);
+    }
+
+    private static Document rollup(long bucket, int count, double sum, double min, double max, long lastAt,
+                                   double last) {
+        return new Document("bucket", new Date(bucket))
+                .append("count", count)
+                .append("sum", sum)
+                .append("min", min)
+                .append("max", max)
+                .append("last", new Document("at", new Date(lastAt)).append("value", last));
+    }
+
+    @Test
+    @DisplayName("Should read the same reading from an encoded record")
+    void testReadingFromBson() {
+        HealthRecord record = new HealthRecord("patient-1", "SPO2", 97.0, "%");
+        record.setId("r-1");
+        record.setTimestamp(T0);
+
+        HealthStatsStore.Reading reading = HealthRecordDocuments.toReading(
+                new RawBsonDocument(HealthRecordDocuments.toBson(record)));
+
+        assertEquals(HealthStatsStore.Reading.of(record), reading);
+        assertEquals(new Date(reading.epochMillis()), Date.from(T0.toInstant(ZoneOffset.UTC)));
+    }
+
+    @Test
+    @DisplayName("Should parse window labels")
+    void testWindowParse() {
+        assertEquals(Optional.of(HealthStatsStore.Window.LAST_7_DAYS), HealthStatsStore.Window.parse("7d"));
+        assertEquals(Optional.of(HealthStatsStore.Window.ALL_TIME), HealthStatsStore.Window.parse("all"));
+        assertTrue(HealthStatsStore.Window.parse("1y").isEmpty());
+    }
+}
@@ -0,0 +1,192 @@
+package tn.supcom.cot.api.repositories;
+
+import com.mongodb.client.DistinctIterable;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.ReplaceOptions;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import tn.supcom.cot.api.entities.HealthRecord;
+import tn.supcom.cot.api.metrics.IngestionMetrics;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@DisplayName("ReadingArchive Tests")
+class ReadingArchiveTest {
+
+    private static final LocalDateTime DAY = LocalDateTime.of(2025, 3, 1, 0, 0);
+    private static final long DAY_MILLIS = DAY.toInstant(ZoneOffset.UTC).toEpochMilli();
+
+    private ReadingArchive archive;
+    private MongoCollection<Document> collection;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        collection = mock(MongoCollection.class);
+        archive = new ReadingArchive();
+        archive.mongo = mock(MongoConnection.class);
+        archive.metrics = new IngestionMetrics();
+        when(archive.mongo.collection(ReadingArchive.COLLECTION)).thenReturn(collection);
+    }
+
+    private void found(Document... documents) {
+        FindIterable<Document> found = blocks(documents);
+        when(collection.find(any(Bson.class))).thenReturn(found);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static FindIterable<Document> blocks(Document... documents) {
+        FindIterable<Document> found = mock(FindIterable.class);
+        MongoCursor<Document> cursor = cursor(documents);
+        when(found.sort(any())).thenReturn(found);
+        when(found.iterator()).thenReturn(cursor);
+        when(found.first()).thenReturn(documents.length == 0 ? null : documents[0]);
+        return found;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> MongoCursor<T> cursor(T... values) {
+        MongoCursor<T> cursor = mock(MongoCursor.class);
+        Iterator<T> iterator = List.of(values).iterator();
+        when(cursor.hasNext()).thenAnswer(invocation -> iterator.hasNext());
+        when(cursor.next()).thenAnswer(invocation -> iterator.next());
+        return cursor;
+    }
+
+    // Readings at the given seconds of the day, value 60 + second
+    private static ReadingArchive.Points points(int... seconds) {
+        ReadingArchive.Points points = new ReadingArchive.Points();
+        for (int second : seconds) {
+            points.add(DAY_MILLIS + second * 1000L, 60 + second, Double.NaN);
+        }
+        return points;
+    }
+
+    // Stores readings into the given existing block (or none), returns the block written
+    private Document store(Document existing, ReadingArchive.Points points) {
+        found(existing == null ? new Document[0] : new Document[]{existing});
+        archive.store("p1", "HEART_RATE", "bpm", DAY_MILLIS, points);
+        ArgumentCaptor<Document> written = ArgumentCaptor.forClass(Document.class);
+        verify(collection, atLeastOnce()).replaceOne(any(Bson.class), written.capture(), any(ReplaceOptions.class));
+        return written.getValue();
+    }
+
+    @Test
+    @DisplayName("Should merge readings into an existing block in time order, dropping repeats")
+    void testStoreMerges() {
+        Document block = store(null, points(10, 2, 6));
+        block = store(block, points(4, 6, 12));
+
+        assertEquals(5, block.getInteger("count"));
+        assertEquals(62.0, block.getDouble("min"));
+        assertEquals(72.0, block.getDouble("max"));
+        assertEquals(62.0 + 64 + 66 + 70 + 72, block.getDouble("sum"));
+        assertNull(block.get("secondary"));
+
+        ReadingArchive.Points decoded = ReadingArchive.decode(block);
+        for (int i = 0; i < decoded.size; i++) {
+            assertEquals(DAY_MILLIS + new int[]{2, 4, 6, 10, 12}[i] * 1000L, decoded.times[i]);
+        }
+    }
+
+    @Test
+    @DisplayName("Should keep the secondary values of paired types")
+    void testStoreSecondary() {
+        ReadingArchive.Points pressure = new ReadingArchive.Points();
+        pressure.add(DAY_MILLIS, 120, 80);
+        pressure.add(DAY_MILLIS + 60_000, 125, 82);
+
+        found(store(null, pressure));
+        HealthRecord newest = archive.newest("p1", "BLOOD_PRESSURE", null, null, 1).get(0);
+
+        assertEquals(125.0, newest.getValue());
+        assertEquals(82.0, newest.getSecondaryValue());
+    }
+
+    @Test
+    @DisplayName("Should page archived readings newest first across blocks and resume after a cursor")
+    void testNewest() {
+        Document older = store(null, points(0, 2));
+        ReadingArchive.Points next = new ReadingArchive.Points();
+        next.add(DAY_MILLIS + ReadingArchive.BLOCK_MILLIS, 90, Double.NaN);
+        found();
+        archive.store("p1", "HEART_RATE", "bpm", DAY_MILLIS + ReadingArchive.BLOCK_MILLIS, next);
+        ArgumentCaptor<Document> written = ArgumentCaptor.forClass(Document.class);
+        verify(collection, times(2)).replaceOne(any(Bson.class), written.capture(), any(ReplaceOptions.class));
+        Document newer = written.getValue();
+
+        found(newer, older);
+        List<HealthRecord> page = archive.newest("p1", "HEART_RATE", null, null, 2);
+        assertEquals(List.of(DAY.plusDays(1), DAY.plusSeconds(2)), page.stream().map(HealthRecord::getTimestamp).toList());
+
+        HealthRecord last = page.get(1);
+        found(older);
+        List<HealthRecord> rest = archive.newest("p1", "HEART_RATE", last.getTimestamp(), last.getId(), 10);
+        assertEquals(List.of(DAY), rest.stream().map(HealthRecord::getTimestamp).toList());
+        assertEquals("bpm", rest.get(0).getUnit());
+    }
+
+    @Test
+    @DisplayName("Should page archived readings of every type, merged newest first")
+    @SuppressWarnings("unchecked")
+    void testNewestAllTypes() {
+        Document heartRate = store(null, points(0, 4));
+        ReadingArchive.Points oxygen = new ReadingArchive.Points();
+        oxygen.add(DAY_MILLIS + 2_000, 97, Double.NaN);
+        oxygen.add(DAY_MILLIS + 6_000, 96, Double.NaN);
+        found();
+        archive.store("p1", "SPO2", "%", DAY_MILLIS, oxygen);
+        ArgumentCaptor<Document> written = ArgumentCaptor.forClass(Document.class);
+        verify(collection, times(2)).replaceOne(any(Bson.class), written.capture(), any(ReplaceOptions.class));
+        Document spo2 = written.getValue();
+
+        DistinctIterable<String> types = mock(DistinctIterable.class);
+        MongoCursor<String> first = cursor("HEART_RATE", "SPO2");
+        MongoCursor<String> second = cursor("HEART_RATE", "SPO2");
+        when(types.iterator()).thenReturn(first, second);
+        when(collection.distinct(eq("type"), any(Bson.class), eq(String.class))).thenReturn(types);
+
+        FindIterable<Document> heartRates = blocks(heartRate);
+        FindIterable<Document> oxygens = blocks(spo2);
+        when(collection.find(any(Bson.class))).thenReturn(heartRates, oxygens);
+        List<HealthRecord> page = archive.newest("p1", null, null, null, 3);
+        assertEquals(List.of("SPO2", "HEART_RATE", "SPO2"), page.stream().map(HealthRecord::getType).toList());
+        assertEquals(List.of(DAY.plusSeconds(6), DAY.plusSeconds(4), DAY.plusSeconds(2)),
+                page.stream().map(HealthRecord::getTimestamp).toList());
+
+        HealthRecord last = page.get(2);
+        heartRates = blocks(heartRate);
+        oxygens = blocks(spo2);
+        when(collection.find(any(Bson.class))).thenReturn(heartRates, oxygens);
+        List<HealthRecord> rest = archive.newest("p1", null, last.getTimestamp(), last.getId(), 10);
+        assertEquals(List.of(DAY), rest.stream().map(HealthRecord::getTimestamp).toList());
+    }
+
+    @Test
+    @DisplayName("Should decode only the samples inside the range")
+    void testSamples() {
+        Document block = store(null, points(0, 2, 4, 6));
+
+        found(block);
+        HealthRecordSeries.Samples samples = archive.samples("p1", "HEART_RATE",
+                DAY.plusSeconds(2), DAY.plusSeconds(6), 100);
+        assertArrayEquals(new double[]{62, 64}, samples.values());
+
+        found(block);
+        assertNull(archive.samples("p1", "HEART_RATE", DAY, DAY.plusDays(1), 3));
+    }
+}
@@ -0,0 +1,67 @@
+package tn.supcom.cot.api.repositories;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("RetentionPolicy Tests")
+class RetentionPolicyTest {
+
+    private static final long NOW = LocalDateTime.of(2025, 8, 31, 12, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+
+    private RetentionPolicy policy;
+
+    @BeforeEach
+    void setUp() {
+        policy = new RetentionPolicy();
+        policy.enabled = true;
+        policy.rawDays = 365;
+        policy.minuteRollupMonths = 6;
+        policy.resolvedAlertDays = 180;
+    }
+
+    @Test
+    @DisplayName("Should apply per-type raw retention and ignore malformed entries")
+    void testOverrides() {
+        policy.rawDaysByType = Optional.of("GPS_LOCATION=30, FALL_DETECTION = 90,UNKNOWN=5,SPO2=,HEART_RATE=0");
+        policy.init();
+
+        assertEquals(Map.of("GPS_LOCATION", 30, "FALL_DETECTION", 90), policy.rawDaysOverrides());
+        assertEquals(NOW - TimeUnit.DAYS.toMillis(30), policy.rawHorizon("GPS_LOCATION", NOW));
+        assertEquals(NOW - TimeUnit.DAYS.toMillis(365), policy.rawHorizon("HEART_RATE", NOW));
+        assertEquals(policy.defaultRawHorizon(NOW), policy.rawHorizon("SPO2", NOW));
+    }
+
+    @Test
+    @DisplayName("Should count rollup retention in calendar months")
+    void testMinuteRollupHorizon() {
+        policy.rawDaysByType = Optional.empty();
+        policy.init();
+
+        assertEquals(LocalDateTime.of(2025, 2, 28, 12, 0).toInstant(ZoneOffset.UTC).toEpochMilli(),
+                policy.minuteRollupHorizon(NOW));
+        assertTrue(policy.rawDaysOverrides().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should clip a range start to the raw horizon of its type")
+    void testRawStart() {
+        policy.rawDaysByType = Optional.of("GPS_LOCATION=30");
+        policy.init();
+        LocalDateTime from = LocalDateTime.of(2025, 7, 1, 0, 0);
+
+        assertEquals(LocalDateTime.of(2025, 8, 1, 12, 0), policy.rawStart("GPS_LOCATION", from, NOW));
+        assertEquals(from, policy.rawStart("HEART_RATE", from, NOW));
+
+        policy.enabled = false;
+        assertEquals(from, policy.rawStart("GPS_LOCATION", from, NOW));
+    }
+}
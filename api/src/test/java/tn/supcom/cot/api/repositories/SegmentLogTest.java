@@ -0,0 +1,138 @@
+package tn.supcom.cot.api.repositories;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SegmentLog Tests")
+class SegmentLogTest {
+
+    private static final int SEGMENT_SIZE = 256;
+
+    @TempDir
+    Path directory;
+
+    private static byte[] record(int i) {
+        return ("reading-" + i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> readAll(SegmentLog log) throws IOException {
+        List<String> records = new ArrayList<>();
+        long position = log.checkpoint();
+        while (true) {
+            SegmentLog.Batch batch = log.read(position, 7);
+            if (batch.records().isEmpty() && batch.next() == position) {
+                return records;
+            }
+            batch.records().forEach(record -> records.add(new String(record, StandardCharsets.UTF_8)));
+            position = batch.next();
+        }
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("segment-")).sorted().toList();
+        }
+    }
+
+    @Test
+    @DisplayName("Should read back records in order across rolled segments")
+    void testAppendAndRead() throws IOException {
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_SIZE)) {
+            for (int i = 0; i < 40; i++) {
+                log.append(record(i));
+            }
+            log.force();
+
+            List<String> records = readAll(log);
+
+            assertEquals(40, records.size());
+            assertEquals("reading-0", records.get(0));
+            assertEquals("reading-39", records.get(39));
+            assertTrue(log.segmentCount() > 1);
+            assertThrows(IllegalArgumentException.class, () -> log.append(new byte[SEGMENT_SIZE]));
+        }
+    }
+
+    @Test
+    @DisplayName("Should resume after the checkpoint and delete consumed segments")
+    void testCheckpointAndRecovery() throws IOException {
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_SIZE)) {
+            for (int i = 0; i < 40; i++) {
+                log.append(record(i));
+            }
+            SegmentLog.Batch batch = log.read(log.checkpoint(), 25);
+            int segmentsBefore = log.segmentCount();
+            log.checkpoint(batch.next());
+            assertTrue(log.segmentCount() < segmentsBefore);
+        }
+
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_SIZE)) {
+            List<String> remaining = readAll(log);
+            assertEquals(15, remaining.size());
+            assertEquals("reading-25", remaining.get(0));
+
+            // Appends after recovery continue behind the recovered records
+            log.append(record(40));
+            assertEquals("reading-40", readAll(log).get(15));
+        }
+    }
+
+    @Test
+    @DisplayName("Should drop a torn record at the tail and keep the ones before it")
+    void testTornTail() throws IOException {
+        long end;
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_SIZE)) {
+            log.append(record(1));
+            end = log.append(record(2));
+        }
+
+        // Simulate a crash in the middle of the next append: header written, payload partial
+        Path segment = segmentFiles().get(segmentFiles().size() - 1);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            ByteBuffer torn = ByteBuffer.allocate(12).putInt(40).putInt(12345).putInt(0x41414141).flip();
+            channel.write(torn, end);
+        }
+
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_SIZE)) {
+            assertEquals(List.of("reading-1", "reading-2"), readAll(log));
+            assertEquals(end, log.end());
+
+            log.append(record(3));
+            assertEquals(List.of("reading-1", "reading-2", "reading-3"), readAll(log));
+        }
+    }
+
+    @Test
+    @DisplayName("Should restart at the checkpoint once everything was consumed")
+    void testFullyConsumed() throws IOException {
+        long checkpoint;
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_SIZE)) {
+            for (int i = 0; i < 20; i++) {
+                log.append(record(i));
+            }
+            checkpoint = log.end();
+            log.checkpoint(checkpoint);
+        }
+
+        try (SegmentLog log = SegmentLog.open(directory, SEGMENT_SIZE)) {
+            assertEquals(0, log.backlogBytes());
+            assertTrue(readAll(log).isEmpty());
+            assertTrue(log.append(record(99)) > checkpoint);
+            assertEquals(List.of("reading-99"), readAll(log));
+        }
+    }
+}
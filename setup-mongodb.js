@@ -147,11 +147,59 @@ db.Alert.insertOne({
 db.Identity.createIndex({ "username": 1 }, { unique: true });
 db.Tenant.createIndex({ "name": 1 }, { unique: true });
 db.Patient.createIndex({ "identityId": 1 });
-db.HealthRecord.createIndex({ "patientId": 1, "type": 1 });
+// History and alert listings sort newest first and page in the index, with
+// _id breaking timestamp ties for cursors (also created by the API at startup)
+db.HealthRecord.createIndex({ "patientId": 1, "type": 1, "timestamp": -1, "_id": -1 }, { name: "patientId_type_timestamp_id" });
+db.HealthRecord.createIndex({ "patientId": 1, "timestamp": -1, "_id": -1 }, { name: "patientId_timestamp_id" });
 db.HealthRecord.createIndex({ "timestamp": -1 });
-db.Alert.createIndex({ "patientId": 1 });
+db.Alert.createIndex({ "patientId": 1, "timestamp": -1, "_id": -1 }, { name: "patientId_timestamp_id" });
+db.Alert.createIndex({ "severity": 1, "timestamp": -1, "_id": -1 }, { name: "severity_timestamp_id" });
+db.Alert.createIndex({ "severity": 1, "resolved": 1, "timestamp": -1, "_id": -1 }, { name: "severity_resolved_timestamp_id" });
 db.Alert.createIndex({ "resolved": 1 });
 db.Grant.createIndex({ "tenantId": 1, "identityId": 1 });
+// Bucketed storage layout (storage.layout=bucket): one document per patient, type and hour
+db.HealthRecordBucket.createIndex({ "patientId": 1, "type": 1, "start": -1 }, { name: "patientId_type_start" });
+db.HealthRecordBucket.createIndex({ "patientId": 1, "start": -1 }, { name: "patientId_start" });
+// Compressed archive of old readings (archive.enabled=true): one block per patient, type and day
+db.HealthRecordArchive.createIndex({ "patientId": 1, "type": 1, "start": -1 }, { name: "patientId_type_start" });
+db.HealthStats.createIndex({ "patientId": 1, "type": 1, "granularity": 1, "bucket": 1 }, { name: "patientId_type_granularity_bucket" });
+
+// ============================================
+// 7. BUILD PRE-AGGREGATED STATISTICS
+// ============================================
+// The API keeps HealthStats up to date as readings are stored; this rebuilds
+// them from the existing readings (run it alone to backfill a live database,
+// while ingestion is stopped). Readings already moved to HealthRecordArchive
+// are not counted again: do not rebuild once the archive holds data.
+db.HealthStats.deleteMany({});
+[
+    { granularity: "minute", bucket: { $subtract: ["$timestamp", { $mod: [{ $toLong: "$timestamp" }, 60000] }] } },
+    { granularity: "hour", bucket: { $subtract: ["$timestamp", { $mod: [{ $toLong: "$timestamp" }, 3600000] }] } },
+    { granularity: "day", bucket: { $subtract: ["$timestamp", { $mod: [{ $toLong: "$timestamp" }, 86400000] }] } },
+    { granularity: "all", bucket: null }
+].forEach(function (level) {
+    db.HealthRecord.aggregate([
+        { $match: { value: { $ne: null }, timestamp: { $type: "date" } } },
+        { $sort: { timestamp: 1 } },
+        { $group: {
+            // Same _id layout as the API (field order matters)
+            _id: { patientId: "$patientId", type: "$type", granularity: level.granularity, bucket: level.bucket },
+            count: { $sum: 1 },
+            sum: { $sum: "$value" },
+            min: { $min: "$value" },
+            max: { $max: "$value" },
+            last: { $last: { at: "$timestamp", value: "$value" } },
+            unit: { $last: "$unit" }
+        } },
+        { $addFields: {
+            patientId: "$_id.patientId",
+            type: "$_id.type",
+            granularity: "$_id.granularity",
+            bucket: "$_id.bucket"
+        } },
+        { $merge: { into: "HealthStats", whenMatched: "replace" } }
+    ]);
+});
 
 print("✅ Database initialized successfully!");
 print("\n⚠️  IMPORTANT: Generate Argon2 password hashes using the PasswordHashGenerator utility");